@@ -27,6 +27,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.forester.io.parsers.IteratingPhylogenyParser;
+import org.forester.io.parsers.PhylogenyParser;
+import org.forester.io.parsers.phyloxml.PhyloXmlIteratingParser;
+import org.forester.io.parsers.phyloxml.PhyloXmlParser;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.io.writers.PhylogenyWriter;
 import org.forester.phylogeny.Phylogeny;
@@ -35,6 +39,7 @@ import org.forester.phylogeny.factories.ParserBasedPhylogenyFactory;
 import org.forester.phylogeny.factories.PhylogenyFactory;
 import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
 import org.forester.tools.ConfidenceAssessor;
+import org.forester.tools.SupportCounter;
 import org.forester.util.CommandLineArguments;
 import org.forester.util.ForesterUtil;
 
@@ -169,44 +174,162 @@ public class confadd {
         else {
             ForesterUtil.programMessage( PRG_NAME, "read in a total of " + targets.length + " targets" );
         }
+        PhylogenyParser evaluators_parser = null;
         try {
-            evaluators = factory.create( evaluators_file,
-                                         ParserUtils.createParserDependingOnFileType( evaluators_file, true ) );
+            evaluators_parser = ParserUtils.createParserDependingOnFileType( evaluators_file, true );
         }
         catch ( final IOException e ) {
             ForesterUtil.fatalError( PRG_NAME, "failed to read evaluator topologies from [" + evaluators_file + "]: "
                     + e.getLocalizedMessage() );
         }
-        counter = 0;
-        for( final Phylogeny evaluator : evaluators ) {
+        if ( evaluators_parser instanceof PhyloXmlParser ) {
+            // phyloXML evaluators are streamed as well (validated against the schema in a separate pass)
+            evaluators_parser = PhyloXmlIteratingParser.createPhyloXmlIteratingParserXsdValidating();
+        }
+        if ( evaluators_parser instanceof IteratingPhylogenyParser ) {
+            evaluateStreaming( confidence_type,
+                               targets,
+                               evaluators_file,
+                               ( IteratingPhylogenyParser ) evaluators_parser,
+                               strict,
+                               first,
+                               last,
+                               norm );
+        }
+        else {
             try {
-                checkUniquenessOfExternalNodes( evaluator, "evaluator " + counter );
+                evaluators = factory.create( evaluators_file, evaluators_parser );
             }
-            catch ( final IllegalArgumentException e ) {
-                ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
+            catch ( final IOException e ) {
+                ForesterUtil.fatalError( PRG_NAME, "failed to read evaluator topologies from [" + evaluators_file + "]: "
+                        + e.getLocalizedMessage() );
             }
-            counter++;
+            counter = 0;
+            for( final Phylogeny evaluator : evaluators ) {
+                try {
+                    checkUniquenessOfExternalNodes( evaluator, "evaluator " + counter );
+                }
+                catch ( final IllegalArgumentException e ) {
+                    ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
+                }
+                counter++;
+            }
+            ForesterUtil.programMessage( PRG_NAME, "read in a total of " + evaluators.length + " evaluator topologies" );
+            System.gc();
+            if ( last == 0 ) {
+                last = evaluators.length - 1;
+            }
+            if ( ( last >= evaluators.length ) || ( last <= first ) ) {
+                ForesterUtil.fatalError( PRG_NAME, "illegal value for first or last evaluator topology to use [" + first
+                                         + ", " + last + "]" );
+            }
+            double value = 1;
+            if ( norm > 0 ) {
+                value = norm / ( ( 1 + last ) - first );
+            }
+            ForesterUtil.programMessage( PRG_NAME, "first topology to use: " + first );
+            String is_last = "";
+            if ( last == ( evaluators.length - 1 ) ) {
+                is_last = " (corresponds to last topology in file)";
+            }
+            ForesterUtil.programMessage( PRG_NAME, "last topology to use : " + last + is_last );
+            ForesterUtil.programMessage( PRG_NAME, "sum of topologies used as evaluators: " + ( ( last - first ) + 1 ) );
+            if ( norm > 0 ) {
+                ForesterUtil.programMessage( PRG_NAME, "normalizer: " + norm + " (" + ForesterUtil.round( value, 6 ) + ")" );
+            }
+            else {
+                ForesterUtil.programMessage( PRG_NAME, "normalizer: n/a" );
+            }
+            ForesterUtil.programMessage( PRG_NAME, "strict: " + strict );
+            for( final Phylogeny target : targets ) {
+                try {
+                    ConfidenceAssessor.evaluate( confidence_type, evaluators, target, strict, value, first, last );
+                }
+                catch ( final IllegalArgumentException e ) {
+                    ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
+                }
+            }
+        }
+        try {
+            final PhylogenyWriter writer = new PhylogenyWriter();
+            writer.toPhyloXML( targets, 0, outfile, ForesterUtil.LINE_SEPARATOR );
+        }
+        catch ( final IOException e ) {
+            ForesterUtil.fatalError( PRG_NAME, "failed to write to [" + outfile + "]: " + e.getLocalizedMessage() );
+        }
+        ForesterUtil.programMessage( PRG_NAME, "wrote output to: [" + outfile + "]" );
+        ForesterUtil.programMessage( PRG_NAME, "OK" );
+        System.out.println();
+    }
+
+    private static void evaluateStreaming( final String confidence_type,
+                                           final Phylogeny[] targets,
+                                           final File evaluators_file,
+                                           final IteratingPhylogenyParser evaluators_parser,
+                                           final boolean strict,
+                                           final int first,
+                                           final int last,
+                                           final double norm ) {
+        final SupportCounter[] support_counters = new SupportCounter[ targets.length ];
+        int n = 0;
+        try {
+            for( int i = 0; i < targets.length; ++i ) {
+                support_counters[ i ] = new SupportCounter( targets[ i ], strict );
+            }
+            evaluators_parser.setSource( evaluators_file );
+            // as for evaluators read at once, the external nodes of each evaluator must be unique
+            final IteratingPhylogenyParser checked = new IteratingPhylogenyParser() {
+
+                private int _counter = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return evaluators_parser.hasNext();
+                }
+
+                @Override
+                public Phylogeny next() throws IOException {
+                    final Phylogeny evaluator = evaluators_parser.next();
+                    checkUniquenessOfExternalNodes( evaluator, "evaluator " + _counter++ );
+                    return evaluator;
+                }
+
+                @Override
+                public void reset() throws IOException {
+                    evaluators_parser.reset();
+                    _counter = 0;
+                }
+
+                @Override
+                public void setSource( final Object o ) throws IOException {
+                    evaluators_parser.setSource( o );
+                    _counter = 0;
+                }
+            };
+            n = ConfidenceAssessor.count( checked,
+                                          support_counters,
+                                          first,
+                                          last,
+                                          Runtime.getRuntime().availableProcessors() );
         }
-        ForesterUtil.programMessage( PRG_NAME, "read in a total of " + evaluators.length + " evaluator topologies" );
-        System.gc();
-        if ( last == 0 ) {
-            last = evaluators.length - 1;
+        catch ( final IOException e ) {
+            ForesterUtil.fatalError( PRG_NAME, "failed to read evaluator topologies from [" + evaluators_file + "]: "
+                    + e.getLocalizedMessage() );
+        }
+        catch ( final IllegalArgumentException e ) {
+            ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
         }
-        if ( ( last >= evaluators.length ) || ( last <= first ) ) {
-            ForesterUtil.fatalError( PRG_NAME, "illegal value for first or last evaluator topology to use [" + first
-                                     + ", " + last + "]" );
+        if ( n < 1 ) {
+            ForesterUtil.fatalError( PRG_NAME, "no evaluator topologies in [" + evaluators_file + "]" );
         }
         double value = 1;
         if ( norm > 0 ) {
-            value = norm / ( ( 1 + last ) - first );
+            value = norm / n;
         }
         ForesterUtil.programMessage( PRG_NAME, "first topology to use: " + first );
-        String is_last = "";
-        if ( last == ( evaluators.length - 1 ) ) {
-            is_last = " (corresponds to last topology in file)";
-        }
-        ForesterUtil.programMessage( PRG_NAME, "last topology to use : " + last + is_last );
-        ForesterUtil.programMessage( PRG_NAME, "sum of topologies used as evaluators: " + ( ( last - first ) + 1 ) );
+        ForesterUtil.programMessage( PRG_NAME, "last topology to use : " + ( ( first + n ) - 1 )
+                + ( last == 0 ? " (corresponds to last topology in file)" : "" ) );
+        ForesterUtil.programMessage( PRG_NAME, "sum of topologies used as evaluators: " + n );
         if ( norm > 0 ) {
             ForesterUtil.programMessage( PRG_NAME, "normalizer: " + norm + " (" + ForesterUtil.round( value, 6 ) + ")" );
         }
@@ -214,24 +337,14 @@ public class confadd {
             ForesterUtil.programMessage( PRG_NAME, "normalizer: n/a" );
         }
         ForesterUtil.programMessage( PRG_NAME, "strict: " + strict );
-        for( final Phylogeny target : targets ) {
+        for( final SupportCounter support_counter : support_counters ) {
             try {
-                ConfidenceAssessor.evaluate( confidence_type, evaluators, target, strict, value, first, last );
+                support_counter.setConfidences( confidence_type, value );
             }
             catch ( final IllegalArgumentException e ) {
                 ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
             }
         }
-        try {
-            final PhylogenyWriter writer = new PhylogenyWriter();
-            writer.toPhyloXML( targets, 0, outfile, ForesterUtil.LINE_SEPARATOR );
-        }
-        catch ( final IOException e ) {
-            ForesterUtil.fatalError( PRG_NAME, "failed to write to [" + outfile + "]: " + e.getLocalizedMessage() );
-        }
-        ForesterUtil.programMessage( PRG_NAME, "wrote output to: [" + outfile + "]" );
-        ForesterUtil.programMessage( PRG_NAME, "OK" );
-        System.out.println();
     }
 
     private static void printHelp() {
@@ -20,19 +20,20 @@
 
 package org.forester.application;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.forester.io.parsers.FastaParser;
+import org.forester.io.parsers.MappedFastaParser;
 import org.forester.io.writers.SequenceWriter;
-import org.forester.io.writers.SequenceWriter.SEQ_FORMAT;
 import org.forester.sequence.BasicSequence;
 import org.forester.sequence.MolecularSequence;
 import org.forester.util.CommandLineArguments;
@@ -40,9 +41,11 @@ import org.forester.util.ForesterUtil;
 
 public final class fasta_split {
 
-    final static private String PRG_NAME    = "fasta_split";
-    final static private String PRG_VERSION = "1.1.0";
-    final static private String PRG_DATE    = "2024-05-06";
+    final static private String PRG_NAME       = "fasta_split";
+    final static private String PRG_VERSION    = "1.2.0";
+    final static private String PRG_DATE       = "2026-10-18";
+    // at most this many output files are open at once; the least recently written one is closed first
+    final static private int    MAX_OPEN_FILES = 256;
 
     public static void main( final String[] args) {
         ForesterUtil.printProgramInformation( fasta_split.PRG_NAME, fasta_split.PRG_VERSION, fasta_split.PRG_DATE );
@@ -86,73 +89,98 @@ public final class fasta_split {
         if ( !outdir.isDirectory() ) {
             ForesterUtil.fatalError( PRG_NAME, outdir + " is not a directory" );
         }
-        List<MolecularSequence> seqs = null;
+        // the sequences are read and written one at a time, each to the file of its key (appending to
+        // files which have been closed to stay below MAX_OPEN_FILES)
+        final Map<String, File> files = new HashMap<String, File>();
+        final LinkedHashMap<String, Writer> writers = new LinkedHashMap<String, Writer>( 16, 0.75f, true );
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+        int seqs_written = 0;
         try {
-            seqs = FastaParser.parse( new FileInputStream( infile ) );
+            final MappedFastaParser p = new MappedFastaParser( infile );
+            while ( p.hasNext() ) {
+                final MolecularSequence seq = p.next();
+                final String id = seq.getIdentifier().trim().replaceAll( "\\s*\\|\\s*", "|").replaceAll( "\\s+", "_");
+                ( ( BasicSequence ) seq ).setIdentifier(id);
+                final Matcher m = pa.matcher(seq.getIdentifier() );
+                final String key;
+                if ( m.find() ) {
+                    if ( m.group( 1 ) == null ) {
+                        close( writers );
+                        ForesterUtil.fatalError( PRG_NAME, "regular expression appears faulty");
+                    }
+                    key = m.group( 1 ).toUpperCase();
+                    System.out.println( "Extracted: " + key );
+                }
+                else {
+                    System.out.println( "Warning: " + pattern_str + " not found in sequence \"" + seq.getIdentifier()
+                            + "\"" );
+                    key = "UNKNOWN";
+                }
+                if ( !files.containsKey( key ) ) {
+                    String s = key.trim();
+                    s = s.replaceAll( "[\\./\\*\\s]+", "_" );
+                    s = s.replaceAll( "\\(", "~" );
+                    s = s.replaceAll( "\\)", "~" );
+                    final File of;
+                    if (out_pattern != null) {
+                        of = new File( outdir.getAbsolutePath() + "/" + out_pattern + s + ".fasta" );
+                    }
+                    else {
+                        of = new File( outdir.getAbsolutePath() + "/" + s + ".fasta" );
+                    }
+                    if ( of.exists() ) {
+                        close( writers );
+                        ForesterUtil.fatalError( PRG_NAME, of + " already exists" );
+                    }
+                    System.out.println( ( files.size() + 1 ) + ": writing " + of );
+                    files.put( key, of );
+                    counts.put( key, 0 );
+                }
+                Writer w = writers.get( key );
+                if ( w == null ) {
+                    if ( writers.size() >= MAX_OPEN_FILES ) {
+                        final Iterator<Writer> it = writers.values().iterator();
+                        it.next().close();
+                        it.remove();
+                    }
+                    w = new BufferedWriter( new FileWriter( files.get( key ), true ) );
+                    writers.put( key, w );
+                }
+                SequenceWriter.toFasta( seq, w, 60 );
+                w.write( ForesterUtil.LINE_SEPARATOR );
+                counts.put( key, counts.get( key ) + 1 );
+                ++seqs_written;
+            }
+            p.close();
+            for( final Writer w : writers.values() ) {
+                w.close();
+            }
+            writers.clear();
         }
         catch ( final IOException e ) {
+            close( writers );
             ForesterUtil.fatalError( PRG_NAME, e.getMessage() );
         }
-        if ( ( seqs == null ) || seqs.isEmpty() ) {
+        if ( seqs_written < 1 ) {
             ForesterUtil.fatalError( PRG_NAME, infile + " appears empty" );
         }
-        System.out.println( "Read " + seqs.size() + " sequences" );
-        final Map<String, List<MolecularSequence>> output = new HashMap<String, List<MolecularSequence>>();
-        for( final MolecularSequence seq : seqs ) {
-            final String id = seq.getIdentifier().trim().replaceAll( "\\s*\\|\\s*", "|").replaceAll( "\\s+", "_");
-            ( ( BasicSequence ) seq ).setIdentifier(id);
-            final Matcher m = pa.matcher(seq.getIdentifier() );
-            if ( m.find() ) {
-                final String key = m.group( 1 ).toUpperCase();
-                System.out.println( "Extracted: " + key );
-                if ( !output.containsKey( key ) ) {
-                    output.put( key, new ArrayList<MolecularSequence>() );
-                }
-                output.get( key ).add( seq );
-            }
-            else {
-                System.out.println( "Warning: " + pattern_str + " not found in sequence \"" + seq.getIdentifier()
-                        + "\"" );
-                final String key = "UNKNOWN";
-                if ( !output.containsKey( key ) ) {
-                    output.put( key, new ArrayList<MolecularSequence>() );
-                }
-                output.get( key ).add( seq );
-            }
+        for( final Map.Entry<String, Integer> entry : counts.entrySet() ) {
+            System.out.println( entry.getKey() + ": " + entry.getValue() + " seqs" );
         }
-        int c = 0;
-        int seqs_written = 0;
-        for( final Map.Entry<String, List<MolecularSequence>> entry : output.entrySet() ) {
-            if ( entry.getKey() == null) {
-                ForesterUtil.fatalError( PRG_NAME, "regular expression appears faulty");
-            }
-            String s = entry.getKey().trim();
-
-            s = s.replaceAll( "[\\./\\*\\s]+", "_" );
-            s = s.replaceAll( "\\(", "~" );
-            s = s.replaceAll( "\\)", "~" );
-            final File of;
-            if (out_pattern != null) {
-                of = new File( outdir.getAbsolutePath() + "/" + out_pattern + s + ".fasta" );
-            }
-            else {
-                of = new File( outdir.getAbsolutePath() + "/" + s + ".fasta" );
-            }
+        System.out.println( "Wrote " + seqs_written + " sequences" );
+    }
 
-            if ( of.exists() ) {
-                ForesterUtil.fatalError( PRG_NAME, of + " already exists" );
-            }
-            System.out.println( ++c + ": writing " + of + " [" + entry.getValue().size() + " seqs]" );
-            
+    // closes (and so flushes) the output files on errors, before exiting
+    private static void close( final Map<String, Writer> writers ) {
+        for( final Writer w : writers.values() ) {
             try {
-                SequenceWriter.writeSeqs( entry.getValue(), of, SEQ_FORMAT.FASTA, 60 );
+                w.close();
             }
             catch ( final IOException e ) {
-                ForesterUtil.fatalError( PRG_NAME, e.getMessage() );
+                // Ignore
             }
-            seqs_written += entry.getValue().size();
         }
-        System.out.println( "Wrote " + seqs_written + " sequences" );
+        writers.clear();
     }
 
     private static void argumentsError() {
@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.SortedMap;
 
 import org.forester.go.GoId;
+import org.forester.go.GoOntologyIndex;
 import org.forester.go.GoTerm;
 import org.forester.go.GoUtils;
 import org.forester.go.OBOparser;
@@ -105,6 +106,7 @@ public class goac {
             ForesterUtil.fatalError( PRG_NAME, e.toString() );
         }
         final Map<GoId, GoTerm> goid_to_term_map = GoUtils.createGoIdToGoTermMap( all_go_terms );
+        final GoOntologyIndex go_index = new GoOntologyIndex( all_go_terms );
         final List<GoId> query_superterms_ids = new ArrayList<GoId>();
         SortedMap<String, List<GoId>> query_superterms_id_raw = null;
         try {
@@ -152,7 +154,7 @@ public class goac {
             final List<GoId> experiment_set_ids = data_to_be_analyzed.get( label );
             Map<GoId, Integer> counts_id = null;
             try {
-                counts_id = GoUtils.countCategoriesId( query_superterms_ids, experiment_set_ids, goid_to_term_map );
+                counts_id = go_index.countCategoriesId( query_superterms_ids, experiment_set_ids );
             }
             catch ( final Exception e ) {
                 ForesterUtil.printErrorMessage( PRG_NAME, e.getMessage() );
@@ -26,7 +26,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
-import org.forester.evoinference.distance.PairwiseDistanceCalculator;
+import org.forester.evoinference.distance.PackedPairwiseDistanceCalculator;
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
 import org.forester.io.parsers.FastaParser;
 import org.forester.io.parsers.GeneralMsaParser;
@@ -47,7 +47,7 @@ public final class msa2pwd {
             else {
                 msa = DeleteableMsa.createInstance( GeneralMsaParser.parseMsa( is ) );
             }
-            final BasicSymmetricalDistanceMatrix pwd = PairwiseDistanceCalculator.calcFractionalSimilarities( msa );
+            final BasicSymmetricalDistanceMatrix pwd = PackedPairwiseDistanceCalculator.calcFractionalSimilarities( msa );
            
             BufferedWriter w = ForesterUtil.createBufferedWriter( outfile ); 
             pwd.write( w);
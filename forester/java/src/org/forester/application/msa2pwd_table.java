@@ -31,7 +31,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.forester.evoinference.distance.PairwiseDistanceCalculator;
+import org.forester.evoinference.distance.PackedPairwiseDistanceCalculator;
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
 import org.forester.io.parsers.FastaParser;
 import org.forester.io.parsers.GeneralMsaParser;
@@ -71,7 +71,7 @@ public final class msa2pwd_table {
         else {
             msa = DeleteableMsa.createInstance( GeneralMsaParser.parseMsa( is ) );
         }
-        final BasicSymmetricalDistanceMatrix pwd = PairwiseDistanceCalculator.calcFractionalSimilarities( msa );
+        final BasicSymmetricalDistanceMatrix pwd = PackedPairwiseDistanceCalculator.calcFractionalSimilarities( msa );
         int target_index = -1;
         boolean first = true;
         for( int i = 0; i < pwd.getSize(); i++ ) {
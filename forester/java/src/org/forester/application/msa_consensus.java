@@ -29,9 +29,12 @@ import java.util.List;
 
 import org.forester.io.parsers.FastaParser;
 import org.forester.io.parsers.GeneralMsaParser;
+import org.forester.io.parsers.MappedFastaParser;
 import org.forester.io.writers.SequenceWriter;
 import org.forester.io.writers.SequenceWriter.SEQ_FORMAT;
-import org.forester.msa.DeleteableMsa;
+import org.forester.msa.ByteMsa;
+import org.forester.msa.ByteMsa.LAYOUT;
+import org.forester.msa.MsaColumnStatistics;
 import org.forester.msa.MsaMethods;
 import org.forester.sequence.BasicSequence;
 import org.forester.sequence.MolecularSequence;
@@ -44,15 +47,17 @@ public final class msa_consensus {
             final File infile = new File( args[ 0 ] );
             File outfile = new File( args[ 1 ] );
             final String name = args[ 2 ];
-            DeleteableMsa msa = null;
-            final FileInputStream is = new FileInputStream( infile );
+            // column by column (and two nucleotides per byte, if possible), for the column statistics
+            final ByteMsa msa;
             if ( FastaParser.isLikelyFasta( infile ) ) {
-                msa = DeleteableMsa.createInstance( FastaParser.parseMsa( is ) );
+                msa = ByteMsa.createInstance( MappedFastaParser.parseMsa( infile ), LAYOUT.COLUMNS, true );
             }
             else {
-                msa = DeleteableMsa.createInstance( GeneralMsaParser.parseMsa( is ) );
+                msa = ByteMsa.createInstance( GeneralMsaParser.parseMsa( new FileInputStream( infile ) ),
+                                              LAYOUT.COLUMNS,
+                                              true );
             }
-            final String cons = MsaMethods.calculateMajorityConsensusSequence( msa );
+            final String cons = MsaColumnStatistics.calculate( msa ).getConsensusSequence();
             final List<MolecularSequence> seqs = new ArrayList<>();
             seqs.add( BasicSequence.createGeneralSequence( name, cons ) );
             if ( special ) {
@@ -27,8 +27,10 @@ import java.io.IOException;
 
 import org.forester.io.parsers.FastaParser;
 import org.forester.io.parsers.GeneralMsaParser;
-import org.forester.msa.DeleteableMsa;
-import org.forester.msa.MsaMethods;
+import org.forester.io.parsers.MappedFastaParser;
+import org.forester.msa.ByteMsa;
+import org.forester.msa.ByteMsa.LAYOUT;
+import org.forester.msa.MsaColumnStatistics;
 
 public final class msa_entropy {
 
@@ -37,24 +39,27 @@ public final class msa_entropy {
             final File infile = new File( args[ 0 ] );
             //File outfile = new File( args[ 1 ] );
             //final String name = args[ 2 ];
-            DeleteableMsa msa = null;
-            final FileInputStream is = new FileInputStream( infile );
+            // column by column, for the column statistics
+            final ByteMsa msa;
             if ( FastaParser.isLikelyFasta( infile ) ) {
-                msa = DeleteableMsa.createInstance( FastaParser.parseMsa( is ) );
+                msa = ByteMsa.createInstance( MappedFastaParser.parseMsa( infile ), LAYOUT.COLUMNS, true );
             }
             else {
-                msa = DeleteableMsa.createInstance( GeneralMsaParser.parseMsa( is ) );
+                msa = ByteMsa.createInstance( GeneralMsaParser.parseMsa( new FileInputStream( infile ) ),
+                                              LAYOUT.COLUMNS,
+                                              true );
             }
+            final MsaColumnStatistics stats = MsaColumnStatistics.calculate( msa );
             final int k = 21;
             //for( int col = 0; col < msa.getLength(); ++col ) {
-            //   System.out.println( (col + 1) + "\t" + MsaMethods.calcNormalizedShannonsEntropy( k, msa, col ) );
+            //   System.out.println( (col + 1) + "\t" + stats.getNormalizedShannonsEntropy( k, col ) );
             // }
             // System.out.println();
             // System.out.println();
             for( int col = 0; col < msa.getLength() - 9; ++col ) {
-                System.out.println( (col + 1) + "\t" + MsaMethods.calcAvgNormalizedShannonsEntropy( k, msa, col, col + 9 ) );
+                System.out.println( (col + 1) + "\t" + stats.calcAvgNormalizedShannonsEntropy( k, col, col + 9 ) );
             }
-            //System.out.println( ( MsaMethods.calcAvgNormalizedShannonsEntropy( k, msa, 0, msa.getLength() - 1 ) ) );
+            //System.out.println( ( stats.calcAvgNormalizedShannonsEntropy( k, 0, msa.getLength() - 1 ) ) );
         }
         catch ( final FileNotFoundException e ) {
             e.printStackTrace();
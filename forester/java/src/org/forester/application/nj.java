@@ -25,13 +25,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.forester.evoinference.distance.NeighborJoining;
+import org.forester.evoinference.distance.NeighborJoiningRapid;
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
 import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
 import org.forester.io.parsers.SymmetricalDistanceMatrixParser;
 import org.forester.io.writers.PhylogenyWriter;
 import org.forester.phylogeny.Phylogeny;
+import org.forester.tools.SupportCounter;
 import org.forester.util.CommandLineArguments;
 import org.forester.util.ForesterUtil;
 
@@ -41,6 +48,9 @@ public class nj {
     final static private String HELP_OPTION_2         = "h";
     final static private String VERBOSE_OPTION        = "v";
     final static private String UPPER_TRIANGLE_OPTION = "u";
+    final static private String FLOAT_MATRIX_OPTION   = "f";
+    final static private String RAPID_OPTION          = "r";
+    final static private String BOOTSTRAP_OPTION      = "b";
     final static private String PRG_NAME              = "nj";
     final static private String PRG_VERSION           = "0.0.1";
     final static private String PRG_DATE              = "2008.03.04";
@@ -54,6 +64,9 @@ public class nj {
         allowed_options.add( HELP_OPTION_2 );
         allowed_options.add( VERBOSE_OPTION );
         allowed_options.add( UPPER_TRIANGLE_OPTION );
+        allowed_options.add( FLOAT_MATRIX_OPTION );
+        allowed_options.add( RAPID_OPTION );
+        allowed_options.add( BOOTSTRAP_OPTION );
         if ( ( args.length < 2 ) ) {
             printHelp();
             System.exit( -1 );
@@ -101,6 +114,9 @@ public class nj {
         else {
             parser.setInputMatrixType( SymmetricalDistanceMatrixParser.InputMatrixType.LOWER_TRIANGLE );
         }
+        if ( cla.isOptionSet( FLOAT_MATRIX_OPTION ) ) {
+            parser.setTriangularMatrixPrecision( TriangularDistanceMatrix.PRECISION.FLOAT );
+        }
         DistanceMatrix[] matrices = null;
         try {
             matrices = parser.parse( infile );
@@ -112,11 +128,23 @@ public class nj {
             System.out.println( PRG_NAME + " > read " + matrices.length + " pairwise distance matrice(s) of size "
                     + matrices[ 0 ].getSize() );
         }
+        final boolean rapid = cla.isOptionSet( RAPID_OPTION );
+        final boolean bootstrap = cla.isOptionSet( BOOTSTRAP_OPTION );
+        if ( bootstrap && ( matrices.length < 2 ) ) {
+            ForesterUtil.fatalError( PRG_NAME, "need at least one bootstrap replicate matrix after the first matrix" );
+        }
+        final int threads = Runtime.getRuntime().availableProcessors();
         final List<Phylogeny> ps = new ArrayList<Phylogeny>();
-        final NeighborJoining nj = NeighborJoining.createInstance( verbose, 6 );
         final long start_time = new Date().getTime();
-        for( final DistanceMatrix matrix : matrices ) {
-            ps.add( nj.execute( ( BasicSymmetricalDistanceMatrix ) matrix ) );
+        if ( bootstrap ) {
+            ps.add( inferPhylogeny( matrices[ 0 ], rapid, verbose, threads ) );
+            matrices[ 0 ] = null;
+            final SupportCounter counter = new SupportCounter( ps.get( 0 ), true );
+            execute( matrices, 1, rapid, false, threads, counter );
+            counter.setConfidences( "bootstrap", 1 );
+        }
+        else {
+            ps.addAll( execute( matrices, 0, rapid, verbose && ( matrices.length == 1 ), threads, null ) );
         }
         final long end_time = new Date().getTime();
         final PhylogenyWriter w = new PhylogenyWriter();
@@ -131,6 +159,64 @@ public class nj {
         System.out.println();
     }
 
+    // Replicates are inferred in parallel (rapid neighbor joining is
+    // multi-threaded by itself). With a counter, each tree is counted and then
+    // discarded; otherwise the trees are returned in input order.
+    private static List<Phylogeny> execute( final DistanceMatrix[] matrices,
+                                            final int first,
+                                            final boolean rapid,
+                                            final boolean verbose,
+                                            final int threads,
+                                            final SupportCounter counter ) {
+        final List<Phylogeny> ps = new ArrayList<Phylogeny>();
+        final ExecutorService executor = Executors.newFixedThreadPool( rapid ? 1 : threads );
+        try {
+            final List<Future<Phylogeny>> futures = new ArrayList<Future<Phylogeny>>();
+            for( int i = first; i < matrices.length; ++i ) {
+                final int index = i;
+                futures.add( executor.submit( () -> {
+                    final Phylogeny p = inferPhylogeny( matrices[ index ], rapid, verbose, threads );
+                    matrices[ index ] = null;
+                    if ( counter != null ) {
+                        counter.count( p );
+                        return null;
+                    }
+                    return p;
+                } ) );
+            }
+            for( final Future<Phylogeny> future : futures ) {
+                final Phylogeny p = future.get();
+                if ( p != null ) {
+                    ps.add( p );
+                }
+            }
+        }
+        catch ( final InterruptedException e ) {
+            ForesterUtil.fatalError( PRG_NAME, "interrupted" );
+        }
+        catch ( final ExecutionException e ) {
+            ForesterUtil.fatalError( PRG_NAME, "failed to infer phylogeny: " + e.getCause().getMessage() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return ps;
+    }
+
+    private static Phylogeny inferPhylogeny( final DistanceMatrix matrix,
+                                             final boolean rapid,
+                                             final boolean verbose,
+                                             final int threads ) {
+        if ( rapid ) {
+            return NeighborJoiningRapid.createInstance( threads, 6 ).execute( matrix );
+        }
+        final NeighborJoining nj = NeighborJoining.createInstance( verbose, 6 );
+        if ( matrix instanceof TriangularDistanceMatrix ) {
+            return nj.execute( ( TriangularDistanceMatrix ) matrix );
+        }
+        return nj.execute( ( BasicSymmetricalDistanceMatrix ) matrix );
+    }
+
     private static void printHelp() {
         System.out.println();
         System.out.println( "Usage:" );
@@ -141,6 +227,10 @@ public class nj {
         System.out.println( " Options: " );
         System.out.println( VERBOSE_OPTION + ": verbose on" );
         System.out.println( UPPER_TRIANGLE_OPTION + ": upper triangle option on (lower triangle is default)" );
+        System.out.println( FLOAT_MATRIX_OPTION + ": store distances as packed lower triangle of floats (saves memory)" );
+        System.out.println( RAPID_OPTION + ": rapid neighbor joining (multi-threaded, for large numbers of taxa)" );
+        System.out.println( BOOTSTRAP_OPTION
+                + ": first matrix is the original data, all others are bootstrap replicates (writes one tree with support values)" );
         System.out.println();
     }
 }
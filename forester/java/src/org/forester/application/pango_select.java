@@ -21,16 +21,17 @@
 package org.forester.application;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
-import org.forester.io.parsers.FastaParser;
+import org.forester.io.parsers.MappedFastaParser;
 import org.forester.io.writers.SequenceWriter;
 import org.forester.io.writers.SequenceWriter.SEQ_FORMAT;
 import org.forester.sequence.MolecularSequence;
@@ -78,18 +79,26 @@ public class pango_select {
         }
         System.out.println( "All lineages: " + all_lineages_sorted.size() );
         System.out.println( "All lineages: " + all_lineages_sorted );
-        List<MolecularSequence> seqs = null;
+        // only the sequences of the lineage table are kept (the fasta file is read one sequence at a time)
+        final Set<String> table_ids = new HashSet<>();
+        for( int i = 0; i < lineage_table.getNumberOfRows(); ++i ) {
+            table_ids.add( lineage_table.getValue( 0, i ) );
+        }
+        final SortedMap<String, MolecularSequence> id_to_seq = new TreeMap<>();
         try {
-            seqs = FastaParser.parse( new FileInputStream( infile ) );
+            final MappedFastaParser p = new MappedFastaParser( infile );
+            while ( p.hasNext() ) {
+                final MolecularSequence seq = p.next();
+                if ( table_ids.contains( seq.getIdentifier() ) ) {
+                    id_to_seq.put( seq.getIdentifier(), seq );
+                }
+            }
+            p.close();
         }
         catch ( final IOException e ) {
             e.printStackTrace();
             System.exit( -1 );
         }
-        final SortedMap<String, MolecularSequence> id_to_seq = new TreeMap<>();
-        for( final MolecularSequence seq : seqs ) {
-            id_to_seq.put( seq.getIdentifier(), seq );
-        }
         final List<MolecularSequence> out_seqs = new ArrayList<>();
         for( final String lineage : all_lineages_sorted ) {
             int counter = 0;
@@ -58,6 +58,7 @@ public class rio {
     final static private String MAPPINGS_SUFFIX_DEFAULT        = ".nim";
     final static private String CONSENSUS_TREE_SUFFIX_DEFAULT  = ".xml";
     final static private String ORTHOLOG_GROUPS_CUTOFF_OPTION  = "c";
+    final static private String THREADS_OPTION                 = "t";
     final static private String GENE_TREES_SUFFIX_DEFAULT      = ".mlt";
     final static private double ORTHOLOG_GROUPS_CUTOFF_DEFAULT = 0.5;
 
@@ -79,7 +80,7 @@ public class rio {
         if ( cla.isOptionSet( HELP_OPTION_1 ) || cla.isOptionSet( HELP_OPTION_2 ) || ( args.length == 0 ) ) {
             printHelp();
         }
-        if ( ( args.length < 3 ) || ( args.length > 11 ) || ( cla.getNumberOfNames() < 3 ) ) {
+        if ( ( args.length < 3 ) || ( args.length > 12 ) || ( cla.getNumberOfNames() < 3 ) ) {
             System.out.println();
             System.out.println( "error: incorrect number of arguments" );
             System.out.println();
@@ -97,6 +98,7 @@ public class rio {
         allowed_options.add( MAPPINGS_SUFFIX_OPTION );
         allowed_options.add( CONSENSUS_TREES_DIR_OPTION );
         allowed_options.add( CONSENSUS_TREES_SUFFIX_OPTION );
+        allowed_options.add( THREADS_OPTION );
         final String dissallowed_options = cla.validateAllowedOptionsAsString( allowed_options );
         if ( dissallowed_options.length() > 0 ) {
             ForesterUtil.fatalError( "unknown option(s): " + dissallowed_options );
@@ -245,6 +247,24 @@ public class rio {
             ForesterUtil.fatalError( "attempt to set range (0-based) of gene to analyze to: from " + gt_first + " to "
                     + gt_last );
         }
+        int threads = 1;
+        if ( cla.isOptionSet( THREADS_OPTION ) ) {
+            if ( sdir ) {
+                ForesterUtil.fatalError( "no threads option for SDIR algorithm" );
+            }
+            if ( !cla.isOptionHasAValue( THREADS_OPTION ) ) {
+                ForesterUtil.fatalError( "no value for -" + THREADS_OPTION );
+            }
+            try {
+                threads = cla.getOptionValueAsInt( THREADS_OPTION );
+            }
+            catch ( final IOException e ) {
+                ForesterUtil.fatalError( "could not parse integer for -" + THREADS_OPTION + " option" );
+            }
+            if ( threads < 1 ) {
+                ForesterUtil.fatalError( "attempt to set number of threads to: " + threads );
+            }
+        }
         double ortholog_group_cutoff = ORTHOLOG_GROUPS_CUTOFF_DEFAULT;
         if ( cla.isOptionSet( ORTHOLOG_GROUPS_CUTOFF_OPTION ) ) {
             if ( sdir ) {
@@ -653,7 +673,8 @@ public class rio {
                                              perform_gsdir_on_best_tree,
                                              outdir,
                                              best_trees_indir,
-                                             best_trees_suffix );
+                                             best_trees_suffix,
+                                             threads );
                 }
                 catch ( IOException e ) {
                     ForesterUtil.fatalError( PRG_NAME, e.getLocalizedMessage() );
@@ -689,7 +710,8 @@ public class rio {
                                      false,
                                      null,
                                      null,
-                                     null );
+                                     null,
+                                     threads );
         }
         if ( !use_dir ) {
             time = System.currentTimeMillis() - time;
@@ -741,6 +763,9 @@ public class rio {
         System.out.println( "  -" + CONSENSUS_TREES_SUFFIX_OPTION
                 + "=<suffix>  : suffix for consenus (\"best\") gene trees (default: " + CONSENSUS_TREE_SUFFIX_DEFAULT
                 + ")" );
+        System.out.println( "  -" + THREADS_OPTION
+                + "=<threads>   : number of threads for analyzing gene trees (default: 1; only for GSDIR with" );
+        System.out.println( "                   re-rooting by minimizing duplications, and gene trees in phyloXML, NH or Nexus format)" );
         System.out.println();
         System.out.println( " Formats" );
         System.out
@@ -755,6 +780,7 @@ public class rio {
         System.out.println( "  rio -s gene_trees.nh species.xml outtable.tsv" );
         System.out.println( "  rio gene_trees.nh species.xml outtable.tsv log.txt" );
         System.out.println( "  rio -c=0.9 -f=10 -l=100 -r=none gene_trees.xml species.xml outtable.tsv log.txt" );
+        System.out.println( "  rio -t=16 gene_trees.nh species.xml outtable.tsv log.txt" );
         System.out.println( "  rio -g=.xml gene_trees_dir species.xml out_dir log.tsv" );
         System.out.println( "  rio -g=.mlt -m=id_maps_dir -ms=.nim -c=0.8 gene_trees_dir species.xml out_dir log.tsv" );
         System.out.println( "  rio -m=id_maps_dir -c=0.8 gene_trees_dir species.xml out_dir log.tsv" );
@@ -27,6 +27,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.forester.io.parsers.PhylogenyParser;
+import org.forester.io.parsers.phyloxml.PhyloXmlIteratingParser;
+import org.forester.io.parsers.phyloxml.PhyloXmlParser;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyMethods;
@@ -178,7 +180,21 @@ public final class support_statistics {
             try {
                 final PhylogenyFactory factory = ParserBasedPhylogenyFactory.getInstance();
                 final PhylogenyParser pp = ParserUtils.createParserDependingOnFileType( phylogenies_infiles[ i ], true );
-                phylogenies[ i ] = factory.create( phylogenies_infiles[ i ], pp )[ 0 ];
+                if ( pp instanceof PhyloXmlParser ) {
+                    // only the first phylogeny is used, so only it is built (the whole file is validated)
+                    try (final PhyloXmlIteratingParser ip = PhyloXmlIteratingParser
+                            .createPhyloXmlIteratingParserXsdValidating()) {
+                        ip.setSource( phylogenies_infiles[ i ] );
+                        phylogenies[ i ] = ip.next();
+                    }
+                    if ( phylogenies[ i ] == null ) {
+                        ForesterUtil.fatalError( support_statistics.PRG_NAME, "no phylogeny in \""
+                                + phylogenies_infiles[ i ] + "\"" );
+                    }
+                }
+                else {
+                    phylogenies[ i ] = factory.create( phylogenies_infiles[ i ], pp )[ 0 ];
+                }
             }
             catch ( final IOException e ) {
                 ForesterUtil.fatalError( support_statistics.PRG_NAME, "could not read \"" + phylogenies_infiles[ i ]
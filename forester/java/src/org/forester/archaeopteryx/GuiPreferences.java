@@ -85,6 +85,8 @@ final class GuiPreferences {
             // load flip the global default ON for every later launch.
             boolPref( "show_zebra_stripes", Options::isShowZebraStripes, Options::setShowZebraStripes ),
             boolPref( "break_long_branches", Options::isBreakLongBranches, Options::setBreakLongBranches ),
+            boolPref( "aggregate_sub_pixel_clades", Options::isAggregateSubPixelClades,
+                      Options::setAggregateSubPixelClades ),
             boolPref( "show_internal_taxonomy_key", Options::isShowInternalTaxonomyKey,
                       Options::setShowInternalTaxonomyKey ),
             boolPref( "tip_labels_below_columns", Options::isTipLabelsBelowColumns, Options::setTipLabelsBelowColumns ),
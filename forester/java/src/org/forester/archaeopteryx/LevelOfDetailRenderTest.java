@@ -0,0 +1,236 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.archaeopteryx;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * "Aggregate Sub-Pixel Clades" (level of detail): a large tree fitted into a short panel is painted on screen with
+ * and without aggregation; every node must get the SAME coords either way (hit-testing and the overlays rely on
+ * them), the aggregated paint must still draw the tree, and an export must be pixel-identical with the option on or
+ * off (exports never aggregate). Headful, except for the test of which clades are aggregated.
+ */
+public final class LevelOfDetailRenderTest {
+
+    public static void main( final String[] args ) {
+        final boolean ok = test();
+        System.out.println( "LevelOfDetailRender: " + ( ok ? "OK." : "FAILED." ) );
+        System.exit( ok ? 0 : 1 );
+    }
+
+    public static boolean test() {
+        if ( !aggregationDecisionOk() ) {
+            return false;
+        }
+        if ( GraphicsEnvironment.isHeadless() ) {
+            return true;
+        }
+        return aggregationOk();
+    }
+
+    // ---- only an expanded internal node whose clade is under a pixel high is aggregated, and only if the
+    // ---- option is on for this paint
+    private static boolean aggregationDecisionOk() {
+        final boolean[] ok = { true };
+        final Phylogeny phy = createBalancedPhylogeny( 4, new Random( 3 ) ); // 16 tips
+        phy.recalculateNumberOfExternalDescendants( false );
+        final PhylogenyNode root = phy.getRoot();
+        final PhylogenyNode quartet = root.getChildNode( 0 ).getChildNode( 0 ); // 4 tips
+        final PhylogenyNode tip = phy.getFirstExternalNode();
+        if ( !TreePanel.isAggregatedClade( root, true, 0.05f ) || !TreePanel.isAggregatedClade( quartet, true, 0.2f ) ) {
+            fail( ok, "a clade less than a pixel high should be aggregated" );
+        }
+        if ( TreePanel.isAggregatedClade( root, false, 0.05f ) ) {
+            fail( ok, "nothing should be aggregated with the option off (or in an export)" );
+        }
+        if ( TreePanel.isAggregatedClade( root, true, 0.1f ) || TreePanel.isAggregatedClade( quartet, true, 0.25f ) ) {
+            fail( ok, "a clade a pixel or more high should not be aggregated" );
+        }
+        if ( !TreePanel.isAggregatedClade( quartet, true, 0.1f ) ) {
+            fail( ok, "a sub-clade of a clade under a pixel high should be aggregated too" );
+        }
+        if ( TreePanel.isAggregatedClade( tip, true, 0.01f ) ) {
+            fail( ok, "an external node should never be aggregated" );
+        }
+        quartet.setCollapse( true );
+        if ( TreePanel.isAggregatedClade( quartet, true, 0.1f ) ) {
+            fail( ok, "a collapsed node should not be aggregated" );
+        }
+        quartet.setCollapse( false );
+        return ok[ 0 ];
+    }
+
+    private static boolean aggregationOk() {
+        try {
+            final Phylogeny phy = createBalancedPhylogeny( 14, new Random( 3 ) ); // 16384 tips
+            final Configuration conf = new Configuration();
+            final MainFrame[] mf = new MainFrame[ 1 ];
+            SwingUtilities.invokeAndWait(
+                    () -> mf[ 0 ] = MainFrameApplication.createInstance( new Phylogeny[] { phy }, conf, "lod" ) );
+            final boolean[] ok = { true };
+            SwingUtilities.invokeAndWait( () -> {
+                final MainFrame frame = mf[ 0 ];
+                try {
+                    final TreePanel tp = frame.getMainPanel().getCurrentTreePanel();
+                    final Options o = frame.getOptions();
+                    o.setGraphicsExportWhiteBackground( true );
+                    tp.setPhylogenyGraphicsType( Options.PHYLOGENY_GRAPHICS_TYPE.RECTANGULAR );
+                    tp.getControlPanel().setTreeDisplayType( Options.PHYLOGENY_DISPLAY_TYPE.UNALIGNED_PHYLOGRAM );
+                    final int w = 800, h = 400; // far below a pixel per tip
+                    frame.showWhole();
+                    tp.setSize( w, h );
+                    tp.calcParametersForPainting( w, h );
+                    o.setAggregateSubPixelClades( false );
+                    final BufferedImage off_img = paintOnScreen( tp, w, h );
+                    final List<float[]> off_coords = coords( phy );
+                    o.setAggregateSubPixelClades( true );
+                    final BufferedImage on_img = paintOnScreen( tp, w, h );
+                    final List<float[]> on_coords = coords( phy );
+                    for( int i = 0; i < off_coords.size(); ++i ) {
+                        if ( ( Float.compare( off_coords.get( i )[ 0 ], on_coords.get( i )[ 0 ] ) != 0 )
+                                || ( Float.compare( off_coords.get( i )[ 1 ], on_coords.get( i )[ 1 ] ) != 0 ) ) {
+                            fail( ok, "node " + i + " (preorder) is laid out differently when aggregated" );
+                            break;
+                        }
+                    }
+                    final int on_ink = countInk( on_img );
+                    if ( on_ink < ( countInk( off_img ) / 4 ) ) {
+                        fail( ok, "the aggregated tree should still be drawn (ink " + on_ink + ")" );
+                    }
+                    // exports always draw every branch
+                    o.setAggregateSubPixelClades( true );
+                    final BufferedImage export_on = AptxUtil.renderPhylogenyToImage( w, h, tp, o, false, 1, false );
+                    o.setAggregateSubPixelClades( false );
+                    final BufferedImage export_off = AptxUtil.renderPhylogenyToImage( w, h, tp, o, false, 1, false );
+                    if ( !isSameImage( export_on, export_off ) ) {
+                        fail( ok, "an export must not depend on Aggregate Sub-Pixel Clades" );
+                    }
+                    o.setAggregateSubPixelClades( false ); // restore the default
+                }
+                catch ( final Throwable t ) {
+                    fail( ok, "unexpected: " + t );
+                }
+                finally {
+                    ( (JFrame) frame ).dispose();
+                }
+            } );
+            return ok[ 0 ];
+        }
+        catch ( final Throwable e ) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static List<float[]> coords( final Phylogeny phy ) {
+        final List<float[]> coords = new ArrayList<>();
+        for( final PhylogenyNodeIterator it = phy.iteratorPreorder(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            coords.add( new float[] { n.getXcoord(), n.getYcoord() } );
+        }
+        return coords;
+    }
+
+    private static int countInk( final BufferedImage img ) {
+        final int background = img.getRGB( img.getWidth() - 1, img.getHeight() - 1 );
+        int ink = 0;
+        for( int y = 0; y < img.getHeight(); ++y ) {
+            for( int x = 0; x < img.getWidth(); ++x ) {
+                if ( img.getRGB( x, y ) != background ) {
+                    ++ink;
+                }
+            }
+        }
+        return ink;
+    }
+
+    private static Phylogeny createBalancedPhylogeny( final int levels, final Random r ) {
+        List<PhylogenyNode> nodes = new ArrayList<>();
+        for( int i = 0; i < ( 1 << levels ); ++i ) {
+            final PhylogenyNode n = new PhylogenyNode( "t" + i );
+            n.setDistanceToParent( 0.1 + r.nextDouble() );
+            nodes.add( n );
+        }
+        while ( nodes.size() > 1 ) {
+            final List<PhylogenyNode> parents = new ArrayList<>();
+            for( int i = 0; i < nodes.size(); i += 2 ) {
+                final PhylogenyNode p = new PhylogenyNode();
+                p.addAsChild( nodes.get( i ) );
+                p.addAsChild( nodes.get( i + 1 ) );
+                p.setDistanceToParent( 0.1 + r.nextDouble() );
+                parents.add( p );
+            }
+            nodes = parents;
+        }
+        final Phylogeny phy = new Phylogeny();
+        phy.setRoot( nodes.get( 0 ) );
+        phy.setRooted( true );
+        return phy;
+    }
+
+    private static boolean isSameImage( final BufferedImage a, final BufferedImage b ) {
+        if ( ( a.getWidth() != b.getWidth() ) || ( a.getHeight() != b.getHeight() ) ) {
+            return false;
+        }
+        for( int y = 0; y < a.getHeight(); ++y ) {
+            for( int x = 0; x < a.getWidth(); ++x ) {
+                if ( a.getRGB( x, y ) != b.getRGB( x, y ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** A screen paint (not an export) of the tree panel into an image. */
+    private static BufferedImage paintOnScreen( final TreePanel tp, final int w, final int h ) {
+        final BufferedImage img = new BufferedImage( w, h, BufferedImage.TYPE_INT_RGB );
+        final Graphics2D g = img.createGraphics();
+        try {
+            tp.paintPhylogeny( g, false, false, 0, 0, 0, 0 );
+        }
+        finally {
+            g.dispose();
+        }
+        return img;
+    }
+
+    private static void fail( final boolean[] ok, final String msg ) {
+        ok[ 0 ] = false;
+        System.out.println( "  [LevelOfDetailRenderTest] " + msg );
+    }
+
+    private LevelOfDetailRenderTest() {
+        // static tests only
+    }
+}
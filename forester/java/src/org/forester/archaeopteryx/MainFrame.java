@@ -188,6 +188,8 @@ public abstract class MainFrame extends JFrame implements ActionListener {
     static final String DISPLAY_ZEBRA_STRIPES_TIP = "Shade every other tip row with a faint band, so a label is easy to track across a wide tree to its annotation columns.";
     static final String DISPLAY_BREAK_LONG_BRANCHES_LABEL = "Break Long Branches";
     static final String DISPLAY_BREAK_LONG_BRANCHES_TIP = "On a phylogram, draw an outlier-long branch (e.g. a distant outgroup) shortened with a break mark and give the rest of the tree the freed width. The true branch length is unchanged (still shown as its label).";
+    static final String DISPLAY_AGGREGATE_SUB_PIXEL_CLADES_LABEL = "Aggregate Sub-Pixel Clades";
+    static final String DISPLAY_AGGREGATE_SUB_PIXEL_CLADES_TIP = "On screen, draw a clade that is less than a pixel high as a single line to its deepest node instead of branch by branch, which makes painting large trees faster (node data is still drawn per node; the tree is still laid out and painted on the event thread). Off by default; exports always draw every branch.";
     static final String DISPLAY_INTERNAL_TAXONOMY_KEY_LABEL = "Internal Taxonomy Key";
     static final String DISPLAY_INTERNAL_TAXONOMY_KEY_TIP = "Show a draggable key of the distinct internal-node taxa (from inference / curation / clade annotation), grouped by rank with counts.";
     static final String DISPLAY_REVERSE_TIP_ORDER_LABEL = "Reverse Tip Order";
@@ -301,6 +303,7 @@ public abstract class MainFrame extends JFrame implements ActionListener {
     JCheckBoxMenuItem _show_fossil_range_bars_cbmi;
     JCheckBoxMenuItem _show_zebra_stripes_cbmi;
     JCheckBoxMenuItem _break_long_branches_cbmi;
+    JCheckBoxMenuItem _aggregate_sub_pixel_clades_cbmi;
     JCheckBoxMenuItem _show_internal_taxonomy_key_cbmi;
     JCheckBoxMenuItem _tip_labels_below_columns_cbmi;
     JCheckBoxMenuItem _reverse_tip_order_cbmi;
@@ -579,6 +582,8 @@ public abstract class MainFrame extends JFrame implements ActionListener {
             updateOptions(getOptions());
         } else if (o == _pulse_found_nodes_cbmi) {
             updateOptions(getOptions());
+        } else if (o == _aggregate_sub_pixel_clades_cbmi) {
+            updateOptions(getOptions());
         } else if (o == _show_confidence_stddev_cbmi) {
             updateOptions(getOptions());
         } else if (o == _show_mad_confidence_cbmi) {
@@ -853,7 +858,7 @@ public abstract class MainFrame extends JFrame implements ActionListener {
                 + " external node(s), from a total of " + ext + " external nodes," + "\nresulting in tree with " + res
                 + " nodes?", function + " external nodes", JOptionPane.OK_CANCEL_OPTION);
         if (result == JOptionPane.OK_OPTION) {
-            getCurrentTreePanel().pushUndoCheckpoint(delete ? "Delete Nodes" : "Retain Nodes");
+            getCurrentTreePanel().pushUndoCheckpoint(delete ? "Delete Nodes" : "Retain Nodes", TreeHistory.Scope.TOPOLOGY);
             if (!delete) {
                 final List<PhylogenyNode> to_delete = new ArrayList<>();
                 for (final PhylogenyNodeIterator it = phy.iteratorExternalForward(); it.hasNext(); ) {
@@ -2470,6 +2475,8 @@ public abstract class MainFrame extends JFrame implements ActionListener {
         options.setShowFossilRangeBars((_show_fossil_range_bars_cbmi != null) && _show_fossil_range_bars_cbmi.isSelected());
         options.setShowZebraStripes((_show_zebra_stripes_cbmi != null) && _show_zebra_stripes_cbmi.isSelected());
         options.setBreakLongBranches((_break_long_branches_cbmi != null) && _break_long_branches_cbmi.isSelected());
+        options.setAggregateSubPixelClades((_aggregate_sub_pixel_clades_cbmi != null)
+                && _aggregate_sub_pixel_clades_cbmi.isSelected());
         options.setShowInternalTaxonomyKey(
                 (_show_internal_taxonomy_key_cbmi != null) && _show_internal_taxonomy_key_cbmi.isSelected());
         options.setTipLabelsBelowColumns((_tip_labels_below_columns_cbmi != null)
@@ -2580,6 +2587,7 @@ public abstract class MainFrame extends JFrame implements ActionListener {
         setSelected(_show_fossil_range_bars_cbmi, options.isShowFossilRangeBars());
         setSelected(_show_zebra_stripes_cbmi, options.isShowZebraStripes());
         setSelected(_break_long_branches_cbmi, options.isBreakLongBranches());
+        setSelected(_aggregate_sub_pixel_clades_cbmi, options.isAggregateSubPixelClades());
         setSelected(_show_internal_taxonomy_key_cbmi, options.isShowInternalTaxonomyKey());
         setSelected(_tip_labels_below_columns_cbmi, options.isTipLabelsBelowColumns());
         setSelected(_reverse_tip_order_cbmi, options.isReverseTipOrder());
@@ -3512,12 +3520,11 @@ public abstract class MainFrame extends JFrame implements ActionListener {
             final int key_col, final NodeDataImporter.MatchBy match_by, final NodeDataImporter.ColumnPlan plan,
             final String source_name) {
         final TreePanel tp = getCurrentTreePanel();
-        final Phylogeny before = (tp != null) ? phy.copy() : null;
-        final boolean was_edited = (tp != null) && tp.isEdited();
+        final TreeHistory.Snapshot before = (tp != null) ? tp.captureUndoCheckpoint("Import Annotations") : null;
         final int total_tips = phy.getNumberOfExternalNodes();
         final NodeDataImporter.ImportResult result = NodeDataImporter.apply(phy, table, key_col, match_by, plan);
         if ((result.getTipsAnnotated() > 0) && (tp != null)) {
-            tp.pushUndoSnapshot(before, was_edited, "Import Annotations"); // now we know it changed the tree
+            tp.commitUndoCheckpoint(before); // now we know it changed the tree
             final String prov = importProvenance(result.getPropertyColumns(), result.getTipsAnnotated(), total_tips,
                     source_name, match_by);
             final String existing = phy.getDescription();
@@ -3633,8 +3640,7 @@ public abstract class MainFrame extends JFrame implements ActionListener {
             }
         }
         final TreePanel tp = getCurrentTreePanel();
-        final Phylogeny before = (tp != null) ? phy.copy() : null;
-        final boolean was_edited = (tp != null) && tp.isEdited();
+        final TreeHistory.Snapshot before = (tp != null) ? tp.captureUndoCheckpoint("Import GTDB Taxonomy") : null;
         final int total_tips = phy.getNumberOfExternalNodes();
         final int annotated;
         try {
@@ -3644,7 +3650,7 @@ public abstract class MainFrame extends JFrame implements ActionListener {
             return -1;
         }
         if ((annotated > 0) && (tp != null)) {
-            tp.pushUndoSnapshot(before, was_edited, "Import GTDB Taxonomy");
+            tp.commitUndoCheckpoint(before);
             final String prov = "Imported GTDB taxonomy from table \"" + source_name + "\" onto " + annotated + " of "
                     + total_tips + (total_tips == 1 ? " tip" : " tips") + " (gtdb:domain … gtdb:species).";
             final String existing = phy.getDescription();
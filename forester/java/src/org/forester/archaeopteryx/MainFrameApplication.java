@@ -504,7 +504,7 @@ public final class MainFrameApplication extends MainFrame {
         if (confirm != JOptionPane.OK_OPTION) {
             return;
         }
-        getCurrentTreePanel().pushUndoCheckpoint("Collapse Branches");
+        getCurrentTreePanel().pushUndoCheckpoint("Collapse Branches", TreeHistory.Scope.TOPOLOGY);
         for (final PhylogenyNode n : candidates) {
             PhylogenyMethods.removeNode(n, phy);
         }
@@ -616,7 +616,7 @@ public final class MainFrameApplication extends MainFrame {
         if (confirm != JOptionPane.OK_OPTION) {
             return;
         }
-        getCurrentTreePanel().pushUndoCheckpoint("Collapse Branches");
+        getCurrentTreePanel().pushUndoCheckpoint("Collapse Branches", TreeHistory.Scope.TOPOLOGY);
         for (final PhylogenyNode n : candidates) {
             PhylogenyMethods.removeNode(n, phy);
         }
@@ -1659,6 +1659,8 @@ public final class MainFrameApplication extends MainFrame {
         _show_zebra_stripes_cbmi.setToolTipText(MainFrame.DISPLAY_ZEBRA_STRIPES_TIP);
         _break_long_branches_cbmi = new JCheckBoxMenuItem(MainFrame.DISPLAY_BREAK_LONG_BRANCHES_LABEL);
         _break_long_branches_cbmi.setToolTipText(MainFrame.DISPLAY_BREAK_LONG_BRANCHES_TIP);
+        _aggregate_sub_pixel_clades_cbmi = new JCheckBoxMenuItem(MainFrame.DISPLAY_AGGREGATE_SUB_PIXEL_CLADES_LABEL);
+        _aggregate_sub_pixel_clades_cbmi.setToolTipText(MainFrame.DISPLAY_AGGREGATE_SUB_PIXEL_CLADES_TIP);
         _show_internal_taxonomy_key_cbmi = new JCheckBoxMenuItem(MainFrame.DISPLAY_INTERNAL_TAXONOMY_KEY_LABEL);
         _show_internal_taxonomy_key_cbmi.setToolTipText(MainFrame.DISPLAY_INTERNAL_TAXONOMY_KEY_TIP);
         _tip_labels_below_columns_cbmi = new JCheckBoxMenuItem(MainFrame.DISPLAY_TIP_LABELS_BELOW_COLUMNS_LABEL);
@@ -1747,6 +1749,7 @@ public final class MainFrameApplication extends MainFrame {
         customizeCheckBoxMenuItem(_show_fossil_range_bars_cbmi, getOptions().isShowFossilRangeBars());
         customizeCheckBoxMenuItem(_show_zebra_stripes_cbmi, getOptions().isShowZebraStripes());
         customizeCheckBoxMenuItem(_break_long_branches_cbmi, getOptions().isBreakLongBranches());
+        customizeCheckBoxMenuItem(_aggregate_sub_pixel_clades_cbmi, getOptions().isAggregateSubPixelClades());
         customizeCheckBoxMenuItem(_show_internal_taxonomy_key_cbmi, getOptions().isShowInternalTaxonomyKey());
         customizeCheckBoxMenuItem(_tip_labels_below_columns_cbmi, getOptions().isTipLabelsBelowColumns());
         customizeCheckBoxMenuItem(_reverse_tip_order_cbmi, getOptions().isReverseTipOrder());
@@ -0,0 +1,314 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.archaeopteryx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.forester.phylogeny.PhylogenyNode;
+
+/**
+ * Spatial index over one bounding box per node of a laid-out phylogeny (the
+ * node mark, or the branch geometry of the node), for hit-testing and for
+ * culling the per-node paint passes to the visible region.
+ * <p>
+ * This is a packed R-tree: the boxes are sorted by the Hilbert value of their
+ * centers and grouped, NODE_CAPACITY at a time, into the leaves, which are
+ * grouped the same way into the levels above. It is built once per layout
+ * (in O(n log n)); a query visits only the groups whose bounds intersect the
+ * query rectangle, and returns the nodes found in preorder or in postorder
+ * (so callers which pick the first hit keep the precedence of a traversal).
+ * Queries are not thread-safe (TreePanel uses the index on the event dispatch
+ * thread only).
+ */
+final class NodeSpatialIndex {
+
+    private final static int      NODE_CAPACITY = 16;
+    private final static int      HILBERT_ORDER = 16;
+    private final float[][]       _bounds;
+    private final float[]         _boxes;
+    private final BitSet          _found;
+    private final int[]           _items;
+    private final PhylogenyNode[] _nodes_in_postorder;
+    private final PhylogenyNode[] _nodes_in_preorder;
+    private final int[]           _postorder_positions;
+
+    /**
+     * @param nodes_in_preorder
+     *            all nodes of a phylogeny, in preorder
+     * @param boxes
+     *            the box of each node (min x, min y, max x, max y, in the order
+     *            of nodes_in_preorder)
+     */
+    NodeSpatialIndex( final PhylogenyNode[] nodes_in_preorder, final float[] boxes ) {
+        final int n = nodes_in_preorder.length;
+        if ( boxes.length != ( 4 * n ) ) {
+            throw new IllegalArgumentException( "expected " + ( 4 * n ) + " box coordinates, got " + boxes.length );
+        }
+        _nodes_in_preorder = nodes_in_preorder;
+        _boxes = boxes;
+        _found = new BitSet( n );
+        _postorder_positions = calcPostorderPositions( nodes_in_preorder );
+        _nodes_in_postorder = new PhylogenyNode[ n ];
+        for( int i = 0; i < n; ++i ) {
+            _nodes_in_postorder[ _postorder_positions[ i ] ] = nodes_in_preorder[ i ];
+        }
+        _items = sortByHilbertValue( boxes, n );
+        final List<float[]> levels = new ArrayList<float[]>();
+        float[] level = new float[ 4 * groups( n ) ];
+        for( int g = 0; g < groups( n ); ++g ) {
+            initBounds( level, g );
+            for( int i = g * NODE_CAPACITY; i < Math.min( n, ( g + 1 ) * NODE_CAPACITY ); ++i ) {
+                include( level, g, boxes, _items[ i ] );
+            }
+        }
+        levels.add( level );
+        while ( ( level.length / 4 ) > 1 ) {
+            final int m = level.length / 4;
+            final float[] upper = new float[ 4 * groups( m ) ];
+            for( int g = 0; g < groups( m ); ++g ) {
+                initBounds( upper, g );
+                for( int i = g * NODE_CAPACITY; i < Math.min( m, ( g + 1 ) * NODE_CAPACITY ); ++i ) {
+                    include( upper, g, level, i );
+                }
+            }
+            levels.add( upper );
+            level = upper;
+        }
+        _bounds = levels.toArray( new float[ levels.size() ][] );
+    }
+
+    /**
+     * Returns the nodes whose boxes intersect the given rectangle, in
+     * postorder.
+     */
+    final List<PhylogenyNode> findInPostorder( final double min_x,
+                                               final double min_y,
+                                               final double max_x,
+                                               final double max_y ) {
+        return find( min_x, min_y, max_x, max_y, true );
+    }
+
+    /**
+     * Returns the nodes whose boxes intersect the given rectangle, in
+     * preorder.
+     */
+    final List<PhylogenyNode> findInPreorder( final double min_x,
+                                              final double min_y,
+                                              final double max_x,
+                                              final double max_y ) {
+        return find( min_x, min_y, max_x, max_y, false );
+    }
+
+    final PhylogenyNode getRoot() {
+        return _nodes_in_preorder.length > 0 ? _nodes_in_preorder[ 0 ] : null;
+    }
+
+    final int getNumberOfNodes() {
+        return _nodes_in_preorder.length;
+    }
+
+    /**
+     * Returns true if the node at position i (in preorder) is node and has the
+     * given box (at offset 0 of box).
+     */
+    final boolean isSame( final int i, final PhylogenyNode node, final float[] box ) {
+        return ( i < _nodes_in_preorder.length ) && ( _nodes_in_preorder[ i ] == node )
+                && ( Float.compare( _boxes[ 4 * i ], box[ 0 ] ) == 0 )
+                && ( Float.compare( _boxes[ ( 4 * i ) + 1 ], box[ 1 ] ) == 0 )
+                && ( Float.compare( _boxes[ ( 4 * i ) + 2 ], box[ 2 ] ) == 0 )
+                && ( Float.compare( _boxes[ ( 4 * i ) + 3 ], box[ 3 ] ) == 0 );
+    }
+
+    private final List<PhylogenyNode> find( final double min_x,
+                                            final double min_y,
+                                            final double max_x,
+                                            final double max_y,
+                                            final boolean postorder ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        if ( _nodes_in_preorder.length < 1 ) {
+            return nodes;
+        }
+        _found.clear();
+        // Entries to visit, as level and group: the top level is a single group.
+        final int[] stack_levels = new int[ ( _bounds.length * NODE_CAPACITY ) + 1 ];
+        final int[] stack_groups = new int[ stack_levels.length ];
+        int top = 0;
+        stack_levels[ 0 ] = _bounds.length - 1;
+        stack_groups[ 0 ] = 0;
+        while ( top >= 0 ) {
+            final int level = stack_levels[ top ];
+            final int g = stack_groups[ top ];
+            --top;
+            if ( !intersects( _bounds[ level ], g, min_x, min_y, max_x, max_y ) ) {
+                continue;
+            }
+            if ( level > 0 ) {
+                final int m = _bounds[ level - 1 ].length / 4;
+                for( int i = g * NODE_CAPACITY; i < Math.min( m, ( g + 1 ) * NODE_CAPACITY ); ++i ) {
+                    ++top;
+                    stack_levels[ top ] = level - 1;
+                    stack_groups[ top ] = i;
+                }
+            }
+            else {
+                for( int i = g * NODE_CAPACITY; i < Math.min( _items.length, ( g + 1 ) * NODE_CAPACITY ); ++i ) {
+                    final int item = _items[ i ];
+                    if ( intersects( _boxes, item, min_x, min_y, max_x, max_y ) ) {
+                        _found.set( postorder ? _postorder_positions[ item ] : item );
+                    }
+                }
+            }
+        }
+        final PhylogenyNode[] order = postorder ? _nodes_in_postorder : _nodes_in_preorder;
+        for( int i = _found.nextSetBit( 0 ); i >= 0; i = _found.nextSetBit( i + 1 ) ) {
+            nodes.add( order[ i ] );
+        }
+        return nodes;
+    }
+
+    private final static int[] calcPostorderPositions( final PhylogenyNode[] nodes_in_preorder ) {
+        final int n = nodes_in_preorder.length;
+        final int[] positions = new int[ n ];
+        final int[] stack_nodes = new int[ n ];
+        final int[] stack_remaining = new int[ n ];
+        int top = -1;
+        int post = 0;
+        for( int i = 0; i < n; ++i ) {
+            final int children = nodes_in_preorder[ i ].getNumberOfDescendants();
+            if ( children > 0 ) {
+                ++top;
+                stack_nodes[ top ] = i;
+                stack_remaining[ top ] = children;
+            }
+            else {
+                positions[ i ] = post++;
+                // A node is finished after its last child.
+                while ( ( top >= 0 ) && ( --stack_remaining[ top ] == 0 ) ) {
+                    positions[ stack_nodes[ top ] ] = post++;
+                    --top;
+                }
+                if ( ( top < 0 ) && ( i < ( n - 1 ) ) ) {
+                    throw new IllegalArgumentException( "nodes are not the preorder of one phylogeny" );
+                }
+            }
+        }
+        if ( top >= 0 ) {
+            throw new IllegalArgumentException( "nodes are not the preorder of one phylogeny" );
+        }
+        return positions;
+    }
+
+    private final static int groups( final int n ) {
+        return ( n + NODE_CAPACITY - 1 ) / NODE_CAPACITY;
+    }
+
+    /**
+     * Returns the Hilbert value of the cell (x, y) of a grid of 2^HILBERT_ORDER
+     * by 2^HILBERT_ORDER cells.
+     */
+    private final static long hilbertValue( int x, int y ) {
+        long d = 0;
+        for( int s = 1 << ( HILBERT_ORDER - 1 ); s > 0; s >>= 1 ) {
+            final int rx = ( x & s ) > 0 ? 1 : 0;
+            final int ry = ( y & s ) > 0 ? 1 : 0;
+            d += ( ( long ) s ) * s * ( ( 3 * rx ) ^ ry );
+            if ( ry == 0 ) {
+                if ( rx == 1 ) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                final int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    private final static void include( final float[] bounds, final int g, final float[] boxes, final int i ) {
+        bounds[ 4 * g ] = Math.min( bounds[ 4 * g ], boxes[ 4 * i ] );
+        bounds[ ( 4 * g ) + 1 ] = Math.min( bounds[ ( 4 * g ) + 1 ], boxes[ ( 4 * i ) + 1 ] );
+        bounds[ ( 4 * g ) + 2 ] = Math.max( bounds[ ( 4 * g ) + 2 ], boxes[ ( 4 * i ) + 2 ] );
+        bounds[ ( 4 * g ) + 3 ] = Math.max( bounds[ ( 4 * g ) + 3 ], boxes[ ( 4 * i ) + 3 ] );
+    }
+
+    private final static void initBounds( final float[] bounds, final int g ) {
+        bounds[ 4 * g ] = Float.POSITIVE_INFINITY;
+        bounds[ ( 4 * g ) + 1 ] = Float.POSITIVE_INFINITY;
+        bounds[ ( 4 * g ) + 2 ] = Float.NEGATIVE_INFINITY;
+        bounds[ ( 4 * g ) + 3 ] = Float.NEGATIVE_INFINITY;
+    }
+
+    private final static boolean intersects( final float[] boxes,
+                                             final int i,
+                                             final double min_x,
+                                             final double min_y,
+                                             final double max_x,
+                                             final double max_y ) {
+        return ( boxes[ 4 * i ] <= max_x ) && ( boxes[ ( 4 * i ) + 2 ] >= min_x ) && ( boxes[ ( 4 * i ) + 1 ] <= max_y )
+                && ( boxes[ ( 4 * i ) + 3 ] >= min_y );
+    }
+
+    private final static int[] sortByHilbertValue( final float[] boxes, final int n ) {
+        double min_x = Double.POSITIVE_INFINITY;
+        double min_y = Double.POSITIVE_INFINITY;
+        double max_x = Double.NEGATIVE_INFINITY;
+        double max_y = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < n; ++i ) {
+            final double x = ( boxes[ 4 * i ] + ( double ) boxes[ ( 4 * i ) + 2 ] ) / 2;
+            final double y = ( boxes[ ( 4 * i ) + 1 ] + ( double ) boxes[ ( 4 * i ) + 3 ] ) / 2;
+            if ( x < min_x ) {
+                min_x = x;
+            }
+            if ( x > max_x ) {
+                max_x = x;
+            }
+            if ( y < min_y ) {
+                min_y = y;
+            }
+            if ( y > max_y ) {
+                max_y = y;
+            }
+        }
+        final int cells = ( 1 << HILBERT_ORDER ) - 1;
+        final double sx = max_x > min_x ? cells / ( max_x - min_x ) : 0;
+        final double sy = max_y > min_y ? cells / ( max_y - min_y ) : 0;
+        // Hilbert value in the upper 32 bits, position in the lower 31.
+        final long[] keys = new long[ n ];
+        for( int i = 0; i < n; ++i ) {
+            final double x = ( boxes[ 4 * i ] + ( double ) boxes[ ( 4 * i ) + 2 ] ) / 2;
+            final double y = ( boxes[ ( 4 * i ) + 1 ] + ( double ) boxes[ ( 4 * i ) + 3 ] ) / 2;
+            // NaN (a node without coordinates) ends up in cell 0.
+            final int cx = ( int ) Math.max( 0, Math.min( cells, ( x - min_x ) * sx ) );
+            final int cy = ( int ) Math.max( 0, Math.min( cells, ( y - min_y ) * sy ) );
+            keys[ i ] = ( hilbertValue( cx, cy ) << 31 ) | i;
+        }
+        Arrays.sort( keys );
+        final int[] items = new int[ n ];
+        for( int i = 0; i < n; ++i ) {
+            items[ i ] = ( int ) ( keys[ i ] & Integer.MAX_VALUE );
+        }
+        return items;
+    }
+}
@@ -0,0 +1,258 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.archaeopteryx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * Tests for {@link NodeSpatialIndex}: the nodes found for a rectangle must be
+ * those whose boxes intersect it, in preorder or postorder, as found by a
+ * traversal. Lives in the {@code org.forester.archaeopteryx} package because
+ * the index is package-private.
+ * <p>
+ * main() compares the time of 1000 point queries (as made by
+ * TreePanel.findNode) with that of traversals, for a phylogeny with 100000 (or
+ * a given number of) external nodes laid out like a rectangular tree.
+ */
+public final class NodeSpatialIndexTest {
+
+    public static boolean test() {
+        try {
+            final Random r = new Random( 1 );
+            final Phylogeny p = createRandomPhylogeny( 1000, r );
+            final PhylogenyNode[] preorder = getNodes( p, true );
+            final PhylogenyNode[] postorder = getNodes( p, false );
+            // Random boxes (of which many overlap), and a rectangular layout.
+            final float[][] layouts = { new float[ 4 * preorder.length ], calcRectangularBoxes( p, preorder ) };
+            for( int i = 0; i < preorder.length; ++i ) {
+                final float x = r.nextFloat() * 1000;
+                final float y = r.nextFloat() * 1000;
+                layouts[ 0 ][ 4 * i ] = x;
+                layouts[ 0 ][ ( 4 * i ) + 1 ] = y;
+                layouts[ 0 ][ ( 4 * i ) + 2 ] = x + ( r.nextFloat() * 50 );
+                layouts[ 0 ][ ( 4 * i ) + 3 ] = y + ( r.nextFloat() * 50 );
+            }
+            for( final float[] boxes : layouts ) {
+                final NodeSpatialIndex index = new NodeSpatialIndex( preorder, boxes );
+                if ( ( index.getRoot() != p.getRoot() ) || ( index.getNumberOfNodes() != preorder.length ) ) {
+                    return fail( "unexpected root or number of nodes" );
+                }
+                for( int q = 0; q < 500; ++q ) {
+                    final double min_x = ( r.nextDouble() * 1200 ) - 100;
+                    final double min_y = ( r.nextDouble() * 1200 ) - 100;
+                    // Points, as well as small and large rectangles.
+                    final double w = ( q % 3 ) == 0 ? 0 : r.nextDouble() * ( ( q % 3 ) == 1 ? 20 : 600 );
+                    final double h = ( q % 3 ) == 0 ? 0 : r.nextDouble() * ( ( q % 3 ) == 1 ? 20 : 600 );
+                    if ( !isSame( index.findInPreorder( min_x, min_y, min_x + w, min_y + h ),
+                                  find( preorder, boxes, preorder, min_x, min_y, min_x + w, min_y + h ) ) ) {
+                        return fail( "different nodes (in preorder) for query " + q );
+                    }
+                    if ( !isSame( index.findInPostorder( min_x, min_y, min_x + w, min_y + h ),
+                                  find( preorder, boxes, postorder, min_x, min_y, min_x + w, min_y + h ) ) ) {
+                        return fail( "different nodes (in postorder) for query " + q );
+                    }
+                }
+                if ( index.findInPreorder( Double.NEGATIVE_INFINITY,
+                                           Double.NEGATIVE_INFINITY,
+                                           Double.POSITIVE_INFINITY,
+                                           Double.POSITIVE_INFINITY ).size() != preorder.length ) {
+                    return fail( "not all nodes found for an unbounded query" );
+                }
+                final float[] box = new float[ 4 ];
+                System.arraycopy( boxes, 4 * 7, box, 0, 4 );
+                if ( !index.isSame( 7, preorder[ 7 ], box ) || index.isSame( 7, preorder[ 8 ], box )
+                        || index.isSame( preorder.length, preorder[ 7 ], box ) ) {
+                    return fail( "isSame" );
+                }
+                box[ 2 ] += 0.5f;
+                if ( index.isSame( 7, preorder[ 7 ], box ) ) {
+                    return fail( "isSame for a changed box" );
+                }
+            }
+            final PhylogenyNode single = new PhylogenyNode( "single" );
+            final NodeSpatialIndex s = new NodeSpatialIndex( new PhylogenyNode[] { single },
+                                                             new float[] { 1, 1, 3, 3 } );
+            if ( ( s.findInPostorder( 2, 2, 2, 2 ).size() != 1 ) || !s.findInPreorder( 4, 4, 5, 5 ).isEmpty() ) {
+                return fail( "single node" );
+            }
+            if ( !new NodeSpatialIndex( new PhylogenyNode[ 0 ], new float[ 0 ] ).findInPostorder( 0, 0, 1, 1 )
+                    .isEmpty() ) {
+                return fail( "no nodes" );
+            }
+            try {
+                new NodeSpatialIndex( postorder, layouts[ 0 ] );
+                return fail( "nodes not in preorder must not be accepted" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Boxes around the nodes of p laid out like a rectangular tree: x by
+     * depth, y by external node (and internal nodes between their children).
+     */
+    private static float[] calcRectangularBoxes( final Phylogeny p, final PhylogenyNode[] preorder ) {
+        int y = 0;
+        for( final PhylogenyNodeIterator it = p.iteratorPostorder(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            n.setXcoord( 10 * n.calculateDepth() );
+            if ( n.isExternal() ) {
+                n.setYcoord( 10 * y++ );
+            }
+            else {
+                n.setYcoord( ( n.getFirstChildNode().getYcoord() + n.getLastChildNode().getYcoord() ) / 2 );
+            }
+        }
+        final float[] boxes = new float[ 4 * preorder.length ];
+        for( int i = 0; i < preorder.length; ++i ) {
+            boxes[ 4 * i ] = preorder[ i ].getXcoord() - 5;
+            boxes[ ( 4 * i ) + 1 ] = preorder[ i ].getYcoord() - 5;
+            boxes[ ( 4 * i ) + 2 ] = preorder[ i ].getXcoord() + 5;
+            boxes[ ( 4 * i ) + 3 ] = preorder[ i ].getYcoord() + 5;
+        }
+        return boxes;
+    }
+
+    private static Phylogeny createRandomPhylogeny( final int external_nodes, final Random r ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( int i = 0; i < external_nodes; ++i ) {
+            nodes.add( new PhylogenyNode( "n" + i ) );
+        }
+        while ( nodes.size() > 1 ) {
+            final PhylogenyNode parent = new PhylogenyNode();
+            // Some nodes with more than two children.
+            final int children = Math.min( nodes.size(), r.nextInt( 10 ) == 0 ? 3 : 2 );
+            for( int i = 0; i < children; ++i ) {
+                parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            }
+            nodes.add( parent );
+        }
+        final Phylogeny p = new Phylogeny();
+        p.setRoot( nodes.get( 0 ) );
+        p.setRooted( true );
+        return p;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "NodeSpatialIndex test failed: " + msg );
+        return false;
+    }
+
+    /**
+     * The nodes (in the order of order) whose boxes (in the order of
+     * preorder) intersect the given rectangle, found by a traversal.
+     */
+    private static List<PhylogenyNode> find( final PhylogenyNode[] preorder,
+                                             final float[] boxes,
+                                             final PhylogenyNode[] order,
+                                             final double min_x,
+                                             final double min_y,
+                                             final double max_x,
+                                             final double max_y ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNode n : order ) {
+            int i = 0;
+            while ( preorder[ i ] != n ) {
+                ++i;
+            }
+            if ( ( boxes[ 4 * i ] <= max_x ) && ( boxes[ ( 4 * i ) + 2 ] >= min_x ) && ( boxes[ ( 4 * i ) + 1 ] <= max_y )
+                    && ( boxes[ ( 4 * i ) + 3 ] >= min_y ) ) {
+                nodes.add( n );
+            }
+        }
+        return nodes;
+    }
+
+    private static PhylogenyNode[] getNodes( final Phylogeny p, final boolean preorder ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNodeIterator it = preorder ? p.iteratorPreorder() : p.iteratorPostorder(); it.hasNext(); ) {
+            nodes.add( it.next() );
+        }
+        return nodes.toArray( new PhylogenyNode[ nodes.size() ] );
+    }
+
+    private static boolean isSame( final List<PhylogenyNode> a, final List<PhylogenyNode> b ) {
+        if ( a.size() != b.size() ) {
+            return false;
+        }
+        for( int i = 0; i < a.size(); ++i ) {
+            if ( a.get( i ) != b.get( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main( final String[] args ) {
+        final int external_nodes = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+        final Phylogeny p = createRandomPhylogeny( external_nodes, new Random( 42 ) );
+        final PhylogenyNode[] preorder = getNodes( p, true );
+        final float[] boxes = calcRectangularBoxes( p, preorder );
+        final int queries = 1000;
+        final Random r = new Random( 7 );
+        final double[] xs = new double[ queries ];
+        final double[] ys = new double[ queries ];
+        for( int q = 0; q < queries; ++q ) {
+            final PhylogenyNode n = preorder[ r.nextInt( preorder.length ) ];
+            xs[ q ] = n.getXcoord() + 2;
+            ys[ q ] = n.getYcoord() - 2;
+        }
+        System.out.println( "Nodes   : " + preorder.length );
+        System.out.println( "Queries : " + queries + " points" );
+        for( int round = 0; round < 3; ++round ) {
+            long time = System.currentTimeMillis();
+            final NodeSpatialIndex index = new NodeSpatialIndex( preorder, boxes );
+            final long build = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            long found = 0;
+            for( int q = 0; q < queries; ++q ) {
+                found += index.findInPostorder( xs[ q ], ys[ q ], xs[ q ], ys[ q ] ).size();
+            }
+            final long indexed = System.currentTimeMillis() - time;
+            time = System.currentTimeMillis();
+            long found_by_traversal = 0;
+            for( int q = 0; q < queries; ++q ) {
+                for( final PhylogenyNodeIterator it = p.iteratorPostorder(); it.hasNext(); ) {
+                    final PhylogenyNode n = it.next();
+                    if ( ( Math.abs( n.getXcoord() - xs[ q ] ) <= 5 ) && ( Math.abs( n.getYcoord() - ys[ q ] ) <= 5 ) ) {
+                        ++found_by_traversal;
+                    }
+                }
+            }
+            System.out.println( "index built in " + build + "ms, queried in " + indexed + "ms (" + found
+                    + " found); traversals: " + ( System.currentTimeMillis() - time ) + "ms (" + found_by_traversal
+                    + " found)" );
+        }
+    }
+}
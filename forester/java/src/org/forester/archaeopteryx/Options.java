@@ -265,6 +265,7 @@ final public class Options {
     private boolean _show_fossil_range_bars;
     private boolean _show_zebra_stripes;
     private boolean _break_long_branches;
+    private boolean _aggregate_sub_pixel_clades;
     private boolean _show_internal_taxonomy_key;
     private boolean _reverse_tip_order;
     private boolean _bold_found_labels;
@@ -352,6 +353,7 @@ final public class Options {
         _show_fossil_range_bars = false;
         _show_zebra_stripes = false;
         _break_long_branches = false;
+        _aggregate_sub_pixel_clades = false; // opt-in: a clade under a pixel high is drawn as one line on screen
         _show_internal_taxonomy_key = false;
         _reverse_tip_order = false;
         _bold_found_labels = false;
@@ -735,6 +737,14 @@ final public class Options {
         _break_long_branches = break_long_branches;
     }
 
+    final boolean isAggregateSubPixelClades() {
+        return _aggregate_sub_pixel_clades;
+    }
+
+    final void setAggregateSubPixelClades(final boolean aggregate_sub_pixel_clades) {
+        _aggregate_sub_pixel_clades = aggregate_sub_pixel_clades;
+    }
+
     final boolean isShowInternalTaxonomyKey() {
         return _show_internal_taxonomy_key;
     }
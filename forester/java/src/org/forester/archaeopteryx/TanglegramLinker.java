@@ -296,18 +296,34 @@ final class TanglegramLinker {
      */
     static int countCrossings( final List<int[]> pairs ) {
         final int n = pairs.size();
+        final int[] left = new int[ n ];
+        final int[] right = new int[ n ];
+        for( int i = 0; i < n; i++ ) {
+            left[ i ] = pairs.get( i )[ 0 ];
+            right[ i ] = pairs.get( i )[ 1 ];
+        }
+        return (int) Math.min( countCrossings( left, right ), Integer.MAX_VALUE );
+    }
+
+    /**
+     * As {@link #countCrossings(List)}, for connector i given by {@code left[i]} and {@code right[i]} (non-negative
+     * tip indices) -- without a boxed pair per connector, for the untangler.
+     */
+    static long countCrossings( final int[] left, final int[] right ) {
+        final int n = left.length;
         if ( n < 2 ) {
             return 0;
         }
-        final int[][] sorted = pairs.toArray( new int[ 0 ][] );
-        Arrays.sort( sorted, ( a, b ) -> ( a[ 0 ] != b[ 0 ] ) ? Integer.compare( a[ 0 ], b[ 0 ] )
-                : Integer.compare( a[ 1 ], b[ 1 ] ) );
-        final int[] right = new int[ n ];
+        final long[] sorted = new long[ n ];
+        for( int i = 0; i < n; i++ ) {
+            sorted[ i ] = ( ( (long) left[ i ] ) << 32 ) | right[ i ]; // sorts by (left asc, right asc)
+        }
+        Arrays.sort( sorted );
+        final int[] r = new int[ n ];
         for( int i = 0; i < n; i++ ) {
-            right[ i ] = sorted[ i ][ 1 ];
+            r[ i ] = (int) sorted[ i ];
         }
-        final long inversions = countInversions( right, new int[ n ], 0, n - 1 );
-        return (int) Math.min( inversions, Integer.MAX_VALUE );
+        return countInversions( r, new int[ n ], 0, n - 1 );
     }
 
     /**
@@ -21,13 +21,17 @@
 package org.forester.archaeopteryx;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.IdentityHashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyNode;
@@ -37,20 +41,25 @@ import org.forester.phylogeny.PhylogenyNode;
  * order -- the same topology-preserving operation as a manual rotation), so the result is reachable by, and undoable
  * as, ordinary flips.
  *
- * <p>Heuristic: alternating <b>barycentre</b> passes (order each clade's children so the mean position of the tips
- * they link to in the OTHER tree ascends -- top = smallest -- iterated until the crossing count stops dropping), run
- * from the current orientation AND from several random-restart orientations, keeping whichever layout has the fewest
- * crossings. The random restarts escape the local minima a single barycentre pass gets stuck in (empirically it then
- * reaches the brute-force optimum on all small pairs). Optimal untangling is NP-hard, so this is a strong heuristic,
- * not a guaranteed minimum; it never leaves the tanglegram worse than it found it.
+ * <p>Heuristic: alternating <b>one-sided</b> passes. Whether two connectors cross on one side is decided by the
+ * orientation of the lowest common ancestor of their tips alone, so with the other tree held fixed the best
+ * orientation of every clade can be chosen independently and exactly: flip it iff more of the connector pairs it
+ * separates cross than not. Each pass computes these counts for all clades at once (small-to-large merging over a
+ * Fenwick tree of the other tree's tip positions, O(n log^2 n)), and the crossing count is updated from the flips'
+ * deltas instead of being recounted. Passes alternate between the trees until neither improves, from the current
+ * orientation AND from several random-restart orientations (run concurrently), keeping whichever layout has the
+ * fewest crossings. The random restarts escape the local minima the alternation gets stuck in. Optimal untangling is
+ * NP-hard, so this is a strong heuristic, not a guaranteed minimum; it never leaves the tanglegram worse than it found
+ * it.
  *
  * <p>Returns the NET set of flipped nodes (already applied to the trees), so the caller records one undoable action.
  */
 final class TanglegramUntangler {
 
-    private static final int  MAX_ITERATIONS = 8;
-    // barycentre alone sticks in local minima on tangled pairs (escaping needs coordinated multi-node flips), so
-    // restart from random flip states and keep the best layout. Fixed seed => deterministic / reproducible.
+    private static final int  MAX_ITERATIONS = 50;
+    // alternating passes stick in local minima on tangled pairs (escaping needs coordinated flips in both trees), so
+    // restart from random flip states and keep the best layout. Each restart has its own random stream split from the
+    // fixed seed, and ties go to the lowest restart => deterministic / reproducible, however many threads run them.
     private static final int  MAX_RESTARTS   = 40;
     private static final long RANDOM_SEED    = 42L;
 
@@ -67,196 +76,530 @@ final class TanglegramUntangler {
     }
 
     /** Reorders both trees (flips only) to reduce connector crossings; returns the net set of flipped nodes. Runs the
-     *  barycentre local optimiser from the current orientation AND from several random-restart orientations, keeping
-     *  whichever gives the fewest crossings. Never leaves the tanglegram worse than it found it (the best-kept layout
-     *  starts as the original). */
+     *  alternating one-sided optimiser from the current orientation AND from several random-restart orientations (on
+     *  as many threads as there are processors), keeping whichever gives the fewest crossings. Never leaves the
+     *  tanglegram worse than it found it (the first run starts from the original, and a pass never worsens). */
     static List<PhylogenyNode> untangle( final Phylogeny left, final Phylogeny right,
                                          final List<TanglegramLinker.Link> links ) {
-        final int initial = crossings( left, right, links );
-        if ( initial == 0 ) {
-            return new ArrayList<>();
-        }
-        final List<PhylogenyNode> internals = new ArrayList<>();
-        collectInternals( left, internals );
-        collectInternals( right, internals );
-        final Set<PhylogenyNode> flipped = newFlipSet();
-        Set<PhylogenyNode> best = newFlipSet(); // empty == the original layout, so the result can never be worse
-        int best_crossings = initial;
-        final Random rng = new Random( RANDOM_SEED );
-        for( int restart = 0; ( restart <= MAX_RESTARTS ) && ( best_crossings > 0 ); restart++ ) {
-            resetToOriginal( flipped );
-            if ( restart > 0 ) {
-                for( final PhylogenyNode node : internals ) {
-                    if ( rng.nextBoolean() ) {
-                        flip( node, flipped );
-                    }
+        return untangle( left, right, links, Runtime.getRuntime().availableProcessors() );
+    }
+
+    /** As {@link #untangle(Phylogeny, Phylogeny, List)}, running the restarts on at most {@code threads} threads (the
+     *  result does not depend on it). */
+    static List<PhylogenyNode> untangle( final Phylogeny left, final Phylogeny right,
+                                         final List<TanglegramLinker.Link> links, final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        final List<PhylogenyNode> flips = new ArrayList<>();
+        if ( ( left == null ) || left.isEmpty() || ( right == null ) || right.isEmpty() ) {
+            return flips;
+        }
+        final Side l = new Side( left );
+        final Side r = new Side( right );
+        final int[][] tips = linkedTips( l, r, links );
+        l.setLinks( tips[ 0 ] );
+        r.setLinks( tips[ 1 ] );
+        final Run original = new Run( l, r );
+        if ( original.crossings() == 0 ) {
+            return flips;
+        }
+        final SplittableRandom seeds = new SplittableRandom( RANDOM_SEED );
+        final SplittableRandom[] rngs = new SplittableRandom[ MAX_RESTARTS + 1 ];
+        for( int restart = 1; restart <= MAX_RESTARTS; restart++ ) {
+            rngs[ restart ] = seeds.split();
+        }
+        final AtomicInteger next = new AtomicInteger( 0 );
+        final AtomicInteger first_zero = new AtomicInteger( Integer.MAX_VALUE );
+        final Callable<Run> task = () -> {
+            final Run run = new Run( l, r );
+            Run best = null;
+            for( int restart = next.getAndIncrement(); restart <= MAX_RESTARTS; restart = next.getAndIncrement() ) {
+                // restarts after one which reached 0 can't win (ties go to the lowest restart), so skip them
+                if ( restart > first_zero.get() ) {
+                    continue;
+                }
+                run.start( restart, rngs[ restart ] );
+                run.optimize();
+                if ( run.crossings() == 0 ) {
+                    first_zero.accumulateAndGet( restart, Math::min );
+                }
+                if ( run.isBetterThan( best ) ) {
+                    best = run.copy();
                 }
             }
-            localOptimize( left, right, links, flipped );
-            final int c = crossings( left, right, links );
-            if ( c < best_crossings ) {
-                best_crossings = c;
-                best = copyOf( flipped );
+            return best;
+        };
+        final int n = Math.min( threads, MAX_RESTARTS + 1 );
+        final List<Run> results = new ArrayList<>();
+        if ( n == 1 ) {
+            try {
+                results.add( task.call() );
+            }
+            catch ( final Exception e ) {
+                throw new IllegalStateException( e );
             }
         }
-        resetToOriginal( flipped );
-        for( final PhylogenyNode node : best ) {
-            flip( node, flipped );
+        else {
+            final ExecutorService executor = Executors.newFixedThreadPool( n );
+            try {
+                final List<Future<Run>> futures = new ArrayList<>();
+                for( int i = 0; i < n; i++ ) {
+                    futures.add( executor.submit( task ) );
+                }
+                for( final Future<Run> future : futures ) {
+                    results.add( future.get() );
+                }
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return flips; // nothing applied: the trees are unchanged
+            }
+            catch ( final ExecutionException e ) {
+                throw new IllegalStateException( e.getCause() );
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        Run best = original;
+        for( final Run run : results ) {
+            if ( ( run != null ) && run.isBetterThan( best ) ) {
+                best = run;
+            }
         }
-        return new ArrayList<>( flipped );
+        best.apply( flips );
+        return flips;
     }
 
-    /** Barycentre iteration (both sides) from the current orientation, returning the BEST layout it reaches -- a
-     *  double-pass is not monotonic in crossings, so we keep the best seen rather than the (possibly overshot) last. */
-    private static void localOptimize( final Phylogeny left, final Phylogeny right,
-                                       final List<TanglegramLinker.Link> links, final Set<PhylogenyNode> flipped ) {
-        int prev = crossings( left, right, links );
-        int best = prev;
-        Set<PhylogenyNode> best_state = copyOf( flipped );
-        for( int iter = 0; ( iter < MAX_ITERATIONS ) && ( prev > 0 ); iter++ ) {
-            barycenterPass( left, right, links, true, flipped );
-            barycenterPass( right, left, links, false, flipped );
-            final int now = crossings( left, right, links );
-            if ( now < best ) {
-                best = now;
-                best_state = copyOf( flipped );
-            }
-            if ( now >= prev ) {
-                break;
-            }
-            prev = now;
-        }
-        restoreTo( flipped, best_state );
+    /** For each link whose tips are both in the trees: the node index of its tip in l, and in r. */
+    private static int[][] linkedTips( final Side l, final Side r, final List<TanglegramLinker.Link> links ) {
+        final Map<PhylogenyNode, Integer> l_index = l.indexOfNodes();
+        final Map<PhylogenyNode, Integer> r_index = r.indexOfNodes();
+        final int[] a = new int[ links.size() ];
+        final int[] b = new int[ links.size() ];
+        int n = 0;
+        for( final TanglegramLinker.Link link : links ) {
+            final Integer i = l_index.get( link.getA() );
+            final Integer j = r_index.get( link.getB() );
+            if ( ( i != null ) && ( j != null ) && l.isExternal( i ) && r.isExternal( j ) ) {
+                a[ n ] = i;
+                b[ n ] = j;
+                ++n;
+            }
+        }
+        return new int[][] { Arrays.copyOf( a, n ), Arrays.copyOf( b, n ) };
     }
 
-    /** Moves the trees from the current flip state to {@code target} by reversing the symmetric difference of the two
-     *  flip sets (each such node's parity must change), leaving {@code flipped} equal to {@code target}. */
-    private static void restoreTo( final Set<PhylogenyNode> flipped, final Set<PhylogenyNode> target ) {
-        for( final PhylogenyNode node : flipped ) {
-            if ( !target.contains( node ) ) {
-                reverse( node );
+    /**
+     * One tree, read-only, in primitive arrays: its nodes in preorder (in the original child order), their children,
+     * and the links (by index) sorted by the preorder index of their tip in this tree, so that the links below node v
+     * are {@code _links[_lo[v]] .. _links[_lo[v + size of v] - 1]}. Shared by all the runs.
+     */
+    private static final class Side {
+
+        private final PhylogenyNode[] _nodes;
+        private final int[]           _child_start;
+        private final int[]           _children;
+        private final int[]           _size;
+        private final int             _tips;
+        private final int[]           _internals;    // in postorder
+        private int[]                 _link_tip;     // per link: its tip (node index) in this tree
+        private int[]                 _links;
+        private int[]                 _lo;
+        private int[]                 _heavy;        // per internal node: which child has the most links
+
+        Side( final Phylogeny phy ) {
+            final List<PhylogenyNode> nodes = new ArrayList<>();
+            final List<PhylogenyNode> stack = new ArrayList<>();
+            stack.add( phy.getRoot() );
+            int internals = 0;
+            while ( !stack.isEmpty() ) {
+                final PhylogenyNode n = stack.remove( stack.size() - 1 );
+                nodes.add( n );
+                if ( !n.isExternal() ) {
+                    ++internals;
+                }
+                for( int c = n.getNumberOfDescendants() - 1; c >= 0; --c ) {
+                    stack.add( n.getChildNode( c ) );
+                }
+            }
+            _nodes = nodes.toArray( new PhylogenyNode[ nodes.size() ] );
+            final int n = _nodes.length;
+            final Map<PhylogenyNode, Integer> index = indexOfNodes();
+            _child_start = new int[ n + 1 ];
+            for( int v = 0; v < n; v++ ) {
+                _child_start[ v + 1 ] = _child_start[ v ] + _nodes[ v ].getNumberOfDescendants();
+            }
+            _children = new int[ _child_start[ n ] ];
+            _size = new int[ n ];
+            _internals = new int[ internals ];
+            int tips = 0;
+            int k = 0;
+            for( int v = n - 1; v >= 0; v-- ) { // reverse preorder: children before parents
+                final PhylogenyNode node = _nodes[ v ];
+                _size[ v ] = 1;
+                for( int c = 0; c < node.getNumberOfDescendants(); c++ ) {
+                    final int child = index.get( node.getChildNode( c ) );
+                    _children[ _child_start[ v ] + c ] = child;
+                    _size[ v ] += _size[ child ];
+                }
+                if ( node.isExternal() ) {
+                    ++tips;
+                }
+                else {
+                    _internals[ k++ ] = v;
+                }
+            }
+            _tips = tips;
+        }
+
+        /** Sorts the links by their tip in this tree, and finds each node's child with the most links below it. */
+        void setLinks( final int[] link_tip ) {
+            final int n = _nodes.length;
+            _link_tip = link_tip;
+            _lo = new int[ n + 1 ];
+            for( final int tip : link_tip ) {
+                _lo[ tip + 1 ]++;
+            }
+            for( int v = 0; v < n; v++ ) {
+                _lo[ v + 1 ] += _lo[ v ];
+            }
+            _links = new int[ link_tip.length ];
+            final int[] fill = Arrays.copyOf( _lo, n );
+            for( int l = 0; l < link_tip.length; l++ ) {
+                _links[ fill[ link_tip[ l ] ]++ ] = l;
+            }
+            _heavy = new int[ n ];
+            for( final int v : _internals ) {
+                int heavy = 0;
+                for( int c = 1; c < numberOfChildren( v ); c++ ) {
+                    if ( links( child( v, c ) ) > links( child( v, heavy ) ) ) {
+                        heavy = c;
+                    }
+                }
+                _heavy[ v ] = heavy;
             }
         }
-        for( final PhylogenyNode node : target ) {
-            if ( !flipped.contains( node ) ) {
-                reverse( node );
+
+        Map<PhylogenyNode, Integer> indexOfNodes() {
+            final Map<PhylogenyNode, Integer> index = new IdentityHashMap<>();
+            for( int v = 0; v < _nodes.length; v++ ) {
+                index.put( _nodes[ v ], v );
             }
+            return index;
         }
-        flipped.clear();
-        flipped.addAll( target );
-    }
 
-    private static void resetToOriginal( final Set<PhylogenyNode> flipped ) {
-        for( final PhylogenyNode node : flipped ) {
-            reverse( node );
+        boolean isExternal( final int v ) {
+            return _child_start[ v + 1 ] == _child_start[ v ];
         }
-        flipped.clear();
-    }
 
-    private static Set<PhylogenyNode> newFlipSet() {
-        return Collections.newSetFromMap( new IdentityHashMap<PhylogenyNode, Boolean>() );
-    }
+        int numberOfChildren( final int v ) {
+            return _child_start[ v + 1 ] - _child_start[ v ];
+        }
 
-    private static Set<PhylogenyNode> copyOf( final Set<PhylogenyNode> set ) {
-        final Set<PhylogenyNode> copy = newFlipSet();
-        copy.addAll( set );
-        return copy;
+        int child( final int v, final int c ) {
+            return _children[ _child_start[ v ] + c ];
+        }
+
+        /** The index (in _links) of the first link below v. */
+        int lo( final int v ) {
+            return _lo[ v ];
+        }
+
+        /** The index (in _links) after the last link below v. */
+        int hi( final int v ) {
+            return _lo[ v + _size[ v ] ];
+        }
+
+        int links( final int v ) {
+            return hi( v ) - lo( v );
+        }
     }
 
-    private static void collectInternals( final Phylogeny phy, final List<PhylogenyNode> out ) {
-        for( final Iterator<PhylogenyNode> it = phy.iteratorPreorder(); it.hasNext(); ) {
-            final PhylogenyNode node = it.next();
-            if ( !node.isExternal() ) {
-                out.add( node );
+    /**
+     * The mutable state of one (re)start: the orientation of both trees, their tip positions, the crossing count, and
+     * the scratch arrays of the passes. One per thread.
+     */
+    private static final class Run {
+
+        private final Side      _l;
+        private final Side      _r;
+        private final boolean[] _l_flipped;
+        private final boolean[] _r_flipped;
+        private final int[]     _l_pos;
+        private final int[]     _r_pos;
+        private final int[]     _other_pos;  // per link: the position of its tip in the other tree
+        private final long[]    _gain;       // per node: concordant - discordant connector pairs it separates
+        private final Fenwick   _tree;
+        private final Fenwick   _lights;
+        private final int[]     _stack;
+        private int             _restart;
+        private long            _crossings;
+
+        Run( final Side l, final Side r ) {
+            _l = l;
+            _r = r;
+            _l_flipped = new boolean[ l._nodes.length ];
+            _r_flipped = new boolean[ r._nodes.length ];
+            _l_pos = new int[ l._nodes.length ];
+            _r_pos = new int[ r._nodes.length ];
+            _other_pos = new int[ l._link_tip.length ];
+            _gain = new long[ Math.max( l._nodes.length, r._nodes.length ) ];
+            _tree = new Fenwick( Math.max( l._tips, r._tips ) );
+            _lights = new Fenwick( Math.max( l._tips, r._tips ) );
+            _stack = new int[ ( 2 * Math.max( l._nodes.length, r._nodes.length ) ) + 2 ];
+            start( 0, null );
+        }
+
+        private Run( final Run run ) {
+            _l = run._l;
+            _r = run._r;
+            _l_flipped = run._l_flipped.clone();
+            _r_flipped = run._r_flipped.clone();
+            _l_pos = null;
+            _r_pos = null;
+            _other_pos = null;
+            _gain = null;
+            _tree = null;
+            _lights = null;
+            _stack = null;
+            _restart = run._restart;
+            _crossings = run._crossings;
+        }
+
+        /** The orientations and crossing count of this run (without scratch space). */
+        Run copy() {
+            return new Run( this );
+        }
+
+        long crossings() {
+            return _crossings;
+        }
+
+        boolean isBetterThan( final Run other ) {
+            return ( other == null ) || ( _crossings < other._crossings )
+                    || ( ( _crossings == other._crossings ) && ( _restart < other._restart ) );
+        }
+
+        /** Starts from the original orientation (restart 0), or a random one. */
+        void start( final int restart, final SplittableRandom rng ) {
+            _restart = restart;
+            Arrays.fill( _l_flipped, false );
+            Arrays.fill( _r_flipped, false );
+            if ( rng != null ) {
+                for( final int v : _l._internals ) {
+                    _l_flipped[ v ] = rng.nextBoolean();
+                }
+                for( final int v : _r._internals ) {
+                    _r_flipped[ v ] = rng.nextBoolean();
+                }
+            }
+            calcPositions( _l, _l_flipped, _l_pos );
+            calcPositions( _r, _r_flipped, _r_pos );
+            final int[] a = new int[ _l._link_tip.length ];
+            final int[] b = new int[ a.length ];
+            for( int i = 0; i < a.length; i++ ) {
+                a[ i ] = _l_pos[ _l._link_tip[ i ] ];
+                b[ i ] = _r_pos[ _r._link_tip[ i ] ];
             }
+            _crossings = TanglegramLinker.countCrossings( a, b );
         }
-    }
 
-    /** Reverses a node and toggles its membership in {@code flipped}, so the set always holds the NET parity of flips
-     *  (a node flipped an even number of times is not in the set, and its subtree is back to the original order). */
-    private static void flip( final PhylogenyNode node, final Set<PhylogenyNode> flipped ) {
-        reverse( node );
-        if ( !flipped.add( node ) ) {
-            flipped.remove( node );
+        /** Alternating one-sided passes until neither tree improves. */
+        void optimize() {
+            for( int iter = 0; ( iter < MAX_ITERATIONS ) && ( _crossings > 0 ); iter++ ) {
+                final long delta = pass( _l, _l_flipped, _l_pos, _r, _r_pos )
+                        + pass( _r, _r_flipped, _r_pos, _l, _l_pos );
+                if ( delta == 0 ) {
+                    break;
+                }
+            }
         }
-    }
 
-    /** One barycentre pass over {@code tree} (holding {@code other} fixed): postorder, ordering each clade's children
-     *  so their subtree barycentres ascend, achieved by flipping a node when its first child's mean target exceeds
-     *  its last child's (for a binary node this is exactly the crossing-reducing choice). */
-    private static void barycenterPass( final Phylogeny tree, final Phylogeny other,
-                                        final List<TanglegramLinker.Link> links, final boolean tree_is_left,
-                                        final Set<PhylogenyNode> flipped ) {
-        final Map<PhylogenyNode, Integer> other_index = indexOf( other );
-        final Map<PhylogenyNode, double[]> tip_target = new IdentityHashMap<>(); // tip -> {sum, count} of partner indices
-        for( final TanglegramLinker.Link link : links ) {
-            final PhylogenyNode tip = tree_is_left ? link.getA() : link.getB();
-            final PhylogenyNode partner = tree_is_left ? link.getB() : link.getA();
-            final Integer idx = other_index.get( partner );
-            if ( idx != null ) {
-                final double[] acc = tip_target.computeIfAbsent( tip, k -> new double[ 2 ] );
-                acc[ 0 ] += idx;
-                acc[ 1 ] += 1;
+        /** Reverses the nodes flipped in this run, and adds them to flips. */
+        void apply( final List<PhylogenyNode> flips ) {
+            for( int v = 0; v < _l_flipped.length; v++ ) {
+                if ( _l_flipped[ v ] ) {
+                    reverse( _l._nodes[ v ] );
+                    flips.add( _l._nodes[ v ] );
+                }
+            }
+            for( int v = 0; v < _r_flipped.length; v++ ) {
+                if ( _r_flipped[ v ] ) {
+                    reverse( _r._nodes[ v ] );
+                    flips.add( _r._nodes[ v ] );
+                }
             }
         }
-        subtreeMeanAndFlip( tree.getRoot(), tip_target, flipped );
-    }
 
-    /** Postorder: returns {sum,count} of tip targets in the subtree, and flips this node if its first child's mean
-     *  target is greater than its last child's (a flip-only barycentre ordering). Each child is visited exactly once.
-     *  For a polytomy (&gt;2 children) the whole child list is only reversed-or-not -- a flip can't reorder a node's
-     *  interior -- so a multifurcating clade's middle children keep their relative order, exactly as a manual rotation
-     *  would leave them; binary nodes (the common case) are ordered exactly. */
-    private static double[] subtreeMeanAndFlip( final PhylogenyNode node, final Map<PhylogenyNode, double[]> tip_target,
-                                                final Set<PhylogenyNode> flipped ) {
-        if ( node.isExternal() ) {
-            final double[] t = tip_target.get( node );
-            return ( t == null ) ? new double[] { 0, 0 } : new double[] { t[ 0 ], t[ 1 ] };
+        /**
+         * Orients every clade of side optimally with other held fixed: flipped iff it separates more crossing than
+         * non-crossing connector pairs (ties keep the current orientation). Updates the positions of side and the
+         * crossing count (by the deltas of the flips), and returns the change of the crossing count (&lt;= 0).
+         */
+        private long pass( final Side side,
+                           final boolean[] flipped,
+                           final int[] pos,
+                           final Side other,
+                           final int[] other_pos ) {
+            for( int l = 0; l < _other_pos.length; l++ ) {
+                _other_pos[ l ] = other_pos[ other._link_tip[ l ] ];
+            }
+            calcGains( side );
+            long delta = 0;
+            for( final int v : side._internals ) {
+                final long g = _gain[ v ];
+                // in the original child order the pairs separated at v cross (discordant); reversed they don't
+                if ( ( g < 0 ) && !flipped[ v ] ) {
+                    flipped[ v ] = true;
+                    delta += g;
+                }
+                else if ( ( g > 0 ) && flipped[ v ] ) {
+                    flipped[ v ] = false;
+                    delta -= g;
+                }
+            }
+            if ( delta != 0 ) {
+                calcPositions( side, flipped, pos );
+                _crossings += delta;
+            }
+            return delta;
         }
-        final List<PhylogenyNode> children = node.getDescendants();
-        final int nc = children.size();
-        final double[][] child_sc = new double[ nc ][];
-        double total_sum = 0;
-        double total_count = 0;
-        for( int i = 0; i < nc; i++ ) {
-            child_sc[ i ] = subtreeMeanAndFlip( children.get( i ), tip_target, flipped );
-            total_sum += child_sc[ i ][ 0 ];
-            total_count += child_sc[ i ][ 1 ];
-        }
-        final Double first_mean = mean( child_sc[ 0 ] );
-        final Double last_mean = mean( child_sc[ nc - 1 ] );
-        if ( ( first_mean != null ) && ( last_mean != null ) && ( first_mean > last_mean ) ) {
-            flip( node, flipped );
-        }
-        return new double[] { total_sum, total_count };
-    }
 
-    private static Double mean( final double[] sum_count ) {
-        return ( sum_count[ 1 ] > 0 ) ? ( sum_count[ 0 ] / sum_count[ 1 ] ) : null;
-    }
+        /**
+         * For each internal node v of side, in the original child order: the number of pairs of links below
+         * different children of v which do not cross, minus the number which do -- given the positions in the other
+         * tree. Small-to-large: the links below v's heavy child stay in the Fenwick tree on the way up, those below
+         * its other children are counted against them (and against each other) and then added; each link is thus
+         * counted O(log n) times.
+         */
+        private void calcGains( final Side side ) {
+            int top = 0;
+            _stack[ top++ ] = 0; // visit the root (node 0), and leave nothing in the Fenwick tree
+            while ( top > 0 ) {
+                final int op = _stack[ --top ];
+                final int v = op >>> 2;
+                final boolean keep = ( op & 2 ) != 0;
+                if ( ( op & 1 ) == 0 ) { // visit
+                    if ( side.isExternal( v ) ) {
+                        if ( keep ) {
+                            add( side, v, _tree, 1 );
+                        }
+                        continue;
+                    }
+                    _stack[ top++ ] = ( v << 2 ) | ( keep ? 2 : 0 ) | 1; // finish, after all children
+                    final int heavy = side._heavy[ v ];
+                    _stack[ top++ ] = ( side.child( v, heavy ) << 2 ) | 2; // the heavy child last, kept
+                    for( int c = 0; c < side.numberOfChildren( v ); c++ ) {
+                        if ( c != heavy ) {
+                            _stack[ top++ ] = side.child( v, c ) << 2;
+                        }
+                    }
+                }
+                else {
+                    _gain[ v ] = finish( side, v );
+                    if ( keep ) {
+                        for( int c = 0; c < side.numberOfChildren( v ); c++ ) {
+                            if ( c != side._heavy[ v ] ) {
+                                add( side, side.child( v, c ), _tree, 1 );
+                            }
+                        }
+                    }
+                    else {
+                        add( side, side.child( v, side._heavy[ v ] ), _tree, -1 );
+                    }
+                }
+            }
+        }
 
-    private static int crossings( final Phylogeny left, final Phylogeny right,
-                                  final List<TanglegramLinker.Link> links ) {
-        final Map<PhylogenyNode, Integer> left_index = indexOf( left );
-        final Map<PhylogenyNode, Integer> right_index = indexOf( right );
-        final List<int[]> pairs = new ArrayList<>();
-        for( final TanglegramLinker.Link link : links ) {
-            final Integer a = left_index.get( link.getA() );
-            final Integer b = right_index.get( link.getB() );
-            if ( ( a != null ) && ( b != null ) ) {
-                pairs.add( new int[] { a, b } );
+        /** The gain of v, with (only) the links below its heavy child in the Fenwick tree. */
+        private long finish( final Side side, final int v ) {
+            final int heavy = side._heavy[ v ];
+            final int in_heavy = side.links( side.child( v, heavy ) );
+            final int children = side.numberOfChildren( v );
+            long gain = 0;
+            int in_lights = 0;
+            for( int c = 0; c < children; c++ ) {
+                if ( c == heavy ) {
+                    continue;
+                }
+                final int child = side.child( v, c );
+                for( int i = side.lo( child ); i < side.hi( child ); i++ ) {
+                    final int x = _other_pos[ side._links[ i ] ];
+                    final int less = _tree.sum( x - 1 );
+                    final int greater = in_heavy - _tree.sum( x );
+                    // c above the heavy child: a pair does not cross when the heavy child's link is further down
+                    gain += c < heavy ? ( greater - less ) : ( less - greater );
+                    if ( children > 2 ) {
+                        // ... and against the links below the other children above c
+                        gain += _lights.sum( x - 1 ) - ( in_lights - _lights.sum( x ) );
+                    }
+                }
+                if ( children > 2 ) {
+                    add( side, child, _lights, 1 );
+                    in_lights += side.links( child );
+                }
+            }
+            if ( children > 2 ) {
+                for( int c = 0; c < children; c++ ) {
+                    if ( c != heavy ) {
+                        add( side, side.child( v, c ), _lights, -1 );
+                    }
+                }
+            }
+            return gain;
+        }
+
+        private void add( final Side side, final int v, final Fenwick tree, final int d ) {
+            for( int i = side.lo( v ); i < side.hi( v ); i++ ) {
+                tree.add( _other_pos[ side._links[ i ] ], d );
+            }
+        }
+
+        /** The positions (0 = top) of the tips of side, in the given orientation. */
+        private void calcPositions( final Side side, final boolean[] flipped, final int[] pos ) {
+            int top = 0;
+            int p = 0;
+            _stack[ top++ ] = 0;
+            while ( top > 0 ) {
+                final int v = _stack[ --top ];
+                final int children = side.numberOfChildren( v );
+                if ( children == 0 ) {
+                    pos[ v ] = p++;
+                }
+                else {
+                    for( int c = 0; c < children; c++ ) { // pushed so that the first one shown is popped first
+                        _stack[ top++ ] = side.child( v, flipped[ v ] ? c : ( children - 1 - c ) );
+                    }
+                }
             }
         }
-        return TanglegramLinker.countCrossings( pairs );
     }
 
-    private static Map<PhylogenyNode, Integer> indexOf( final Phylogeny phy ) {
-        final List<PhylogenyNode> tips = TanglegramLinker.externalTipsInDisplayOrder( phy );
-        final Map<PhylogenyNode, Integer> index = new IdentityHashMap<>();
-        for( int i = 0; i < tips.size(); i++ ) {
-            index.put( tips.get( i ), i );
+    /** Counts of tip positions 0 .. n-1, with prefix sums in O(log n). */
+    private static final class Fenwick {
+
+        private final int[] _counts;
+
+        Fenwick( final int n ) {
+            _counts = new int[ n + 1 ];
+        }
+
+        void add( final int i, final int d ) {
+            for( int j = i + 1; j < _counts.length; j += j & -j ) {
+                _counts[ j ] += d;
+            }
+        }
+
+        /** The count of positions &lt;= i. */
+        int sum( final int i ) {
+            int s = 0;
+            for( int j = Math.min( i + 1, _counts.length - 1 ); j > 0; j -= j & -j ) {
+                s += _counts[ j ];
+            }
+            return s;
         }
-        return index;
     }
 
     private TanglegramUntangler() {
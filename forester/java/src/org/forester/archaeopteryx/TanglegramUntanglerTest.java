@@ -35,19 +35,34 @@ import org.forester.phylogeny.PhylogenyNode;
 /**
  * Headless tests for {@link TanglegramUntangler}: it lowers the crossing count (to 0 when the two trees have the same
  * unordered topology, i.e. are reachable from one another by flips), leaves an already-untangled pair alone, and the
- * net flip set it returns is a true inverse (reversing it restores the original ordering).
+ * net flip set it returns is a true inverse (reversing it restores the original ordering), and the result does not
+ * depend on the number of threads the restarts run on.
+ * <p>
+ * main() times the untangling of two independent random trees with 20000 (or a given number of) tips.
  */
 public final class TanglegramUntanglerTest {
 
     public static void main( final String[] args ) {
         final boolean ok = test();
         System.out.println( "TanglegramUntangler: " + ( ok ? "OK." : "FAILED." ) );
+        final int n = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 20000;
+        final Random rng = new Random( 3 );
+        for( int round = 0; round < 3; round++ ) {
+            final Phylogeny left = tree( randomBinary( n, rng ) );
+            final Phylogeny right = tree( randomBinary( n, rng ) );
+            final List<Link> links = links( left, right );
+            final int before = crossings( left, right, links );
+            final long t0 = System.currentTimeMillis();
+            final int flips = TanglegramUntangler.untangle( left, right, links ).size();
+            System.out.println( n + " tips: " + before + " -> " + crossings( left, right, links ) + " crossings, "
+                    + flips + " flips, in " + ( System.currentTimeMillis() - t0 ) + "ms" );
+        }
         System.exit( ok ? 0 : 1 );
     }
 
     public static boolean test() {
         return tangledToZeroOk() && alreadyCleanOk() && eightTipUntangleOk() && undoRestoresOk() && reachesOptimumOk()
-                && largeTreeUntangleOk();
+                && polytomiesReachOptimumOk() && largeTreeUntangleOk() && threadsDoNotMatterOk();
     }
 
     /** Performance / scale: a large (300-tip) heavily-scrambled SAME-topology pair (so a flip-reachable 0 exists) must
@@ -126,6 +141,72 @@ public final class TanglegramUntanglerTest {
         return true;
     }
 
+    private static boolean polytomiesReachOptimumOk() {
+        // multifurcations (only reversible as a whole) and tips linked to several partners (many:many)
+        final Random rng = new Random( 11 );
+        for( int trial = 0; trial < 20; trial++ ) {
+            final Phylogeny left = tree( randomTree( 8, rng ) );
+            final Phylogeny right = tree( randomTree( 8, rng ) );
+            if ( ( internalNodes( left ).size() > 7 ) || ( internalNodes( right ).size() > 7 ) ) {
+                return fail( "test setup: too many internal nodes for the brute force" );
+            }
+            right.getExternalNodes().get( trial % 8 ).setName( "t" + ( ( trial + 3 ) % 8 ) );
+            final List<Link> links = links( left, right );
+            final int optimum = bruteForceMin( left, right, links );
+            TanglegramUntangler.untangle( left, right, links );
+            final int result = crossings( left, right, links );
+            if ( result != optimum ) {
+                return fail( "trial " + trial + " (polytomies): untangle reached " + result
+                        + " crossings, brute-force optimum is " + optimum );
+            }
+        }
+        return true;
+    }
+
+    /** The restarts run concurrently, but the result (the flip set, hence the layout) must be the same on any number
+     *  of threads: each restart has its own random stream, and ties go to the lowest restart. */
+    private static boolean threadsDoNotMatterOk() {
+        final Random rng = new Random( 5 );
+        final PhylogenyNode l = randomBinary( 500, rng );
+        final PhylogenyNode r = randomBinary( 500, rng );
+        String layout = null;
+        for( final int threads : new int[] { 1, 2, 7 } ) {
+            final Phylogeny left = tree( l ).copy();
+            final Phylogeny right = tree( r ).copy();
+            TanglegramUntangler.untangle( left, right, links( left, right ), threads );
+            final String s = left.toNewHampshire() + right.toNewHampshire();
+            if ( ( layout != null ) && !layout.equals( s ) ) {
+                return fail( "untangling on " + threads + " threads gave a different layout than on 1 thread" );
+            }
+            layout = s;
+        }
+        try {
+            TanglegramUntangler.untangle( tree( l ), tree( r ), new ArrayList<Link>(), 0 );
+            return fail( "0 threads should not be accepted" );
+        }
+        catch ( final IllegalArgumentException e ) {
+            // expected
+        }
+        return true;
+    }
+
+    /** A random tree with n tips whose internal nodes have two or three children. */
+    private static PhylogenyNode randomTree( final int n, final Random rng ) {
+        final List<PhylogenyNode> nodes = new ArrayList<>();
+        for( int i = 0; i < n; i++ ) {
+            nodes.add( leaf( "t" + i ) );
+        }
+        while ( nodes.size() > 1 ) {
+            final PhylogenyNode parent = new PhylogenyNode();
+            final int children = ( ( nodes.size() > 2 ) && rng.nextBoolean() ) ? 3 : 2;
+            for( int i = 0; i < children; i++ ) {
+                parent.addAsChild( nodes.remove( rng.nextInt( nodes.size() ) ) );
+            }
+            nodes.add( parent );
+        }
+        return nodes.get( 0 );
+    }
+
     private static PhylogenyNode randomBinary( final int n, final Random rng ) {
         final List<PhylogenyNode> nodes = new ArrayList<>();
         for( int i = 0; i < n; i++ ) {
@@ -21,42 +21,178 @@
 package org.forester.archaeopteryx;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.data.BranchData;
+import org.forester.phylogeny.data.NodeData;
 
 /**
- * A bounded per-tree undo/redo history built by <em>snapshotting</em> the whole phylogeny (a deep
- * {@link Phylogeny#copy()}) before each mutating operation — the tree-native, command-free approach: any
- * operation is undoable just by taking a snapshot first, no per-operation inverse needed. This deliberately
- * does NOT use {@code javax.swing.undo.UndoManager} (which is command-based).
+ * A per-tree undo/redo history built by <em>snapshotting</em> the phylogeny before each mutating operation —
+ * the tree-native, command-free approach: any operation is undoable just by taking a snapshot first, no
+ * per-operation inverse needed. This deliberately does NOT use {@code javax.swing.undo.UndoManager} (which is
+ * command-based).
  * <p>
- * Ownership rule that keeps the stacks independent of the live tree: {@link #checkpoint} stores a <em>copy</em>
- * of the current tree (the live tree keeps being mutated), and {@link #undo}/{@link #redo} copy the current
- * live tree onto the opposite stack before returning the (de-stacked) snapshot for the caller to install as
- * the new live tree. So a stacked snapshot is never the live tree and is never mutated in place.
+ * A snapshot does not copy the tree. It shares the (live) {@link PhylogenyNode} objects and records only what
+ * the operation can change, as given by its {@link Scope}: the topology (parent, children order, branch length,
+ * collapsed flag and branch data reference of each node) for structural operations such as re-rooting, sorting,
+ * swapping, collapsing or deleting; in addition copies of the branch data for operations that edit it in place
+ * (midpoint and MAD rooting); and copies of the node and branch data of every node for tree-wide data edits
+ * ({@link Scope#ALL}, the default). Data edits of a few nodes (a node style) record only those nodes
+ * ({@link #checkpoint(Phylogeny, String, boolean, Collection)}). The tree-level attributes (name, description,
+ * rooted, ...) are always copied ({@link Phylogeny#copyAttributes()}); that copy becomes the restored tree.
+ * <p>
+ * Ownership rule that keeps the stacks independent of the live tree: whatever a snapshot records is either
+ * immutable (the topology arrays, and branch data references, which the structural operations replace instead
+ * of editing) or a copy. {@link #undo}/{@link #redo} record the current live state (in the scope of the
+ * snapshot being restored) onto the opposite stack before restoring the snapshot onto the nodes and returning
+ * it for the caller to install {@link Snapshot#getPhylogeny()} as the new live tree.
+ * <p>
+ * The history is bounded by an estimate of the memory its snapshots retain (by default an eighth of the
+ * maximum heap) rather than by a number of entries, so that many cheap re-rootings can be undone on a large
+ * tree; the newest entry is always kept.
  * <p>
  * Each snapshot also records the "edited" (unsaved-changes) flag as it was at capture time, so undoing all the
  * way back to the freshly-loaded state correctly restores a clean (not-edited) marker.
  * <p>
- * Pure and headless-testable: it only reads/copies {@link Phylogeny} objects; the GUI refresh lives in
+ * Pure and headless-testable: it only reads/restores {@link Phylogeny} objects; the GUI refresh lives in
  * {@code TreePanel}.
  */
 final class TreeHistory {
 
-    static final int DEFAULT_MAX_DEPTH = 25;
+    /** What a snapshot records in addition to the tree-level attributes. */
+    enum Scope {
+        /** The topology: parents, order of children, branch lengths, collapsed flags, branch data references. */
+        TOPOLOGY,
+        /** The topology, and copies of the branch data (for operations which edit branch data in place). */
+        BRANCHES,
+        /** The topology, and copies of the node and branch data of all nodes. */
+        ALL
+    }
 
-    /** One recorded tree state: the (copied) tree, the operation label, and the edited flag at capture time. */
+    static final long DEFAULT_MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+    // Rough per-node sizes (bytes) for the memory estimate: an entry in each of the topology arrays, and the
+    // (deep) copies of node and branch data.
+    private static final int  BRANCH_DATA_BYTES = 64;
+    private static final int  NODE_BYTES        = 40;
+    private static final int  NODE_DATA_BYTES   = 256;
+    private static final int  SNAPSHOT_BYTES    = 512;
+
+    /**
+     * One recorded tree state: the (copied) tree-level attributes, the recorded nodes, the operation label, and
+     * the edited flag at capture time.
+     */
     static final class Snapshot {
 
-        private final Phylogeny _phylogeny;
-        private final String    _label;
-        private final boolean   _edited;
+        private final Phylogeny       _phylogeny;
+        private final String          _label;
+        private final boolean         _edited;
+        private final Scope           _scope;
+        // The recorded nodes: all nodes in preorder for a topology, otherwise the nodes whose data is recorded.
+        private final PhylogenyNode[] _nodes;
+        // Index (in _nodes) of the parent of each node, -1 for the root; null without a topology.
+        private final int[]           _parents;
+        private final double[]        _distances;
+        private final BitSet          _collapsed;
+        // The links of the nodes (deletion clears them); null if no node has one.
+        private final PhylogenyNode[] _links;
+        private final BranchData[]    _branch_data;
+        private final NodeData[]      _node_data;
+        private final long            _bytes;
 
-        Snapshot( final Phylogeny phylogeny, final String label, final boolean edited ) {
-            _phylogeny = phylogeny;
+        /** Records the topology of current, and (depending on scope) the data of all its nodes. */
+        private Snapshot( final Phylogeny current, final String label, final boolean edited, final Scope scope ) {
+            _phylogeny = current.copyAttributes();
             _label = label;
             _edited = edited;
+            _scope = scope;
+            final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+            int[] parents = new int[ 64 ];
+            // Preorder by an explicit stack (no recursion on deep trees); the children of a node then appear in
+            // their order, so the parent indices alone give the order of the children.
+            final Deque<PhylogenyNode> stack = new ArrayDeque<PhylogenyNode>();
+            final Deque<Integer> parent_stack = new ArrayDeque<Integer>();
+            stack.push( current.getRoot() );
+            parent_stack.push( -1 );
+            while ( !stack.isEmpty() ) {
+                final PhylogenyNode n = stack.pop();
+                final int i = nodes.size();
+                nodes.add( n );
+                if ( i == parents.length ) {
+                    parents = Arrays.copyOf( parents, 2 * i );
+                }
+                parents[ i ] = parent_stack.pop();
+                for( int c = n.getNumberOfDescendants() - 1; c >= 0; --c ) {
+                    stack.push( n.getChildNode( c ) );
+                    parent_stack.push( i );
+                }
+            }
+            _nodes = nodes.toArray( new PhylogenyNode[ nodes.size() ] );
+            _parents = Arrays.copyOf( parents, _nodes.length );
+            _distances = new double[ _nodes.length ];
+            _collapsed = new BitSet( _nodes.length );
+            PhylogenyNode[] links = null;
+            _branch_data = new BranchData[ _nodes.length ];
+            _node_data = scope == Scope.ALL ? new NodeData[ _nodes.length ] : null;
+            long bytes = SNAPSHOT_BYTES + ( ( (long) NODE_BYTES ) * _nodes.length );
+            for( int i = 0; i < _nodes.length; ++i ) {
+                final PhylogenyNode n = _nodes[ i ];
+                _distances[ i ] = n.getDistanceToParent();
+                _collapsed.set( i, n.isCollapse() );
+                if ( n.getLink() != null ) {
+                    if ( links == null ) {
+                        links = new PhylogenyNode[ _nodes.length ];
+                    }
+                    links[ i ] = n.getLink();
+                }
+                if ( scope == Scope.TOPOLOGY ) {
+                    _branch_data[ i ] = n.getBranchData();
+                }
+                else {
+                    _branch_data[ i ] = copyBranchData( n );
+                    bytes += BRANCH_DATA_BYTES;
+                    if ( _node_data != null ) {
+                        _node_data[ i ] = copyNodeData( n );
+                        if ( _node_data[ i ] != null ) {
+                            bytes += NODE_DATA_BYTES;
+                        }
+                    }
+                }
+            }
+            _links = links;
+            _bytes = bytes;
+        }
+
+        /** Records copies of the node and branch data of the given nodes only (no topology). */
+        private Snapshot( final Phylogeny current,
+                          final String label,
+                          final boolean edited,
+                          final PhylogenyNode[] nodes ) {
+            _phylogeny = current.copyAttributes();
+            _label = label;
+            _edited = edited;
+            _scope = null;
+            _nodes = nodes;
+            _parents = null;
+            _distances = null;
+            _collapsed = null;
+            _links = null;
+            _branch_data = new BranchData[ nodes.length ];
+            _node_data = new NodeData[ nodes.length ];
+            for( int i = 0; i < nodes.length; ++i ) {
+                _branch_data[ i ] = copyBranchData( nodes[ i ] );
+                _node_data[ i ] = copyNodeData( nodes[ i ] );
+            }
+            _bytes = SNAPSHOT_BYTES + ( ( (long) NODE_BYTES + NODE_DATA_BYTES + BRANCH_DATA_BYTES ) * nodes.length );
         }
 
         Phylogeny getPhylogeny() {
@@ -70,34 +206,162 @@ final class TreeHistory {
         boolean isEdited() {
             return _edited;
         }
+
+        /** The estimated number of bytes retained by this snapshot. */
+        long getEstimatedBytes() {
+            return _bytes;
+        }
+
+        /** Records the current state of what this snapshot records, for the opposite stack. */
+        private Snapshot recordCurrent( final Phylogeny current, final boolean current_edited ) {
+            if ( _parents == null ) {
+                return new Snapshot( current, _label, current_edited, _nodes );
+            }
+            return new Snapshot( current, _label, current_edited, _scope );
+        }
+
+        /**
+         * Puts the recorded state back onto the (shared) nodes, and makes getPhylogeny() a tree rooted at
+         * the recorded root (or, without a topology, at the root of current).
+         */
+        private void restore( final Phylogeny current ) {
+            if ( _parents == null ) {
+                _phylogeny.setRoot( current == null ? null : current.getRoot() );
+            }
+            else {
+                for( final PhylogenyNode n : _nodes ) {
+                    if ( n.getNumberOfDescendants() > 0 ) {
+                        n.getDescendants().clear();
+                    }
+                }
+                for( int i = 0; i < _nodes.length; ++i ) {
+                    final PhylogenyNode n = _nodes[ i ];
+                    if ( _parents[ i ] < 0 ) {
+                        n.setParent( null );
+                    }
+                    else {
+                        final PhylogenyNode parent = _nodes[ _parents[ i ] ];
+                        n.setParent( parent );
+                        parent.getDescendants().add( n );
+                    }
+                    n.setDistanceToParent( _distances[ i ] );
+                    n.setCollapse( _collapsed.get( i ) );
+                    if ( _links != null ) {
+                        n.setLink( _links[ i ] );
+                    }
+                }
+                _phylogeny.setRoot( _nodes[ 0 ] );
+            }
+            for( int i = 0; i < _nodes.length; ++i ) {
+                _nodes[ i ].setBranchData( _branch_data[ i ] );
+                if ( _node_data != null ) {
+                    _nodes[ i ].setNodeData( _node_data[ i ] );
+                }
+            }
+        }
+
+        private static BranchData copyBranchData( final PhylogenyNode n ) {
+            return ( BranchData ) n.getBranchData().copy();
+        }
+
+        private static NodeData copyNodeData( final PhylogenyNode n ) {
+            return n.isEmpty() ? null : ( NodeData ) n.getNodeData().copy();
+        }
     }
 
     private final int             _max_depth;
+    private final long            _max_bytes;
     private final Deque<Snapshot> _undo = new ArrayDeque<Snapshot>();
     private final Deque<Snapshot> _redo = new ArrayDeque<Snapshot>();
+    private long                  _bytes;
 
     TreeHistory() {
-        this( DEFAULT_MAX_DEPTH );
+        this( Integer.MAX_VALUE, DEFAULT_MAX_BYTES );
     }
 
     TreeHistory( final int max_depth ) {
+        this( max_depth, DEFAULT_MAX_BYTES );
+    }
+
+    /**
+     * A history which keeps at most max_depth undo (and redo) entries, and drops the oldest entries when its
+     * snapshots are estimated to retain more than max_bytes (but always keeps the newest one).
+     */
+    TreeHistory( final int max_depth, final long max_bytes ) {
         _max_depth = Math.max( 1, max_depth );
+        _max_bytes = Math.max( 0, max_bytes );
     }
 
     /**
-     * Records the current tree state (as it is BEFORE the mutation about to happen) under {@code label}, and
-     * clears the redo history (a new action invalidates any redoable future). The oldest entries beyond the
-     * depth cap are dropped.
+     * Records the current tree state (as it is BEFORE the mutation about to happen) under {@code label},
+     * including copies of all node and branch data, and clears the redo history (a new action invalidates any
+     * redoable future).
      */
     void checkpoint( final Phylogeny current, final String label, final boolean edited ) {
+        checkpoint( current, label, edited, Scope.ALL );
+    }
+
+    /**
+     * Records the current tree state in the given scope (as it is BEFORE the mutation about to happen) under
+     * {@code label}, and clears the redo history. The oldest entries beyond the depth cap or memory budget are
+     * dropped.
+     */
+    void checkpoint( final Phylogeny current, final String label, final boolean edited, final Scope scope ) {
         if ( ( current == null ) || current.isEmpty() ) {
             return;
         }
-        _undo.addFirst( new Snapshot( current.copy(), label, edited ) );
-        while ( _undo.size() > _max_depth ) {
-            _undo.pollLast();
+        if ( scope == null ) {
+            throw new IllegalArgumentException( "attempt to checkpoint without a scope" );
         }
-        _redo.clear();
+        push( _undo, new Snapshot( current, label, edited, scope ) );
+        clearRedo();
+    }
+
+    /**
+     * Records the node and branch data of the given nodes of current (and the tree-level attributes), for an
+     * operation which changes only those (null elements are ignored; an empty collection records the tree-level attributes only), and
+     * clears the redo history.
+     */
+    void checkpoint( final Phylogeny current,
+                     final String label,
+                     final boolean edited,
+                     final Collection<PhylogenyNode> nodes ) {
+        if ( ( current == null ) || current.isEmpty() ) {
+            return;
+        }
+        final Set<PhylogenyNode> distinct = Collections.newSetFromMap( new IdentityHashMap<PhylogenyNode, Boolean>() );
+        for( final PhylogenyNode n : nodes ) {
+            if ( n != null ) {
+                distinct.add( n );
+            }
+        }
+        push( _undo, new Snapshot( current, label, edited, distinct.toArray( new PhylogenyNode[ distinct.size() ] ) ) );
+        clearRedo();
+    }
+
+    /**
+     * Records the current tree state like {@link #checkpoint(Phylogeny, String, boolean)}, without entering it
+     * into the history: for an operation which must run first to know whether it changes anything (an import).
+     * If it does, the snapshot is entered with {@link #commit(Snapshot)}; otherwise it is just dropped, and the
+     * redo history is kept. Returns {@code null} for an empty tree.
+     */
+    Snapshot capture( final Phylogeny current, final String label, final boolean edited ) {
+        if ( ( current == null ) || current.isEmpty() ) {
+            return null;
+        }
+        return new Snapshot( current, label, edited, Scope.ALL );
+    }
+
+    /**
+     * Enters a snapshot obtained from {@link #capture} (of the tree as it still is, node for node) into the undo
+     * history, and clears the redo history.
+     */
+    void commit( final Snapshot s ) {
+        if ( s == null ) {
+            return;
+        }
+        push( _undo, s );
+        clearRedo();
     }
 
     boolean canUndo() {
@@ -119,40 +383,25 @@ final class TreeHistory {
     }
 
     /**
-     * Undo: pushes a copy of the current live state onto the redo stack, then returns the previous state to
-     * install as the new live tree (or {@code null} when there is nothing to undo).
+     * Undo: records the current live state onto the redo stack, then restores the previous state and returns
+     * it, for its tree to be installed as the new live tree (or {@code null} when there is nothing to undo).
      */
     Snapshot undo( final Phylogeny current, final boolean current_edited ) {
-        if ( _undo.isEmpty() ) {
-            return null;
-        }
-        final Snapshot previous = _undo.pollFirst();
-        _redo.addFirst( new Snapshot( current.copy(), previous.getLabel(), current_edited ) );
-        while ( _redo.size() > _max_depth ) {
-            _redo.pollLast();
-        }
-        return previous;
+        return move( _undo, _redo, current, current_edited );
     }
 
     /**
-     * Redo: pushes a copy of the current live state onto the undo stack, then returns the next state to
-     * install as the new live tree (or {@code null} when there is nothing to redo).
+     * Redo: records the current live state onto the undo stack, then restores the next state and returns it,
+     * for its tree to be installed as the new live tree (or {@code null} when there is nothing to redo).
      */
     Snapshot redo( final Phylogeny current, final boolean current_edited ) {
-        if ( _redo.isEmpty() ) {
-            return null;
-        }
-        final Snapshot next = _redo.pollFirst();
-        _undo.addFirst( new Snapshot( current.copy(), next.getLabel(), current_edited ) );
-        while ( _undo.size() > _max_depth ) {
-            _undo.pollLast();
-        }
-        return next;
+        return move( _redo, _undo, current, current_edited );
     }
 
     void clear() {
         _undo.clear();
         _redo.clear();
+        _bytes = 0;
     }
 
     /**
@@ -161,7 +410,9 @@ final class TreeHistory {
      * makes a later Redo impossible rather than letting it install an unrelated tree.
      */
     void clearRedo() {
-        _redo.clear();
+        while ( !_redo.isEmpty() ) {
+            _bytes -= _redo.pollFirst().getEstimatedBytes();
+        }
     }
 
     int undoDepth() {
@@ -171,4 +422,33 @@ final class TreeHistory {
     int redoDepth() {
         return _redo.size();
     }
+
+    /** The estimated number of bytes retained by the snapshots of both stacks. */
+    long estimatedBytes() {
+        return _bytes;
+    }
+
+    private Snapshot move( final Deque<Snapshot> from,
+                           final Deque<Snapshot> to,
+                           final Phylogeny current,
+                           final boolean current_edited ) {
+        if ( from.isEmpty() ) {
+            return null;
+        }
+        final Snapshot s = from.pollFirst();
+        _bytes -= s.getEstimatedBytes();
+        if ( ( current != null ) && !current.isEmpty() ) {
+            push( to, s.recordCurrent( current, current_edited ) );
+        }
+        s.restore( current );
+        return s;
+    }
+
+    private void push( final Deque<Snapshot> stack, final Snapshot s ) {
+        stack.addFirst( s );
+        _bytes += s.getEstimatedBytes();
+        while ( ( stack.size() > _max_depth ) || ( ( _bytes > _max_bytes ) && ( stack.size() > 1 ) ) ) {
+            _bytes -= stack.pollLast().getEstimatedBytes();
+        }
+    }
 }
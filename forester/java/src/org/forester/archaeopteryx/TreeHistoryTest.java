@@ -20,24 +20,63 @@
 
 package org.forester.archaeopteryx;
 
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.forester.archaeopteryx.TreeHistory.Snapshot;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.data.BranchColor;
+import org.forester.phylogeny.data.Confidence;
+import org.forester.phylogeny.data.Taxonomy;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
 
 /**
  * Unit tests for {@link TreeHistory} (the pure snapshot-based undo/redo stack). Same package as the class
  * under test (package-private). Headless; run via the suite or {@link #main(String[])}.
+ * <p>
+ * With the argument "benchmark", main() also compares the time and (estimated) memory of checkpoints of a
+ * phylogeny with 100000 (or a given number of) external nodes in each scope with those of a deep copy (what a
+ * checkpoint used to be).
  */
 public final class TreeHistoryTest {
 
     public static void main( final String[] args ) {
-        System.out.println( "TreeHistory: " + ( test() ? "OK." : "FAILED." ) );
-        System.exit( test() ? 0 : 1 );
+        final boolean ok = test();
+        System.out.println( "TreeHistory: " + ( ok ? "OK." : "FAILED." ) );
+        if ( ( args.length > 0 ) && args[ 0 ].equals( "benchmark" ) ) {
+            benchmark( args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 100000 );
+        }
+        System.exit( ok ? 0 : 1 );
+    }
+
+    private static void benchmark( final int external_nodes ) {
+        final Phylogeny phy = balancedTree( external_nodes );
+        System.out.println( "External nodes : " + external_nodes );
+        for( int round = 0; round < 3; ++round ) {
+            long time = System.currentTimeMillis();
+            final Phylogeny copy = phy.copy();
+            System.out.println( "deep copy              : " + ( System.currentTimeMillis() - time ) + "ms ("
+                    + copy.getNodeCount() + " nodes)" );
+            for( final TreeHistory.Scope scope : TreeHistory.Scope.values() ) {
+                final TreeHistory h = new TreeHistory( Integer.MAX_VALUE, Long.MAX_VALUE );
+                time = System.currentTimeMillis();
+                h.checkpoint( phy, scope.toString(), false, scope );
+                final long checkpoint = System.currentTimeMillis() - time;
+                time = System.currentTimeMillis();
+                h.undo( phy, false );
+                System.out.println( "checkpoint " + String.format( "%-11s : ", scope ) + checkpoint + "ms, undo: "
+                        + ( System.currentTimeMillis() - time ) + "ms, ~" + ( h.estimatedBytes() / 1024 ) + "KB" );
+            }
+        }
     }
 
     public static boolean test() {
         return roundTrip() && redoClearedOnCheckpoint() && capEviction() && snapshotIsIndependentCopy()
-                && clearRedoOnly() && emptyAndLabels();
+                && clearRedoOnly() && emptyAndLabels() && sharedTopologyRoundTrip() && branchDataRoundTrip()
+                && nodeDataRoundTrip() && memoryBudgetEviction() && importAfterStructuralEdit();
     }
 
     // ---- clearRedo() drops the redo history but leaves the undo stack intact (the safety-net primitive) ----
@@ -173,6 +212,160 @@ public final class TreeHistoryTest {
         return true;
     }
 
+    // ---- a topology checkpoint shares the nodes: undo/redo of a re-root + sort + delete restore the very
+    // ---- same node objects, the order of their children, the branch lengths and the root
+    private static boolean sharedTopologyRoundTrip() {
+        final TreeHistory h = new TreeHistory();
+        final Phylogeny live = balancedTree( 64 );
+        final String before = live.toNewHampshire();
+        final List<PhylogenyNode> before_nodes = preorder( live );
+        final PhylogenyNode some_tip = live.getExternalNodes().get( 17 );
+        h.checkpoint( live, "Re-Root", false, TreeHistory.Scope.TOPOLOGY );
+        live.reRoot( some_tip );
+        live.deleteSubtree( live.getExternalNodes().get( 40 ), true );
+        live.getRoot().getChildNode( 1 ).getDescendants().add( 0, live.getRoot().getChildNode( 1 ).getDescendants()
+                .remove( 1 ) ); // swap
+        final String after = live.toNewHampshire();
+        if ( after.equals( before ) ) {
+            return fail( "test setup: the edits should change the tree" );
+        }
+        final Snapshot u = h.undo( live, true );
+        final Phylogeny restored = u.getPhylogeny();
+        restored.externalNodesHaveChanged();
+        if ( !before.equals( restored.toNewHampshire() ) ) {
+            return fail( "undo of a topology checkpoint should restore the tree: " + restored.toNewHampshire() );
+        }
+        final List<PhylogenyNode> restored_nodes = preorder( restored );
+        if ( restored_nodes.size() != before_nodes.size() ) {
+            return fail( "undo should restore all " + before_nodes.size() + " nodes" );
+        }
+        for( int i = 0; i < before_nodes.size(); ++i ) {
+            if ( restored_nodes.get( i ) != before_nodes.get( i ) ) {
+                return fail( "undo of a topology checkpoint should restore the same node objects (no copy)" );
+            }
+        }
+        if ( !restored.getRoot().isRoot() || ( restored.getRoot() != before_nodes.get( 0 ) ) ) {
+            return fail( "undo should restore the root" );
+        }
+        final Snapshot r = h.redo( restored, false );
+        r.getPhylogeny().externalNodesHaveChanged();
+        if ( !after.equals( r.getPhylogeny().toNewHampshire() ) ) {
+            return fail( "redo of a topology checkpoint should re-apply the edits" );
+        }
+        return true;
+    }
+
+    // ---- a branches checkpoint copies the branch data: in-place edits of it (as by MAD rooting) are undone
+    private static boolean branchDataRoundTrip() {
+        final TreeHistory h = new TreeHistory();
+        final Phylogeny live = balancedTree( 8 );
+        final PhylogenyNode n = live.getExternalNodes().get( 3 );
+        n.getBranchData().addConfidence( new Confidence( 90, "bootstrap" ) );
+        h.checkpoint( live, "MAD-Root", false, TreeHistory.Scope.BRANCHES );
+        n.getBranchData().getConfidence( 0 ).setValue( 10 );
+        n.getBranchData().setBranchColor( new BranchColor( Color.RED ) );
+        h.undo( live, true );
+        if ( ( n.getBranchData().getConfidence( 0 ).getValue() != 90 ) || ( n.getBranchData().getBranchColor() != null ) ) {
+            return fail( "undo of a branches checkpoint should restore the edited branch data" );
+        }
+        h.redo( live, false );
+        if ( ( n.getBranchData().getConfidence( 0 ).getValue() != 10 ) || ( n.getBranchData().getBranchColor() == null ) ) {
+            return fail( "redo of a branches checkpoint should re-apply the edited branch data" );
+        }
+        return true;
+    }
+
+    // ---- a checkpoint of some nodes records (and restores) the data of only those, and the tree name
+    private static boolean nodeDataRoundTrip() {
+        final TreeHistory h = new TreeHistory();
+        final Phylogeny live = balancedTree( 8 );
+        live.setName( "tree" );
+        final PhylogenyNode a = live.getExternalNodes().get( 2 );
+        final PhylogenyNode b = live.getExternalNodes().get( 5 );
+        final List<PhylogenyNode> targets = new ArrayList<PhylogenyNode>();
+        targets.add( a );
+        targets.add( null );
+        targets.add( a );
+        h.checkpoint( live, "Node Style", false, targets );
+        a.setName( "A" );
+        b.setName( "B" ); // not checkpointed
+        final Snapshot u = h.undo( live, true );
+        if ( !"t2".equals( a.getName() ) || !"B".equals( b.getName() ) || ( u.getPhylogeny().getRoot() != live.getRoot() ) ) {
+            return fail( "undo of a node checkpoint should restore the data of the given nodes only" );
+        }
+        h.redo( u.getPhylogeny(), false );
+        if ( !"A".equals( a.getName() ) ) {
+            return fail( "redo of a node checkpoint should re-apply the data" );
+        }
+        final Phylogeny current = u.getPhylogeny();
+        h.checkpoint( current, "Edit Tree Info", false, Collections.<PhylogenyNode> emptyList() );
+        current.setName( "renamed" );
+        if ( !"tree".equals( h.undo( current, true ).getPhylogeny().getName() ) ) {
+            return fail( "undo of an attributes-only checkpoint should restore the tree name" );
+        }
+        return true;
+    }
+
+    // ---- the memory budget drops the oldest entries, but never the newest one
+    private static boolean memoryBudgetEviction() {
+        final Phylogeny live = balancedTree( 256 );
+        final TreeHistory probe = new TreeHistory();
+        probe.checkpoint( live, "op", false, TreeHistory.Scope.TOPOLOGY );
+        final long one = probe.estimatedBytes();
+        if ( one <= 0 ) {
+            return fail( "a snapshot should have a size" );
+        }
+        final TreeHistory h = new TreeHistory( Integer.MAX_VALUE, ( 3 * one ) + ( one / 2 ) );
+        for( int i = 0; i < 10; ++i ) {
+            h.checkpoint( live, "op" + i, false, TreeHistory.Scope.TOPOLOGY );
+        }
+        if ( ( h.undoDepth() != 3 ) || !"op9".equals( h.undoLabel() ) || ( h.estimatedBytes() > ( 3 * one ) ) ) {
+            return fail( "a budget of 3.5 snapshots should retain the newest 3, got " + h.undoDepth() );
+        }
+        final TreeHistory tiny = new TreeHistory( Integer.MAX_VALUE, 1 );
+        tiny.checkpoint( live, "op", false, TreeHistory.Scope.ALL );
+        if ( tiny.undoDepth() != 1 ) {
+            return fail( "the newest entry must be kept even if it exceeds the budget" );
+        }
+        h.undo( live, false );
+        h.clear();
+        if ( h.estimatedBytes() != 0 ) {
+            return fail( "clear() should release the estimated memory" );
+        }
+        return true;
+    }
+
+    // ---- an import (captured before, committed after it changed the data) followed by undoing it and an
+    // ---- earlier structural edit leaves the nodes with their original data; a dropped capture keeps redo
+    private static boolean importAfterStructuralEdit() {
+        final TreeHistory h = new TreeHistory();
+        final Phylogeny live = balancedTree( 8 );
+        final PhylogenyNode a = live.getExternalNodes().get( 2 );
+        final Taxonomy t = new Taxonomy();
+        t.setScientificName( "original" );
+        a.getNodeData().setTaxonomy( t );
+        h.checkpoint( live, "Swap Descendants", false, TreeHistory.Scope.TOPOLOGY );
+        live.getRoot().getDescendants().add( 0, live.getRoot().getDescendants().remove( 1 ) );
+        final Snapshot before = h.capture( live, "Import GTDB Taxonomy", true );
+        a.getNodeData().getTaxonomy().setScientificName( "imported" );
+        h.commit( before );
+        Phylogeny current = h.undo( live, true ).getPhylogeny();
+        if ( !"original".equals( a.getNodeData().getTaxonomy().getScientificName() ) ) {
+            return fail( "undo of an import should restore the original taxonomy" );
+        }
+        current = h.undo( current, true ).getPhylogeny();
+        if ( ( preorder( current ).indexOf( a ) < 0 )
+                || !"original".equals( a.getNodeData().getTaxonomy().getScientificName() ) ) {
+            return fail( "undo of the structural edit before an import must not bring the imported data back" );
+        }
+        h.redo( current, false );
+        final Snapshot dropped = h.capture( current, "Import Annotations", false );
+        if ( ( dropped == null ) || !h.canRedo() || ( h.undoDepth() != 1 ) ) {
+            return fail( "a capture which is not committed should leave the history unchanged" );
+        }
+        return true;
+    }
+
     private static Phylogeny tree( final int n ) {
         final Phylogeny phy = new Phylogeny();
         final PhylogenyNode root = new PhylogenyNode();
@@ -186,6 +379,44 @@ public final class TreeHistoryTest {
         return phy;
     }
 
+    /** A rooted (nearly) balanced binary tree with n named external nodes and branch lengths. */
+    private static Phylogeny balancedTree( final int n ) {
+        List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( int i = 0; i < n; ++i ) {
+            final PhylogenyNode leaf = new PhylogenyNode();
+            leaf.setName( "t" + i );
+            leaf.setDistanceToParent( 1 + ( i % 7 ) );
+            nodes.add( leaf );
+        }
+        while ( nodes.size() > 1 ) {
+            final List<PhylogenyNode> parents = new ArrayList<PhylogenyNode>();
+            for( int i = 0; i < nodes.size(); i += 2 ) {
+                if ( ( i + 1 ) == nodes.size() ) {
+                    parents.add( nodes.get( i ) );
+                    break;
+                }
+                final PhylogenyNode p = new PhylogenyNode();
+                p.addAsChild( nodes.get( i ) );
+                p.addAsChild( nodes.get( i + 1 ) );
+                p.setDistanceToParent( 0.5 );
+                parents.add( p );
+            }
+            nodes = parents;
+        }
+        final Phylogeny phy = new Phylogeny();
+        phy.setRoot( nodes.get( 0 ) );
+        phy.setRooted( true );
+        return phy;
+    }
+
+    private static List<PhylogenyNode> preorder( final Phylogeny phy ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNodeIterator it = phy.iteratorPreorder(); it.hasNext(); ) {
+            nodes.add( it.next() );
+        }
+        return nodes;
+    }
+
     private static boolean fail( final String message ) {
         System.out.println( "  [TreeHistoryTest] " + message );
         return false;
@@ -23,6 +23,7 @@ package org.forester.archaeopteryx;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.util.Collections;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -36,6 +37,7 @@ import javax.swing.JTextField;
 import javax.swing.ScrollPaneConstants;
 
 import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
 import org.forester.util.ForesterUtil;
 
 /**
@@ -144,7 +146,7 @@ final class TreeInfoDialog extends JDialog {
         if ( new_name.equals( old_name ) && new_desc.equals( old_desc ) ) {
             return false; // nothing changed -- no undo checkpoint, no edited flag, no repaint
         }
-        tp.pushUndoCheckpoint( "Edit Tree Info" ); // Phylogeny.copy() carries name + description, so undo restores them
+        tp.pushUndoCheckpoint( "Edit Tree Info", Collections.<PhylogenyNode> emptyList() ); // tree-level attributes only
         phy.setName( new_name );
         phy.setDescription( new_desc );
         if ( !new_name.equals( old_name ) && ( mf.getMainPanel() != null ) ) {
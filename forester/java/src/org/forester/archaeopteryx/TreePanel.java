@@ -66,8 +66,11 @@ import java.net.URLEncoder;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -294,6 +297,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
     private static final int    PULSE_INTERVAL_MS = 55;
     private static final int    PULSE_PERIOD_MS = 1300;
     private static final long   PULSE_PERIOD_NS = PULSE_PERIOD_MS * 1_000_000L; // monotonic clock base for the phase
+    private static final float  LOD_MIN_CLADE_HEIGHT = 1f; // clades less high (px) are aggregated on screen
     private static final float  HALO_BASE_RADIUS = 4f;   // radius at the trough of the pulse
     private static final float  HALO_AMP_RADIUS = 6f;    // added at the peak (so radius breathes 4 -> 10 px)
     private static final int    HALO_MIN_ALPHA = 18;
@@ -355,6 +359,13 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
     private final NodeFrame[] _node_frames = new NodeFrame[TreePanel.MAX_NODE_FRAMES];
     private JPopupMenu _node_popup_menu = null;
     private JMenuItem _node_popup_menu_items[] = null;
+    // Spatial indexes over the node marks / the branches of the current layout (see getNodeSpatialIndex): built on
+    // first use, checked against the coords once after each paint (_spatial_indexes_checked), rebuilt only on change.
+    private NodeSpatialIndex _node_spatial_index = null;
+    private NodeSpatialIndex _branch_spatial_index = null;
+    private PHYLOGENY_GRAPHICS_TYPE _branch_spatial_index_type = null;
+    private boolean _node_spatial_index_checked = false;
+    private boolean _branch_spatial_index_checked = false;
     private PhylogenyNode[] _nodes_in_preorder = null;
     private Options _options = null;
     private float _ov_max_height = 0;
@@ -438,6 +449,9 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
     // node is actually DRAWN (not all hidden under a collapse / absent from the displayed subtree), so the tree
     // never washes out with nothing emphasised. Read per-label in setColor.
     private boolean _has_visible_found_node = false;
+    // "Aggregate Sub-Pixel Clades" (level of detail): set once per paint -- true on screen when the option is on. A
+    // clade less than LOD_MIN_CLADE_HEIGHT px high then has its branches drawn as one line (node data is still painted).
+    private boolean _aggregate_sub_pixel_clades = false;
     // "Pulse Found Nodes": the EDT timer that drives the on-screen animation, the drawn halo bounds it repaints
     // (only those small regions, not the whole canvas), and whether the last screen paint drew any halo.
     private Timer   _pulse_timer;
@@ -765,10 +779,10 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                         JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            pushUndoCheckpoint("Add Node");
+            pushUndoCheckpoint("Add Node", TreeHistory.Scope.TOPOLOGY);
             phy.addAsSibling(node);
         } else {
-            pushUndoCheckpoint("Add Node");
+            pushUndoCheckpoint("Add Node", TreeHistory.Scope.TOPOLOGY);
             phy.addAsChild(node);
         }
         setNodeInPreorderToNull();
@@ -1115,7 +1129,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         if (!has_target) {
             return 0; // nothing to change -> don't checkpoint (which would clear redo) for a no-op
         }
-        pushUndoCheckpoint("Node Style");
+        pushUndoCheckpoint("Node Style", targets);
         // use the BASE (user-chosen) font, not getLargeFont() -- that is the transient, auto-shrunk DISPLAYED font,
         // so a font edit while zoomed out would otherwise pin the node to a tiny size
         final Font tree_font = getTreeFontSet().getBaseFont();
@@ -1202,7 +1216,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         if (r != JOptionPane.OK_OPTION) {
             return;
         }
-        pushUndoCheckpoint("Cut Subtree");
+        pushUndoCheckpoint("Cut Subtree", TreeHistory.Scope.TOPOLOGY);
         setNodeInPreorderToNull();
         setCopiedAndPastedNodes(null);
         setCutOrCopiedTree(_phylogeny.copy(node));
@@ -1252,7 +1266,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         } else if (r != 0) {
             return;
         }
-        pushUndoCheckpoint(node_only ? "Delete Node" : "Delete Subtree");
+        pushUndoCheckpoint(node_only ? "Delete Node" : "Delete Subtree", TreeHistory.Scope.TOPOLOGY);
         if (node_only) {
             PhylogenyMethods.removeNode(node, _phylogeny);
         } else {
@@ -4176,6 +4190,8 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                                             final int dynamic_hiding_factor,
                                             final boolean to_graphics_file,
                                             final boolean disallow_shortcutting) {
+        // inside an aggregated clade: already laid out, and its branches drawn, by paintAggregatedClade at its root
+        final boolean in_aggregated_clade = !node.isRoot() && isAggregatedClade(node.getParent());
         final boolean is_in_found_nodes = isInFoundNodes(node);
         final boolean vertical = isVerticalOrientation();
         if (node.isCollapse()) {
@@ -4195,7 +4211,9 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         }
         // Support and/or branch-length: in a vertical orientation, horizontal, to the RIGHT of the branch as
         // "support length"; in horizontal mode, confidence here and the branch length inside paintNodeData.
-        if (vertical) {
+        if (in_aggregated_clade) {
+            // no branch to label
+        } else if (vertical) {
             paintBranchDataRightVertical(g, node, to_pdf, to_graphics_file);
         } else if (isShowConfidenceValuesForNode(node)) {
             paintConfidenceValues(g, node, to_pdf, to_graphics_file);
@@ -4216,7 +4234,16 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                 min_dist = 2;
             }
         }
-        if (!node.isExternal() && !node.isCollapse()) {
+        if (in_aggregated_clade) {
+            new_x_min = 0;
+            if (!node.isExternal()) {
+                paintNodeBox(node.getXcoord(), node.getYcoord(), node, g, to_pdf, to_graphics_file);
+            }
+        } else if (isAggregatedClade(node)) {
+            new_x_min = 0; // its labels are hidden by the dynamic hiding anyway (far below a font height)
+            paintAggregatedClade(g, node, to_pdf, to_graphics_file);
+            paintNodeBox(node.getXcoord(), node.getYcoord(), node, g, to_pdf, to_graphics_file);
+        } else if (!node.isExternal() && !node.isCollapse()) {
             boolean first_child = true;
             float y2 = 0.0f;
             // "Reverse Tip Order" is a DISPLAY-ONLY vertical mirror: process the children in REVERSE order so the
@@ -4304,6 +4331,64 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         }
     }
 
+    /** Level of detail: true if {@code node} is an expanded internal node whose clade is less than
+     *  LOD_MIN_CLADE_HEIGHT px high while aggregation is on (screen paints only). Holds for all (expanded)
+     *  descendants of such a node too, since they span fewer tips. */
+    private boolean isAggregatedClade(final PhylogenyNode node) {
+        return isAggregatedClade(node, _aggregate_sub_pixel_clades, _y_distance);
+    }
+
+    /** Pure (testable) decision of {@link #isAggregatedClade(PhylogenyNode)}, for a paint with aggregation on or
+     *  off and {@code y_distance} px between neighbouring tips. */
+    static boolean isAggregatedClade(final PhylogenyNode node, final boolean aggregate, final float y_distance) {
+        return aggregate && !node.isExternal() && !node.isCollapse()
+                && ((y_distance * node.getNumberOfExternalNodes()) < LOD_MIN_CLADE_HEIGHT);
+    }
+
+    /** Level of detail: sets the coords of all descendants of the aggregated clade {@code node} -- exactly as the
+     *  per-node loop of paintNodeRectangular would (so hit-testing and the overlays still see every node) -- then
+     *  draws the branches of the whole clade as ONE line from {@code node} to its deepest descendant: the clade is
+     *  under a pixel high, so its branches would all land on that row anyway. The node boxes, found-node marks,
+     *  sequences and renderable data of the descendants are still painted by paintNodeRectangular. Iterative (deep
+     *  trees). */
+    private void paintAggregatedClade(final Graphics2D g, final PhylogenyNode node, final boolean to_pdf,
+                                      final boolean to_graphics_file) {
+        final boolean flip = getOptions().isReverseTipOrder();
+        float max_x = node.getXcoord();
+        final Deque<PhylogenyNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            final PhylogenyNode n = stack.pop();
+            final int child_count = n.getNumberOfDescendants();
+            float y2 = 0.0f;
+            for (int i = 0; i < child_count; ++i) {
+                final PhylogenyNode child_node = n.getChildNode(flip ? ((child_count - 1) - i) : i);
+                final int factor_x = n.getNumberOfExternalNodes() - child_node.getNumberOfExternalNodes();
+                if (i == 0) {
+                    y2 = n.getYcoord() - (_y_distance * factor_x);
+                } else {
+                    y2 += _y_distance * child_node.getNumberOfExternalNodes();
+                }
+                final float new_x = calculateBranchLengthToParent(child_node, factor_x) + n.getXcoord();
+                child_node.setXcoord(new_x);
+                child_node.setYcoord(y2);
+                y2 += _y_distance * child_node.getNumberOfExternalNodes();
+                if (new_x > max_x) {
+                    max_x = new_x;
+                }
+                if (!child_node.isExternal() && !child_node.isCollapse()) {
+                    stack.push(child_node);
+                }
+            }
+        }
+        final Rectangle2D log_vis = logicalVisibleRect();
+        if ((log_vis == null) || ((node.getYcoord() >= (log_vis.getMinY() - 1))
+                && (node.getYcoord() <= (log_vis.getMaxY() + 1)))) {
+            assignGraphicsForBranchWithColorForParentBranch(node, false, g, to_pdf, to_graphics_file);
+            drawLine(node.getXcoord(), node.getYcoord(), max_x, node.getYcoord(), g);
+        }
+    }
+
     /** Draws an external tip's renderable domain architecture in a VERTICAL orientation: the boxes ride the rotation R
      *  into a thin vertical track just past the tilted tip label (domain-name labels suppressed -- they would collide
      *  with neighbouring tips' tracks). Per tip at its own depth, so the track hangs off the tip. No-op unless domains
@@ -6436,10 +6521,10 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                         JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            pushUndoCheckpoint("Paste Subtree");
+            pushUndoCheckpoint("Paste Subtree", TreeHistory.Scope.TOPOLOGY);
             buffer_phy.addAsSibling(node);
         } else {
-            pushUndoCheckpoint("Paste Subtree");
+            pushUndoCheckpoint("Paste Subtree", TreeHistory.Scope.TOPOLOGY);
             if ((node.getNumberOfExternalNodes() == 1) && node.isRoot()) {
                 need_to_show_whole = true;
                 _phylogeny = buffer_phy;
@@ -8814,20 +8899,45 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
      * async data tools (Fetch, Infer) in the {@code tools} sub-package can checkpoint at their EDT commit.
      */
     public void pushUndoCheckpoint(final String label) {
+        pushUndoCheckpoint(label, TreeHistory.Scope.ALL);
+    }
+
+    /**
+     * As {@link #pushUndoCheckpoint(String)}, for an operation which changes no more than {@code scope}: a
+     * structural operation (re-root, sort, delete, ...) need not copy the node data of the whole tree.
+     */
+    void pushUndoCheckpoint(final String label, final TreeHistory.Scope scope) {
+        if ((_phylogeny != null) && !_phylogeny.isEmpty()) {
+            _history.checkpoint(_phylogeny, label, isEdited(), scope);
+            notifyEditMenu();
+        }
+    }
+
+    /**
+     * As {@link #pushUndoCheckpoint(String)}, for an operation which changes only the node and branch data of
+     * {@code nodes} (none: only the tree-level attributes, such as the name).
+     */
+    void pushUndoCheckpoint(final String label, final Collection<PhylogenyNode> nodes) {
         if ((_phylogeny != null) && !_phylogeny.isEmpty()) {
-            _history.checkpoint(_phylogeny, label, isEdited());
+            _history.checkpoint(_phylogeny, label, isEdited(), nodes);
             notifyEditMenu();
         }
     }
 
     /**
-     * Records an already-captured pre-mutation state as an undo checkpoint — for operations that must run
-     * first to know whether they actually changed anything (e.g. import), so they can checkpoint only on a
-     * real change instead of leaving a spurious no-op entry. {@code pre_state} must be an independent copy.
+     * Records the current tree state (all node and branch data) under {@code label} without entering it into the
+     * undo history -- for operations that must run first to know whether they actually changed anything (e.g.
+     * import): pass the result to {@link #commitUndoCheckpoint} on a real change, and just drop it otherwise, so
+     * no spurious no-op entry is left. Returns null for an empty tree.
      */
-    void pushUndoSnapshot(final Phylogeny pre_state, final boolean was_edited, final String label) {
-        if ((pre_state != null) && !pre_state.isEmpty()) {
-            _history.checkpoint(pre_state, label, was_edited);
+    TreeHistory.Snapshot captureUndoCheckpoint(final String label) {
+        return _history.capture(_phylogeny, label, isEdited());
+    }
+
+    /** Enters a checkpoint from {@link #captureUndoCheckpoint} into the undo history. */
+    void commitUndoCheckpoint(final TreeHistory.Snapshot s) {
+        if (s != null) {
+            _history.commit(s);
             notifyEditMenu();
         }
     }
@@ -9527,10 +9637,10 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         final int alpha = (int) Math.round(HALO_MIN_ALPHA + ((HALO_MAX_ALPHA - HALO_MIN_ALPHA) * sin));
         final int max_r = Math.round(HALO_BASE_RADIUS + HALO_AMP_RADIUS); // repaint region uses the peak radius
         final Color saved = g.getColor();
-        // iterate the phylogeny directly (not _nodes_in_preorder, which is built ONLY in the rectangular branch and
-        // is null for a tree opened straight into a radial layout) so the halos work in every layout
-        for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext(); ) {
-            final PhylogenyNode node = it.next();
+        // iterate the phylogeny (not _nodes_in_preorder, which is built ONLY in the rectangular branch and is null for
+        // a tree opened straight into a radial layout) so the halos work in every layout -- on screen only the nodes
+        // whose halo can reach the visible region
+        for (final PhylogenyNode node : nodesForOverlay(to_pdf, to_graphics_file, max_r + 1, max_r + 1)) {
             if (!isInFoundNodes(node) || isHiddenUnderCollapse(node)) {
                 continue;
             }
@@ -9801,7 +9911,9 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         final Color saved = g.getColor();
         g.setColor(((to_pdf || to_graphics_file) && getOptions().isPrintBlackAndWhite()) ? HPD_BAR_COLOR_BW
                 : HPD_BAR_COLOR);
-        for (final PhylogenyNode node : _nodes_in_preorder) {
+        // the bars extend along the time (x) axis, so cull by y only (on screen)
+        for (final PhylogenyNode node : nodesForOverlay(to_pdf, to_graphics_file, Double.POSITIVE_INFINITY,
+                Math.max(HPD_BAR_HEIGHT, SPINDLE_HALF_HEIGHT) + 1)) {
             if (node.isExternal() || isHiddenUnderCollapse(node) || !node.getNodeData().isHasDate()) {
                 continue;
             }
@@ -9874,7 +9986,8 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         g.setColor(((to_pdf || to_graphics_file) && getOptions().isPrintBlackAndWhite()) ? FOSSIL_BAR_COLOR_BW
                 : FOSSIL_BAR_COLOR);
         g.setStroke(STROKE_1); // thin, deterministic end-cap ticks (independent of the ambient branch stroke)
-        for (final PhylogenyNode node : _nodes_in_preorder) {
+        for (final PhylogenyNode node : nodesForOverlay(to_pdf, to_graphics_file, Double.POSITIVE_INFINITY,
+                Math.max(FOSSIL_BAR_HEIGHT, FOSSIL_BAR_CAP) + 1)) {
             if (!node.isExternal() || isHiddenUnderCollapse(node) || !node.getNodeData().isHasDate()) {
                 continue; // fossil RANGE bars are for TIPS (external nodes)
             }
@@ -9981,8 +10094,8 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         // varies run to run) and look up each node's cached distribution -- so overlapping-pie z-order is reproducible
         // in exports. Works in every layout: each node's device coords are set by whichever layout ran (the cache is
         // used only to avoid re-parsing, NOT for iteration; _nodes_in_preorder is built only in the rectangular branch).
-        for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext();) {
-            final PhylogenyNode node = it.next();
+        // On screen only the pies that can reach the visible region are visited.
+        for (final PhylogenyNode node : nodesForOverlay(to_pdf, to_graphics_file, r + 1, r + 1)) {
             final List<TreePanelUtil.StateProbability> dist = _ancestral_pie_dist.get(node);
             if (dist == null) {
                 continue; // no distribution for this node
@@ -10033,12 +10146,13 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
      *  path draws it inside paintNodeData, which the radial paths don't use. Mirrors the rectangular gate exactly:
      *  Color-by covers external + collapsed nodes, Size-by covers external nodes; both require "Show External Data";
      *  and a pie node is skipped (the pie IS the marker there). Dispatched after the radial recursion has set coords. */
-    private void paintRadialPropertyDots(final Graphics2D g) {
+    private void paintRadialPropertyDots(final Graphics2D g, final boolean to_pdf, final boolean to_graphics_file) {
         if ((!isColorByProperty() && !isSizeByProperty()) || !getControlPanel().isShowExternalData()) {
             return;
         }
-        for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext();) {
-            final PhylogenyNode node = it.next();
+        // a Size-by dot is at most PropertySizeScale's 3x the base dot across
+        final double max_r = ((3 * baseDotSize()) / 2) + 1;
+        for (final PhylogenyNode node : nodesForOverlay(to_pdf, to_graphics_file, max_r, max_r)) {
             // skip nodes hidden under a collapse AND collapsed clade-roots themselves: radial layouts don't position
             // collapsed nodes, so a dot there would be a phantom at stale coords
             if (isHiddenUnderCollapse(node) || node.isCollapse()) {
@@ -10058,7 +10172,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
      *  rectangular family), ancestral-state pies, the translucent hover preview, and the pulsing found-node halos.
      *  Kept as one method so a future radial overlay is added once, not in two places that can drift apart. */
     private void paintRadialOverlays(final Graphics2D g, final boolean to_pdf, final boolean to_graphics_file) {
-        paintRadialPropertyDots(g); // Color-by / Size-by tip dots (rectangular draws them in the node loop)
+        paintRadialPropertyDots(g, to_pdf, to_graphics_file); // Color-by / Size-by tip dots (rectangular draws them in the node loop)
         paintAncestralPies(g, to_pdf, to_graphics_file); // per-node state pies
         paintHoverPreview(g, !(to_pdf || to_graphics_file)); // translucent select/deselect hover preview
         paintFoundNodeHalos(g, to_pdf, to_graphics_file); // pulsing (screen) / static-glow (export) hit halos
@@ -10595,8 +10709,8 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         }
         // in a vertical orientation the node coords are logical (un-rotated); map the device click back to that space
         final Point2D.Double p = toLogicalPoint(x, y);
-        for (final PhylogenyNodeIterator iter = _phylogeny.iteratorPostorder(); iter.hasNext(); ) {
-            final PhylogenyNode node = iter.next();
+        // only the nodes whose (padded) mark box contains p, still in postorder (so the same node wins as in a walk)
+        for (final PhylogenyNode node : getNodeSpatialIndex().findInPostorder(p.x, p.y, p.x, p.y)) {
             // size the click target to the mark ACTUALLY drawn (per-node when styled) so a large custom node shape
             // is clickable across its full extent, not just the default-sized box
             final int half_box_size_plus_wiggle = effectiveNodeHalfBoxSize(node) + WIGGLE;
@@ -10643,8 +10757,9 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         final double root_y = circular ? _phylogeny.getRoot().getYcoord() : 0;
         PhylogenyNode best = null;
         double best_dist = tol;
-        for (final PhylogenyNodeIterator iter = _phylogeny.iteratorPostorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
+        // only the branches whose bounding box is within tol of the click, in postorder (ties go to the same node)
+        for (final PhylogenyNode n : getBranchSpatialIndex(gt).findInPostorder(click.x - tol, click.y - tol,
+                click.x + tol, click.y + tol)) {
             if (n.isCollapse()) {
                 continue; // a collapsed clade's tips are hidden (not individually selectable)
             }
@@ -10679,6 +10794,126 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
         return best;
     }
 
+    /** The spatial index over the node marks of the current layout: each node's box is the click target of
+     *  {@link #findNode} (the drawn mark plus WIGGLE). Built on first use; after a paint it is compared, once, with
+     *  the boxes recomputed from the new coords (O(n), no allocation or sort) and rebuilt only if the layout actually
+     *  changed -- so the hit-tests between paints and the per-node overlay passes cost O(log n + hits), not O(n). */
+    private NodeSpatialIndex getNodeSpatialIndex() {
+        if (!_node_spatial_index_checked || (_node_spatial_index == null)
+                || (_node_spatial_index.getRoot() != _phylogeny.getRoot())) {
+            if (!isSpatialIndexCurrent(_node_spatial_index, null)) {
+                _node_spatial_index = createSpatialIndex(null);
+            }
+            _node_spatial_index_checked = true;
+        }
+        return _node_spatial_index;
+    }
+
+    /** The spatial index over the branches (as drawn in layout {@code gt}, see {@link #findBranch}) of the current
+     *  layout; kept current like {@link #getNodeSpatialIndex}. */
+    private NodeSpatialIndex getBranchSpatialIndex(final PHYLOGENY_GRAPHICS_TYPE gt) {
+        if (!_branch_spatial_index_checked || (_branch_spatial_index == null) || (_branch_spatial_index_type != gt)
+                || (_branch_spatial_index.getRoot() != _phylogeny.getRoot())) {
+            if ((_branch_spatial_index_type != gt) || !isSpatialIndexCurrent(_branch_spatial_index, gt)) {
+                _branch_spatial_index = createSpatialIndex(gt);
+                _branch_spatial_index_type = gt;
+            }
+            _branch_spatial_index_checked = true;
+        }
+        return _branch_spatial_index;
+    }
+
+    private NodeSpatialIndex createSpatialIndex(final PHYLOGENY_GRAPHICS_TYPE gt) {
+        final PhylogenyNode[] nodes = new PhylogenyNode[_phylogeny.getNodeCount()];
+        int i = 0;
+        for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext(); ) {
+            nodes[i++] = it.next();
+        }
+        final float[] boxes = new float[4 * nodes.length];
+        for (i = 0; i < nodes.length; ++i) {
+            calcSpatialIndexBox(nodes[i], gt, boxes, 4 * i);
+        }
+        return new NodeSpatialIndex(nodes, boxes);
+    }
+
+    private boolean isSpatialIndexCurrent(final NodeSpatialIndex index, final PHYLOGENY_GRAPHICS_TYPE gt) {
+        if (index == null) {
+            return false;
+        }
+        final float[] box = new float[4];
+        int i = 0;
+        for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            calcSpatialIndexBox(n, gt, box, 0);
+            if (!index.isSame(i++, n, box)) {
+                return false;
+            }
+        }
+        return i == index.getNumberOfNodes();
+    }
+
+    /** Writes the spatial-index box of {@code n} (min x, min y, max x, max y) to {@code box} at {@code offset}: with
+     *  {@code gt} null the click target of its mark (as tested by {@link #findNode}), otherwise the bounds of the
+     *  branch geometry {@link #findBranch} tests for it in layout {@code gt} (the leg to the parent, plus the fork
+     *  connector of an internal node in RECTANGULAR), padded by a pixel against rounding. */
+    private void calcSpatialIndexBox(final PhylogenyNode n, final PHYLOGENY_GRAPHICS_TYPE gt, final float[] box,
+                                     final int offset) {
+        if (gt == null) {
+            final int half_box_size_plus_wiggle = effectiveNodeHalfBoxSize(n) + WIGGLE;
+            box[offset] = n.getXcoord() - half_box_size_plus_wiggle;
+            box[offset + 1] = n.getYcoord() - half_box_size_plus_wiggle;
+            box[offset + 2] = n.getXcoord() + half_box_size_plus_wiggle;
+            box[offset + 3] = n.getYcoord() + half_box_size_plus_wiggle;
+            return;
+        }
+        double min_x = n.getXcoord(), max_x = min_x, min_y = n.getYcoord(), max_y = min_y;
+        if (!n.isRoot()) {
+            final PhylogenyNode p = n.getParent();
+            final double a_x, a_y;
+            if (gt == PHYLOGENY_GRAPHICS_TYPE.CIRCULAR) {
+                // the radial leg ends on the parent's radius, at n's angle (as in findBranch)
+                final double root_x = _phylogeny.getRoot().getXcoord(), root_y = _phylogeny.getRoot().getYcoord();
+                final double angle = Math.atan2(n.getYcoord() - root_y, n.getXcoord() - root_x);
+                final double pdx = p.getXcoord() - root_x, pdy = p.getYcoord() - root_y;
+                final double parent_radius = Math.sqrt((pdx * pdx) + (pdy * pdy));
+                a_x = root_x + (Math.cos(angle) * parent_radius);
+                a_y = root_y + (Math.sin(angle) * parent_radius);
+            } else {
+                a_x = p.getXcoord();
+                a_y = (gt == PHYLOGENY_GRAPHICS_TYPE.RECTANGULAR) ? n.getYcoord() : p.getYcoord();
+            }
+            min_x = Math.min(min_x, a_x);
+            max_x = Math.max(max_x, a_x);
+            min_y = Math.min(min_y, a_y);
+            max_y = Math.max(max_y, a_y);
+        }
+        if ((gt == PHYLOGENY_GRAPHICS_TYPE.RECTANGULAR) && !n.isExternal()) {
+            min_y = Math.min(min_y, Math.min(n.getFirstChildNode().getYcoord(), n.getLastChildNode().getYcoord()));
+            max_y = Math.max(max_y, Math.max(n.getFirstChildNode().getYcoord(), n.getLastChildNode().getYcoord()));
+        }
+        box[offset] = (float) min_x - 1;
+        box[offset + 1] = (float) min_y - 1;
+        box[offset + 2] = (float) max_x + 1;
+        box[offset + 3] = (float) max_y + 1;
+    }
+
+    /** The nodes (in preorder) a per-node overlay pass has to visit: on screen only those within {@code pad_x} /
+     *  {@code pad_y} of the visible region (from the node spatial index), so the pass is proportional to what is
+     *  visible rather than to the size of the tree; in an export (or without a viewport) all nodes. */
+    private List<PhylogenyNode> nodesForOverlay(final boolean to_pdf, final boolean to_graphics_file,
+                                                final double pad_x, final double pad_y) {
+        final Rectangle2D vis = (!to_graphics_file && !to_pdf) ? logicalVisibleRect() : null;
+        if (vis == null) {
+            final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+            for (final PhylogenyNodeIterator it = _phylogeny.iteratorPreorder(); it.hasNext(); ) {
+                nodes.add(it.next());
+            }
+            return nodes;
+        }
+        return getNodeSpatialIndex().findInPreorder(vis.getMinX() - pad_x, vis.getMinY() - pad_y,
+                vis.getMaxX() + pad_x, vis.getMaxY() + pad_y);
+    }
+
     /** True if a strict ancestor of {@code n} is collapsed (so {@code n} is not currently drawn). */
     private static boolean isHiddenUnderCollapse(final PhylogenyNode n) {
         PhylogenyNode p = n.getParent();
@@ -11103,7 +11338,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                     .showMessageDialog(this, "This is not rerootable", "Not rerootable", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        pushUndoCheckpoint("Midpoint-Root");
+        pushUndoCheckpoint("Midpoint-Root", TreeHistory.Scope.BRANCHES);
         setNodeInPreorderToNull();
         setWaitCursor();
         PhylogenyMethods.midpointRoot(_phylogeny);
@@ -11123,7 +11358,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                     .showMessageDialog(this, "This is not rerootable", "Not rerootable", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        pushUndoCheckpoint("MAD-Root");
+        pushUndoCheckpoint("MAD-Root", TreeHistory.Scope.BRANCHES);
         setNodeInPreorderToNull();
         setWaitCursor();
         PhylogenyMethods.madRoot(_phylogeny);
@@ -11665,6 +11900,10 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
             _found_halo_bounds.clear();
             _has_visible_found_halo = false;
         }
+        _aggregate_sub_pixel_clades = !to_pdf && !to_graphics_file && getOptions().isAggregateSubPixelClades();
+        // this paint (re)sets the node coords: the spatial indexes are checked against them on their next use
+        _node_spatial_index_checked = false;
+        _branch_spatial_index_checked = false;
         if (_control_panel.isShowSequenceRelations()) {
             _query_sequence = _control_panel.getSelectedQuerySequence();
         }
@@ -12110,7 +12349,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                     JOptionPane.WARNING_MESSAGE);
             return;
         }
-        pushUndoCheckpoint("Re-Root");
+        pushUndoCheckpoint("Re-Root", TreeHistory.Scope.BRANCHES);
         if (!node.isRoot()) {
             // a different rooting was chosen manually; any MAD root support is now stale
             PhylogenyMethods.removeMadConfidences(getPhylogeny());
@@ -12612,6 +12851,8 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
 
     final void setNodeInPreorderToNull() {
         _nodes_in_preorder = null;
+        _node_spatial_index = null;
+        _branch_spatial_index = null;
         // a tree-structure change (navigation, collapse, delete, ...) invalidates a branch-hover preview whose
         // node may now be detached/relaid-out; this is the shared chokepoint for those changes
         _hover_node = null;
@@ -12673,7 +12914,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
 
     final void sortDescendants(final PhylogenyNode node) {
         if (!node.isExternal()) {
-            pushUndoCheckpoint("Sort Descendants");
+            pushUndoCheckpoint("Sort Descendants", TreeHistory.Scope.TOPOLOGY);
             DESCENDANT_SORT_PRIORITY pri = DESCENDANT_SORT_PRIORITY.NODE_NAME;
             if (getControlPanel().isShowTaxonomyScientificNames() || getControlPanel().isShowTaxonomyCode()) {
                 pri = DESCENDANT_SORT_PRIORITY.TAXONOMY;
@@ -12798,7 +13039,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
                 || getControlPanel().isShowGeneNames()) {
             pri = DESCENDANT_SORT_PRIORITY.SEQUENCE;
         }
-        pushUndoCheckpoint("Order Subtree");
+        pushUndoCheckpoint("Order Subtree", TreeHistory.Scope.TOPOLOGY);
         PhylogenyMethods.orderAppearanceX(node, true, pri);
         setNodeInPreorderToNull();
         getPhylogeny().externalNodesHaveChanged();
@@ -12822,7 +13063,7 @@ public final class TreePanel extends JPanel implements ActionListener, MouseWhee
             return;
         }
         if (!node.isExternal()) {
-            pushUndoCheckpoint("Swap Descendants");
+            pushUndoCheckpoint("Swap Descendants", TreeHistory.Scope.TOPOLOGY);
             node.swapChildren();
             setNodeInPreorderToNull();
             _phylogeny.externalNodesHaveChanged();
@@ -23,6 +23,8 @@ package org.forester.archaeopteryx;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
@@ -55,6 +57,7 @@ import org.forester.util.ForesterUtil;
 import org.forester.util.SequenceAccessionTools;
 import org.forester.util.TaxonomyUtil;
 import org.forester.ws.seqdb.AccessionAwareLineageService;
+import org.forester.ws.seqdb.NcbiTaxdumpLineageService;
 import org.forester.ws.seqdb.NcbiTaxonomyLineageService;
 import org.forester.ws.seqdb.TaxonLineage;
 import org.forester.ws.seqdb.TaxonomicLineageService;
@@ -946,11 +949,25 @@ public class TreePanelUtil {
      * taxonomy database cannot place -- are resolved to their organism (taxonomy-only; the full protein
      * record is never cached) first. Trees with UniProt and/or mixed NCBI/UniProt identifiers are very
      * common.
+     *
+     * <p>If the {@value NcbiTaxdumpLineageService#TAXDUMP_DIR_PROPERTY} system property names a directory with
+     * a local NCBI taxdump, taxa are resolved offline from (a memory-mapped index of) it instead.
      */
     final static synchronized TaxonomicLineageService getDefaultLineageService() {
         if ( _default_lineage_service == null ) {
-            _default_lineage_service = new AccessionAwareLineageService( NcbiTaxonomyLineageService.getShared(),
-                                                                         new WebOrganismSource() );
+            TaxonomicLineageService taxa = NcbiTaxonomyLineageService.getShared();
+            final String taxdump_dir = System.getProperty( NcbiTaxdumpLineageService.TAXDUMP_DIR_PROPERTY );
+            if ( !ForesterUtil.isEmpty( taxdump_dir ) ) {
+                try {
+                    taxa = NcbiTaxdumpLineageService.open( new File( taxdump_dir ) );
+                }
+                catch ( final IOException e ) {
+                    ForesterUtil.printWarningMessage( AptxConstants.PRG_NAME,
+                                                      "could not use the NCBI taxdump in [" + taxdump_dir + "]: "
+                                                              + e.getLocalizedMessage() );
+                }
+            }
+            _default_lineage_service = new AccessionAwareLineageService( taxa, new WebOrganismSource() );
         }
         return _default_lineage_service;
     }
@@ -21,8 +21,15 @@
 package org.forester.clade_analysis;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +89,24 @@ public final class AnalysisMulti {
                                       final Pattern query,
                                       final String separator)
             throws UserException {
+        return execute(p, query, separator, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Places every query (a node whose name matches {@code query}) by the greatest common prefix of the
+     * reference (non-query) external nodes around it. The prefixes of all nodes are computed in a single
+     * post-order pass first, so each query only combines those of a few nodes (instead of collecting and
+     * comparing the names of all external descendants of its grandparent), on {@code threads} threads.
+     * The results do not depend on the number of threads.
+     */
+    public static ResultMulti execute(final Phylogeny p,
+                                      final Pattern query,
+                                      final String separator,
+                                      final int threads)
+            throws UserException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("number of threads must be at least one");
+        }
         if (ForesterUtil.isEmpty(separator)) {
             throw new UserException("separator must not be null or empty");
         }
@@ -91,14 +116,72 @@ public final class AnalysisMulti {
         res.setQueryNamePrefix(obtainQueryPrefix(query, qnodes));
         res.setTotalNumberOfMatches(qnodes.size());
         res.setReferenceTreeNumberOfExternalNodes(p.getNumberOfExternalNodes() - qnodes.size());
-        for (int i = 0; i < qnodes.size(); ++i) {
-            final PhylogenyNode qnode = qnodes.get(i);
+        final Map<PhylogenyNode, CommonPrefix> prefixes = calcCommonPrefixes(p, query, separator);
+        final Placement[] placements = new Placement[qnodes.size()];
+        final int n = Math.max(1, Math.min(threads, qnodes.size() / 1000));
+        final int chunk = (qnodes.size() + n - 1) / Math.max(1, n);
+        final List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < n; ++t) {
+            final int from = t * chunk;
+            final int to = Math.min(qnodes.size(), from + chunk);
+            tasks.add(() -> {
+                for (int i = from; i < to; ++i) {
+                    placements[i] = place(qnodes.get(i), prefixes, query, separator);
+                }
+                return null;
+            });
+        }
+        if (n == 1) {
+            try {
+                tasks.get(0).call();
+            } catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(n);
+            try {
+                for (final Future<Void> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UserException("clade analysis interrupted");
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        // in query order, so that the results (sums of confidences) are those of a sequential analysis
+        for (final Placement placement : placements) {
+            if (placement._failure instanceof UserException) {
+                throw (UserException) placement._failure;
+            } else if (placement._failure != null) {
+                throw (RuntimeException) placement._failure;
+            }
+            res.addGreatestCommonPrefix(placement._prefix, placement._confidence);
+            if (placement._prefix_up != null) {
+                res.addGreatestCommonPrefixUp(placement._prefix_up, placement._confidence);
+                res.addGreatestCommonPrefixDown(placement._prefix_down, placement._confidence);
+            }
+        }
+        res.analyze();
+        return res;
+    }
+
+    private static Placement place(final PhylogenyNode qnode,
+                                   final Map<PhylogenyNode, CommonPrefix> prefixes,
+                                   final Pattern query,
+                                   final String separator) {
+        final Placement placement = new Placement();
+        try {
             if (qnode.isRoot()) {
                 throw new UserException("ERROR: query \"" + query + "\" is root");
             }
             if (qnode.getParent().isRoot()) {
-                res.addGreatestCommonPrefix(UNKNOWN, parseConfidence(query, qnode));
-                continue;
+                placement._prefix = UNKNOWN;
+                placement._confidence = parseConfidence(query, qnode);
+                return placement;
             }
             PhylogenyNode qnode_p = qnode.getParent();
             PhylogenyNode qnode_pp = qnode.getParent().getParent();
@@ -109,36 +192,57 @@ public final class AnalysisMulti {
             while (qnode_pp.getNumberOfDescendants() == 1) {
                 qnode_pp = qnode_pp.getParent();
             }
-            final List<String> qnode_ext_nodes_names = new ArrayList<String>();
-            for (final PhylogenyNode qnode_ext_node : qnode_pp.getAllExternalDescendants()) {
-                final String name = qnode_ext_node.getName();
-                final Matcher m = query.matcher(name);
-                if (!m.find()) {
-                    qnode_ext_nodes_names.add(name);
+            final String greatest_common_prefix = toPrefix(prefixes.get(qnode_pp), separator);
+            placement._confidence = parseConfidence(query, qnode);
+            placement._prefix = ForesterUtil.isEmpty(greatest_common_prefix) ? UNKNOWN : greatest_common_prefix;
+            final String greatest_common_prefix_up = analyzeSiblings(qnode_p, qnode_pp, separator, prefixes);
+            placement._prefix_up = ForesterUtil.isEmpty(greatest_common_prefix_up) ? UNKNOWN
+                    : greatest_common_prefix_up;
+            final String greatest_common_prefix_down = analyzeSiblings(qnode, qnode_p, separator, prefixes);
+            placement._prefix_down = ForesterUtil.isEmpty(greatest_common_prefix_down) ? UNKNOWN
+                    : greatest_common_prefix_down;
+        } catch (final UserException | RuntimeException e) {
+            placement._failure = e;
+        }
+        return placement;
+    }
+
+    /**
+     * The greatest common prefix of the names of the reference (non-query) external nodes below each
+     * node (null if there are none), in one post-order pass.
+     */
+    private static Map<PhylogenyNode, CommonPrefix> calcCommonPrefixes(final Phylogeny p,
+                                                                       final Pattern query,
+                                                                       final String separator) {
+        final Map<PhylogenyNode, CommonPrefix> prefixes = new IdentityHashMap<PhylogenyNode, CommonPrefix>();
+        final Pattern split = Pattern.compile(Pattern.quote(separator));
+        for (final PhylogenyNodeIterator it = p.iteratorPostorder(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            if (n.isExternal()) {
+                final String name = n.getName();
+                if (!query.matcher(name).find()) {
+                    final String[] levels = split.split(name);
+                    prefixes.put(n, new CommonPrefix(levels, levels.length));
+                } else {
+                    prefixes.put(n, null);
                 }
-            }
-            final String greatest_common_prefix = ForesterUtil.greatestCommonPrefix(qnode_ext_nodes_names, separator);
-            final double conf = parseConfidence(query, qnode);
-            if (!ForesterUtil.isEmpty(greatest_common_prefix)) {
-                res.addGreatestCommonPrefix(greatest_common_prefix, conf);
-            } else {
-                res.addGreatestCommonPrefix(UNKNOWN, conf);
-            }
-            final String greatest_common_prefix_up = analyzeSiblings(qnode_p, qnode_pp, separator, query);
-            if (!ForesterUtil.isEmpty(greatest_common_prefix_up)) {
-                res.addGreatestCommonPrefixUp(greatest_common_prefix_up, conf);
-            } else {
-                res.addGreatestCommonPrefixUp(UNKNOWN, conf);
-            }
-            final String greatest_common_prefix_down = analyzeSiblings(qnode, qnode_p, separator, query);
-            if (!ForesterUtil.isEmpty(greatest_common_prefix_down)) {
-                res.addGreatestCommonPrefixDown(greatest_common_prefix_down, conf);
             } else {
-                res.addGreatestCommonPrefixDown(UNKNOWN, conf);
+                CommonPrefix prefix = null;
+                for (int i = 0; i < n.getNumberOfDescendants(); ++i) {
+                    prefix = CommonPrefix.combine(prefix, prefixes.get(n.getChildNode(i)));
+                }
+                prefixes.put(n, prefix);
             }
         }
-        res.analyze();
-        return res;
+        return prefixes;
+    }
+
+    /** As ForesterUtil.greatestCommonPrefix(List, String) of the names summarized by prefix. */
+    private static String toPrefix(final CommonPrefix prefix, final String separator) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("list of strings is empty");
+        }
+        return prefix.toString(separator);
     }
 
     private static double parseConfidence(final Pattern query, final PhylogenyNode n) throws UserException {
@@ -217,24 +321,16 @@ public final class AnalysisMulti {
     private final static String analyzeSiblings(final PhylogenyNode child,
                                                 final PhylogenyNode parent,
                                                 final String separator,
-                                                final Pattern query) {
+                                                final Map<PhylogenyNode, CommonPrefix> prefixes) {
         final int child_index = child.getChildNodeIndex();
-        final List<String> ext_nodes_names = new ArrayList<String>();
+        CommonPrefix prefix = null;
         final List<PhylogenyNode> descs = parent.getDescendants();
         for (int i = 0; i < descs.size(); ++i) {
             if (i != child_index) {
-                final PhylogenyNode d = descs.get(i);
-                for (final PhylogenyNode n : d.getAllExternalDescendants()) {
-                    final String name = n.getName();
-                    final Matcher m = query.matcher(name);
-                    if (!m.find()) {
-                        ext_nodes_names.add(name);
-                    }
-                }
+                prefix = CommonPrefix.combine(prefix, prefixes.get(descs.get(i)));
             }
         }
-        final String greatest_common_prefix = ForesterUtil.greatestCommonPrefix(ext_nodes_names, separator);
-        return greatest_common_prefix;
+        return toPrefix(prefix, separator);
     }
 
     public final static void performMapping(final Pattern pattern,
@@ -366,4 +462,55 @@ public final class AnalysisMulti {
             System.out.println();
         }
     }
+
+    /** The placement of one query; the prefixes up and down are null for a query below the root. */
+    private static final class Placement {
+
+        String _prefix;
+        String _prefix_up;
+        String _prefix_down;
+        double _confidence;
+        Exception _failure;
+    }
+
+    /**
+     * The greatest common prefix of some names: the first {@code _length} levels (separated by the
+     * separator) of one of them.
+     */
+    private static final class CommonPrefix {
+
+        private final String[] _levels;
+        private final int _length;
+
+        CommonPrefix(final String[] levels, final int length) {
+            _levels = levels;
+            _length = length;
+        }
+
+        /** The common prefix of the names of a and b (either may be null, for no names). */
+        static CommonPrefix combine(final CommonPrefix a, final CommonPrefix b) {
+            if (a == null) {
+                return b;
+            } else if (b == null) {
+                return a;
+            }
+            final int max = Math.min(a._length, b._length);
+            int i = 0;
+            while ((i < max) && a._levels[i].equals(b._levels[i])) {
+                ++i;
+            }
+            return i == a._length ? a : new CommonPrefix(a._levels, i);
+        }
+
+        String toString(final String separator) {
+            final StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < _length; ++i) {
+                if (i > 0) {
+                    sb.append(separator);
+                }
+                sb.append(_levels[i]);
+            }
+            return sb.toString();
+        }
+    }
 }
@@ -24,19 +24,36 @@ import org.forester.io.parsers.PhylogenyParser;
 import org.forester.io.parsers.nhx.NHXParser;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.factories.ParserBasedPhylogenyFactory;
 import org.forester.phylogeny.factories.PhylogenyFactory;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
 import org.forester.util.ForesterUtil;
+import org.forester.util.UserException;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.regex.Pattern;
 
+/**
+ * Tests for the clade analyses. main() runs them, or, given a number of reference external nodes and of
+ * queries, times AnalysisMulti for a random tree of that size (and compares it to a straightforward,
+ * per-query analysis unless that would take too long).
+ */
 public class CladeAnalysisTest {
 
     private final static String PATH_TO_TEST_DATA = System.getProperty("user.dir") + ForesterUtil.getFileSeparator()
             + "forester/test_data" + ForesterUtil.getFileSeparator();
 
-    public static void main(final String[] args) {
+    public static void main(final String[] args) throws UserException {
+        if (args.length > 0) {
+            benchmark(Integer.parseInt(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 2 * Integer.parseInt(args[0]));
+            return;
+        }
         boolean failed = false;
         if (!testCladeAnalysis1()) {
             System.out.println("Clade analysis 1 failed");
@@ -62,6 +79,10 @@ public class CladeAnalysisTest {
             System.out.println("Clade analysis 6 failed");
             failed = true;
         }
+        if (!testCladeAnalysis7()) {
+            System.out.println("Clade analysis 7 failed");
+            failed = true;
+        }
         if (!failed) {
             System.out.println("OK");
         } else {
@@ -82,6 +103,9 @@ public class CladeAnalysisTest {
         if (!testCladeAnalysis4()) {
             return false;
         }
+        if (!testCladeAnalysis7()) {
+            return false;
+        }
         return true;
     }
 
@@ -794,5 +818,208 @@ public class CladeAnalysisTest {
         return true;
     }
 
+    /**
+     * AnalysisMulti on random trees (with polytomies, nodes with one descendant and queries next to the
+     * root) must give the same results as a per-query analysis, on one thread and on several.
+     */
+    private static boolean testCladeAnalysis7() {
+        try {
+            for (int t = 0; t < 40; ++t) {
+                final int trial = t;
+                final int tips = trial == 0 ? 5000 : 20 + (7 * trial);
+                final int queries = trial == 0 ? 3000 : 1 + ((13 * trial) % 50);
+                final String expected = describe(() -> analyzeSequentially(createRandomTree(trial, tips, queries, true)));
+                for (final int threads : new int[]{1, 4}) {
+                    final String result = describe(() -> AnalysisMulti.execute(createRandomTree(trial, tips, queries, true),
+                            AnalysisMulti.DEFAULT_QUERY_PATTERN_FOR_PPLACER_TYPE,
+                            AnalysisMulti.DEFAULT_SEPARATOR,
+                            threads));
+                    if (!expected.equals(result)) {
+                        System.out.println("different results for tree " + trial + " on " + threads + " thread(s):");
+                        System.out.println(expected);
+                        System.out.println(result);
+                        return false;
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            e.printStackTrace(System.out);
+            return false;
+        }
+        return true;
+    }
+
+    private static void benchmark(final int tips, final int queries) {
+        System.out.println("Reference external nodes: " + tips + ", queries: " + queries);
+        for (int round = 0; round < 3; ++round) {
+            final Phylogeny p = createRandomTree(round, tips, queries, false);
+            long time = System.currentTimeMillis();
+            final String res = describe(() -> AnalysisMulti.execute(p,
+                    AnalysisMulti.DEFAULT_QUERY_PATTERN_FOR_PPLACER_TYPE,
+                    AnalysisMulti.DEFAULT_SEPARATOR,
+                    Runtime.getRuntime().availableProcessors()));
+            System.out.print("AnalysisMulti: " + (System.currentTimeMillis() - time) + "ms");
+            if (((long) tips * queries) <= 200000000L) {
+                final Phylogeny q = createRandomTree(round, tips, queries, false);
+                time = System.currentTimeMillis();
+                final String sequential = describe(() -> analyzeSequentially(q));
+                System.out.print(", per query: " + (System.currentTimeMillis() - time) + "ms"
+                        + (sequential.equals(res) ? "" : " (DIFFERENT)"));
+            }
+            System.out.println();
+        }
+    }
+
+    private interface Analysis {
 
+        ResultMulti analyze() throws UserException;
+    }
+
+    /** The results of an analysis (all prefixes, with their confidences), or the exception it threw. */
+    private static String describe(final Analysis analysis) {
+        final ResultMulti res;
+        try {
+            res = analysis.analyze();
+        } catch (final UserException | RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+        final StringBuilder sb = new StringBuilder(res.toString());
+        for (final List<Prefix> prefixes : Arrays.asList(res.getAllMultiHitPrefixes(),
+                res.getCollapsedMultiHitPrefixes(),
+                res.getAllMultiHitPrefixesUp(),
+                res.getCollapsedMultiHitPrefixesUp(),
+                res.getAllMultiHitPrefixesDown(),
+                res.getCollapsedMultiHitPrefixesDown())) {
+            for (final Prefix prefix : prefixes) {
+                sb.append(prefix.getPrefix()).append('=').append(prefix.getConfidence()).append(' ');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A random tree with hierarchically named reference external nodes ("A.1.2", with names mostly, but
+     * not always, following the tree), and queries "Q_#i_M=c" (confidences adding up to 1) added as
+     * children of random internal reference nodes, or (if on_edges, for the internal nodes among the
+     * random targets) placed on the branch above them and some nodes get an extra parent with one
+     * descendant.
+     */
+    private static Phylogeny createRandomTree(final long seed,
+                                              final int tips,
+                                              final int queries,
+                                              final boolean on_edges) {
+        final Random r = new Random(seed);
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for (int i = 0; i < tips; ++i) {
+            final String name = (char) ('A' + r.nextInt(4)) + "." + r.nextInt(3) + "." + r.nextInt(3);
+            nodes.add(new PhylogenyNode(name));
+        }
+        // sorted, so that clades tend to share prefixes
+        nodes.sort((a, b) -> a.getName().compareTo(b.getName()));
+        while (nodes.size() > 1) {
+            final int i = r.nextInt(nodes.size() - 1);
+            final int children = Math.min(nodes.size() - i, r.nextInt(8) == 0 ? 3 : 2);
+            final boolean root = nodes.size() == children;
+            PhylogenyNode parent = new PhylogenyNode();
+            for (int c = 0; c < children; ++c) {
+                parent.addAsChild(nodes.remove(i));
+            }
+            if (!root && on_edges && (r.nextInt(10) == 0)) {
+                final PhylogenyNode unary = new PhylogenyNode();
+                unary.addAsChild(parent);
+                parent = unary;
+            }
+            nodes.add(i, parent);
+        }
+        final Phylogeny p = new Phylogeny();
+        p.setRoot(nodes.get(0));
+        p.setRooted(true);
+        final List<PhylogenyNode> targets = new ArrayList<PhylogenyNode>();
+        for (final PhylogenyNodeIterator it = p.iteratorPreorder(); it.hasNext(); ) {
+            targets.add(it.next());
+        }
+        // mostly distinct targets (two queries next to the same node leave one without reference neighbors)
+        Collections.shuffle(targets, r);
+        final double confidence = 1.0 / queries;
+        for (int q = 0; q < queries; ++q) {
+            final PhylogenyNode target = targets.get(q % targets.size());
+            final PhylogenyNode qnode = new PhylogenyNode("Q_#" + q + "_M=" + confidence);
+            if (!on_edges || target.isExternal()) {
+                // as a child of an internal node (pplacer's multifurcating "fat" placements)
+                (target.isExternal() ? target.getParent() : target).addAsChild(qnode);
+                continue;
+            }
+            final PhylogenyNode parent = new PhylogenyNode();
+            if (target.isRoot()) {
+                parent.addAsChild(target);
+                p.setRoot(parent);
+            } else {
+                final PhylogenyNode grandparent = target.getParent();
+                grandparent.setChildNode(target.getChildNodeIndex(), parent);
+                parent.addAsChild(target);
+            }
+            parent.addAsChild(qnode);
+        }
+        p.externalNodesHaveChanged();
+        return p;
+    }
+
+    /** AnalysisMulti.execute the straightforward way, query by query. */
+    private static ResultMulti analyzeSequentially(final Phylogeny p) throws UserException {
+        final Pattern query = AnalysisMulti.DEFAULT_QUERY_PATTERN_FOR_PPLACER_TYPE;
+        final String separator = AnalysisMulti.DEFAULT_SEPARATOR;
+        final List<PhylogenyNode> qnodes = p.getNodes(query);
+        final ResultMulti res = new ResultMulti();
+        res.setQueryNamePrefix("Q");
+        res.setTotalNumberOfMatches(qnodes.size());
+        res.setReferenceTreeNumberOfExternalNodes(p.getNumberOfExternalNodes() - qnodes.size());
+        for (final PhylogenyNode qnode : qnodes) {
+            final double conf = Double.parseDouble(qnode.getName().substring(qnode.getName().indexOf("_M=") + 3));
+            if (qnode.getParent().isRoot()) {
+                res.addGreatestCommonPrefix(AnalysisMulti.UNKNOWN, conf);
+                continue;
+            }
+            PhylogenyNode qnode_p = qnode.getParent();
+            PhylogenyNode qnode_pp = qnode.getParent().getParent();
+            while (qnode_p.getNumberOfDescendants() == 1) {
+                qnode_p = qnode_p.getParent();
+            }
+            while (qnode_pp.getNumberOfDescendants() == 1) {
+                qnode_pp = qnode_pp.getParent();
+            }
+            final List<String> names = new ArrayList<String>();
+            for (final PhylogenyNode n : qnode_pp.getAllExternalDescendants()) {
+                if (!query.matcher(n.getName()).find()) {
+                    names.add(n.getName());
+                }
+            }
+            final String prefix = ForesterUtil.greatestCommonPrefix(names, separator);
+            res.addGreatestCommonPrefix(ForesterUtil.isEmpty(prefix) ? AnalysisMulti.UNKNOWN : prefix, conf);
+            final String up = siblingsPrefix(qnode_p, qnode_pp, separator, query);
+            res.addGreatestCommonPrefixUp(ForesterUtil.isEmpty(up) ? AnalysisMulti.UNKNOWN : up, conf);
+            final String down = siblingsPrefix(qnode, qnode_p, separator, query);
+            res.addGreatestCommonPrefixDown(ForesterUtil.isEmpty(down) ? AnalysisMulti.UNKNOWN : down, conf);
+        }
+        res.analyze();
+        return res;
+    }
+
+    private static String siblingsPrefix(final PhylogenyNode child,
+                                         final PhylogenyNode parent,
+                                         final String separator,
+                                         final Pattern query) {
+        final int child_index = child.getChildNodeIndex();
+        final List<String> names = new ArrayList<String>();
+        for (int i = 0; i < parent.getNumberOfDescendants(); ++i) {
+            if (i != child_index) {
+                for (final PhylogenyNode n : parent.getChildNode(i).getAllExternalDescendants()) {
+                    if (!query.matcher(n.getName()).find()) {
+                        names.add(n.getName());
+                    }
+                }
+            }
+        }
+        return ForesterUtil.greatestCommonPrefix(names, separator);
+    }
 }
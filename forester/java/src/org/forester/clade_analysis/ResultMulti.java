@@ -30,6 +30,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.forester.util.ForesterUtil;
 import org.forester.util.UserException;
@@ -292,16 +293,22 @@ public final class ResultMulti {
     private static List<Prefix> obtainAllPrefixes(final List<Prefix> greatest_common_prefixes,
                                                   final String separator) {
         final SortedMap<String, Double> map = new TreeMap<String, Double>();
-        for (final Prefix prefix : greatest_common_prefixes) {
+        // each prefix split into its levels once (not once per key, as ForesterUtil.isContainsPrefix would)
+        final Pattern split = Pattern.compile(Pattern.quote(separator));
+        final String[][] levels = new String[greatest_common_prefixes.size()][];
+        for (int i = 0; i < levels.length; ++i) {
+            final Prefix prefix = greatest_common_prefixes.get(i);
+            levels[i] = split.split(prefix.getPrefix());
             final List<String> prefixes = ForesterUtil.spliIntoPrefixes(prefix.getPrefix(), separator);
             for (final String p : prefixes) {
                 map.put(p, 0.0);
             }
         }
         for (final String key : map.keySet()) {
-            for (final Prefix prefix : greatest_common_prefixes) {
-                if (ForesterUtil.isContainsPrefix(prefix.getPrefix(), key, separator)) {
-                    map.put(key, map.get(key) + prefix.getConfidence());
+            final String[] key_levels = split.split(key);
+            for (int i = 0; i < levels.length; ++i) {
+                if (isContainsPrefix(levels[i], key_levels)) {
+                    map.put(key, map.get(key) + greatest_common_prefixes.get(i).getConfidence());
                 }
             }
         }
@@ -311,4 +318,17 @@ public final class ResultMulti {
         }
         return l;
     }
+
+    /** As ForesterUtil.isContainsPrefix, for words and prefixes already split into their levels. */
+    private static boolean isContainsPrefix(final String[] word, final String[] prefix) {
+        if (word.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (!word[i].equals(prefix[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -23,14 +23,19 @@ package org.forester.evoinference;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.forester.evoinference.distance.NeighborJoining;
 import org.forester.evoinference.distance.NeighborJoiningF;
 import org.forester.evoinference.distance.NeighborJoiningR;
+import org.forester.evoinference.distance.NeighborJoiningRapid;
+import org.forester.evoinference.distance.PackedPairwiseDistanceCalculator;
 import org.forester.evoinference.distance.PairwiseDistanceCalculator;
+import org.forester.evoinference.distance.PairwiseDistanceCalculator.PWD_DISTANCE_METHOD;
 import org.forester.evoinference.distance.Sarray;
 import org.forester.evoinference.distance.Sset;
 import org.forester.evoinference.matrix.character.BasicCharacterStateMatrix;
@@ -39,15 +44,27 @@ import org.forester.evoinference.matrix.character.CharacterStateMatrix.BinarySta
 import org.forester.evoinference.matrix.character.CharacterStateMatrix.GainLossStates;
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
 import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
+import org.forester.evoinference.parsimony.BinaryParsimony;
 import org.forester.evoinference.parsimony.DolloParsimony;
 import org.forester.evoinference.parsimony.FitchParsimony;
+import org.forester.evoinference.tools.BootstrapPipeline;
+import org.forester.evoinference.tools.BootstrapResampler;
 import org.forester.io.parsers.GeneralMsaParser;
 import org.forester.io.parsers.SymmetricalDistanceMatrixParser;
 import org.forester.io.parsers.nhx.NHXParser;
+import org.forester.msa.BasicMsa;
+import org.forester.msa.DeleteableMsa;
 import org.forester.msa.Msa;
+import org.forester.msa.ResampleableMsa;
 import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.factories.ParserBasedPhylogenyFactory;
 import org.forester.phylogeny.factories.PhylogenyFactory;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+import org.forester.sequence.BasicSequence;
+import org.forester.sequence.MolecularSequence;
+import org.forester.tools.ConfidenceAssessor;
 import org.forester.util.ForesterUtil;
 
 public class TestPhylogenyReconstruction {
@@ -93,6 +110,7 @@ public class TestPhylogenyReconstruction {
             System.out.println( "  failed." );
         }
         timeNeighborJoining();
+        timeNeighborJoiningRapid( args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 16000 );
     }
 
     public static boolean test( final File test_dir ) {
@@ -102,6 +120,12 @@ public class TestPhylogenyReconstruction {
             return false;
         }
         System.out.println( "OK." );
+        System.out.print( "  Triangular distance matrix: " );
+        if ( !testTriangularDistanceMatrix() ) {
+            System.out.println( "failed." );
+            return false;
+        }
+        System.out.println( "OK." );
         System.out.print( "  Basic character state matrix: " );
         if ( !testBasicCharacterStateMatrix() ) {
             System.out.println( "failed." );
@@ -120,6 +144,12 @@ public class TestPhylogenyReconstruction {
             return false;
         }
         System.out.println( "OK." );
+        System.out.print( "  Packed distance calculation: " );
+        if ( !testPackedDistanceCalculation( test_dir ) ) {
+            System.out.println( "failed." );
+            return false;
+        }
+        System.out.println( "OK." );
         System.out.print( "  Datastructure S: " );
         if ( !testS() ) {
             System.out.println( "failed." );
@@ -132,6 +162,18 @@ public class TestPhylogenyReconstruction {
             return false;
         }
         System.out.println( "OK." );
+        System.out.print( "  Neighbor Joining (rapid): " );
+        if ( !testNeighborJoiningRapid() ) {
+            System.out.println( "failed." );
+            return false;
+        }
+        System.out.println( "OK." );
+        System.out.print( "  Bootstrap pipeline: " );
+        if ( !testBootstrapPipeline( test_dir ) ) {
+            System.out.println( "failed." );
+            return false;
+        }
+        System.out.println( "OK." );
         System.out.print( "  Dollo Parsimony: " );
         if ( !testDolloParsimony() ) {
             System.out.println( "failed." );
@@ -150,6 +192,12 @@ public class TestPhylogenyReconstruction {
             return false;
         }
         System.out.println( "OK." );
+        System.out.print( "  Binary Parsimony (bitset): " );
+        if ( !testBinaryParsimony() ) {
+            System.out.println( "failed." );
+            return false;
+        }
+        System.out.println( "OK." );
         return true;
     }
 
@@ -428,6 +476,92 @@ public class TestPhylogenyReconstruction {
         return true;
     }
 
+    private static boolean testTriangularDistanceMatrix() {
+        try {
+            final int size = 60;
+            final BasicSymmetricalDistanceMatrix b0 = new BasicSymmetricalDistanceMatrix( size );
+            final BasicSymmetricalDistanceMatrix b1 = new BasicSymmetricalDistanceMatrix( size );
+            b0.randomize( 42 );
+            b1.randomize( 42 );
+            final File mapped_file = File.createTempFile( "triangular_distance_matrix", ".bin" );
+            mapped_file.deleteOnExit();
+            final TriangularDistanceMatrix[] ts = new TriangularDistanceMatrix[] {
+                    TriangularDistanceMatrix.createInstance( size, TriangularDistanceMatrix.PRECISION.DOUBLE ),
+                    TriangularDistanceMatrix.createInstance( size,
+                                                             TriangularDistanceMatrix.PRECISION.DOUBLE,
+                                                             TriangularDistanceMatrix.STORAGE.OFF_HEAP ),
+                    TriangularDistanceMatrix.createMemoryMappedInstance( size,
+                                                                         TriangularDistanceMatrix.PRECISION.DOUBLE,
+                                                                         mapped_file ),
+                    TriangularDistanceMatrix.createInstance( size, TriangularDistanceMatrix.PRECISION.FLOAT ) };
+            for( int i = 0; i < size; ++i ) {
+                b0.setIdentifier( i, "t" + i );
+                b1.setIdentifier( i, "t" + i );
+                for( final TriangularDistanceMatrix t : ts ) {
+                    t.setIdentifier( i, "t" + i );
+                    for( int j = 0; j <= i; ++j ) {
+                        t.setValue( j, i, b0.getValue( i, j ) );
+                    }
+                }
+            }
+            for( int t = 0; t < 3; ++t ) {
+                if ( !isIdentical( b0, ts[ t ] ) ) {
+                    return false;
+                }
+                if ( !b0.toStringBuffer( DistanceMatrix.Format.PHYLIP ).toString()
+                        .equals( ts[ t ].toStringBuffer( DistanceMatrix.Format.PHYLIP ).toString() ) ) {
+                    return false;
+                }
+                final StringWriter w0 = new StringWriter();
+                final StringWriter w1 = new StringWriter();
+                b0.writeToPhylip( w0 );
+                ts[ t ].writeToPhylip( w1 );
+                if ( !w0.toString().equals( w1.toString() ) ) {
+                    return false;
+                }
+            }
+            if ( !isEqual( ts[ 3 ].getValue( 5, 17 ), ( float ) b0.getValue( 17, 5 ) ) ) {
+                return false;
+            }
+            try {
+                ts[ 0 ].setValue( 1, 2, -1 );
+                return false;
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+            final String nj_expected = NeighborJoining.createInstance().execute( b0 ).toNewHampshire();
+            for( int t = 0; t < 3; ++t ) {
+                if ( !nj_expected.equals( NeighborJoining.createInstance().execute( ts[ t ] ).toNewHampshire() ) ) {
+                    return false;
+                }
+            }
+            final String njf_expected = NeighborJoiningF.createInstance().execute( b1 ).toNewHampshire();
+            if ( !njf_expected.equals( NeighborJoiningF.createInstance().execute( ts[ 3 ] ).toNewHampshire() ) ) {
+                return false;
+            }
+            final SymmetricalDistanceMatrixParser p = SymmetricalDistanceMatrixParser.createInstance();
+            p.setTriangularMatrixPrecision( TriangularDistanceMatrix.PRECISION.FLOAT );
+            final String l = ForesterUtil.getLineSeparator();
+            final DistanceMatrix[] ma = p.parse( " 4" + l + "A 0" + l + "B 1 0" + l + "C 2 4 0" + l + "D 3 5 6 0" + l );
+            if ( !( ma[ 0 ] instanceof TriangularDistanceMatrix ) ) {
+                return false;
+            }
+            if ( !isEqual( ma[ 0 ].getValue( 1, 3 ), 5 ) || !isEqual( ma[ 0 ].getValue( 3, 2 ), 6 )
+                    || !isEqual( ma[ 0 ].getValue( 2, 2 ), 0 ) ) {
+                return false;
+            }
+            if ( !ma[ 0 ].getIdentifier( 3 ).equals( "D" ) ) {
+                return false;
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
     private static boolean testDistanceCalculationMethods( final File test_dir ) {
         try {
             final Msa msa0 = GeneralMsaParser.parseMsa( new FileInputStream( test_dir + ForesterUtil.FILE_SEPARATOR
@@ -449,6 +583,286 @@ public class TestPhylogenyReconstruction {
         return true;
     }
 
+    private static boolean testPackedDistanceCalculation( final File test_dir ) {
+        try {
+            final Msa protein = GeneralMsaParser.parseMsa( new FileInputStream( test_dir + ForesterUtil.FILE_SEPARATOR
+                    + "bcl.aln" ) );
+            final Msa dna = BasicMsa.createInstance( createRandomSequences( 37, 301, "ACGT-", 7L ) );
+            for( final Msa msa : new Msa[] { protein, dna } ) {
+                for( final int threads : new int[] { 1, 4 } ) {
+                    if ( !isIdentical( PairwiseDistanceCalculator.calcKimuraDistances( msa ),
+                                       PackedPairwiseDistanceCalculator
+                                               .calcKimuraDistances( msa,
+                                                                     PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                                                                     threads ) ) ) {
+                        return false;
+                    }
+                    if ( !isIdentical( PairwiseDistanceCalculator.calcPoissonDistances( msa ),
+                                       PackedPairwiseDistanceCalculator.calcPoissonDistances( msa, threads ) ) ) {
+                        return false;
+                    }
+                    if ( !isIdentical( PairwiseDistanceCalculator.calcFractionalDissimilarities( msa ),
+                                       PackedPairwiseDistanceCalculator.calcFractionalDissimilarities( msa,
+                                                                                                        threads ) ) ) {
+                        return false;
+                    }
+                    if ( !isIdentical( PairwiseDistanceCalculator.calcFractionalSimilarities( msa ),
+                                       PackedPairwiseDistanceCalculator.calcFractionalSimilarities( msa, threads ) ) ) {
+                        return false;
+                    }
+                }
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean testBootstrapPipeline( final File test_dir ) {
+        try {
+            final BasicMsa msa = ( BasicMsa ) BasicMsa.createInstance( GeneralMsaParser
+                    .parseMsa( new FileInputStream( test_dir + ForesterUtil.FILE_SEPARATOR + "bcl.aln" ) )
+                    .asSequenceList() );
+            final int n = 20;
+            final long seed = 42L;
+            final Phylogeny expected = BootstrapPipeline.createInstance( PWD_DISTANCE_METHOD.KIMURA_DISTANCE, 1 )
+                    .inferPhylogeny( msa );
+            final ResampleableMsa resampleable_msa = new ResampleableMsa( msa );
+            final int[][] columns = BootstrapResampler.createResampledColumnPositions( msa.getLength(), n, seed );
+            final Phylogeny[] evaluators = new Phylogeny[ n ];
+            for( int i = 0; i < n; ++i ) {
+                resampleable_msa.resample( columns[ i ] );
+                evaluators[ i ] = NeighborJoiningF.createInstance( false, 5 ).execute( PairwiseDistanceCalculator
+                        .calcKimuraDistances( resampleable_msa ) );
+            }
+            ConfidenceAssessor.evaluate( "bootstrap", evaluators, expected, true, 1 );
+            for( final int threads : new int[] { 1, 3, 8 } ) {
+                final BootstrapPipeline pipeline = BootstrapPipeline
+                        .createInstance( PWD_DISTANCE_METHOD.KIMURA_DISTANCE, threads );
+                final Phylogeny target = pipeline.inferPhylogeny( msa );
+                pipeline.evaluate( "bootstrap", msa, target, n, seed );
+                final PhylogenyNodeIterator it_e = expected.iteratorPostorder();
+                final PhylogenyNodeIterator it_t = target.iteratorPostorder();
+                int supported = 0;
+                while ( it_e.hasNext() ) {
+                    final PhylogenyNode e = it_e.next();
+                    final PhylogenyNode t = it_t.next();
+                    if ( !e.getName().equals( t.getName() ) ) {
+                        return false;
+                    }
+                    if ( e.getBranchData().getNumberOfConfidences() != t.getBranchData().getNumberOfConfidences() ) {
+                        return false;
+                    }
+                    if ( e.getBranchData().getNumberOfConfidences() > 0 ) {
+                        final double c = t.getBranchData().getConfidence( 0 ).getValue();
+                        if ( c != e.getBranchData().getConfidence( 0 ).getValue() ) {
+                            return false;
+                        }
+                        if ( ( c < 0 ) || ( c > n ) ) {
+                            return false;
+                        }
+                        if ( c > 0 ) {
+                            ++supported;
+                        }
+                    }
+                }
+                if ( it_t.hasNext() || ( supported < 1 ) ) {
+                    return false;
+                }
+            }
+            // Alignments with row or column mappings are resampled as they appear.
+            final DeleteableMsa deleteable_msa = DeleteableMsa.createInstance( msa.asSequenceList() );
+            deleteable_msa.deleteRow( msa.getIdentifier( 0 ), false );
+            final BootstrapPipeline pipeline = BootstrapPipeline.createInstance( PWD_DISTANCE_METHOD.KIMURA_DISTANCE,
+                                                                                 2 );
+            final Phylogeny target = pipeline.inferPhylogeny( deleteable_msa );
+            pipeline.evaluate( "bootstrap", deleteable_msa, target, 5, seed );
+            if ( target.getNumberOfExternalNodes() != ( msa.getNumberOfSequences() - 1 ) ) {
+                return false;
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static List<MolecularSequence> createRandomSequences( final int number,
+                                                                  final int length,
+                                                                  final String alphabet,
+                                                                  final long seed ) {
+        final Random r = new Random( seed );
+        final List<MolecularSequence> seqs = new ArrayList<>();
+        for( int i = 0; i < number; ++i ) {
+            final StringBuilder sb = new StringBuilder();
+            for( int j = 0; j < length; ++j ) {
+                sb.append( alphabet.charAt( r.nextInt( alphabet.length() ) ) );
+            }
+            seqs.add( BasicSequence.createDnaSequence( "s" + i, sb.toString() ) );
+        }
+        return seqs;
+    }
+
+    private static boolean isIdentical( final DistanceMatrix a, final DistanceMatrix b ) {
+        if ( a.getSize() != b.getSize() ) {
+            return false;
+        }
+        for( int i = 0; i < a.getSize(); ++i ) {
+            if ( !a.getIdentifier( i ).equals( b.getIdentifier( i ) ) ) {
+                return false;
+            }
+            for( int j = 0; j < a.getSize(); ++j ) {
+                if ( Double.compare( a.getValue( i, j ), b.getValue( i, j ) ) != 0 ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean testBinaryParsimony() {
+        try {
+            final Random r = new Random( 7 );
+            for( int t = 0; t < 12; ++t ) {
+                final Phylogeny p = createRandomRootedPhylogeny( 5 + r.nextInt( 40 ), r );
+                final int characters = t < 10 ? 1 + r.nextInt( 200 ) : 1025 + r.nextInt( 200 );
+                final CharacterStateMatrix<BinaryStates> m = createRandomBinaryMatrix( p, characters, t % 3 == 0, r );
+                final DolloParsimony dollo = DolloParsimony.createInstance();
+                dollo.setReturnGainLossMatrix( true );
+                dollo.setReturnInternalStates( true );
+                dollo.execute( p, m );
+                final FitchParsimony<BinaryStates> fitch_first = new FitchParsimony<BinaryStates>();
+                fitch_first.setReturnGainLossMatrix( true );
+                fitch_first.setReturnInternalStates( true );
+                fitch_first.execute( p, m );
+                final FitchParsimony<BinaryStates> fitch_last = new FitchParsimony<BinaryStates>();
+                fitch_last.setUseLast( true );
+                fitch_last.setReturnGainLossMatrix( true );
+                fitch_last.setReturnInternalStates( true );
+                fitch_last.execute( p, m );
+                for( final int threads : new int[] { 1, 2, 5 } ) {
+                    final BinaryParsimony bd = BinaryParsimony.createInstance( BinaryParsimony.METHOD.DOLLO, threads );
+                    bd.setReturnGainLossMatrix( true );
+                    bd.setReturnInternalStates( true );
+                    bd.execute( p, m );
+                    if ( ( bd.getCost() != dollo.getCost() ) || ( bd.getTotalGains() != dollo.getTotalGains() )
+                            || ( bd.getTotalLosses() != dollo.getTotalLosses() )
+                            || ( bd.getTotalUnchanged() != dollo.getTotalUnchanged() ) ) {
+                        return false;
+                    }
+                    if ( !isEqual( bd.getGainLossMatrix(), dollo.getGainLossMatrix() )
+                            || !isEqual( bd.getInternalStatesMatrix(), dollo.getInternalStatesMatrix() ) ) {
+                        return false;
+                    }
+                    for( final boolean use_last : new boolean[] { false, true } ) {
+                        final FitchParsimony<BinaryStates> fitch = use_last ? fitch_last : fitch_first;
+                        final BinaryParsimony bf = BinaryParsimony.createInstance( BinaryParsimony.METHOD.FITCH,
+                                                                                   threads );
+                        bf.setUseLast( use_last );
+                        bf.setReturnGainLossMatrix( true );
+                        bf.setReturnInternalStates( true );
+                        bf.execute( p, m );
+                        if ( ( bf.getCost() != fitch.getCost() ) || ( bf.getTotalGains() != fitch.getTotalGains() )
+                                || ( bf.getTotalLosses() != fitch.getTotalLosses() )
+                                || ( bf.getTotalUnchanged() != fitch.getTotalUnchanged() ) ) {
+                            return false;
+                        }
+                        if ( !isEqual( bf.getGainLossMatrix(), fitch.getGainLossMatrix() )
+                                || !isEqual( bf.getInternalStatesMatrix(), fitch.getInternalStatesMatrix() ) ) {
+                            return false;
+                        }
+                    }
+                }
+                final BinaryParsimony cost_only = BinaryParsimony.createInstance( BinaryParsimony.METHOD.FITCH );
+                cost_only.execute( p, m );
+                if ( cost_only.getCost() != fitch_first.getCost() ) {
+                    return false;
+                }
+            }
+            try {
+                BinaryParsimony.createInstance( BinaryParsimony.METHOD.DOLLO ).setUseLast( true );
+                return false;
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static Phylogeny createRandomRootedPhylogeny( final int external_nodes, final Random r ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( int i = 0; i < external_nodes; ++i ) {
+            nodes.add( new PhylogenyNode( "n" + i ) );
+        }
+        while ( nodes.size() > 1 ) {
+            final PhylogenyNode parent = new PhylogenyNode();
+            final int children = Math.min( nodes.size(), r.nextInt( 4 ) == 0 ? 3 : 2 );
+            for( int i = 0; i < children; ++i ) {
+                parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            }
+            nodes.add( parent );
+        }
+        final Phylogeny p = new Phylogeny();
+        p.setRoot( nodes.get( 0 ) );
+        p.setRooted( true );
+        return p;
+    }
+
+    private static CharacterStateMatrix<BinaryStates> createRandomBinaryMatrix( final Phylogeny p,
+                                                                                final int characters,
+                                                                                final boolean with_unknown,
+                                                                                final Random r ) {
+        final CharacterStateMatrix<BinaryStates> m = new BasicCharacterStateMatrix<BinaryStates>( p
+                .getNumberOfExternalNodes(), characters );
+        int row = 0;
+        for( final PhylogenyNodeIterator it = p.iteratorExternalForward(); it.hasNext(); ) {
+            m.setIdentifier( row++, it.next().getName() );
+        }
+        for( int c = 0; c < characters; ++c ) {
+            m.setCharacter( c, "c" + c );
+            // Characters present with low, medium, or high frequency.
+            final double present = ( 1 + ( c % 3 ) ) / 4.0;
+            for( int i = 0; i < row; ++i ) {
+                if ( with_unknown && ( r.nextInt( 10 ) == 0 ) ) {
+                    m.setState( i, c, BinaryStates.UNKNOWN );
+                }
+                else {
+                    m.setState( i, c, r.nextDouble() < present ? BinaryStates.PRESENT : BinaryStates.ABSENT );
+                }
+            }
+        }
+        return m;
+    }
+
+    private static boolean isEqual( final CharacterStateMatrix<?> a, final CharacterStateMatrix<?> b ) {
+        if ( ( a.getNumberOfIdentifiers() != b.getNumberOfIdentifiers() )
+                || ( a.getNumberOfCharacters() != b.getNumberOfCharacters() ) ) {
+            return false;
+        }
+        for( int i = 0; i < a.getNumberOfIdentifiers(); ++i ) {
+            if ( !a.getIdentifier( i ).equals( b.getIdentifier( i ) ) ) {
+                return false;
+            }
+            for( int c = 0; c < a.getNumberOfCharacters(); ++c ) {
+                if ( ( i == 0 ) && !a.getCharacter( c ).equals( b.getCharacter( c ) ) ) {
+                    return false;
+                }
+                if ( a.getState( i, c ) != b.getState( i, c ) ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private static boolean testDolloParsimony() {
         try {
             final BinaryStates PRESENT = BinaryStates.PRESENT;
@@ -2245,6 +2659,70 @@ public class TestPhylogenyReconstruction {
         return true;
     }
 
+    private static boolean testNeighborJoiningRapid() {
+        try {
+            for( final int size : new int[] { 2, 3, 4, 5, 17, 100, 300 } ) {
+                for( final int threads : new int[] { 1, 3 } ) {
+                    final BasicSymmetricalDistanceMatrix m0 = new BasicSymmetricalDistanceMatrix( size );
+                    final BasicSymmetricalDistanceMatrix m1 = new BasicSymmetricalDistanceMatrix( size );
+                    final TriangularDistanceMatrix t = TriangularDistanceMatrix
+                            .createInstance( size, TriangularDistanceMatrix.PRECISION.DOUBLE );
+                    m0.randomize( size );
+                    m1.randomize( size );
+                    for( int i = 0; i < size; ++i ) {
+                        m0.setIdentifier( i, "t" + i );
+                        m1.setIdentifier( i, "t" + i );
+                        t.setIdentifier( i, "t" + i );
+                        for( int j = 0; j < i; ++j ) {
+                            t.setValue( i, j, m0.getValue( i, j ) );
+                        }
+                    }
+                    final Phylogeny p0 = NeighborJoining.createInstance().execute( m0 );
+                    final Phylogeny p1 = NeighborJoiningRapid.createInstance( threads ).execute( m1 );
+                    final Phylogeny p2 = NeighborJoiningRapid.createInstance( threads ).execute( t );
+                    final String expected = p0.toNewHampshire();
+                    if ( !expected.equals( p1.toNewHampshire() ) ) {
+                        return false;
+                    }
+                    if ( !expected.equals( p2.toNewHampshire() ) ) {
+                        return false;
+                    }
+                }
+            }
+            // unchanged input
+            final BasicSymmetricalDistanceMatrix m = new BasicSymmetricalDistanceMatrix( 4 );
+            m.setIdentifier( 0, "A" );
+            m.setIdentifier( 1, "B" );
+            m.setIdentifier( 2, "C" );
+            m.setIdentifier( 3, "D" );
+            m.setRow( "5 ", 1 );
+            m.setRow( "3 6 ", 2 );
+            m.setRow( "7.5 10.5 5.5", 3 );
+            final Phylogeny p = NeighborJoiningRapid.createInstance( 2, 6 ).execute( m );
+            if ( !isEqual( m.getValue( 3, 1 ), 10.5 ) ) {
+                return false;
+            }
+            p.reRoot( p.getNode( "D" ) );
+            if ( isUnequal( p.getNode( "A" ).getDistanceToParent(), 1 ) ) {
+                return false;
+            }
+            if ( isUnequal( p.getNode( "B" ).getDistanceToParent(), 4 ) ) {
+                return false;
+            }
+            if ( isUnequal( p.getNode( "C" ).getDistanceToParent(), 0.5 ) ) {
+                return false;
+            }
+            if ( isUnequal( p.getNode( "D" ).getDistanceToParent(), 2.5 ) ) {
+                return false;
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
     private static boolean testS() {
         try {
             final Sset s0 = new Sset();
@@ -3045,6 +3523,53 @@ public class TestPhylogenyReconstruction {
         return true;
     }
 
+    // Distances between random points in 10-dimensional space: tie-free and cheap to
+    // generate for large numbers of taxa.
+    private static void timeNeighborJoiningRapid( final int max_size ) {
+        final int dim = 10;
+        for( int x = 1000; x <= max_size; x *= 2 ) {
+            final TriangularDistanceMatrix t;
+            try {
+                t = TriangularDistanceMatrix.createInstance( x, TriangularDistanceMatrix.PRECISION.FLOAT );
+            }
+            catch ( final OutOfMemoryError e ) {
+                System.out.println( "Size: " + x + " -> out of memory" );
+                return;
+            }
+            final Random r = new Random( x );
+            final double[][] points = new double[ x ][ dim ];
+            for( int i = 0; i < x; ++i ) {
+                t.setIdentifier( i, "t" + i );
+                for( int k = 0; k < dim; ++k ) {
+                    points[ i ][ k ] = r.nextDouble();
+                }
+                for( int j = 0; j < i; ++j ) {
+                    double d = 0;
+                    for( int k = 0; k < dim; ++k ) {
+                        d += ( points[ i ][ k ] - points[ j ][ k ] ) * ( points[ i ][ k ] - points[ j ][ k ] );
+                    }
+                    t.put( i, j, Math.sqrt( d ) );
+                }
+            }
+            String nj_time = "";
+            if ( x <= 8000 ) {
+                final BasicSymmetricalDistanceMatrix b = new BasicSymmetricalDistanceMatrix( x );
+                for( int i = 0; i < x; ++i ) {
+                    b.setIdentifier( i, t.getIdentifier( i ) );
+                    for( int j = 0; j < i; ++j ) {
+                        b.setValue( i, j, t.get( i, j ) );
+                    }
+                }
+                final long start_time = new Date().getTime();
+                NeighborJoining.createInstance().execute( b );
+                nj_time = " (NeighborJoining: " + ( new Date().getTime() - start_time ) + "ms)";
+            }
+            final long start_time = new Date().getTime();
+            NeighborJoiningRapid.createInstance().execute( t );
+            System.out.println( "Size: " + x + " -> " + ( new Date().getTime() - start_time ) + "ms" + nj_time );
+        }
+    }
+
     private static void timeNeighborJoining() {
         final NeighborJoiningR njr = NeighborJoiningR.createInstance();
         for( int n = 3; n <= 10; ++n ) {
@@ -26,6 +26,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
+import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyNode;
 import org.forester.util.ForesterUtil;
@@ -33,8 +35,9 @@ import org.forester.util.ForesterUtil;
 public final class NeighborJoining {
 
     private final static DecimalFormat     DF = new DecimalFormat( "0.00000" );
-    private BasicSymmetricalDistanceMatrix _d;
+    private DistanceMatrix                 _d;
     private double[][]                     _d_values;
+    private TriangularDistanceMatrix       _t;
     private final DecimalFormat            _df;
     private PhylogenyNode[]                _external_nodes;
     private int[]                          _mappings;
@@ -62,6 +65,21 @@ public final class NeighborJoining {
 
     public final Phylogeny execute( final BasicSymmetricalDistanceMatrix distance ) {
         reset( distance );
+        return execute();
+    }
+
+    /**
+     * Infers a phylogeny directly from a packed triangular distance matrix,
+     * without copying it.
+     * <p>
+     * !matrix values will be changed!
+     */
+    public final Phylogeny execute( final TriangularDistanceMatrix distance ) {
+        reset( distance );
+        return execute();
+    }
+
+    private final Phylogeny execute() {
         final Phylogeny phylogeny = new Phylogeny();
         while ( _n > 2 ) {
             // Calculates the minimal distance.
@@ -72,7 +90,7 @@ public final class NeighborJoining {
             //System.out.println( _min_i + " " + _min_j );
             // It is a condition that otu1 < otu2.
             final PhylogenyNode node = new PhylogenyNode();
-            final double d = _d_values[ _mappings[ otu1 ] ][ _mappings[ otu2 ] ];
+            final double d = getD( _mappings[ otu1 ], _mappings[ otu2 ] );
             final double d1 = ( d / 2 ) + ( ( _r[ otu1 ] - _r[ otu2 ] ) / ( 2 * ( _n - 2 ) ) );
             final double d2 = d - d1;
             if ( _df == null ) {
@@ -94,7 +112,7 @@ public final class NeighborJoining {
             updateMappings( otu2 );
             --_n;
         }
-        final double d = _d_values[ _mappings[ 0 ] ][ _mappings[ 1 ] ] / 2;
+        final double d = getD( _mappings[ 0 ], _mappings[ 1 ] ) / 2;
         if ( _df == null ) {
             getExternalPhylogenyNode( 0 ).setDistanceToParent( d );
             getExternalPhylogenyNode( 1 ).setDistanceToParent( d );
@@ -133,21 +151,21 @@ public final class NeighborJoining {
             final int m_i = _mappings[ i ];
             if ( otu1 < i ) {
                 if ( otu2 > i ) {
-                    _d_values[ m_otu1 ][ m_i ] = ( ( _d_values[ m_otu1 ][ m_i ] + _d_values[ m_i ][ m_otu2 ] ) - d ) / 2;
+                    setD( m_otu1, m_i, ( ( getD( m_otu1, m_i ) + getD( m_i, m_otu2 ) ) - d ) / 2 );
                     //System.out.print( DF.format( _d_values[ m_otu1 ][ m_i ] ) );
                 }
                 else {
-                    _d_values[ m_otu1 ][ m_i ] = ( ( _d_values[ m_otu1 ][ m_i ] + _d_values[ m_otu2 ][ m_i ] ) - d ) / 2;
+                    setD( m_otu1, m_i, ( ( getD( m_otu1, m_i ) + getD( m_otu2, m_i ) ) - d ) / 2 );
                     //System.out.print( DF.format( _d_values[ m_otu1 ][ m_i ] ) );
                 }
             }
             else {
                 if ( otu2 > i ) {
-                    _d_values[ m_i ][ m_otu1 ] = ( ( _d_values[ m_i ][ m_otu1 ] + _d_values[ m_i ][ m_otu2 ] ) - d ) / 2;
+                    setD( m_i, m_otu1, ( ( getD( m_i, m_otu1 ) + getD( m_i, m_otu2 ) ) - d ) / 2 );
                     //System.out.print( DF.format( _d_values[ m_i ][ m_otu1 ] ) );
                 }
                 else {
-                    _d_values[ m_i ][ m_otu1 ] = ( ( _d_values[ m_i ][ m_otu1 ] + _d_values[ m_otu2 ][ m_i ] ) - d ) / 2;
+                    setD( m_i, m_otu1, ( ( getD( m_i, m_otu1 ) + getD( m_otu2, m_i ) ) - d ) / 2 );
                     // System.out.print( DF.format( _d_values[ m_otu1 ][ m_i ] ) );
                 }
             }
@@ -163,10 +181,10 @@ public final class NeighborJoining {
             for( int n = 0; n < _n; ++n ) {
                 if ( i != n ) {
                     if ( i > n ) {
-                        d += _d_values[ _mappings[ n ] ][ m_i ];
+                        d += getD( _mappings[ n ], m_i );
                     }
                     else {
-                        d += _d_values[ m_i ][ _mappings[ n ] ];
+                        d += getD( m_i, _mappings[ n ] );
                     }
                 }
             }
@@ -174,6 +192,22 @@ public final class NeighborJoining {
         }
     }
 
+    private final double getD( final int m_i, final int m_j ) {
+        if ( _t != null ) {
+            return _t.get( m_i, m_j );
+        }
+        return _d_values[ m_i ][ m_j ];
+    }
+
+    private final void setD( final int m_i, final int m_j, final double d ) {
+        if ( _t != null ) {
+            _t.put( m_i, m_j, d );
+        }
+        else {
+            _d_values[ m_i ][ m_j ] = d;
+        }
+    }
+
     private final PhylogenyNode getExternalPhylogenyNode( final int i ) {
         return _external_nodes[ _mappings[ i ] ];
     }
@@ -222,7 +256,19 @@ public final class NeighborJoining {
         _d = distances;
         _r = new double[ _n ];
         _mappings = new int[ _n ];
-        _d_values = _d.getValues();
+        _d_values = distances.getValues();
+        _t = null;
+        initExternalNodes();
+    }
+
+    // !matrix values will be changed!
+    private final void reset( final TriangularDistanceMatrix distances ) {
+        _n = distances.getSize();
+        _d = distances;
+        _r = new double[ _n ];
+        _mappings = new int[ _n ];
+        _d_values = null;
+        _t = distances;
         initExternalNodes();
     }
 
@@ -236,7 +282,7 @@ public final class NeighborJoining {
             final double r_j = _r[ j ];
             final int m_j = _mappings[ j ];
             for( int i = 0; i < j; ++i ) {
-                final double m = _d_values[ _mappings[ i ] ][ m_j ] - ( ( _r[ i ] + r_j ) / n_minus_2 );
+                final double m = getD( _mappings[ i ], m_j ) - ( ( _r[ i ] + r_j ) / n_minus_2 );
                 if ( m < min ) {
                     min = m;
                     _min_i = i;
@@ -26,14 +26,17 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
+import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyNode;
 import org.forester.util.ForesterUtil;
 
 public final class NeighborJoiningF {
 
-    private BasicSymmetricalDistanceMatrix _d;
+    private DistanceMatrix                 _d;
     private float[][]                      _d_values;
+    private TriangularDistanceMatrix       _t;
     private final DecimalFormat            _df;
     private PhylogenyNode[]                _external_nodes;
     private int[]                          _mappings;
@@ -61,6 +64,21 @@ public final class NeighborJoiningF {
 
     public final Phylogeny execute( final BasicSymmetricalDistanceMatrix distance ) {
         reset( distance );
+        return execute();
+    }
+
+    /**
+     * Infers a phylogeny directly from a packed triangular distance matrix
+     * (preferably of float precision), without copying it.
+     * <p>
+     * !matrix values will be changed!
+     */
+    public final Phylogeny execute( final TriangularDistanceMatrix distance ) {
+        reset( distance );
+        return execute();
+    }
+
+    private final Phylogeny execute() {
         final Phylogeny phylogeny = new Phylogeny();
         while ( _n > 2 ) {
             // Calculates the minimal distance.
@@ -70,7 +88,7 @@ public final class NeighborJoiningF {
             final int otu2 = _min_j;
             // It is a condition that otu1 < otu2.
             final PhylogenyNode node = new PhylogenyNode();
-            final float d = _d_values[ _mappings[ otu1 ] ][ _mappings[ otu2 ] ];
+            final float d = getD( _mappings[ otu1 ], _mappings[ otu2 ] );
             final float d1 = ( d / 2 ) + ( ( _r[ otu1 ] - _r[ otu2 ] ) / ( 2 * ( _n - 2 ) ) );
             final float d2 = d - d1;
             if ( _df == null ) {
@@ -92,7 +110,7 @@ public final class NeighborJoiningF {
             updateMappings( otu2 );
             --_n;
         }
-        final double d = _d_values[ _mappings[ 0 ] ][ _mappings[ 1 ] ] / 2;
+        final double d = getD( _mappings[ 0 ], _mappings[ 1 ] ) / 2;
         if ( _df == null ) {
             getExternalPhylogenyNode( 0 ).setDistanceToParent( d );
             getExternalPhylogenyNode( 1 ).setDistanceToParent( d );
@@ -131,18 +149,18 @@ public final class NeighborJoiningF {
             final int m_i = _mappings[ i ];
             if ( otu1 < i ) {
                 if ( otu2 > i ) {
-                    _d_values[ m_otu1 ][ m_i ] = ( ( _d_values[ m_otu1 ][ m_i ] + _d_values[ m_i ][ m_otu2 ] ) - d ) / 2;
+                    setD( m_otu1, m_i, ( ( getD( m_otu1, m_i ) + getD( m_i, m_otu2 ) ) - d ) / 2 );
                 }
                 else {
-                    _d_values[ m_otu1 ][ m_i ] = ( ( _d_values[ m_otu1 ][ m_i ] + _d_values[ m_otu2 ][ m_i ] ) - d ) / 2;
+                    setD( m_otu1, m_i, ( ( getD( m_otu1, m_i ) + getD( m_otu2, m_i ) ) - d ) / 2 );
                 }
             }
             else {
                 if ( otu2 > i ) {
-                    _d_values[ m_i ][ m_otu1 ] = ( ( _d_values[ m_i ][ m_otu1 ] + _d_values[ m_i ][ m_otu2 ] ) - d ) / 2;
+                    setD( m_i, m_otu1, ( ( getD( m_i, m_otu1 ) + getD( m_i, m_otu2 ) ) - d ) / 2 );
                 }
                 else {
-                    _d_values[ m_i ][ m_otu1 ] = ( ( _d_values[ m_i ][ m_otu1 ] + _d_values[ m_otu2 ][ m_i ] ) - d ) / 2;
+                    setD( m_i, m_otu1, ( ( getD( m_i, m_otu1 ) + getD( m_otu2, m_i ) ) - d ) / 2 );
                 }
             }
         }
@@ -156,10 +174,10 @@ public final class NeighborJoiningF {
             for( int n = 0; n < _n; ++n ) {
                 if ( i != n ) {
                     if ( i > n ) {
-                        d += _d_values[ _mappings[ n ] ][ m_i ];
+                        d += getD( _mappings[ n ], m_i );
                     }
                     else {
-                        d += _d_values[ m_i ][ _mappings[ n ] ];
+                        d += getD( m_i, _mappings[ n ] );
                     }
                 }
             }
@@ -167,6 +185,22 @@ public final class NeighborJoiningF {
         }
     }
 
+    private final float getD( final int m_i, final int m_j ) {
+        if ( _t != null ) {
+            return ( float ) _t.get( m_i, m_j );
+        }
+        return _d_values[ m_i ][ m_j ];
+    }
+
+    private final void setD( final int m_i, final int m_j, final float d ) {
+        if ( _t != null ) {
+            _t.put( m_i, m_j, d );
+        }
+        else {
+            _d_values[ m_i ][ m_j ] = d;
+        }
+    }
+
     private final PhylogenyNode getExternalPhylogenyNode( final int i ) {
         return _external_nodes[ _mappings[ i ] ];
     }
@@ -220,6 +254,19 @@ public final class NeighborJoiningF {
                 _d_values[ i ][ j ] = ( float ) distances.getValue( i, j );
             }
         }
+        _t = null;
+        initExternalNodes();
+    }
+
+    // only the values in the lower triangle are used.
+    // !matrix values will be changed!
+    private final void reset( final TriangularDistanceMatrix distances ) {
+        _n = distances.getSize();
+        _d = distances;
+        _r = new float[ _n ];
+        _mappings = new int[ _n ];
+        _d_values = null;
+        _t = distances;
         initExternalNodes();
     }
 
@@ -233,7 +280,7 @@ public final class NeighborJoiningF {
             final float r_j = _r[ j ];
             final int m_j = _mappings[ j ];
             for( int i = 0; i < j; ++i ) {
-                final float m = _d_values[ _mappings[ i ] ][ m_j ] - ( ( _r[ i ] + r_j ) / n_minus_2 );
+                final float m = getD( _mappings[ i ], m_j ) - ( ( _r[ i ] + r_j ) / n_minus_2 );
                 if ( m < min ) {
                     min = m;
                     _min_i = i;
@@ -0,0 +1,558 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.evoinference.distance;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntConsumer;
+
+import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+
+/**
+ * Neighbor joining with bound-based pruning of the search for the minimal
+ * Q value, after:
+ * <p>
+ * Simonsen M, Mailund T, Pedersen CNS: "Rapid Neighbour-Joining". Algorithms
+ * in Bioinformatics (WABI 2008), LNCS 5251, pp 113-122.
+ * <p>
+ * Each row of the distance matrix is kept sorted by distance. Since
+ * Q(i,j) = d(i,j) - (r(i) + r(j)) / (n - 2) >= d(i,j) - (r(i) + r_max) / (n - 2),
+ * the scan of a sorted row can stop as soon as this lower bound exceeds the
+ * smallest Q value found so far. Every pair of clusters is kept in exactly one
+ * sorted row (the row of the cluster which was created later), entries of
+ * clusters which have since been joined are skipped lazily and rows are
+ * compacted whenever the number of clusters has shrunk by a third. The rows
+ * are searched concurrently on a fork/join pool.
+ * <p>
+ * Net divergences are updated incrementally (and recomputed from scratch at
+ * every compaction). To be immune to the resulting rounding differences, all
+ * pairs within a small tolerance of the minimum are re-evaluated with net
+ * divergences summed up in the same order as in NeighborJoining, and ties are
+ * broken the same way (the pair which comes first in the original order of
+ * the matrix wins). The resulting phylogeny is therefore identical to the one
+ * produced by NeighborJoining.
+ * <p>
+ * Memory: a copy of the lower triangle as doubles (8 bytes per pair) plus the
+ * sorted row indices (4 bytes per pair). If a TriangularDistanceMatrix is
+ * given, it is used in place, without a copy, and its values are changed.
+ *
+ * @see NeighborJoining
+ */
+public final class NeighborJoiningRapid {
+
+    private final static int         MIN_ROWS_PER_TASK = 64;
+    private final static double      TOLERANCE_FACTOR  = 1E-9;
+    private final DecimalFormat      _df;
+    private final int                _threads;
+    private ForkJoinPool             _pool;
+    private DistanceMatrix           _d;
+    private double[][]               _d_values;
+    private TriangularDistanceMatrix _t;
+    private PhylogenyNode[]          _clusters;
+    private int[]                    _birth;
+    private boolean[]                _alive;
+    private int[]                    _live;
+    private int                      _n;
+    private double[]                 _r;
+    private double                   _r_max;
+    private int[][]                  _sorted;
+    private int[]                    _sorted_length;
+    private int                      _next_birth;
+    private int                      _n_at_last_compaction;
+    private volatile double          _q_bound;
+    private double                   _tolerance;
+
+    private NeighborJoiningRapid( final int threads, final int maximum_fraction_digits_for_distances ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        _threads = threads;
+        if ( maximum_fraction_digits_for_distances < 0 ) {
+            _df = null;
+        }
+        else {
+            if ( ( maximum_fraction_digits_for_distances < 1 ) || ( maximum_fraction_digits_for_distances > 9 ) ) {
+                throw new IllegalArgumentException( "maximum fraction digits for distances is out of range: "
+                        + maximum_fraction_digits_for_distances );
+            }
+            _df = new DecimalFormat();
+            _df.setMaximumFractionDigits( maximum_fraction_digits_for_distances );
+            _df.setRoundingMode( RoundingMode.HALF_UP );
+        }
+    }
+
+    /**
+     * Infers a phylogeny from any distance matrix. The lower triangle is copied;
+     * the given matrix is not changed.
+     */
+    public final Phylogeny execute( final DistanceMatrix distance ) {
+        if ( distance instanceof TriangularDistanceMatrix ) {
+            return execute( ( TriangularDistanceMatrix ) distance );
+        }
+        final int n = distance.getSize();
+        final double[][] values = new double[ n ][];
+        for( int i = 0; i < n; ++i ) {
+            values[ i ] = new double[ i ];
+            for( int j = 0; j < i; ++j ) {
+                values[ i ][ j ] = distance.getValue( j, i );
+            }
+        }
+        return execute( distance, values, null );
+    }
+
+    /**
+     * Infers a phylogeny directly from a packed triangular distance matrix,
+     * without copying it.
+     * <p>
+     * !matrix values will be changed!
+     */
+    public final Phylogeny execute( final TriangularDistanceMatrix distance ) {
+        return execute( distance, null, distance );
+    }
+
+    private final Phylogeny execute( final DistanceMatrix distance,
+                                     final double[][] values,
+                                     final TriangularDistanceMatrix triangular ) {
+        if ( distance.getSize() < 2 ) {
+            throw new IllegalArgumentException( "attempt to infer phylogeny from distance matrix of size "
+                    + distance.getSize() );
+        }
+        _pool = new ForkJoinPool( _threads );
+        try {
+            reset( distance, values, triangular );
+            while ( _n > 2 ) {
+                final Candidate min = findMinQ();
+                join( min._i, min._j, min._r_i, min._r_j );
+            }
+            final int a = _live[ 0 ];
+            final int b = _live[ 1 ];
+            final double d = getD( a, b ) / 2;
+            setDistanceToParent( _clusters[ a ], d );
+            setDistanceToParent( _clusters[ b ], d );
+            final PhylogenyNode root = new PhylogenyNode();
+            root.addAsChild( _clusters[ a ] );
+            root.addAsChild( _clusters[ b ] );
+            final Phylogeny phylogeny = new Phylogeny();
+            phylogeny.setRoot( root );
+            phylogeny.setRooted( false );
+            return phylogeny;
+        }
+        finally {
+            _pool.shutdown();
+            _pool = null;
+            _d = null;
+            _d_values = null;
+            _t = null;
+            _clusters = null;
+            _sorted = null;
+        }
+    }
+
+    private final void calculateNetDivergences() {
+        _pool.invoke( new RangeAction( 0, _n, i -> {
+            final int s_i = _live[ i ];
+            double d = 0;
+            for( int k = 0; k < _n; ++k ) {
+                if ( k != i ) {
+                    d += getD( s_i, _live[ k ] );
+                }
+            }
+            _r[ s_i ] = d;
+        } ) );
+        updateRmax();
+    }
+
+    private final void compact() {
+        _pool.invoke( new RangeAction( 0, _n, i -> {
+            final int s_i = _live[ i ];
+            final int[] row = _sorted[ s_i ];
+            final int birth = _birth[ s_i ];
+            int l = 0;
+            for( int e = 0; e < _sorted_length[ s_i ]; ++e ) {
+                final int s = row[ e ];
+                if ( isCurrent( s, birth ) ) {
+                    row[ l++ ] = s;
+                }
+            }
+            if ( l < ( row.length >>> 1 ) ) {
+                _sorted[ s_i ] = Arrays.copyOf( row, l );
+            }
+            _sorted_length[ s_i ] = l;
+        } ) );
+        _n_at_last_compaction = _n;
+        calculateNetDivergences();
+    }
+
+    private final double calculateNetDivergence( final int s_i ) {
+        double d = 0;
+        for( int k = 0; k < _n; ++k ) {
+            final int s_k = _live[ k ];
+            if ( s_k != s_i ) {
+                d += getD( s_i, s_k );
+            }
+        }
+        return d;
+    }
+
+    // The search uses the incrementally updated net divergences and collects every pair
+    // within the tolerance of the minimum; these few pairs are then re-evaluated with net
+    // divergences summed up exactly as NeighborJoining does.
+    private final Candidate findMinQ() {
+        _q_bound = Double.POSITIVE_INFINITY;
+        double max_abs_r = 0;
+        for( int k = 0; k < _n; ++k ) {
+            max_abs_r = Math.max( max_abs_r, Math.abs( _r[ _live[ k ] ] ) );
+        }
+        _tolerance = ( TOLERANCE_FACTOR * 2 * max_abs_r ) / ( _n - 2 );
+        final Candidates candidates = _pool.invoke( new SearchTask( 0, _n ) );
+        final double n_minus_2 = _n - 2;
+        Candidate min = null;
+        for( final Candidate c : candidates._list ) {
+            if ( c._q <= ( candidates._min_q + _tolerance ) ) {
+                final Candidate e = new Candidate( c._i, c._j );
+                e._r_i = calculateNetDivergence( c._i );
+                e._r_j = calculateNetDivergence( c._j );
+                e._q = getD( c._i, c._j ) - ( ( e._r_i + e._r_j ) / n_minus_2 );
+                if ( ( min == null ) || isBetter( e._q, e._i, e._j, min ) ) {
+                    min = e;
+                }
+            }
+        }
+        if ( min == null ) {
+            throw new IllegalStateException( "failed to find minimal Q value (distances not finite?)" );
+        }
+        return min;
+    }
+
+    private final double getD( final int s_i, final int s_j ) {
+        if ( _t != null ) {
+            return _t.get( s_i, s_j );
+        }
+        return s_i > s_j ? _d_values[ s_i ][ s_j ] : _d_values[ s_j ][ s_i ];
+    }
+
+    // s_i < s_j (slots); the new cluster takes the place of s_i.
+    private final void join( final int s_i, final int s_j, final double r_i, final double r_j ) {
+        final double d = getD( s_i, s_j );
+        final double d1 = ( d / 2 ) + ( ( r_i - r_j ) / ( 2 * ( _n - 2 ) ) );
+        final double d2 = d - d1;
+        setDistanceToParent( _clusters[ s_i ], d1 );
+        setDistanceToParent( _clusters[ s_j ], d2 );
+        final PhylogenyNode node = new PhylogenyNode();
+        node.addAsChild( _clusters[ s_i ] );
+        node.addAsChild( _clusters[ s_j ] );
+        _clusters[ s_i ] = node;
+        _clusters[ s_j ] = null;
+        _alive[ s_j ] = false;
+        _sorted[ s_j ] = null;
+        _sorted_length[ s_j ] = 0;
+        int l = 0;
+        for( int k = 0; k < _n; ++k ) {
+            if ( _live[ k ] != s_j ) {
+                _live[ l++ ] = _live[ k ];
+            }
+        }
+        --_n;
+        double r = 0;
+        final long[] keys = new long[ _n - 1 ];
+        int e = 0;
+        for( int k = 0; k < _n; ++k ) {
+            final int s_k = _live[ k ];
+            if ( s_k == s_i ) {
+                continue;
+            }
+            final double d_ik = getD( s_i, s_k );
+            final double d_jk = getD( s_j, s_k );
+            final double d_uk = ( ( d_ik + d_jk ) - d ) / 2;
+            setD( s_i, s_k, d_uk );
+            _r[ s_k ] = ( _r[ s_k ] - d_ik - d_jk ) + d_uk;
+            r += d_uk;
+            keys[ e++ ] = ( ( long ) toSortableBits( d_uk ) << 32 ) | s_k;
+        }
+        _r[ s_i ] = r;
+        _birth[ s_i ] = _next_birth++;
+        Arrays.sort( keys );
+        final int[] row = new int[ keys.length ];
+        for( int k = 0; k < keys.length; ++k ) {
+            row[ k ] = ( int ) keys[ k ];
+        }
+        _sorted[ s_i ] = row;
+        _sorted_length[ s_i ] = row.length;
+        if ( ( _n > 2 ) && ( ( 3L * _n ) <= ( 2L * _n_at_last_compaction ) ) ) {
+            compact();
+        }
+        else {
+            updateRmax();
+        }
+    }
+
+    private final void reset( final DistanceMatrix distance,
+                              final double[][] values,
+                              final TriangularDistanceMatrix triangular ) {
+        _d = distance;
+        _d_values = values;
+        _t = triangular;
+        _n = distance.getSize();
+        _clusters = new PhylogenyNode[ _n ];
+        _birth = new int[ _n ];
+        _alive = new boolean[ _n ];
+        _live = new int[ _n ];
+        _r = new double[ _n ];
+        _sorted = new int[ _n ][];
+        _sorted_length = new int[ _n ];
+        for( int i = 0; i < _n; ++i ) {
+            _clusters[ i ] = new PhylogenyNode();
+            final String id = _d.getIdentifier( i );
+            if ( id != null ) {
+                _clusters[ i ].setName( id );
+            }
+            else {
+                _clusters[ i ].setName( Integer.toString( i ) );
+            }
+            _birth[ i ] = i;
+            _alive[ i ] = true;
+            _live[ i ] = i;
+        }
+        _next_birth = _n;
+        _n_at_last_compaction = _n;
+        _pool.invoke( new RangeAction( 0, _n, i -> {
+            final long[] keys = new long[ i ];
+            for( int j = 0; j < i; ++j ) {
+                keys[ j ] = ( ( long ) toSortableBits( getD( i, j ) ) << 32 ) | j;
+            }
+            Arrays.sort( keys );
+            final int[] row = new int[ i ];
+            for( int j = 0; j < i; ++j ) {
+                row[ j ] = ( int ) keys[ j ];
+            }
+            _sorted[ i ] = row;
+            _sorted_length[ i ] = i;
+        } ) );
+        calculateNetDivergences();
+    }
+
+    private final void searchRow( final int s_x, final Candidates candidates ) {
+        final int[] row = _sorted[ s_x ];
+        final int length = _sorted_length[ s_x ];
+        final int birth = _birth[ s_x ];
+        final double n_minus_2 = _n - 2;
+        final double r_x = _r[ s_x ];
+        final double bound_offset = ( r_x + _r_max ) / n_minus_2;
+        for( int e = 0; e < length; ++e ) {
+            final int s = row[ e ];
+            // stale entries have to be skipped before the bound is applied, since the
+            // slot might have been re-used for a new cluster with a different distance
+            if ( !isCurrent( s, birth ) ) {
+                continue;
+            }
+            final double d = getD( s_x, s );
+            // the scan order is by d rounded down to float, so the bound has to use that, too
+            final double lower_bound = lowerFloat( d ) - bound_offset;
+            if ( ( lower_bound > ( _q_bound + _tolerance ) )
+                    || ( lower_bound > ( candidates._min_q + _tolerance ) ) ) {
+                break;
+            }
+            final double q = d - ( ( _r[ s ] + r_x ) / n_minus_2 );
+            if ( q <= ( candidates._min_q + _tolerance ) ) {
+                final Candidate c = s < s_x ? new Candidate( s, s_x ) : new Candidate( s_x, s );
+                c._q = q;
+                candidates.add( c, _tolerance );
+                if ( q < _q_bound ) {
+                    _q_bound = q;
+                }
+            }
+        }
+    }
+
+    // an entry of a sorted row is current if its cluster is still alive and older than the row's cluster
+    private final boolean isCurrent( final int s, final int birth ) {
+        return _alive[ s ] && ( _birth[ s ] < birth );
+    }
+
+    private final void setD( final int s_i, final int s_j, final double d ) {
+        if ( _t != null ) {
+            _t.put( s_i, s_j, d );
+        }
+        else if ( s_i > s_j ) {
+            _d_values[ s_i ][ s_j ] = d;
+        }
+        else {
+            _d_values[ s_j ][ s_i ] = d;
+        }
+    }
+
+    private final void setDistanceToParent( final PhylogenyNode n, final double d ) {
+        if ( _df == null ) {
+            n.setDistanceToParent( d );
+        }
+        else {
+            n.setDistanceToParent( Double.parseDouble( _df.format( d ) ) );
+        }
+    }
+
+    private final void updateRmax() {
+        double r_max = -Double.MAX_VALUE;
+        for( int k = 0; k < _n; ++k ) {
+            if ( _r[ _live[ k ] ] > r_max ) {
+                r_max = _r[ _live[ k ] ];
+            }
+        }
+        _r_max = r_max;
+    }
+
+    public final static NeighborJoiningRapid createInstance() {
+        return new NeighborJoiningRapid( Runtime.getRuntime().availableProcessors(), -1 );
+    }
+
+    public final static NeighborJoiningRapid createInstance( final int threads ) {
+        return new NeighborJoiningRapid( threads, -1 );
+    }
+
+    public final static NeighborJoiningRapid createInstance( final int threads,
+                                                             final int maximum_fraction_digits_for_distances ) {
+        return new NeighborJoiningRapid( threads, maximum_fraction_digits_for_distances );
+    }
+
+    // Same order as NeighborJoining: smallest q, then smallest j, then smallest i.
+    private final static boolean isBetter( final double q, final int i, final int j, final Candidate c ) {
+        if ( q != c._q ) {
+            return q < c._q;
+        }
+        if ( j != c._j ) {
+            return j < c._j;
+        }
+        return i < c._i;
+    }
+
+    private final static double lowerFloat( final double d ) {
+        final float f = ( float ) d;
+        return f > d ? Math.nextDown( f ) : f;
+    }
+
+    private final static int toSortableBits( final double d ) {
+        final int bits = Float.floatToIntBits( ( float ) lowerFloat( d ) );
+        return bits < 0 ? bits ^ 0x7fffffff : bits;
+    }
+
+    private final static class Candidate {
+
+        final int _i;
+        final int _j;
+        double    _q;
+        double    _r_i;
+        double    _r_j;
+
+        Candidate( final int i, final int j ) {
+            _i = i;
+            _j = j;
+        }
+    }
+
+    private final static class Candidates {
+
+        final List<Candidate> _list  = new ArrayList<>();
+        double                _min_q = Double.POSITIVE_INFINITY;
+
+        void add( final Candidate c, final double tolerance ) {
+            _list.add( c );
+            if ( c._q < _min_q ) {
+                _min_q = c._q;
+                if ( _list.size() > 16 ) {
+                    _list.removeIf( x -> x._q > ( _min_q + tolerance ) );
+                }
+            }
+        }
+
+        void addAll( final Candidates other, final double tolerance ) {
+            for( final Candidate c : other._list ) {
+                if ( c._q <= ( Math.min( _min_q, other._min_q ) + tolerance ) ) {
+                    add( c, tolerance );
+                }
+            }
+        }
+    }
+
+    private final static class RangeAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int         _first;
+        private final int         _last;
+        private final IntConsumer _op;
+
+        RangeAction( final int first, final int last, final IntConsumer op ) {
+            _first = first;
+            _last = last;
+            _op = op;
+        }
+
+        @Override
+        protected final void compute() {
+            if ( ( _last - _first ) <= MIN_ROWS_PER_TASK ) {
+                for( int i = _first; i < _last; ++i ) {
+                    _op.accept( i );
+                }
+            }
+            else {
+                final int mid = ( _first + _last ) >>> 1;
+                invokeAll( new RangeAction( _first, mid, _op ), new RangeAction( mid, _last, _op ) );
+            }
+        }
+    }
+
+    private final class SearchTask extends RecursiveTask<Candidates> {
+
+        private static final long serialVersionUID = 1L;
+        private final int         _first;
+        private final int         _last;
+
+        SearchTask( final int first, final int last ) {
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected Candidates compute() {
+            if ( ( _last - _first ) <= MIN_ROWS_PER_TASK ) {
+                final Candidates candidates = new Candidates();
+                for( int k = _first; k < _last; ++k ) {
+                    searchRow( _live[ k ], candidates );
+                }
+                return candidates;
+            }
+            final int mid = ( _first + _last ) >>> 1;
+            final SearchTask left = new SearchTask( _first, mid );
+            left.fork();
+            final Candidates r = new SearchTask( mid, _last ).compute();
+            final Candidates l = left.join();
+            l.addAll( r, _tolerance );
+            return l;
+        }
+    }
+}
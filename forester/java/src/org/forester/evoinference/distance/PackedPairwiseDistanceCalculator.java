@@ -0,0 +1,321 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.evoinference.distance;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
+import org.forester.msa.Msa;
+
+/**
+ * Multi-threaded pairwise distance calculation on bit-packed alignment rows.
+ * <p>
+ * Each row of the alignment is encoded once into an array of longs, using 4
+ * bits per residue if the alignment contains at most 16 distinct characters
+ * (nucleotides), 8 bits per residue if it contains at most 256 and 16 bits
+ * otherwise. Two rows are then compared a whole word at a time: the XOR of two
+ * words is folded per residue lane and the number of differing lanes is
+ * obtained with a single bit count.
+ * <p>
+ * The lower triangle of the matrix is cut into square tiles of rows, sized so
+ * that the packed rows of one tile stay in cache, and the tiles are distributed
+ * over a fork/join pool.
+ * <p>
+ * Results are identical to those of the corresponding methods of
+ * PairwiseDistanceCalculator.
+ *
+ * @see PairwiseDistanceCalculator
+ */
+public final class PackedPairwiseDistanceCalculator {
+
+    private final static int  TILE_BYTES = 1 << 17;
+    private final static long LANES_4    = 0x1111111111111111L;
+    private final static long LANES_8    = 0x0101010101010101L;
+    private final static long LANES_16   = 0x0001000100010001L;
+    private final int         _bits_per_residue;
+    private final long        _lane_mask;
+    private final int         _length;
+    private final long[][]    _rows;
+    private final int         _tile_size;
+    private final double      _value_for_too_large_distance_for_kimura_formula;
+
+    private PackedPairwiseDistanceCalculator( final Msa msa,
+                                              final double value_for_too_large_distance_for_kimura_formula ) {
+        _value_for_too_large_distance_for_kimura_formula = value_for_too_large_distance_for_kimura_formula;
+        _length = msa.getLength();
+        final int[] codes = new int[ Character.MAX_VALUE + 1 ];
+        Arrays.fill( codes, -1 );
+        int distinct = 0;
+        final int n = msa.getNumberOfSequences();
+        for( int row = 0; row < n; ++row ) {
+            for( int col = 0; col < _length; ++col ) {
+                final char c = msa.getResidueAt( row, col );
+                if ( codes[ c ] < 0 ) {
+                    codes[ c ] = distinct++;
+                }
+            }
+        }
+        if ( distinct <= 16 ) {
+            _bits_per_residue = 4;
+            _lane_mask = LANES_4;
+        }
+        else if ( distinct <= 256 ) {
+            _bits_per_residue = 8;
+            _lane_mask = LANES_8;
+        }
+        else {
+            _bits_per_residue = 16;
+            _lane_mask = LANES_16;
+        }
+        final int per_word = 64 / _bits_per_residue;
+        final int words = ( _length + per_word - 1 ) / per_word;
+        _rows = new long[ n ][ words ];
+        for( int row = 0; row < n; ++row ) {
+            final long[] packed = _rows[ row ];
+            for( int col = 0; col < _length; ++col ) {
+                packed[ col / per_word ] |= ( ( long ) codes[ msa.getResidueAt( row, col ) ] ) << ( ( col % per_word )
+                        * _bits_per_residue );
+            }
+        }
+        _tile_size = Math.max( 4, TILE_BYTES / ( 2 * 8 * Math.max( 1, words ) ) );
+    }
+
+    /**
+     * Returns the number of columns in which the two rows differ.
+     */
+    final int countDifferences( final int row_1, final int row_2 ) {
+        final long[] a = _rows[ row_1 ];
+        final long[] b = _rows[ row_2 ];
+        int nd = 0;
+        for( int w = 0; w < a.length; ++w ) {
+            long x = a[ w ] ^ b[ w ];
+            if ( x != 0 ) {
+                for( int shift = _bits_per_residue >>> 1; shift > 0; shift >>>= 1 ) {
+                    x |= x >>> shift;
+                }
+                nd += Long.bitCount( x & _lane_mask );
+            }
+        }
+        return nd;
+    }
+
+    private BasicSymmetricalDistanceMatrix calc( final Msa msa, final MEASURE measure, final int threads ) {
+        final int s = msa.getNumberOfSequences();
+        final BasicSymmetricalDistanceMatrix d = new BasicSymmetricalDistanceMatrix( s );
+        for( int i = 0; i < s; i++ ) {
+            d.setIdentifier( i, msa.getIdentifier( i ) );
+        }
+        final int tile_rows = ( s + _tile_size - 1 ) / _tile_size;
+        final long tiles = ( ( long ) tile_rows * ( tile_rows + 1 ) ) / 2;
+        if ( threads == 1 ) {
+            for( long tile = 0; tile < tiles; ++tile ) {
+                calcTile( d, measure, tile );
+            }
+        }
+        else if ( tiles > 0 ) {
+            final ForkJoinPool pool = new ForkJoinPool( threads );
+            try {
+                pool.invoke( new TileTask( d, measure, 0, tiles ) );
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        return d;
+    }
+
+    private void calcTile( final BasicSymmetricalDistanceMatrix d, final MEASURE measure, final long tile ) {
+        int ti = ( int ) ( ( Math.sqrt( ( 8.0 * tile ) + 1 ) - 1 ) / 2 );
+        while ( ( ( long ) ti * ( ti + 1 ) ) / 2 > tile ) {
+            --ti;
+        }
+        while ( ( ( long ) ( ti + 1 ) * ( ti + 2 ) ) / 2 <= tile ) {
+            ++ti;
+        }
+        final int tj = ( int ) ( tile - ( ( ( long ) ti * ( ti + 1 ) ) / 2 ) );
+        final int s = d.getSize();
+        final int i_end = Math.min( s, ( ti + 1 ) * _tile_size );
+        final int j_end = Math.min( s, ( tj + 1 ) * _tile_size );
+        for( int i = ti * _tile_size; i < i_end; ++i ) {
+            final int j_max = Math.min( j_end, measure == MEASURE.FRACTIONAL_SIMILARITY ? i + 1 : i );
+            for( int j = tj * _tile_size; j < j_max; ++j ) {
+                d.setValue( i, j, calcValue( measure, countDifferences( i, j ) ) );
+            }
+        }
+    }
+
+    private double calcValue( final MEASURE measure, final int nd ) {
+        switch ( measure ) {
+            case KIMURA_DISTANCE:
+                return calcKimuraDistance( ( double ) nd / _length );
+            case POISSON_DISTANCE:
+                return calcPoissonDistance( ( double ) nd / _length );
+            case FRACTIONAL_DISSIMILARITY:
+                return ( double ) nd / _length;
+            case FRACTIONAL_SIMILARITY:
+                return ( double ) ( _length - nd ) / _length;
+            default:
+                throw new IllegalArgumentException( "unknown measure " + measure );
+        }
+    }
+
+    private double calcKimuraDistance( final double p ) {
+        final double dp = 1 - p - ( 0.2 * p * p );
+        if ( dp <= 0.0 ) {
+            return _value_for_too_large_distance_for_kimura_formula;
+        }
+        if ( dp == 1 ) {
+            return 0; // Too avoid -0.
+        }
+        return -Math.log( dp );
+    }
+
+    private double calcPoissonDistance( final double p ) {
+        final double dp = 1 - p;
+        if ( dp <= 0.0 ) {
+            return _value_for_too_large_distance_for_kimura_formula;
+        }
+        if ( dp == 1 ) {
+            return 0; // Too avoid -0.
+        }
+        return -Math.log( dp );
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException();
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcFractionalDissimilarities( final Msa msa ) {
+        return calcFractionalDissimilarities( msa, defaultThreads() );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcFractionalDissimilarities( final Msa msa, final int threads ) {
+        return calc( msa,
+                     MEASURE.FRACTIONAL_DISSIMILARITY,
+                     PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                     threads );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcFractionalSimilarities( final Msa msa ) {
+        return calcFractionalSimilarities( msa, defaultThreads() );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcFractionalSimilarities( final Msa msa, final int threads ) {
+        return calc( msa,
+                     MEASURE.FRACTIONAL_SIMILARITY,
+                     PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                     threads );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcKimuraDistances( final Msa msa ) {
+        return calcKimuraDistances( msa,
+                                    PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                                    defaultThreads() );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcKimuraDistances( final Msa msa,
+                                                                      final double value_for_too_large_distance_for_kimura_formula,
+                                                                      final int threads ) {
+        return calc( msa, MEASURE.KIMURA_DISTANCE, value_for_too_large_distance_for_kimura_formula, threads );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcPoissonDistances( final Msa msa ) {
+        return calcPoissonDistances( msa, defaultThreads() );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcPoissonDistances( final Msa msa, final int threads ) {
+        return calc( msa,
+                     MEASURE.POISSON_DISTANCE,
+                     PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                     threads );
+    }
+
+    public static BasicSymmetricalDistanceMatrix calcDistances( final Msa msa,
+                                                                final PairwiseDistanceCalculator.PWD_DISTANCE_METHOD method,
+                                                                final int threads ) {
+        switch ( method ) {
+            case KIMURA_DISTANCE:
+                return calcKimuraDistances( msa,
+                                            PairwiseDistanceCalculator.DEFAULT_VALUE_FOR_TOO_LARGE_DISTANCE_FOR_KIMURA_FORMULA,
+                                            threads );
+            case POISSON_DISTANCE:
+                return calcPoissonDistances( msa, threads );
+            case FRACTIONAL_DISSIMILARITY:
+                return calcFractionalDissimilarities( msa, threads );
+            default:
+                throw new IllegalArgumentException( "unknown distance method " + method );
+        }
+    }
+
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static BasicSymmetricalDistanceMatrix calc( final Msa msa,
+                                                        final MEASURE measure,
+                                                        final double value_for_too_large_distance_for_kimura_formula,
+                                                        final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        return new PackedPairwiseDistanceCalculator( msa, value_for_too_large_distance_for_kimura_formula )
+                .calc( msa, measure, threads );
+    }
+
+    private enum MEASURE {
+                          KIMURA_DISTANCE,
+                          POISSON_DISTANCE,
+                          FRACTIONAL_DISSIMILARITY,
+                          FRACTIONAL_SIMILARITY;
+    }
+
+    private final class TileTask extends RecursiveAction {
+
+        private static final long                    serialVersionUID = 1L;
+        private final BasicSymmetricalDistanceMatrix _d;
+        private final long                           _first;
+        private final long                           _last;
+        private final MEASURE                        _measure;
+
+        TileTask( final BasicSymmetricalDistanceMatrix d, final MEASURE measure, final long first, final long last ) {
+            _d = d;
+            _measure = measure;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if ( ( _last - _first ) <= 1 ) {
+                for( long t = _first; t < _last; ++t ) {
+                    calcTile( _d, _measure, t );
+                }
+            }
+            else {
+                final long mid = ( _first + _last ) >>> 1;
+                invokeAll( new TileTask( _d, _measure, _first, mid ), new TileTask( _d, _measure, mid, _last ) );
+            }
+        }
+    }
+}
@@ -122,83 +122,78 @@ public final class BasicSymmetricalDistanceMatrix implements DistanceMatrix {
     }
 
     public final void writeToPhylip( final Writer w ) throws IOException {
-        w.write( "    " );
-        w.write( getSize() + "" );
-        w.write( ForesterUtil.LINE_SEPARATOR );
-        for( int row = 0; row < getSize(); ++row ) {
-            if ( !ForesterUtil.isEmpty( getIdentifier( row ) ) ) {
-                w.write( ForesterUtil.pad( getIdentifier( row ), 10, ' ', false ).toString() );
-                w.write( ' ' );
-                w.write( ' ' );
-            }
-            else {
-                throw new IllegalFormatUseException( "Phylip format does not allow empty identifiers" );
-            }
-            for( int col = 0; col < getSize(); ++col ) {
-                w.write( PHYLIP_FORMATTER.format( getValue( col, row ) ) );
-                if ( col < ( getSize() - 1 ) ) {
-                    w.write( ' ' );
-                    w.write( ' ' );
-                }
-            }
-            if ( row < ( getSize() - 1 ) ) {
-                w.write( ForesterUtil.LINE_SEPARATOR );
-            }
-        }
+        writeToPhylip( this, w );
     }
 
     public final void write( final Writer w ) throws IOException {
-        for( int row = 0; row < getSize(); ++row ) {
-            if ( !ForesterUtil.isEmpty( getIdentifier( row ) ) ) {
-                w.write( ForesterUtil.pad( getIdentifier( row ), 50, ' ', false ).toString() );
-                w.write( ' ' );
-                w.write( ' ' );
-            }
-            else {
-                throw new IllegalFormatUseException( "Phylip format does not allow empty identifiers" );
-            }
-            for( int col = 0; col < getSize(); ++col ) {
-                w.write( PHYLIP_FORMATTER.format( getValue( col, row ) ) );
-                if ( col < ( getSize() - 1 ) ) {
-                    w.write( ' ' );
-                    w.write( ' ' );
-                }
-            }
-            if ( row < ( getSize() - 1 ) ) {
-                w.write( ForesterUtil.LINE_SEPARATOR );
-            }
-        }
+        write( this, w, 50 );
     }
 
     private final StringBuffer toPhylip() {
+        return toPhylip( this );
+    }
+
+    final static StringBuffer toPhylip( final DistanceMatrix m ) {
+        final int size = m.getSize();
         final StringBuffer sb = new StringBuffer();
         sb.append( ' ' );
         sb.append( ' ' );
         sb.append( ' ' );
         sb.append( ' ' );
-        sb.append( getSize() );
+        sb.append( size );
         sb.append( ForesterUtil.LINE_SEPARATOR );
-        for( int row = 0; row < getSize(); ++row ) {
-            if ( !ForesterUtil.isEmpty( getIdentifier( row ) ) ) {
-                sb.append( ForesterUtil.pad( getIdentifier( row ), 10, ' ', false ) );
+        for( int row = 0; row < size; ++row ) {
+            if ( !ForesterUtil.isEmpty( m.getIdentifier( row ) ) ) {
+                sb.append( ForesterUtil.pad( m.getIdentifier( row ), 10, ' ', false ) );
                 sb.append( ' ' );
                 sb.append( ' ' );
             }
             else {
                 throw new IllegalFormatUseException( "Phylip format does not allow empty identifiers" );
             }
-            //sb.append( "" );
-            for( int col = 0; col < getSize(); ++col ) {
-                sb.append( PHYLIP_FORMATTER.format( getValue( col, row ) ) );
-                if ( col < ( getSize() - 1 ) ) {
+            for( int col = 0; col < size; ++col ) {
+                sb.append( PHYLIP_FORMATTER.format( m.getValue( col, row ) ) );
+                if ( col < ( size - 1 ) ) {
                     sb.append( ' ' );
                     sb.append( ' ' );
                 }
             }
-            if ( row < ( getSize() - 1 ) ) {
+            if ( row < ( size - 1 ) ) {
                 sb.append( ForesterUtil.LINE_SEPARATOR );
             }
         }
         return sb;
     }
+
+    final static void write( final DistanceMatrix m, final Writer w, final int identifier_length )
+            throws IOException {
+        final int size = m.getSize();
+        for( int row = 0; row < size; ++row ) {
+            if ( !ForesterUtil.isEmpty( m.getIdentifier( row ) ) ) {
+                w.write( ForesterUtil.pad( m.getIdentifier( row ), identifier_length, ' ', false ).toString() );
+                w.write( ' ' );
+                w.write( ' ' );
+            }
+            else {
+                throw new IllegalFormatUseException( "Phylip format does not allow empty identifiers" );
+            }
+            for( int col = 0; col < size; ++col ) {
+                w.write( PHYLIP_FORMATTER.format( m.getValue( col, row ) ) );
+                if ( col < ( size - 1 ) ) {
+                    w.write( ' ' );
+                    w.write( ' ' );
+                }
+            }
+            if ( row < ( size - 1 ) ) {
+                w.write( ForesterUtil.LINE_SEPARATOR );
+            }
+        }
+    }
+
+    final static void writeToPhylip( final DistanceMatrix m, final Writer w ) throws IOException {
+        w.write( "    " );
+        w.write( m.getSize() + "" );
+        w.write( ForesterUtil.LINE_SEPARATOR );
+        write( m, w, 10 );
+    }
 }
@@ -0,0 +1,304 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.evoinference.matrix.distance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A symmetrical distance matrix which stores only the lower triangle
+ * (including the diagonal) in packed, row-major order.
+ * <p>
+ * Values are kept either as floats (4 bytes each) or as doubles (8 bytes
+ * each), either on the Java heap, in direct (off-heap) memory, or in a
+ * memory-mapped file. The triangle is split into chunks of 2^27 values, so
+ * that matrices with more than Integer.MAX_VALUE cells (e.g. 50,000 taxa) can
+ * be represented.
+ * <p>
+ * For n taxa, n(n+1)/2 values are stored, instead of the n*n doubles of
+ * BasicSymmetricalDistanceMatrix. NeighborJoining and NeighborJoiningF
+ * operate directly on instances of this class, without making a copy (the
+ * values are changed in the process).
+ */
+public final class TriangularDistanceMatrix implements DistanceMatrix {
+
+    private final static int     CHUNK_BITS = 27;
+    private final static long    CHUNK_MASK = ( 1L << CHUNK_BITS ) - 1;
+    private final DoubleBuffer[] _double_buffers;
+    private final double[][]     _doubles;
+    private final FloatBuffer[]  _float_buffers;
+    private final float[][]      _floats;
+    private final String[]       _identifiers;
+    private final PRECISION      _precision;
+    private final STORAGE        _storage;
+
+    private TriangularDistanceMatrix( final int size,
+                                      final PRECISION precision,
+                                      final STORAGE storage,
+                                      final File file ) throws IOException {
+        if ( size < 1 ) {
+            throw new IllegalArgumentException( "attempt to create distance matrix of size " + size );
+        }
+        _identifiers = new String[ size ];
+        _precision = precision;
+        _storage = storage;
+        final long cells = calcNumberOfCells( size );
+        final int chunks = ( int ) ( ( ( cells - 1 ) >>> CHUNK_BITS ) + 1 );
+        final int bytes_per_value = precision == PRECISION.FLOAT ? 4 : 8;
+        if ( storage == STORAGE.HEAP ) {
+            _double_buffers = null;
+            _float_buffers = null;
+            if ( precision == PRECISION.FLOAT ) {
+                _floats = new float[ chunks ][];
+                _doubles = null;
+            }
+            else {
+                _floats = null;
+                _doubles = new double[ chunks ][];
+            }
+            for( int c = 0; c < chunks; ++c ) {
+                final int length = calcChunkLength( cells, c );
+                if ( precision == PRECISION.FLOAT ) {
+                    _floats[ c ] = new float[ length ];
+                }
+                else {
+                    _doubles[ c ] = new double[ length ];
+                }
+            }
+        }
+        else {
+            _floats = null;
+            _doubles = null;
+            final ByteBuffer[] bbs = new ByteBuffer[ chunks ];
+            if ( storage == STORAGE.OFF_HEAP ) {
+                for( int c = 0; c < chunks; ++c ) {
+                    bbs[ c ] = ByteBuffer.allocateDirect( calcChunkLength( cells, c ) * bytes_per_value );
+                }
+            }
+            else {
+                if ( file == null ) {
+                    throw new IllegalArgumentException( "memory mapped distance matrix requires a file" );
+                }
+                try (RandomAccessFile raf = new RandomAccessFile( file, "rw" )) {
+                    raf.setLength( cells * bytes_per_value );
+                    final FileChannel channel = raf.getChannel();
+                    for( int c = 0; c < chunks; ++c ) {
+                        bbs[ c ] = channel.map( FileChannel.MapMode.READ_WRITE,
+                                                ( ( long ) c << CHUNK_BITS ) * bytes_per_value,
+                                                ( long ) calcChunkLength( cells, c ) * bytes_per_value );
+                    }
+                }
+            }
+            if ( precision == PRECISION.FLOAT ) {
+                _float_buffers = new FloatBuffer[ chunks ];
+                _double_buffers = null;
+                for( int c = 0; c < chunks; ++c ) {
+                    _float_buffers[ c ] = bbs[ c ].order( ByteOrder.nativeOrder() ).asFloatBuffer();
+                }
+            }
+            else {
+                _float_buffers = null;
+                _double_buffers = new DoubleBuffer[ chunks ];
+                for( int c = 0; c < chunks; ++c ) {
+                    _double_buffers[ c ] = bbs[ c ].order( ByteOrder.nativeOrder() ).asDoubleBuffer();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value for i and j without any checks.
+     * <p>
+     * Intended for in-place algorithms; i and j are not required to be
+     * ordered.
+     */
+    public final double get( final int i, final int j ) {
+        final long index = i > j ? calcIndex( i, j ) : calcIndex( j, i );
+        final int chunk = ( int ) ( index >>> CHUNK_BITS );
+        final int offset = ( int ) ( index & CHUNK_MASK );
+        switch ( _storage ) {
+            case HEAP:
+                return _precision == PRECISION.FLOAT ? _floats[ chunk ][ offset ] : _doubles[ chunk ][ offset ];
+            default:
+                return _precision == PRECISION.FLOAT ? _float_buffers[ chunk ].get( offset ) : _double_buffers[ chunk ]
+                        .get( offset );
+        }
+    }
+
+    @Override
+    public final String getIdentifier( final int i ) {
+        return _identifiers[ i ];
+    }
+
+    @Override
+    public final int getIndex( final String identifier ) {
+        for( int i = 0; i < _identifiers.length; i++ ) {
+            if ( getIdentifier( i ).equals( identifier ) ) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException( "identifier [" + identifier + "] not found in distance matrix" );
+    }
+
+    public final PRECISION getPrecision() {
+        return _precision;
+    }
+
+    @Override
+    public final int getSize() {
+        return _identifiers.length;
+    }
+
+    public final STORAGE getStorage() {
+        return _storage;
+    }
+
+    @Override
+    public final double getValue( final int col, final int row ) {
+        return get( col, row );
+    }
+
+    /**
+     * Sets the value for i and j without checking for negative values.
+     * <p>
+     * Intended for in-place algorithms; i and j are not required to be
+     * ordered.
+     */
+    public final void put( final int i, final int j, final double d ) {
+        final long index = i > j ? calcIndex( i, j ) : calcIndex( j, i );
+        final int chunk = ( int ) ( index >>> CHUNK_BITS );
+        final int offset = ( int ) ( index & CHUNK_MASK );
+        switch ( _storage ) {
+            case HEAP:
+                if ( _precision == PRECISION.FLOAT ) {
+                    _floats[ chunk ][ offset ] = ( float ) d;
+                }
+                else {
+                    _doubles[ chunk ][ offset ] = d;
+                }
+                break;
+            default:
+                if ( _precision == PRECISION.FLOAT ) {
+                    _float_buffers[ chunk ].put( offset, ( float ) d );
+                }
+                else {
+                    _double_buffers[ chunk ].put( offset, d );
+                }
+        }
+    }
+
+    @Override
+    public final void setIdentifier( final int i, final String identifier ) {
+        _identifiers[ i ] = identifier;
+    }
+
+    @Override
+    public final void setValue( final int col, final int row, final double d ) {
+        if ( d < 0 ) {
+            throw new IllegalArgumentException( "negative distance value" );
+        }
+        put( col, row, d );
+    }
+
+    @Override
+    public final String toString() {
+        return BasicSymmetricalDistanceMatrix.toPhylip( this ).toString();
+    }
+
+    @Override
+    public final StringBuffer toStringBuffer( final Format format ) {
+        switch ( format ) {
+            case PHYLIP:
+                return BasicSymmetricalDistanceMatrix.toPhylip( this );
+            default:
+                throw new IllegalArgumentException( "Unknown format:" + format );
+        }
+    }
+
+    public final void write( final Writer w ) throws IOException {
+        BasicSymmetricalDistanceMatrix.write( this, w, 50 );
+    }
+
+    public final void writeToPhylip( final Writer w ) throws IOException {
+        BasicSymmetricalDistanceMatrix.writeToPhylip( this, w );
+    }
+
+    public final static TriangularDistanceMatrix createInstance( final int size, final PRECISION precision ) {
+        try {
+            return new TriangularDistanceMatrix( size, precision, STORAGE.HEAP, null );
+        }
+        catch ( final IOException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    public final static TriangularDistanceMatrix createInstance( final int size,
+                                                                 final PRECISION precision,
+                                                                 final STORAGE storage ) {
+        if ( storage == STORAGE.MEMORY_MAPPED ) {
+            throw new IllegalArgumentException( "memory mapped distance matrix requires a file" );
+        }
+        try {
+            return new TriangularDistanceMatrix( size, precision, storage, null );
+        }
+        catch ( final IOException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Creates a distance matrix backed by a memory-mapped file. The file is
+     * created (or its length adjusted) as needed. Values already present in
+     * the file are retained; identifiers are not stored in the file.
+     */
+    public final static TriangularDistanceMatrix createMemoryMappedInstance( final int size,
+                                                                             final PRECISION precision,
+                                                                             final File file ) throws IOException {
+        return new TriangularDistanceMatrix( size, precision, STORAGE.MEMORY_MAPPED, file );
+    }
+
+    public final static long calcNumberOfCells( final int size ) {
+        return ( ( long ) size * ( size + 1 ) ) / 2;
+    }
+
+    private final static long calcIndex( final int larger, final int smaller ) {
+        return ( ( ( long ) larger * ( larger + 1 ) ) >>> 1 ) + smaller;
+    }
+
+    private final static int calcChunkLength( final long cells, final int chunk ) {
+        return ( int ) Math.min( 1L << CHUNK_BITS, cells - ( ( long ) chunk << CHUNK_BITS ) );
+    }
+
+    public static enum PRECISION {
+        FLOAT, DOUBLE
+    }
+
+    public static enum STORAGE {
+        HEAP, OFF_HEAP, MEMORY_MAPPED
+    }
+}
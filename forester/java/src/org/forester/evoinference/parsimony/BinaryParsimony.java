@@ -0,0 +1,600 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.evoinference.parsimony;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.forester.evoinference.matrix.character.BasicCharacterStateMatrix;
+import org.forester.evoinference.matrix.character.CharacterStateMatrix;
+import org.forester.evoinference.matrix.character.CharacterStateMatrix.BinaryStates;
+import org.forester.evoinference.matrix.character.CharacterStateMatrix.GainLossStates;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Dollo and Fitch parsimony for binary characters, for all characters at
+ * once.
+ * <p>
+ * The states of 64 characters are packed into one long per node and state
+ * (PRESENT, UNKNOWN, and, for Fitch, ABSENT), so that the post-order and
+ * pre-order traversals consist of bitwise operations on all characters of a
+ * word. Words are processed in blocks, which are distributed over threads.
+ * <p>
+ * Results (costs, totals, gain-loss and internal states matrices) are the
+ * same as those of DolloParsimony and of FitchParsimony (without
+ * randomization), respectively.
+ *
+ * @see DolloParsimony
+ * @see FitchParsimony
+ */
+public final class BinaryParsimony {
+
+    public enum METHOD {
+        DOLLO, FITCH;
+    }
+
+    private final static int                     WORDS_PER_BLOCK = 16;
+    private final METHOD                         _method;
+    private final int                            _threads;
+    private int                                  _cost;
+    private CharacterStateMatrix<GainLossStates> _gain_loss_matrix;
+    private CharacterStateMatrix<BinaryStates>   _internal_states_matrix;
+    private boolean                              _return_gain_loss;
+    private boolean                              _return_internal_states;
+    private int                                  _total_gains;
+    private int                                  _total_losses;
+    private int                                  _total_unchanged;
+    private boolean                              _use_last;
+
+    private BinaryParsimony( final METHOD method, final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        _method = method;
+        _threads = threads;
+    }
+
+    public void execute( final Phylogeny p, final CharacterStateMatrix<BinaryStates> external_node_states_matrix ) {
+        if ( !p.isRooted() ) {
+            throw new IllegalArgumentException( "attempt to execute " + getMethodName()
+                    + " parsimony on unroored phylogeny" );
+        }
+        if ( external_node_states_matrix.isEmpty() ) {
+            throw new IllegalArgumentException( "character matrix is empty" );
+        }
+        if ( external_node_states_matrix.getNumberOfIdentifiers() != p.getNumberOfExternalNodes() ) {
+            throw new IllegalArgumentException( "number of external nodes in phylogeny ["
+                    + p.getNumberOfExternalNodes() + "] and number of indentifiers ["
+                    + external_node_states_matrix.getNumberOfIdentifiers() + "] in matrix are not equal" );
+        }
+        final Execution e = new Execution( p, external_node_states_matrix );
+        e.run();
+        _cost = e._cost;
+        _total_gains = e._gains;
+        _total_losses = e._losses;
+        _total_unchanged = e._unchanged;
+        _gain_loss_matrix = e._gain_loss_matrix;
+        _internal_states_matrix = e._internal_states_matrix;
+        if ( ( ( _method == METHOD.DOLLO ) || _return_gain_loss )
+                && ( ( external_node_states_matrix.getNumberOfCharacters() * p.getNumberOfBranches() ) != ( _total_gains
+                        + _total_losses + _total_unchanged ) ) ) {
+            throw new AssertionError( "this should not have happened: something is deeply wrong with "
+                    + getMethodName() + " parsimony implementation" );
+        }
+    }
+
+    public int getCost() {
+        return _cost;
+    }
+
+    public CharacterStateMatrix<GainLossStates> getGainLossMatrix() {
+        if ( !_return_gain_loss ) {
+            throw new RuntimeException( "creation of gain-loss matrix has not been enabled" );
+        }
+        return _gain_loss_matrix;
+    }
+
+    public CharacterStateMatrix<BinaryStates> getInternalStatesMatrix() {
+        if ( !_return_internal_states ) {
+            throw new RuntimeException( "creation of internal state matrix has not been enabled" );
+        }
+        return _internal_states_matrix;
+    }
+
+    public METHOD getMethod() {
+        return _method;
+    }
+
+    public int getNumberOfThreads() {
+        return _threads;
+    }
+
+    /**
+     * Returns the number of gains (as for FitchParsimony, only counted if
+     * creation of the gain-loss matrix is enabled).
+     */
+    public int getTotalGains() {
+        return _total_gains;
+    }
+
+    public int getTotalLosses() {
+        return _total_losses;
+    }
+
+    public int getTotalUnchanged() {
+        return _total_unchanged;
+    }
+
+    public void setReturnGainLossMatrix( final boolean return_gain_loss ) {
+        _return_gain_loss = return_gain_loss;
+    }
+
+    public void setReturnInternalStates( final boolean return_internal_states ) {
+        _return_internal_states = return_internal_states;
+    }
+
+    /**
+     * Fitch parsimony only: whether to use the first (ABSENT, UNKNOWN,
+     * PRESENT, in this order) or last state at undecided nodes, as
+     * FitchParsimony.setUseLast.
+     */
+    public void setUseLast( final boolean use_last ) {
+        if ( use_last && ( _method != METHOD.FITCH ) ) {
+            throw new IllegalArgumentException( "use of last state only applies to Fitch parsimony" );
+        }
+        _use_last = use_last;
+    }
+
+    private String getMethodName() {
+        return _method == METHOD.DOLLO ? "Dollo" : "Fitch";
+    }
+
+    public static BinaryParsimony createInstance( final METHOD method ) {
+        return new BinaryParsimony( method, 1 );
+    }
+
+    public static BinaryParsimony createInstance( final METHOD method, final int threads ) {
+        return new BinaryParsimony( method, threads );
+    }
+
+    private final static String obtainIdentifier( final PhylogenyNode node ) {
+        return ForesterUtil.isEmpty( node.getName() ) ? node.getId() + "" : node.getName();
+    }
+
+    /**
+     * The state of one execution. Nodes are indexed in post-order; for each
+     * node, _present (and so on) hold the bits of all characters.
+     */
+    private final class Execution {
+
+        private final int[]                                  _child_start;
+        private final int[]                                  _children;
+        private final int                                    _characters;
+        private final CharacterStateMatrix<GainLossStates>   _gain_loss_matrix;
+        private final CharacterStateMatrix<BinaryStates>     _internal_states_matrix;
+        private final int[]                                  _internal_row;
+        private final int[]                                  _leaf_row;
+        private final CharacterStateMatrix<BinaryStates>     _matrix;
+        private final int                                    _n;
+        private final int[]                                  _parent;
+        private final long[][]                               _absent;
+        private final long[][]                               _present;
+        private final long[][]                               _unknown;
+        private final long[][]                               _traceback_absent;
+        private final long[][]                               _traceback_present;
+        private final long[][]                               _traceback_unknown;
+        private final int                                    _words;
+        private int                                          _cost;
+        private int                                          _gains;
+        private int                                          _losses;
+        private int                                          _unchanged;
+
+        Execution( final Phylogeny p, final CharacterStateMatrix<BinaryStates> matrix ) {
+            _matrix = matrix;
+            _characters = matrix.getNumberOfCharacters();
+            _words = ( _characters + 63 ) >>> 6;
+            final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+            for( final PhylogenyNodeIterator it = p.iteratorPostorder(); it.hasNext(); ) {
+                nodes.add( it.next() );
+            }
+            _n = nodes.size();
+            final Map<PhylogenyNode, Integer> index = new IdentityHashMap<PhylogenyNode, Integer>( 2 * _n );
+            for( int i = 0; i < _n; ++i ) {
+                index.put( nodes.get( i ), i );
+            }
+            _parent = new int[ _n ];
+            _child_start = new int[ _n + 1 ];
+            _children = new int[ _n - 1 ];
+            _internal_row = new int[ _n ];
+            int c = 0;
+            int internal = 0;
+            for( int v = 0; v < _n; ++v ) {
+                final PhylogenyNode node = nodes.get( v );
+                _parent[ v ] = node.isRoot() ? -1 : index.get( node.getParent() );
+                _child_start[ v ] = c;
+                for( int d = 0; d < node.getNumberOfDescendants(); ++d ) {
+                    _children[ c++ ] = index.get( node.getChildNode( d ) );
+                }
+                _internal_row[ v ] = node.isInternal() ? internal++ : -1;
+            }
+            _child_start[ _n ] = c;
+            _leaf_row = new int[ _n ];
+            Arrays.fill( _leaf_row, -1 );
+            for( int row = 0; row < matrix.getNumberOfIdentifiers(); ++row ) {
+                final PhylogenyNode node = p.getNode( matrix.getIdentifier( row ) );
+                final Integer v = index.get( node );
+                if ( ( v == null ) || !node.isExternal() ) {
+                    throw new IllegalArgumentException( "identifier [" + matrix.getIdentifier( row )
+                            + "] does not correspond to an external node" );
+                }
+                _leaf_row[ v ] = row;
+            }
+            for( int v = 0; v < _n; ++v ) {
+                if ( ( _internal_row[ v ] < 0 ) && ( _leaf_row[ v ] < 0 ) ) {
+                    throw new IllegalArgumentException( "no states for external node [" + nodes.get( v ).getName()
+                            + "]" );
+                }
+            }
+            _present = new long[ _n ][ _words ];
+            _unknown = new long[ _n ][ _words ];
+            if ( _method == METHOD.FITCH ) {
+                _absent = new long[ _n ][ _words ];
+                _traceback_absent = new long[ _n ][ _words ];
+                _traceback_unknown = new long[ _n ][ _words ];
+                _traceback_present = new long[ _n ][ _words ];
+            }
+            else {
+                _absent = null;
+                _traceback_absent = null;
+                _traceback_unknown = null;
+                _traceback_present = null;
+            }
+            if ( _return_gain_loss ) {
+                _gain_loss_matrix = new BasicCharacterStateMatrix<GainLossStates>( _n, _characters );
+                for( int v = 0; v < _n; ++v ) {
+                    _gain_loss_matrix.setIdentifier( v, obtainIdentifier( nodes.get( v ) ) );
+                }
+                for( int i = 0; i < _characters; ++i ) {
+                    _gain_loss_matrix.setCharacter( i, matrix.getCharacter( i ) );
+                }
+            }
+            else {
+                _gain_loss_matrix = null;
+            }
+            if ( _return_internal_states ) {
+                _internal_states_matrix = new BasicCharacterStateMatrix<BinaryStates>( internal, _characters );
+                for( int v = 0; v < _n; ++v ) {
+                    if ( _internal_row[ v ] >= 0 ) {
+                        _internal_states_matrix.setIdentifier( _internal_row[ v ], obtainIdentifier( nodes.get( v ) ) );
+                    }
+                }
+                for( int i = 0; i < _characters; ++i ) {
+                    _internal_states_matrix.setCharacter( i, matrix.getCharacter( i ) );
+                }
+            }
+            else {
+                _internal_states_matrix = null;
+            }
+        }
+
+        /**
+         * Processes the characters of the words [first, end), returning { cost,
+         * gains, losses, unchanged }.
+         */
+        private int[] execute( final int first, final int end ) {
+            final int[] counts = new int[ 4 ];
+            for( int w = first; w < end; ++w ) {
+                readStates( w );
+                if ( _method == METHOD.DOLLO ) {
+                    executeDollo( w, counts );
+                }
+                else {
+                    executeFitch( w, counts );
+                }
+            }
+            return counts;
+        }
+
+        private void executeDollo( final int w, final int[] counts ) {
+            final long mask = mask( w );
+            for( int v = 0; v < _n; ++v ) {
+                if ( _internal_row[ v ] >= 0 ) {
+                    // absent if no, unknown if one, present if at least two
+                    // child nodes are present or unknown
+                    long one = 0;
+                    long two = 0;
+                    for( int c = _child_start[ v ]; c < _child_start[ v + 1 ]; ++c ) {
+                        final long x = _present[ _children[ c ] ][ w ] | _unknown[ _children[ c ] ][ w ];
+                        two |= one & x;
+                        one |= x;
+                    }
+                    _present[ v ][ w ] = two;
+                    _unknown[ v ][ w ] = one & ~two;
+                }
+            }
+            long gained = 0;
+            for( int v = _n - 1; v >= 0; --v ) {
+                final int parent = _parent[ v ];
+                if ( _internal_row[ v ] >= 0 ) {
+                    if ( parent >= 0 ) {
+                        _present[ v ][ w ] |= _unknown[ v ][ w ] & _present[ parent ][ w ];
+                    }
+                    _unknown[ v ][ w ] = 0;
+                    if ( _return_internal_states ) {
+                        setInternalStates( v, w, 0, 0, _present[ v ][ w ] );
+                    }
+                }
+                final long present = _present[ v ][ w ];
+                final long absent = ~( present | _unknown[ v ][ w ] ) & mask;
+                long loss = 0;
+                long gain = 0;
+                if ( parent >= 0 ) {
+                    loss = _present[ parent ][ w ] & absent;
+                    gain = ~_present[ parent ][ w ] & present;
+                }
+                if ( ( gained & gain ) != 0 ) {
+                    throw new RuntimeException( "this should not have happened: dollo parsimony cannot have more than one gain" );
+                }
+                gained |= gain;
+                counts[ 1 ] += Long.bitCount( gain );
+                counts[ 2 ] += Long.bitCount( loss );
+                counts[ 3 ] += Long.bitCount( mask & ~( gain | loss ) );
+                if ( _return_gain_loss ) {
+                    setGainLossStates( v, w, gain, loss, present, absent );
+                }
+            }
+            counts[ 0 ] = counts[ 1 ] + counts[ 2 ];
+        }
+
+        private void executeFitch( final int w, final int[] counts ) {
+            final long mask = mask( w );
+            for( int v = 0; v < _n; ++v ) {
+                if ( _internal_row[ v ] >= 0 ) {
+                    // intersection of the state sets of the child nodes, or
+                    // their union if empty
+                    long ia = -1;
+                    long iu = -1;
+                    long ip = -1;
+                    long ua = 0;
+                    long uu = 0;
+                    long up = 0;
+                    for( int c = _child_start[ v ]; c < _child_start[ v + 1 ]; ++c ) {
+                        final int child = _children[ c ];
+                        ia &= _absent[ child ][ w ];
+                        iu &= _unknown[ child ][ w ];
+                        ip &= _present[ child ][ w ];
+                        ua |= _absent[ child ][ w ];
+                        uu |= _unknown[ child ][ w ];
+                        up |= _present[ child ][ w ];
+                    }
+                    final long empty = ~( ia | iu | ip );
+                    _absent[ v ][ w ] = ia | ( empty & ua );
+                    _unknown[ v ][ w ] = iu | ( empty & uu );
+                    _present[ v ][ w ] = ip | ( empty & up );
+                }
+            }
+            for( int v = _n - 1; v >= 0; --v ) {
+                final long a = _absent[ v ][ w ];
+                final long u = _unknown[ v ][ w ];
+                final long p = _present[ v ][ w ];
+                // the first or last state of the set
+                final long ca;
+                final long cu;
+                final long cp;
+                if ( _use_last ) {
+                    cp = p;
+                    cu = u & ~p;
+                    ca = a & ~p & ~u;
+                }
+                else {
+                    ca = a;
+                    cu = u & ~a;
+                    cp = p & ~a & ~u;
+                }
+                final int parent = _parent[ v ];
+                if ( parent < 0 ) {
+                    _traceback_absent[ v ][ w ] = ca;
+                    _traceback_unknown[ v ][ w ] = cu;
+                    _traceback_present[ v ][ w ] = cp;
+                    if ( _return_gain_loss ) {
+                        counts[ 3 ] += Long.bitCount( mask );
+                        setGainLossStates( v, w, 0, 0, cp, ca );
+                    }
+                }
+                else {
+                    final long pa = _traceback_absent[ parent ][ w ];
+                    final long pu = _traceback_unknown[ parent ][ w ];
+                    final long pp = _traceback_present[ parent ][ w ];
+                    final long contains = ( a & pa ) | ( u & pu ) | ( p & pp );
+                    counts[ 0 ] += Long.bitCount( ~contains & mask );
+                    final long ta = ( contains & pa ) | ( ~contains & ca );
+                    final long tu = ( contains & pu ) | ( ~contains & cu );
+                    final long tp = ( contains & pp ) | ( ~contains & cp );
+                    _traceback_absent[ v ][ w ] = ta;
+                    _traceback_unknown[ v ][ w ] = tu;
+                    _traceback_present[ v ][ w ] = tp;
+                    if ( _return_gain_loss ) {
+                        final long loss = pp & ta;
+                        final long gain = pa & tp;
+                        counts[ 1 ] += Long.bitCount( gain & mask );
+                        counts[ 2 ] += Long.bitCount( loss & mask );
+                        counts[ 3 ] += Long.bitCount( mask & ~( gain | loss ) );
+                        setGainLossStates( v, w, gain, loss, tp, ta );
+                    }
+                }
+                if ( _return_internal_states && ( _internal_row[ v ] >= 0 ) ) {
+                    setInternalStates( v, w, _traceback_absent[ v ][ w ], _traceback_unknown[ v ][ w ], _traceback_present[ v ][ w ] );
+                }
+            }
+        }
+
+        private long mask( final int w ) {
+            final int bits = _characters - ( w << 6 );
+            return bits >= 64 ? -1L : ( 1L << bits ) - 1;
+        }
+
+        private void readStates( final int w ) {
+            final int first = w << 6;
+            final int end = Math.min( _characters, first + 64 );
+            for( int v = 0; v < _n; ++v ) {
+                final int row = _leaf_row[ v ];
+                if ( row < 0 ) {
+                    continue;
+                }
+                long a = 0;
+                long u = 0;
+                long p = 0;
+                for( int i = first; i < end; ++i ) {
+                    final BinaryStates state = _matrix.getState( row, i );
+                    if ( state == null ) {
+                        throw new IllegalArgumentException( "value at [" + row + ", " + i + "] is null" );
+                    }
+                    final long bit = 1L << ( i - first );
+                    if ( state == BinaryStates.PRESENT ) {
+                        p |= bit;
+                    }
+                    else if ( state == BinaryStates.UNKNOWN ) {
+                        u |= bit;
+                    }
+                    else {
+                        a |= bit;
+                    }
+                }
+                _present[ v ][ w ] = p;
+                _unknown[ v ][ w ] = u;
+                if ( _absent != null ) {
+                    _absent[ v ][ w ] = a;
+                }
+            }
+        }
+
+        private void run() {
+            final int blocks = ( _words + WORDS_PER_BLOCK - 1 ) / WORDS_PER_BLOCK;
+            final int[][] counts = new int[ blocks ][];
+            if ( ( _threads == 1 ) || ( blocks < 2 ) ) {
+                for( int b = 0; b < blocks; ++b ) {
+                    counts[ b ] = executeBlock( b );
+                }
+            }
+            else {
+                final int workers = Math.min( _threads, blocks );
+                final AtomicInteger next = new AtomicInteger();
+                final ExecutorService executor = Executors.newFixedThreadPool( workers );
+                try {
+                    final List<Future<?>> futures = new ArrayList<Future<?>>();
+                    for( int t = 0; t < workers; ++t ) {
+                        futures.add( executor.submit( () -> {
+                            int b;
+                            while ( ( b = next.getAndIncrement() ) < blocks ) {
+                                counts[ b ] = executeBlock( b );
+                            }
+                        } ) );
+                    }
+                    for( final Future<?> future : futures ) {
+                        future.get();
+                    }
+                }
+                catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException( e );
+                }
+                catch ( final ExecutionException e ) {
+                    if ( e.getCause() instanceof RuntimeException ) {
+                        throw ( RuntimeException ) e.getCause();
+                    }
+                    throw new IllegalStateException( e.getCause() );
+                }
+                finally {
+                    executor.shutdownNow();
+                }
+            }
+            for( final int[] c : counts ) {
+                _cost += c[ 0 ];
+                _gains += c[ 1 ];
+                _losses += c[ 2 ];
+                _unchanged += c[ 3 ];
+            }
+        }
+
+        private int[] executeBlock( final int b ) {
+            return execute( b * WORDS_PER_BLOCK, Math.min( _words, ( b + 1 ) * WORDS_PER_BLOCK ) );
+        }
+
+        private void setGainLossStates( final int v,
+                                        final int w,
+                                        final long gain,
+                                        final long loss,
+                                        final long present,
+                                        final long absent ) {
+            final int first = w << 6;
+            final int end = Math.min( _characters, first + 64 );
+            for( int i = first; i < end; ++i ) {
+                final long bit = 1L << ( i - first );
+                if ( ( loss & bit ) != 0 ) {
+                    _gain_loss_matrix.setState( v, i, GainLossStates.LOSS );
+                }
+                else if ( ( gain & bit ) != 0 ) {
+                    _gain_loss_matrix.setState( v, i, GainLossStates.GAIN );
+                }
+                else if ( ( present & bit ) != 0 ) {
+                    _gain_loss_matrix.setState( v, i, GainLossStates.UNCHANGED_PRESENT );
+                }
+                else if ( ( absent & bit ) != 0 ) {
+                    _gain_loss_matrix.setState( v, i, GainLossStates.UNCHANGED_ABSENT );
+                }
+            }
+        }
+
+        private void setInternalStates( final int v,
+                                        final int w,
+                                        final long absent,
+                                        final long unknown,
+                                        final long present ) {
+            final int first = w << 6;
+            final int end = Math.min( _characters, first + 64 );
+            for( int i = first; i < end; ++i ) {
+                final long bit = 1L << ( i - first );
+                final BinaryStates state;
+                if ( ( present & bit ) != 0 ) {
+                    state = BinaryStates.PRESENT;
+                }
+                else if ( ( unknown & bit ) != 0 ) {
+                    state = BinaryStates.UNKNOWN;
+                }
+                else {
+                    state = BinaryStates.ABSENT;
+                }
+                _internal_states_matrix.setState( _internal_row[ v ], i, state );
+            }
+        }
+    }
+}
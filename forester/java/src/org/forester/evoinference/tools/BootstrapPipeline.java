@@ -0,0 +1,205 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.evoinference.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.forester.evoinference.distance.NeighborJoiningF;
+import org.forester.evoinference.distance.PackedPairwiseDistanceCalculator;
+import org.forester.evoinference.distance.PairwiseDistanceCalculator.PWD_DISTANCE_METHOD;
+import org.forester.msa.BasicMsa;
+import org.forester.msa.Msa;
+import org.forester.msa.ResampleableMsa;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.tools.SupportCounter;
+
+/**
+ * Streaming, multi-threaded bootstrap evaluation of a phylogeny: resampling,
+ * pairwise distance calculation, neighbor joining and support counting.
+ * <p>
+ * Replicates are not materialized as alignments: each worker thread owns one
+ * ResampleableMsa view onto the original data and resamples it by column
+ * index. Each replicate tree is counted on the target as soon as it is
+ * inferred and then discarded, so memory does not grow with the number of
+ * replicates.
+ * <p>
+ * The resampled column positions of replicate i are the i-th ones drawn from
+ * a single random number generator initialized with the seed (the same as
+ * BootstrapResampler.createResampledColumnPositions), and support counts do
+ * not depend on the order in which replicates finish. Results are therefore
+ * the same for a given seed regardless of the number of threads.
+ */
+public final class BootstrapPipeline {
+
+    private final static int          MAXIMUM_FRACTION_DIGITS_FOR_DISTANCES = 5;
+    private final PWD_DISTANCE_METHOD _pwd_distance_method;
+    private final int                 _threads;
+
+    private BootstrapPipeline( final PWD_DISTANCE_METHOD pwd_distance_method, final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        _pwd_distance_method = pwd_distance_method;
+        _threads = threads;
+    }
+
+    /**
+     * Adds a confidence of confidence_type to the internal nodes of target,
+     * with the number of replicates (out of n) in which the corresponding
+     * split is present.
+     */
+    public final void evaluate( final String confidence_type,
+                                final Msa msa,
+                                final Phylogeny target,
+                                final int n,
+                                final long seed ) {
+        final SupportCounter counter = new SupportCounter( target, true );
+        run( msa, n, seed, counter );
+        counter.setConfidences( confidence_type, 1 );
+    }
+
+    public final int getNumberOfThreads() {
+        return _threads;
+    }
+
+    public final PWD_DISTANCE_METHOD getPwdDistanceMethod() {
+        return _pwd_distance_method;
+    }
+
+    /**
+     * Infers a phylogeny from msa, in the same manner as for each of the
+     * bootstrap replicates (but using all threads for the distance
+     * calculation).
+     */
+    public final Phylogeny inferPhylogeny( final Msa msa ) {
+        return inferPhylogeny( msa,
+                               _threads,
+                               NeighborJoiningF.createInstance( false, MAXIMUM_FRACTION_DIGITS_FOR_DISTANCES ) );
+    }
+
+    /**
+     * Counts the trees of n bootstrap replicates of msa with counter.
+     */
+    public final void run( final Msa msa, final int n, final long seed, final SupportCounter counter ) {
+        final BasicMsa basic_msa = toBasicMsa( msa );
+        final Replicates replicates = new Replicates( msa.getLength(), n, seed );
+        final int workers = Math.min( _threads, n );
+        final ExecutorService executor = Executors.newFixedThreadPool( workers );
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for( int w = 0; w < workers; ++w ) {
+                futures.add( executor.submit( () -> {
+                    final ResampleableMsa view = new ResampleableMsa( basic_msa );
+                    final NeighborJoiningF nj = NeighborJoiningF.createInstance( false,
+                                                                                MAXIMUM_FRACTION_DIGITS_FOR_DISTANCES );
+                    int[] columns;
+                    while ( ( columns = replicates.next() ) != null ) {
+                        view.resample( columns );
+                        counter.count( inferPhylogeny( view, 1, nj ) );
+                    }
+                } ) );
+            }
+            for( final Future<?> future : futures ) {
+                future.get();
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private final Phylogeny inferPhylogeny( final Msa msa, final int threads, final NeighborJoiningF nj ) {
+        return nj.execute( PackedPairwiseDistanceCalculator.calcDistances( msa, _pwd_distance_method, threads ) );
+    }
+
+    public final static BootstrapPipeline createInstance( final PWD_DISTANCE_METHOD pwd_distance_method ) {
+        return new BootstrapPipeline( pwd_distance_method, Runtime.getRuntime().availableProcessors() );
+    }
+
+    public final static BootstrapPipeline createInstance( final PWD_DISTANCE_METHOD pwd_distance_method,
+                                                          final int threads ) {
+        return new BootstrapPipeline( pwd_distance_method, threads );
+    }
+
+    // ResampleableMsa reads the data of a BasicMsa directly, bypassing any
+    // row or column mappings of subclasses (e.g. DeleteableMsa).
+    private final static BasicMsa toBasicMsa( final Msa msa ) {
+        if ( msa.getClass() == BasicMsa.class ) {
+            return ( BasicMsa ) msa;
+        }
+        final BasicMsa basic_msa = new BasicMsa( msa.getNumberOfSequences(), msa.getLength(), msa.getType() );
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            basic_msa.setIdentifier( row, msa.getIdentifier( row ) );
+            for( int col = 0; col < msa.getLength(); ++col ) {
+                basic_msa.setResidueAt( row, col, msa.getResidueAt( row, col ) );
+            }
+        }
+        return basic_msa;
+    }
+
+    private final static class Replicates {
+
+        private final int    _length;
+        private final int    _n;
+        private final Random _random;
+        private int          _i;
+
+        Replicates( final int length, final int n, final long seed ) {
+            if ( length < 2 ) {
+                throw new IllegalArgumentException( "Msa length cannot be smaller than two for bootstrap resampling" );
+            }
+            if ( n < 1 ) {
+                throw new IllegalArgumentException( "Number of bootstrap resamples cannot be zero or negative" );
+            }
+            _length = length;
+            _n = n;
+            _random = new Random( seed );
+        }
+
+        final synchronized int[] next() {
+            if ( _i >= _n ) {
+                return null;
+            }
+            ++_i;
+            final int[] columns = new int[ _length ];
+            for( int col = 0; col < _length; ++col ) {
+                columns[ col ] = _random.nextInt( _length );
+            }
+            return columns;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.go;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The transitive closure of the is_a ("super term") relation of a GO ontology, computed once, for answering
+ * many ancestor queries -- as when annotating millions of domain-to-GO mappings -- without walking the
+ * ontology each time like {@link GoUtils#getAllSuperGoTerms(GoId, java.util.Map)} does.
+ *
+ * <p>Terms are interned to the ints 0..n-1 (in GO id order). The super terms of every term are stored as
+ * one sorted int array (concatenated for all terms), so an ancestor set is a slice of it, an is_a test is a
+ * binary search in that slice and category counting loops over ints, without recursion or boxing. Alt ids
+ * resolve to their term, as in {@link GoUtils#createGoIdToGoTermMap(List)}.
+ *
+ * <p>An index can be written to and read from a binary file ({@link #write(File)}, {@link #read(File)}), which
+ * is much faster than parsing the OBO file again.
+ */
+public final class GoOntologyIndex {
+
+    private static final int MAGIC   = 0x474F4349; // "GOCI"
+    private static final int VERSION = 1;
+    // the numbers of the GO ids of the terms (GO:0008150 -> 8150), ascending
+    private final int[]      _go_numbers;
+    // the numbers of the alt ids, ascending, and the terms they resolve to
+    private final int[]      _alt_numbers;
+    private final int[]      _alt_terms;
+    // the super terms of term i are _super_terms[ _super_offsets[ i ] .. _super_offsets[ i + 1 ] - 1 ], ascending
+    private final int[]      _super_offsets;
+    private final int[]      _super_terms;
+
+    /**
+     * Builds the index of the given terms (as returned by {@link OBOparser#parse()}, or the values of a GO id to
+     * term map; a term given more than once is indexed once).
+     *
+     * @throws IllegalArgumentException if a super term is not among the terms, or the is_a relation has a cycle
+     */
+    public GoOntologyIndex( final Collection<GoTerm> go_terms ) {
+        final GoTerm[] terms = go_terms.toArray( new GoTerm[ go_terms.size() ] );
+        Arrays.sort( terms, ( a, b ) -> Integer.compare( number( a.getGoId() ), number( b.getGoId() ) ) );
+        int n = 0;
+        for( final GoTerm t : terms ) {
+            if ( ( n == 0 ) || ( number( t.getGoId() ) != number( terms[ n - 1 ].getGoId() ) ) ) {
+                terms[ n++ ] = t;
+            }
+        }
+        _go_numbers = new int[ n ];
+        for( int i = 0; i < n; ++i ) {
+            _go_numbers[ i ] = number( terms[ i ].getGoId() );
+        }
+        // alt ids
+        long[] alts = new long[ 16 ];
+        int alt_count = 0;
+        for( int i = 0; i < n; ++i ) {
+            if ( terms[ i ].getAltIds() == null ) {
+                continue;
+            }
+            for( final GoId alt : terms[ i ].getAltIds() ) {
+                final int a = number( alt );
+                if ( Arrays.binarySearch( _go_numbers, a ) < 0 ) {
+                    if ( alt_count == alts.length ) {
+                        alts = Arrays.copyOf( alts, 2 * alt_count );
+                    }
+                    alts[ alt_count++ ] = ( ( (long) a ) << 32 ) | i;
+                }
+            }
+        }
+        Arrays.sort( alts, 0, alt_count );
+        int unique_alts = 0;
+        for( int i = 0; i < alt_count; ++i ) {
+            if ( ( unique_alts == 0 ) || ( ( alts[ i ] >>> 32 ) != ( alts[ unique_alts - 1 ] >>> 32 ) ) ) {
+                alts[ unique_alts++ ] = alts[ i ];
+            }
+        }
+        _alt_numbers = new int[ unique_alts ];
+        _alt_terms = new int[ unique_alts ];
+        for( int i = 0; i < unique_alts; ++i ) {
+            _alt_numbers[ i ] = (int) ( alts[ i ] >>> 32 );
+            _alt_terms[ i ] = (int) alts[ i ];
+        }
+        // the direct super terms, and the children (sub terms) of each term
+        final int[][] parents = new int[ n ][];
+        final int[] child_counts = new int[ n + 1 ];
+        for( int i = 0; i < n; ++i ) {
+            final List<GoId> super_ids = terms[ i ].getSuperGoIds();
+            final int[] p = new int[ super_ids == null ? 0 : super_ids.size() ];
+            for( int j = 0; j < p.length; ++j ) {
+                p[ j ] = getIndex( super_ids.get( j ) );
+                if ( p[ j ] < 0 ) {
+                    throw new IllegalArgumentException( "GO id [" + super_ids.get( j ) + "] (super term of "
+                            + terms[ i ].getGoId() + ") not found in GO terms" );
+                }
+                ++child_counts[ p[ j ] + 1 ];
+            }
+            parents[ i ] = p;
+        }
+        for( int i = 0; i < n; ++i ) {
+            child_counts[ i + 1 ] += child_counts[ i ];
+        }
+        final int[] children = new int[ child_counts[ n ] ];
+        final int[] fill = Arrays.copyOf( child_counts, n );
+        for( int i = 0; i < n; ++i ) {
+            for( final int p : parents[ i ] ) {
+                children[ fill[ p ]++ ] = i;
+            }
+        }
+        // closures in topological order (a term after all its super terms)
+        final int[][] closures = new int[ n ][];
+        final int[] pending = new int[ n ];
+        final int[] queue = new int[ n ];
+        int head = 0;
+        int tail = 0;
+        for( int i = 0; i < n; ++i ) {
+            pending[ i ] = parents[ i ].length;
+            if ( pending[ i ] == 0 ) {
+                queue[ tail++ ] = i;
+            }
+        }
+        final int[] seen = new int[ n ];
+        Arrays.fill( seen, -1 );
+        int[] scratch = new int[ 64 ];
+        int total = 0;
+        while ( head < tail ) {
+            final int t = queue[ head++ ];
+            int size = 0;
+            for( final int p : parents[ t ] ) {
+                if ( ( size + 1 + closures[ p ].length ) > scratch.length ) {
+                    scratch = Arrays.copyOf( scratch, 2 * ( size + 1 + closures[ p ].length ) );
+                }
+                if ( seen[ p ] != t ) {
+                    seen[ p ] = t;
+                    scratch[ size++ ] = p;
+                }
+                for( final int s : closures[ p ] ) {
+                    if ( seen[ s ] != t ) {
+                        seen[ s ] = t;
+                        scratch[ size++ ] = s;
+                    }
+                }
+            }
+            closures[ t ] = Arrays.copyOf( scratch, size );
+            Arrays.sort( closures[ t ] );
+            total += size;
+            for( int c = child_counts[ t ]; c < child_counts[ t + 1 ]; ++c ) {
+                if ( --pending[ children[ c ] ] == 0 ) {
+                    queue[ tail++ ] = children[ c ];
+                }
+            }
+        }
+        if ( tail < n ) {
+            for( int i = 0; i < n; ++i ) {
+                if ( pending[ i ] > 0 ) {
+                    throw new IllegalArgumentException( "is_a cycle through GO term " + terms[ i ].getGoId() );
+                }
+            }
+        }
+        _super_offsets = new int[ n + 1 ];
+        _super_terms = new int[ total ];
+        for( int i = 0; i < n; ++i ) {
+            System.arraycopy( closures[ i ], 0, _super_terms, _super_offsets[ i ], closures[ i ].length );
+            _super_offsets[ i + 1 ] = _super_offsets[ i ] + closures[ i ].length;
+        }
+    }
+
+    private GoOntologyIndex( final int[] go_numbers,
+                             final int[] alt_numbers,
+                             final int[] alt_terms,
+                             final int[] super_offsets,
+                             final int[] super_terms ) {
+        _go_numbers = go_numbers;
+        _alt_numbers = alt_numbers;
+        _alt_terms = alt_terms;
+        _super_offsets = super_offsets;
+        _super_terms = super_terms;
+    }
+
+    /**
+     * Counts, for each term in {@code categories}, how many of the terms in {@code experiment_set} it is the same
+     * as or a (direct or indirect) super term of -- as {@link GoUtils#countCategoriesId(List, List, java.util.Map)}.
+     *
+     * @return the counts, in the order of {@code categories}
+     * @throws IllegalArgumentException if a term of {@code experiment_set} is not in the index
+     */
+    public LinkedHashMap<GoId, Integer> countCategoriesId( final List<GoId> categories,
+                                                           final List<GoId> experiment_set ) {
+        final int[] cats = new int[ categories.size() ];
+        for( int i = 0; i < cats.length; ++i ) {
+            cats[ i ] = getIndex( categories.get( i ) );
+        }
+        final int[] exp = new int[ experiment_set.size() ];
+        for( int i = 0; i < exp.length; ++i ) {
+            exp[ i ] = getIndexChecked( experiment_set.get( i ) );
+        }
+        final int[] counts = countCategories( cats, exp );
+        final LinkedHashMap<GoId, Integer> result = new LinkedHashMap<GoId, Integer>();
+        for( int i = 0; i < cats.length; ++i ) {
+            final Integer c = result.get( categories.get( i ) );
+            result.put( categories.get( i ), c == null ? counts[ i ] : c + counts[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * Counts, for each term (index) in {@code categories}, how many of the terms (indices) in
+     * {@code experiment_set} it is the same as or a super term of. Categories may be -1 (for a GO id not in the
+     * index); they count 0.
+     *
+     * @return the counts, in the order of {@code categories}
+     */
+    public int[] countCategories( final int[] categories, final int[] experiment_set ) {
+        final int n = getNumberOfTerms();
+        final boolean[] is_category = new boolean[ n ];
+        for( final int c : categories ) {
+            if ( c >= 0 ) {
+                is_category[ c ] = true;
+            }
+        }
+        final int[] hits = new int[ n ];
+        for( final int e : experiment_set ) {
+            if ( is_category[ e ] ) {
+                ++hits[ e ];
+            }
+            for( int k = _super_offsets[ e ]; k < _super_offsets[ e + 1 ]; ++k ) {
+                if ( is_category[ _super_terms[ k ] ] ) {
+                    ++hits[ _super_terms[ k ] ];
+                }
+            }
+        }
+        final int[] counts = new int[ categories.length ];
+        for( int i = 0; i < categories.length; ++i ) {
+            counts[ i ] = categories[ i ] < 0 ? 0 : hits[ categories[ i ] ];
+        }
+        return counts;
+    }
+
+    /**
+     * The GO ids of all (direct and indirect) super terms of {@code go_id}, as
+     * {@link GoUtils#getAllSuperGoIds(GoId, java.util.Map)}.
+     *
+     * @throws IllegalArgumentException if {@code go_id} is not in the index
+     */
+    public SortedSet<GoId> getAllSuperGoIds( final GoId go_id ) {
+        final int i = getIndexChecked( go_id );
+        final SortedSet<GoId> ids = new TreeSet<GoId>();
+        for( int k = _super_offsets[ i ]; k < _super_offsets[ i + 1 ]; ++k ) {
+            ids.add( getGoId( _super_terms[ k ] ) );
+        }
+        return ids;
+    }
+
+    /** The GO id of term {@code index}. */
+    public GoId getGoId( final int index ) {
+        final String digits = Integer.toString( _go_numbers[ index ] );
+        return new GoId( "GO:0000000".substring( 0, 10 - digits.length() ) + digits );
+    }
+
+    /** The index of the term with the GO id (or alt id) {@code go_id}, or -1 if it is not in the index. */
+    public int getIndex( final GoId go_id ) {
+        final int number = number( go_id );
+        final int i = Arrays.binarySearch( _go_numbers, number );
+        if ( i >= 0 ) {
+            return i;
+        }
+        final int a = Arrays.binarySearch( _alt_numbers, number );
+        return a >= 0 ? _alt_terms[ a ] : -1;
+    }
+
+    public int getNumberOfSuperTerms( final int index ) {
+        return _super_offsets[ index + 1 ] - _super_offsets[ index ];
+    }
+
+    public int getNumberOfTerms() {
+        return _go_numbers.length;
+    }
+
+    /** The indices of all (direct and indirect) super terms of term {@code index}, ascending. */
+    public int[] getSuperTerms( final int index ) {
+        return Arrays.copyOfRange( _super_terms, _super_offsets[ index ], _super_offsets[ index + 1 ] );
+    }
+
+    /**
+     * Whether {@code go_id} is the same term as, or a (direct or indirect) sub term of, {@code super_go_id}.
+     *
+     * @throws IllegalArgumentException if {@code go_id} is not in the index
+     */
+    public boolean isA( final GoId go_id, final GoId super_go_id ) {
+        final int i = getIndexChecked( go_id );
+        final int s = getIndex( super_go_id );
+        return ( s == i ) || ( ( s >= 0 ) && isSuperTerm( s, i ) );
+    }
+
+    /** Whether term {@code super_index} is a (direct or indirect) super term of term {@code index}. */
+    public boolean isSuperTerm( final int super_index, final int index ) {
+        return Arrays.binarySearch( _super_terms, _super_offsets[ index ], _super_offsets[ index + 1 ], super_index ) >= 0;
+    }
+
+    /** Writes this index to {@code file}, for {@link #read(File)}. */
+    public void write( final File file ) throws IOException {
+        try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( file
+                .toPath() ), 1 << 16 ) )) {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( _go_numbers.length );
+            out.writeInt( _alt_numbers.length );
+            out.writeInt( _super_terms.length );
+            for( final int[] a : new int[][] { _go_numbers, _alt_numbers, _alt_terms, _super_offsets, _super_terms } ) {
+                for( final int v : a ) {
+                    out.writeInt( v );
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #write(File)}.
+     *
+     * @throws IOException if the file cannot be read or is not such an index
+     */
+    public static GoOntologyIndex read( final File file ) throws IOException {
+        final IntBuffer in = ByteBuffer.wrap( Files.readAllBytes( file.toPath() ) ).asIntBuffer();
+        if ( ( in.remaining() < 5 ) || ( in.get() != MAGIC ) ) {
+            throw new IOException( "[" + file + "] is not a GO ontology index" );
+        }
+        final int version = in.get();
+        if ( version != VERSION ) {
+            throw new IOException( "GO ontology index [" + file + "] has version " + version + ", expected " + VERSION );
+        }
+        final int n = in.get();
+        final int alts = in.get();
+        final int supers = in.get();
+        if ( ( n < 0 ) || ( alts < 0 ) || ( supers < 0 )
+                || ( in.remaining() != ( ( ( 2L * n ) + 1 + ( 2L * alts ) ) + supers ) ) ) {
+            throw new IOException( "GO ontology index [" + file + "] is truncated or corrupt" );
+        }
+        final int[] go_numbers = new int[ n ];
+        final int[] alt_numbers = new int[ alts ];
+        final int[] alt_terms = new int[ alts ];
+        final int[] super_offsets = new int[ n + 1 ];
+        final int[] super_terms = new int[ supers ];
+        in.get( go_numbers ).get( alt_numbers ).get( alt_terms ).get( super_offsets ).get( super_terms );
+        return new GoOntologyIndex( go_numbers, alt_numbers, alt_terms, super_offsets, super_terms );
+    }
+
+    private int getIndexChecked( final GoId go_id ) {
+        final int i = getIndex( go_id );
+        if ( i < 0 ) {
+            throw new IllegalArgumentException( "GO id [" + go_id + "] not found in GO ontology index" );
+        }
+        return i;
+    }
+
+    /** The number of a GO id ("GO:0008150" -> 8150). */
+    private static int number( final GoId go_id ) {
+        final String id = go_id.getId();
+        int number = 0;
+        for( int i = 3; i < id.length(); ++i ) {
+            number = ( 10 * number ) + ( id.charAt( i ) - '0' );
+        }
+        return number;
+    }
+}
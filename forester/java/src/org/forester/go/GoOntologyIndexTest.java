@@ -0,0 +1,229 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.go;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link GoOntologyIndex}: for a random ontology (with multiple super terms and alt ids) parsed by
+ * {@link OBOparser}, the super terms, is_a tests and category counts of the index must be those found by
+ * {@link GoUtils}, also after a write/read round trip; unknown super terms and is_a cycles must be rejected.
+ * <p>
+ * main() compares the time of the super term sets of all terms of a random ontology with 45000 (or a given
+ * number of) terms, as found by the index and by {@link GoUtils#getAllSuperGoIds(GoId, Map)}.
+ */
+public final class GoOntologyIndexTest {
+
+    public static boolean test() {
+        File obo = null;
+        File index_file = null;
+        try {
+            obo = writeRandomOntology( 500, new Random( 11 ) );
+            final List<GoTerm> terms = new OBOparser( obo, OBOparser.ReturnType.BASIC_GO_TERM ).parse();
+            final Map<GoId, GoTerm> map = GoUtils.createGoIdToGoTermMap( terms );
+            final GoOntologyIndex built = new GoOntologyIndex( terms );
+            index_file = File.createTempFile( "go_index", ".bin" );
+            built.write( index_file );
+            final GoOntologyIndex read = GoOntologyIndex.read( index_file );
+            // the values of the map hold each term several times (alt ids)
+            final GoOntologyIndex from_map = new GoOntologyIndex( map.values() );
+            for( final GoOntologyIndex index : new GoOntologyIndex[] { built, read, from_map } ) {
+                if ( index.getNumberOfTerms() != terms.size() ) {
+                    return fail( "expected " + terms.size() + " terms, got " + index.getNumberOfTerms() );
+                }
+                for( final GoTerm t : terms ) {
+                    if ( !index.getAllSuperGoIds( t.getGoId() )
+                            .equals( GoUtils.getAllSuperGoIds( t.getGoId(), map ) ) ) {
+                        return fail( "super terms of " + t.getGoId() );
+                    }
+                    final int i = index.getIndex( t.getGoId() );
+                    if ( !index.getGoId( i ).equals( t.getGoId() )
+                            || ( index.getNumberOfSuperTerms( i ) != index.getSuperTerms( i ).length ) ) {
+                        return fail( "interning of " + t.getGoId() );
+                    }
+                    for( final GoId alt : t.getAltIds() ) {
+                        if ( index.getIndex( alt ) != i ) {
+                            return fail( "alt id " + alt + " of " + t.getGoId() );
+                        }
+                    }
+                }
+                final Random r = new Random( 3 );
+                for( int q = 0; q < 2000; ++q ) {
+                    final GoId a = terms.get( r.nextInt( terms.size() ) ).getGoId();
+                    final GoId b = terms.get( r.nextInt( terms.size() ) ).getGoId();
+                    final boolean expected = a.equals( b ) || GoUtils.getAllSuperGoIds( a, map ).contains( b );
+                    if ( index.isA( a, b ) != expected ) {
+                        return fail( "isA( " + a + ", " + b + " )" );
+                    }
+                }
+                if ( index.isA( terms.get( 0 ).getGoId(), new GoId( "GO:9999999" ) ) ) {
+                    return fail( "isA of an unknown super term" );
+                }
+                final List<GoId> categories = new ArrayList<GoId>();
+                final List<GoId> experiment_set = new ArrayList<GoId>();
+                for( int i = 0; i < 40; ++i ) {
+                    categories.add( terms.get( r.nextInt( 60 ) ).getGoId() ); // near the roots, with duplicates
+                }
+                categories.add( new GoId( "GO:9999999" ) );
+                for( int i = 0; i < 300; ++i ) {
+                    experiment_set.add( terms.get( r.nextInt( terms.size() ) ).getGoId() );
+                }
+                if ( !index.countCategoriesId( categories, experiment_set )
+                        .equals( GoUtils.countCategoriesId( categories, experiment_set, map ) ) ) {
+                    return fail( "category counts" );
+                }
+                try {
+                    index.getAllSuperGoIds( new GoId( "GO:9999999" ) );
+                    return fail( "an unknown GO id must not be accepted" );
+                }
+                catch ( final IllegalArgumentException e ) {
+                    // expected
+                }
+            }
+            // unknown super terms and cycles
+            try {
+                new GoOntologyIndex( terms.subList( 1, terms.size() ) ); // GO:0000001 is a super term of others
+                return fail( "an unknown super term must not be accepted" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+            try (Writer w = Files.newBufferedWriter( obo.toPath() )) {
+                writeTerm( w, 1, new int[] { 3 }, null );
+                writeTerm( w, 2, new int[] { 1 }, null );
+                writeTerm( w, 3, new int[] { 2 }, null );
+                writeTerm( w, 4, new int[ 0 ], null );
+            }
+            try {
+                new GoOntologyIndex( new OBOparser( obo, OBOparser.ReturnType.BASIC_GO_TERM ).parse() );
+                return fail( "a cycle must not be accepted" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+            try {
+                GoOntologyIndex.read( obo );
+                return fail( "a file which is not an index must not be accepted" );
+            }
+            catch ( final IOException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        finally {
+            if ( obo != null ) {
+                obo.delete();
+            }
+            if ( index_file != null ) {
+                index_file.delete();
+            }
+        }
+        return true;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "GoOntologyIndex test failed: " + msg );
+        return false;
+    }
+
+    /**
+     * An ontology of n terms GO:0000001.. in which each term (but the first three, the roots) has one or (for a
+     * quarter of them) two super terms among the terms before it; every tenth term has an alt id. (GoUtils walks
+     * every path to the roots, so the lineages must not have too many.)
+     */
+    private static File writeRandomOntology( final int n, final Random r ) throws IOException {
+        final File obo = File.createTempFile( "go_ontology", ".obo" );
+        try (Writer w = Files.newBufferedWriter( obo.toPath() )) {
+            w.write( "format-version: 1.2\n\n" );
+            for( int id = 1; id <= n; ++id ) {
+                final int[] supers = new int[ id <= 3 ? 0 : ( r.nextInt( 4 ) == 0 ? 2 : 1 ) ];
+                for( int i = 0; i < supers.length; ++i ) {
+                    supers[ i ] = 1 + r.nextInt( id - 1 );
+                }
+                writeTerm( w, id, supers, ( id % 10 ) == 0 ? Integer.valueOf( 1000000 + id ) : null );
+            }
+        }
+        return obo;
+    }
+
+    private static void writeTerm( final Writer w, final int id, final int[] supers, final Integer alt )
+            throws IOException {
+        w.write( "[Term]\n" );
+        w.write( String.format( "id: GO:%07d\n", id ) );
+        w.write( "name: term " + id + "\n" );
+        w.write( "namespace: biological_process\n" );
+        if ( alt != null ) {
+            w.write( String.format( "alt_id: GO:%07d\n", alt ) );
+        }
+        for( final int s : supers ) {
+            w.write( String.format( "is_a: GO:%07d ! term %d\n", s, s ) );
+        }
+        w.write( "\n" );
+    }
+
+    public static void main( final String[] args ) throws IOException {
+        final int n = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 45000;
+        final File obo = writeRandomOntology( n, new Random( 42 ) );
+        try {
+            long time = System.currentTimeMillis();
+            final List<GoTerm> terms = new OBOparser( obo, OBOparser.ReturnType.BASIC_GO_TERM ).parse();
+            System.out.println( "Terms   : " + terms.size() + " (parsed in " + ( System.currentTimeMillis() - time )
+                    + "ms)" );
+            final Map<GoId, GoTerm> map = GoUtils.createGoIdToGoTermMap( terms );
+            for( int round = 0; round < 3; ++round ) {
+                time = System.currentTimeMillis();
+                final GoOntologyIndex index = new GoOntologyIndex( terms );
+                final long build = System.currentTimeMillis() - time;
+                time = System.currentTimeMillis();
+                long indexed = 0;
+                for( final GoTerm t : terms ) {
+                    indexed += index.getNumberOfSuperTerms( index.getIndex( t.getGoId() ) );
+                }
+                final long indexed_time = System.currentTimeMillis() - time;
+                time = System.currentTimeMillis();
+                long walked = 0;
+                for( int i = 0; i < terms.size(); i += 10 ) {
+                    walked += GoUtils.getAllSuperGoIds( terms.get( i ).getGoId(), map ).size();
+                }
+                System.out.println( "index built in " + build + "ms, all super terms in " + indexed_time + "ms ("
+                        + indexed + "); GoUtils, every 10th term: " + ( System.currentTimeMillis() - time ) + "ms ("
+                        + walked + ")" );
+            }
+        }
+        finally {
+            obo.delete();
+        }
+    }
+
+    private GoOntologyIndexTest() {
+        // static tests only
+    }
+}
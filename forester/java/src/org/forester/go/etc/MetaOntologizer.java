@@ -42,6 +42,7 @@ import java.util.regex.Pattern;
 
 import org.forester.go.GoId;
 import org.forester.go.GoNameSpace;
+import org.forester.go.GoOntologyIndex;
 import org.forester.go.GoTerm;
 import org.forester.go.GoUtils;
 import org.forester.go.OBOparser;
@@ -79,20 +80,14 @@ public class MetaOntologizer {
 
     private static StringBuilder obtainDomainsForGoId( final List<PfamToGoMapping> pfam_to_go,
                                                        final SortedSet<String> domains_per_species,
-                                                       final Map<GoId, GoTerm> all_go_terms,
+                                                       final GoOntologyIndex go_index,
                                                        final GoId query_go_id,
                                                        final Set<String> found_domain_ids ) {
         final StringBuilder sb = new StringBuilder();
         D: for( final String domain_id : domains_per_species ) {
             for( final PfamToGoMapping ptg : pfam_to_go ) {
                 if ( ptg.getKey().equals( domain_id ) ) {
-                    final GoId go_id = ptg.getValue();
-                    final Set<GoId> super_ids = new HashSet<GoId>();
-                    for( final GoTerm term : GoUtils.getAllSuperGoTerms( go_id, all_go_terms ) ) {
-                        super_ids.add( term.getGoId() );
-                    }
-                    super_ids.add( go_id );
-                    if ( super_ids.contains( query_go_id ) ) {
+                    if ( go_index.isA( ptg.getValue(), query_go_id ) ) {
                         sb.append( "[<a href=\"" + ForesterConstants.PFAM_FAMILY_ID_LINK + domain_id + "\">"
                                 + domain_id + "</a>] " );
                         found_domain_ids.add( domain_id );
@@ -161,6 +156,7 @@ public class MetaOntologizer {
     }
 
     private static void processOneSpecies( final Map<GoId, GoTerm> go_id_to_terms,
+                                           final GoOntologyIndex go_index,
                                            final Writer b_html_writer,
                                            final Writer b_tab_writer,
                                            final Writer c_html_writer,
@@ -194,7 +190,7 @@ public class MetaOntologizer {
                                      current_html_writer,
                                      p_adjusted_upper_limit,
                                      species,
-                                     go_id_to_terms,
+                                     go_index,
                                      domains_per_species,
                                      pfam_to_go,
                                      domain_ids_with_go_annot );
@@ -255,6 +251,7 @@ public class MetaOntologizer {
             ForesterUtil.programMessage( PRG_NAME, "parsed " + go_terms.size() + " GO terms from [" + obo_file + "]" );
         }
         final Map<GoId, GoTerm> go_id_to_terms = GoUtils.createGoIdToGoTermMap( go_terms );
+        final GoOntologyIndex go_index = new GoOntologyIndex( go_terms );
         //FIXME not needed? when doe sthis error arise?
         //   if ( go_id_to_terms.size() != go_terms.size() ) {
         //       throw new IllegalArgumentException( "GO terms with non-unique ids found" );
@@ -331,6 +328,7 @@ public class MetaOntologizer {
             }
             final Set<String> domain_ids_with_go_annot = new HashSet<String>();
             processOneSpecies( go_id_to_terms,
+                               go_index,
                                b_html_writer,
                                b_tab_writer,
                                c_html_writer,
@@ -570,7 +568,7 @@ public class MetaOntologizer {
                                                  final Writer writer,
                                                  final double p_adjusted_upper_limit,
                                                  final String species,
-                                                 final Map<GoId, GoTerm> go_id_to_terms,
+                                                 final GoOntologyIndex go_index,
                                                  final SortedSet<String> domains_per_species,
                                                  final List<PfamToGoMapping> pfam_to_go,
                                                  final Set<String> domain_ids_with_go_annot ) throws IOException {
@@ -612,7 +610,7 @@ public class MetaOntologizer {
         if ( domains_per_species != null ) {
             final StringBuilder sb = obtainDomainsForGoId( pfam_to_go,
                                                            domains_per_species,
-                                                           go_id_to_terms,
+                                                           go_index,
                                                            go_term.getGoId(),
                                                            domain_ids_with_go_annot );
             writer.write( sb.toString() );
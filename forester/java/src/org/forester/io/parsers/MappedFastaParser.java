@@ -0,0 +1,512 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.forester.msa.ByteMsa;
+import org.forester.msa.MsaFormatException;
+import org.forester.sequence.BasicSequence;
+import org.forester.sequence.MolecularSequence;
+import org.forester.sequence.MolecularSequence.TYPE;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Parser for large fasta files (such as alignments of many thousands of
+ * genomes), which works on the bytes of the memory-mapped file.
+ * <p>
+ * Records are found by scanning the bytes for lines starting with '&gt;', and
+ * residues are decoded through a lookup table straight into one byte each.
+ * parseMsa decodes the records on several threads into a ByteMsa; an instance
+ * of this class iterates over the records one at a time, for tools which
+ * process one sequence after the other and never need all of them in memory.
+ * <p>
+ * The results are the same as those of FastaParser: names are trimmed,
+ * whitespace and lines of digits only are ignored, residues are upper-cased,
+ * with '.' as '-' and unknown ones as 'X', and records without name or
+ * sequence are ignored. The input is expected to be UTF-8 (or ASCII); lines
+ * can end with "\n", "\r\n" or "\r". Non-ASCII chars in sequences always
+ * become 'X' (FastaParser upper-cases them first, which turns a few of them,
+ * such as the German sharp s, into letters).
+ */
+public final class MappedFastaParser implements Closeable {
+
+    private final static int    CHUNK_BITS        = 30;
+    private final static int    MAX_RECORD_LENGTH = Integer.MAX_VALUE - 8;
+    private final static byte[] RESIDUES          = createResidueTable();
+    private final static byte   SKIP              = 0;
+    private final static int    TASKS_PER_THREAD  = 8;
+    private byte[]              _buffer;
+    private final int           _chunk_bits;
+    private final long          _chunk_mask;
+    private ByteBuffer[]        _chunks;
+    private final File          _file;
+    private DecodedRecord       _next;
+    private long                _next_start;
+    private final long          _size;
+
+    /**
+     * Maps f for iterating over its records with hasNext() and next().
+     */
+    public MappedFastaParser( final File f ) throws IOException {
+        this( f, CHUNK_BITS );
+    }
+
+    /**
+     * For testing: maps f in chunks of 2^chunk_bits bytes.
+     */
+    MappedFastaParser( final File f, final int chunk_bits ) throws IOException {
+        if ( ( chunk_bits < 1 ) || ( chunk_bits > CHUNK_BITS ) ) {
+            throw new IllegalArgumentException( "chunk bits out of range: " + chunk_bits );
+        }
+        final String error = ForesterUtil.isReadableFile( f );
+        if ( !ForesterUtil.isEmpty( error ) ) {
+            throw new IOException( error );
+        }
+        _file = f;
+        _chunk_bits = chunk_bits;
+        _chunk_mask = ( 1L << chunk_bits ) - 1;
+        try (FileChannel channel = FileChannel.open( f.toPath(), StandardOpenOption.READ )) {
+            _size = channel.size();
+            _chunks = new ByteBuffer[ ( int ) ( ( _size + _chunk_mask ) >>> _chunk_bits ) ];
+            for( int c = 0; c < _chunks.length; ++c ) {
+                final long offset = ( long ) c << _chunk_bits;
+                _chunks[ c ] = channel.map( FileChannel.MapMode.READ_ONLY,
+                                            offset,
+                                            Math.min( _chunk_mask + 1, _size - offset ) );
+            }
+        }
+        _buffer = new byte[ 0 ];
+        reset();
+    }
+
+    /**
+     * Releases the mapped file (the mapping itself is released once it is
+     * garbage collected).
+     */
+    @Override
+    public void close() {
+        _chunks = new ByteBuffer[ 0 ];
+        _next = null;
+        _next_start = -1;
+    }
+
+    public File getFile() {
+        return _file;
+    }
+
+    public boolean hasNext() throws IOException {
+        while ( ( _next == null ) && ( _next_start >= 0 ) ) {
+            final long start = _next_start;
+            _next_start = findRecord( skipLine( start ), _size );
+            final long end = _next_start >= 0 ? _next_start : _size;
+            _buffer = ensureCapacity( _buffer, end - start );
+            final DecodedRecord r = decode( start, end, _buffer );
+            if ( isValid( r ) ) {
+                _next = r;
+            }
+        }
+        return _next != null;
+    }
+
+    /**
+     * Returns the next sequence, or null if there are no more sequences.
+     */
+    public MolecularSequence next() throws IOException {
+        if ( !hasNext() ) {
+            return null;
+        }
+        final byte[] residues = _next._residues;
+        final char[] s = new char[ residues.length ];
+        for( int i = 0; i < residues.length; ++i ) {
+            s[ i ] = ( char ) residues[ i ];
+        }
+        final MolecularSequence seq = new BasicSequence( _next._name, s, TYPE.AA );
+        _next = null;
+        return seq;
+    }
+
+    public void reset() {
+        if ( _chunks.length < 1 ) {
+            _next_start = -1;
+        }
+        else {
+            _next_start = findRecord( 0, _size );
+        }
+        _next = null;
+    }
+
+    private byte at( final long pos ) {
+        return _chunks[ ( int ) ( pos >>> _chunk_bits ) ].get( ( int ) ( pos & _chunk_mask ) );
+    }
+
+    /**
+     * Counts the lines before pos, for error messages ("\r\n" counts as one
+     * line end).
+     */
+    private int countLines( final long pos ) {
+        int lines = 0;
+        for( long p = 0; p < pos; ++p ) {
+            final byte b = at( p );
+            if ( ( b == '\n' ) || ( ( b == '\r' ) && ( ( ( p + 1 ) >= _size ) || ( at( p + 1 ) != '\n' ) ) ) ) {
+                ++lines;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Decodes the record from the '&gt;' at start to end into buffer (which
+     * must be at least end - start long).
+     */
+    private DecodedRecord decode( final long start, final long end, final byte[] buffer ) throws MsaFormatException {
+        long name_end = start + 1;
+        while ( ( name_end < end ) && !isLineEnd( at( name_end ) ) ) {
+            ++name_end;
+        }
+        final byte[] name_bytes = new byte[ ( int ) ( name_end - start - 1 ) ];
+        for( int i = 0; i < name_bytes.length; ++i ) {
+            name_bytes[ i ] = at( start + 1 + i );
+        }
+        final String name = new String( name_bytes, StandardCharsets.UTF_8 ).trim();
+        int n = 0;
+        int line_n = 0;
+        boolean ignorable = true;
+        long line_start = name_end;
+        long p = name_end;
+        while ( p < end ) {
+            final long base = p & ~_chunk_mask;
+            final ByteBuffer chunk = _chunks[ ( int ) ( p >>> _chunk_bits ) ];
+            final int limit = ( int ) Math.min( chunk.limit(), end - base );
+            for( int i = ( int ) ( p & _chunk_mask ); i < limit; ++i ) {
+                final byte b = chunk.get( i );
+                if ( ( b == '\n' ) || ( b == '\r' ) ) {
+                    if ( ignorable ) {
+                        n = line_n;
+                    }
+                    else if ( name.length() < 1 ) {
+                        throw createFormatException( line_start );
+                    }
+                    ignorable = true;
+                    line_n = n;
+                    line_start = base + i + 1;
+                }
+                else {
+                    if ( ignorable && ( ( b < '0' ) || ( b > '9' ) ) && !isBlank( b ) ) {
+                        ignorable = false;
+                    }
+                    final byte r = RESIDUES[ b & 0xFF ];
+                    if ( r != SKIP ) {
+                        buffer[ n++ ] = r;
+                    }
+                }
+            }
+            p = base + limit;
+        }
+        if ( ignorable ) {
+            n = line_n;
+        }
+        else if ( name.length() < 1 ) {
+            throw createFormatException( line_start );
+        }
+        return new DecodedRecord( name, Arrays.copyOf( buffer, n ) );
+    }
+
+    private MsaFormatException createFormatException( final long line_start ) {
+        long line_end = line_start;
+        while ( ( line_end < _size ) && ( line_end < ( line_start + 400 ) ) && !isLineEnd( at( line_end ) ) ) {
+            ++line_end;
+        }
+        final byte[] line = new byte[ ( int ) ( line_end - line_start ) ];
+        for( int i = 0; i < line.length; ++i ) {
+            line[ i ] = at( line_start + i );
+        }
+        String s = new String( line, StandardCharsets.UTF_8 );
+        if ( s.length() > 100 ) {
+            s = s.substring( 0, 100 ) + " ...";
+        }
+        return new MsaFormatException( "illegally formatted fasta msa (line: " + ( countLines( line_start ) + 1 )
+                + "):\n\"" + s + "\"" );
+    }
+
+    /**
+     * Returns the position of the '&gt;' of the first record whose line starts
+     * at or after from (which must be the start of a line) and before to, or
+     * -1.
+     */
+    private long findRecord( final long from, final long to ) {
+        long p = from;
+        while ( p < to ) {
+            long q = p;
+            while ( ( q < _size ) && isBlank( at( q ) ) ) {
+                ++q;
+            }
+            if ( ( ( q + 1 ) < _size ) && ( at( q ) == '>' ) && !isLineEnd( at( q + 1 ) ) ) {
+                return q;
+            }
+            p = skipLine( q );
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the records of the parts of the file on several threads.
+     */
+    private long[] findRecords( final ExecutorService executor, final int parts ) throws IOException {
+        final List<Callable<long[]>> tasks = new ArrayList<>();
+        for( int i = 0; i < parts; ++i ) {
+            final long from = ( _size * i ) / parts;
+            final long to = ( _size * ( i + 1 ) ) / parts;
+            tasks.add( () -> {
+                long[] starts = new long[ 16 ];
+                int n = 0;
+                long p = ( ( from == 0 ) || isLineEnd( at( from - 1 ) ) ) ? from : skipLine( from );
+                long start;
+                while ( ( p < to ) && ( ( start = findRecord( p, to ) ) >= 0 ) ) {
+                    if ( n == starts.length ) {
+                        starts = Arrays.copyOf( starts, n * 2 );
+                    }
+                    starts[ n++ ] = start;
+                    p = skipLine( start );
+                }
+                return Arrays.copyOf( starts, n );
+            } );
+        }
+        final List<long[]> results = execute( executor, tasks );
+        int n = 0;
+        for( final long[] r : results ) {
+            n += r.length;
+        }
+        final long[] starts = new long[ n ];
+        n = 0;
+        for( final long[] r : results ) {
+            System.arraycopy( r, 0, starts, n, r.length );
+            n += r.length;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the position after the end of the line at pos.
+     */
+    private long skipLine( final long pos ) {
+        long p = pos;
+        while ( p < _size ) {
+            final long base = p & ~_chunk_mask;
+            final ByteBuffer chunk = _chunks[ ( int ) ( p >>> _chunk_bits ) ];
+            final int limit = chunk.limit();
+            for( int i = ( int ) ( p & _chunk_mask ); i < limit; ++i ) {
+                final byte b = chunk.get( i );
+                if ( ( b == '\n' ) || ( b == '\r' ) ) {
+                    return base + i + 1;
+                }
+            }
+            p = base + limit;
+        }
+        return _size;
+    }
+
+    /**
+     * Parses the fasta file f into a ByteMsa, on as many threads as there are
+     * processors.
+     */
+    public static ByteMsa parseMsa( final File f ) throws IOException {
+        return parseMsa( f, Runtime.getRuntime().availableProcessors() );
+    }
+
+    /**
+     * Parses the fasta file f into a ByteMsa, on the given number of threads.
+     */
+    public static ByteMsa parseMsa( final File f, final int threads ) throws IOException {
+        return parseMsa( f, threads, CHUNK_BITS );
+    }
+
+    static ByteMsa parseMsa( final File f, final int threads, final int chunk_bits ) throws IOException {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        final MappedFastaParser p = new MappedFastaParser( f, chunk_bits );
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool( threads ) : null;
+        try {
+            final long[] starts = p.findRecords( executor, threads );
+            final DecodedRecord[] records = new DecodedRecord[ starts.length ];
+            final int tasks = Math.max( 1, Math.min( starts.length, threads * TASKS_PER_THREAD ) );
+            final List<Callable<Void>> decoders = new ArrayList<>();
+            for( int t = 0; t < tasks; ++t ) {
+                final int from = ( int ) ( ( ( long ) starts.length * t ) / tasks );
+                final int to = ( int ) ( ( ( long ) starts.length * ( t + 1 ) ) / tasks );
+                decoders.add( () -> {
+                    byte[] buffer = new byte[ 0 ];
+                    for( int i = from; i < to; ++i ) {
+                        final long end = ( i + 1 ) < starts.length ? starts[ i + 1 ] : p._size;
+                        buffer = ensureCapacity( buffer, end - starts[ i ] );
+                        records[ i ] = p.decode( starts[ i ], end, buffer );
+                    }
+                    return null;
+                } );
+            }
+            execute( executor, decoders );
+            final List<String> ids = new ArrayList<>( records.length );
+            final List<byte[]> data = new ArrayList<>( records.length );
+            for( final DecodedRecord r : records ) {
+                if ( isValid( r ) ) {
+                    ids.add( r._name );
+                    data.add( r._residues );
+                }
+            }
+            if ( ids.isEmpty() ) {
+                throw new IllegalArgumentException( "cannot create msa from less than one sequence" );
+            }
+            return new ByteMsa( ids.toArray( new String[ ids.size() ] ),
+                                data.toArray( new byte[ data.size() ][] ),
+                                TYPE.AA );
+        }
+        finally {
+            if ( executor != null ) {
+                executor.shutdownNow();
+            }
+            p.close();
+        }
+    }
+
+    private static byte[] createResidueTable() {
+        final byte[] table = new byte[ 256 ];
+        final String aas = "ARNDBCQEZGHILKMFPSTWYVXUO-*";
+        for( int b = 0; b < 256; ++b ) {
+            final char c = Character.toUpperCase( ( char ) b );
+            if ( ( b >= 0x80 ) && ( b < 0xC0 ) ) {
+                // continuation byte of a multi-byte UTF-8 char
+                table[ b ] = SKIP;
+            }
+            else if ( isBlank( ( byte ) b ) ) {
+                table[ b ] = SKIP;
+            }
+            else if ( c == '.' ) {
+                table[ b ] = MolecularSequence.GAP;
+            }
+            else if ( ( b < 0x80 ) && ( aas.indexOf( c ) >= 0 ) ) {
+                table[ b ] = ( byte ) c;
+            }
+            else {
+                table[ b ] = MolecularSequence.UNSPECIFIED_AA;
+            }
+        }
+        return table;
+    }
+
+    private static byte[] ensureCapacity( final byte[] buffer, final long length ) throws MsaFormatException {
+        if ( length > MAX_RECORD_LENGTH ) {
+            throw new MsaFormatException( "fasta record of " + length + " bytes is too long" );
+        }
+        if ( buffer.length < length ) {
+            return new byte[ ( int ) Math.min( MAX_RECORD_LENGTH, Math.max( length, buffer.length * 2L ) ) ];
+        }
+        return buffer;
+    }
+
+    private static <T> List<T> execute( final ExecutorService executor, final List<Callable<T>> tasks )
+            throws IOException {
+        final List<T> results = new ArrayList<>();
+        try {
+            if ( executor == null ) {
+                for( final Callable<T> task : tasks ) {
+                    results.add( task.call() );
+                }
+            }
+            else {
+                for( final Future<T> future : executor.invokeAll( tasks ) ) {
+                    results.add( future.get() );
+                }
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof IOException ) {
+                throw ( IOException ) e.getCause();
+            }
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+        catch ( final IOException | RuntimeException e ) {
+            throw e;
+        }
+        catch ( final Exception e ) {
+            throw new IllegalStateException( e );
+        }
+        return results;
+    }
+
+    /**
+     * Space, tab, vertical tab and form feed (the whitespace of a line).
+     */
+    private static boolean isBlank( final byte b ) {
+        return ( b == ' ' ) || ( b == '\t' ) || ( b == 0x0B ) || ( b == '\f' );
+    }
+
+    private static boolean isLineEnd( final byte b ) {
+        return ( b == '\n' ) || ( b == '\r' );
+    }
+
+    /**
+     * Records without name are ignored, records without sequence are ignored
+     * with a warning (as by FastaParser).
+     */
+    private static boolean isValid( final DecodedRecord r ) {
+        if ( r._name.length() < 1 ) {
+            return false;
+        }
+        if ( r._residues.length < 1 ) {
+            System.out.println( "WARNING: empty sequence -- ignored" );
+            return false;
+        }
+        return true;
+    }
+
+    private final static class DecodedRecord {
+
+        private final String _name;
+        private final byte[] _residues;
+
+        private DecodedRecord( final String name, final byte[] residues ) {
+            _name = name;
+            _residues = residues;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.msa.ByteMsa;
+import org.forester.msa.Msa;
+import org.forester.msa.MsaFormatException;
+import org.forester.sequence.MolecularSequence;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Tests for {@link MappedFastaParser}: the sequences and msas must be the same
+ * as those of {@link FastaParser}, for the fasta files of the test directory,
+ * for odd formatting (line ends, whitespace, lines of digits, lower case,
+ * non-ASCII chars, empty records), and for a generated alignment parsed on
+ * one and on several threads, and with records spanning the chunks of the
+ * mapped file. Malformed input must be rejected with the same message.
+ * <p>
+ * main() compares the running times and heap use of both parsers on a large
+ * alignment (a given fasta file, or a generated alignment of 5000 sequences of
+ * length 29903, as SARS-CoV-2 genomes).
+ */
+public final class MappedFastaParserTest {
+
+    private final static String[] FILES = { "fasta_0.fasta", "ncbi.fasta", "ncbi_sn.fasta" };
+    private final static String[] ODD   = { ">a\nACGT\n>b\nacgt\n",
+            ">a\r\nAC GT\r\n\r\n>b\r\nA.C-G*T\r\n",
+            ">a\rACGT\r>b\rTTTT",
+            "some text\n1234\n  >  a name  \nAC\n  12 34\nGT\n\t>b\n\tAC\t\nGéT\n",
+            ">a\n>b\nACGT\n>c\n\n>d\nAC12\n>e\n>\nA\n",
+            ">äöüß\nACéGT\n>b\n123\n456\n>c\nACGTZBJ\n",
+            "\n\n\n",
+            "no records\nACGT\n" };
+
+    public static boolean test( final File test_dir ) {
+        final List<File> temp = new ArrayList<>();
+        try {
+            for( final String name : FILES ) {
+                final File f = new File( test_dir + ForesterUtil.FILE_SEPARATOR + name );
+                final String error = compare( f );
+                if ( error != null ) {
+                    return fail( name + ": " + error );
+                }
+            }
+            for( final String s : ODD ) {
+                final File f = createTempFile( temp, s );
+                final String error = compare( f );
+                if ( error != null ) {
+                    return fail( "\"" + s + "\": " + error );
+                }
+            }
+            // an alignment, on several threads and with small chunks
+            final File msa_file = createTempFile( temp, "" );
+            writeRandomAlignment( msa_file, 300, 1000, 60, new Random( 1 ) );
+            final String expected = toString( FastaParser.parseMsa( msa_file ) );
+            for( final int threads : new int[] { 1, 2, 4, 7 } ) {
+                for( final int chunk_bits : new int[] { 6, 12, 30 } ) {
+                    final ByteMsa msa = MappedFastaParser.parseMsa( msa_file, threads, chunk_bits );
+                    if ( !toString( msa ).equals( expected ) ) {
+                        return fail( "msa on " + threads + " threads with chunks of " + ( 1 << chunk_bits )
+                                + " bytes" );
+                    }
+                }
+            }
+            if ( !toString( MappedFastaParser.parseMsa( msa_file ) ).equals( expected ) ) {
+                return fail( "msa" );
+            }
+            // iterating, reset
+            final MappedFastaParser p = new MappedFastaParser( msa_file, 7 );
+            int n = 0;
+            while ( p.hasNext() ) {
+                if ( p.next() == null ) {
+                    return fail( "null sequence" );
+                }
+                ++n;
+            }
+            if ( ( n != 300 ) || ( p.next() != null ) ) {
+                return fail( "expected 300 sequences, got " + n );
+            }
+            p.reset();
+            if ( !p.next().getIdentifier().equals( "seq_0 some description" ) ) {
+                return fail( "reset" );
+            }
+            p.close();
+            if ( p.hasNext() ) {
+                return fail( "close" );
+            }
+            // unequal length, empty, malformed
+            try {
+                MappedFastaParser.parseMsa( createTempFile( temp, ">a\nACGT\n>b\nACG\n" ) );
+                return fail( "unequal lengths not rejected" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+            try {
+                MappedFastaParser.parseMsa( createTempFile( temp, "\n" ) );
+                return fail( "empty msa not rejected" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+            for( final String m : new String[] { ">a\nAC\n> \nACGT\n", "x\n>   \n\n123\nAC GT\n",
+                    ">a\r\nAC\r\n>\t\r\n\r\nG\r\n" } ) {
+                final File f = createTempFile( temp, m );
+                String expected_message = null;
+                try {
+                    FastaParser.parse( f );
+                }
+                catch ( final MsaFormatException e ) {
+                    expected_message = e.getMessage();
+                }
+                if ( expected_message == null ) {
+                    return fail( "FastaParser accepts \"" + m + "\"" );
+                }
+                try {
+                    MappedFastaParser.parseMsa( f, 2, 6 );
+                    return fail( "malformed input not rejected: " + m );
+                }
+                catch ( final MsaFormatException e ) {
+                    if ( !e.getMessage().equals( expected_message ) ) {
+                        return fail( "expected \"" + expected_message + "\", got \"" + e.getMessage() + "\"" );
+                    }
+                }
+            }
+            try {
+                new MappedFastaParser( new File( test_dir + ForesterUtil.FILE_SEPARATOR + "does_not_exist.fasta" ) );
+                return fail( "missing file not rejected" );
+            }
+            catch ( final IOException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        finally {
+            for( final File f : temp ) {
+                f.delete();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns null if both parsers give the same sequences (and msa, or
+     * exception for the msa), otherwise the difference.
+     */
+    private static String compare( final File f ) throws IOException {
+        final PrintStream out = System.out;
+        final ByteArrayOutputStream expected_warnings = new ByteArrayOutputStream();
+        final ByteArrayOutputStream warnings = new ByteArrayOutputStream();
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder actual = new StringBuilder();
+        try {
+            System.setOut( new PrintStream( expected_warnings ) );
+            final List<MolecularSequence> seqs = FastaParser.parse( f );
+            for( final MolecularSequence seq : seqs ) {
+                expected.append( seq.getIdentifier() + "\t" + seq.getMolecularSequenceAsString() + "\n" );
+            }
+            System.setOut( new PrintStream( warnings ) );
+            final MappedFastaParser p = new MappedFastaParser( f, 6 );
+            while ( p.hasNext() ) {
+                final MolecularSequence seq = p.next();
+                actual.append( seq.getIdentifier() + "\t" + seq.getMolecularSequenceAsString() + "\n" );
+            }
+            p.close();
+        }
+        finally {
+            System.setOut( out );
+        }
+        if ( !actual.toString().equals( expected.toString() ) ) {
+            return "expected:\n" + expected + "got:\n" + actual;
+        }
+        if ( !warnings.toString().equals( expected_warnings.toString() ) ) {
+            return "expected warnings:\n" + expected_warnings + "got:\n" + warnings;
+        }
+        String expected_msa;
+        try {
+            System.setOut( new PrintStream( new ByteArrayOutputStream() ) );
+            expected_msa = toString( FastaParser.parseMsa( f ) );
+        }
+        catch ( final IllegalArgumentException e ) {
+            expected_msa = e.getMessage();
+        }
+        finally {
+            System.setOut( out );
+        }
+        for( final int threads : new int[] { 1, 3 } ) {
+            String msa;
+            try {
+                System.setOut( new PrintStream( new ByteArrayOutputStream() ) );
+                msa = toString( MappedFastaParser.parseMsa( f, threads, 6 ) );
+            }
+            catch ( final IllegalArgumentException e ) {
+                msa = e.getMessage();
+            }
+            finally {
+                System.setOut( out );
+            }
+            if ( !msa.equals( expected_msa ) ) {
+                return "expected msa:\n" + expected_msa + "\ngot:\n" + msa;
+            }
+        }
+        return null;
+    }
+
+    private static File createTempFile( final List<File> temp, final String content ) throws IOException {
+        final File f = File.createTempFile( "forester_mapped_fasta", ".fasta" );
+        temp.add( f );
+        Files.copy( new ByteArrayInputStream( content.getBytes( StandardCharsets.UTF_8 ) ),
+                    f.toPath(),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING );
+        return f;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "MappedFastaParser test failed: " + msg );
+        return false;
+    }
+
+    private static String toString( final Msa msa ) {
+        final StringBuilder sb = new StringBuilder();
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            sb.append( msa.getIdentifier( row ) );
+            sb.append( '\t' );
+            sb.append( msa.getSequenceAsString( row ) );
+            sb.append( '\n' );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Random nucleotide alignment with gaps, some lower case residues and Ns,
+     * written with the given line width.
+     */
+    private static void writeRandomAlignment( final File f,
+                                              final int sequences,
+                                              final int length,
+                                              final int width,
+                                              final Random r )
+            throws IOException {
+        final char[] residues = "ACGTACGTACGTACGTacgtN-".toCharArray();
+        try (Writer w = Files.newBufferedWriter( f.toPath() )) {
+            for( int i = 0; i < sequences; ++i ) {
+                w.write( ">seq_" + i + " some description\n" );
+                for( int j = 0; j < length; ++j ) {
+                    w.write( residues[ r.nextInt( residues.length ) ] );
+                    if ( ( ( j + 1 ) % width ) == 0 ) {
+                        w.write( '\n' );
+                    }
+                }
+                w.write( '\n' );
+            }
+        }
+    }
+
+    public static void main( final String[] args ) throws IOException {
+        final File f;
+        if ( args.length > 0 ) {
+            f = new File( args[ 0 ] );
+        }
+        else {
+            f = File.createTempFile( "forester_mapped_fasta", ".fasta" );
+            f.deleteOnExit();
+            writeRandomAlignment( f, 5000, 29903, 60, new Random( 42 ) );
+        }
+        System.out.println( "File: " + f + " (" + ( f.length() / 1000000 ) + "MB)" );
+        final Runtime rt = Runtime.getRuntime();
+        for( int round = 0; round < 3; ++round ) {
+            System.gc();
+            long time = System.currentTimeMillis();
+            Msa msa = MappedFastaParser.parseMsa( f );
+            System.out.print( "MappedFastaParser: " + ( System.currentTimeMillis() - time ) + "ms ("
+                    + msa.getNumberOfSequences() + " sequences, heap "
+                    + ( ( rt.totalMemory() - rt.freeMemory() ) / 1000000 ) + "MB)" );
+            msa = null;
+            System.gc();
+            time = System.currentTimeMillis();
+            try {
+                msa = FastaParser.parseMsa( f );
+                System.out.println( ", FastaParser: " + ( System.currentTimeMillis() - time ) + "ms ("
+                        + msa.getNumberOfSequences() + " sequences, heap "
+                        + ( ( rt.totalMemory() - rt.freeMemory() ) / 1000000 ) + "MB)" );
+            }
+            catch ( final OutOfMemoryError e ) {
+                System.out.println( ", FastaParser: " + e.getMessage() );
+            }
+            msa = null;
+            System.gc();
+            time = System.currentTimeMillis();
+            final MappedFastaParser p = new MappedFastaParser( f );
+            int n = 0;
+            while ( p.hasNext() ) {
+                n += p.next().getLength() > 0 ? 1 : 0;
+            }
+            p.close();
+            System.out.println( "MappedFastaParser, iterating: " + ( System.currentTimeMillis() - time ) + "ms (" + n
+                    + " sequences)" );
+        }
+    }
+
+    private MappedFastaParserTest() {
+        // static tests only
+    }
+}
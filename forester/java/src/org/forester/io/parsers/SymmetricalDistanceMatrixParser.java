@@ -25,6 +25,7 @@ import java.util.List;
 
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
 import org.forester.evoinference.matrix.distance.DistanceMatrix;
+import org.forester.evoinference.matrix.distance.TriangularDistanceMatrix;
 import org.forester.util.BasicTable;
 import org.forester.util.BasicTableParser;
 import org.forester.util.ForesterUtil;
@@ -47,11 +48,12 @@ import org.forester.util.ForesterUtil;
  */
 public class SymmetricalDistanceMatrixParser {
 
-    private final static InputMatrixType INPUT_MATRIX_TYPE_DEFAULT = InputMatrixType.LOWER_TRIANGLE;
-    private final static String          COMMENT                   = "#";
-    private final static char            VALUE_SEPARATOR           = ' ';
-    private int                          _matrix_size;
-    private InputMatrixType              _input_matrix_type;
+    private final static InputMatrixType       INPUT_MATRIX_TYPE_DEFAULT = InputMatrixType.LOWER_TRIANGLE;
+    private final static String                COMMENT                   = "#";
+    private final static char                  VALUE_SEPARATOR           = ' ';
+    private int                                _matrix_size;
+    private InputMatrixType                    _input_matrix_type;
+    private TriangularDistanceMatrix.PRECISION _triangular_matrix_precision;
 
     private SymmetricalDistanceMatrixParser() {
         init();
@@ -87,6 +89,7 @@ public class SymmetricalDistanceMatrixParser {
 
     private void init() {
         setInputMatrixType( INPUT_MATRIX_TYPE_DEFAULT );
+        setTriangularMatrixPrecision( null );
         reset();
     }
 
@@ -114,6 +117,15 @@ public class SymmetricalDistanceMatrixParser {
         _input_matrix_type = input_matrix_type;
     }
 
+    /**
+     * If set (not null), parsed matrices are returned as TriangularDistanceMatrix
+     * objects of the given precision, instead of as BasicSymmetricalDistanceMatrix
+     * objects.
+     */
+    public void setTriangularMatrixPrecision( final TriangularDistanceMatrix.PRECISION precision ) {
+        _triangular_matrix_precision = precision;
+    }
+
     private void setMatrixSize( final int matrix_size ) {
         _matrix_size = matrix_size;
     }
@@ -152,7 +164,14 @@ public class SymmetricalDistanceMatrixParser {
             throw new IllegalArgumentException( "attempt to create distance matrix with illegal dimensions [columns: "
                     + table.getNumberOfColumns() + ", rows: " + table.getNumberOfRows() + "]" );
         }
-        final DistanceMatrix distance_matrix = new BasicSymmetricalDistanceMatrix( table.getNumberOfColumns() - 1 );
+        final DistanceMatrix distance_matrix;
+        if ( _triangular_matrix_precision != null ) {
+            distance_matrix = TriangularDistanceMatrix.createInstance( table.getNumberOfColumns() - 1,
+                                                                       _triangular_matrix_precision );
+        }
+        else {
+            distance_matrix = new BasicSymmetricalDistanceMatrix( table.getNumberOfColumns() - 1 );
+        }
         int start_row = 0;
         if ( first_line_is_size ) {
             start_row = 1;
@@ -64,6 +64,7 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
     public final static boolean REPLACE_UNDERSCORES_DEFAULT = false;
     private final static boolean ALLOW_ERRORS_IN_DISTANCE_TO_PARENT_DEFAULT = false;
     private final static byte BUFFERED_READER = 3;
+    private final static int BUFFER_SIZE = 8192;
     private final static byte CHAR_ARRAY = 2;
     private final static boolean GUESS_IF_SUPPORT_VALUES = true;
     private final static boolean GUESS_ROOTEDNESS_DEFAULT = true;
@@ -84,6 +85,9 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
     private boolean _in_single_quote = false;
     private byte _input_type;
     private BufferedReader _my_source_br = null;
+    private final char[] _my_source_buffer = new char[BUFFER_SIZE];
+    private int _my_source_buffer_length;
+    private int _my_source_buffer_position;
     private char[] _my_source_charary = null;
     private Phylogeny _next;
     private Object _nhx_source;
@@ -159,6 +163,8 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
         _current_phylogeny = null;
         _current_node = null;
         _my_source_charary = null;
+        _my_source_buffer_length = 0;
+        _my_source_buffer_position = 0;
         determineAndProcessSourceType(_source);
         switch (_input_type) {
             case CHAR_ARRAY:
@@ -342,12 +348,16 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
         while (true) {
             char c = '\b';
             if (_input_type == BUFFERED_READER) {
-                final int ci = _my_source_br.read();
-                if (ci >= 0) {
-                    c = (char) ci;
-                } else {
-                    break;
+                // Reads in chunks, rather than char by char (each of which is synchronized).
+                if (_my_source_buffer_position >= _my_source_buffer_length) {
+                    _my_source_buffer_length = _my_source_br.read(_my_source_buffer);
+                    _my_source_buffer_position = 0;
+                    if (_my_source_buffer_length < 0) {
+                        _my_source_buffer_length = 0;
+                        break;
+                    }
                 }
+                c = _my_source_buffer[_my_source_buffer_position++];
             } else {
                 if (_i >= _source_length) {
                     break;
@@ -437,6 +447,7 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
             _current_anotation = null;
         } else if ((_current_anotation != null) && (_current_anotation.length() > 0)) {
             _next = finishSingleNodePhylogeny();
+            _current_phylogeny = null;
             _current_anotation = null;
         } else {
             _next = null;
@@ -469,7 +480,7 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
                     isAllowErrorsInDistanceToParent(),
                     true,
                     isParseBeastStyleExtendedTags());
-            _current_anotation = new StringBuilder();
+            _current_anotation.setLength(0);
             _current_node.addAsChild(new_node);
         } else {
             parseNHX(_current_anotation.toString(),
@@ -479,7 +490,7 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
                     isAllowErrorsInDistanceToParent(),
                     true,
                     isParseBeastStyleExtendedTags());
-            _current_anotation = new StringBuilder();
+            _current_anotation.setLength(0);
         }
         if (!_current_node.isRoot()) {
             _current_node = _current_node.getParent();
@@ -510,7 +521,7 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
                     true,
                     isParseBeastStyleExtendedTags());
         }
-        _current_anotation = new StringBuilder();
+        _current_anotation.setLength(0);
         _saw_closing_paren = false;
     }
 
@@ -557,10 +568,12 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
             throw new IllegalArgumentException("cannot extract taxonomies and replace under scores at the same time");
         }
         if ((s != null) && (s.length() > 0)) {
-            if (replace_underscores) {
+            if (replace_underscores && (s.indexOf('_') > -1)) {
                 s = s.replaceAll("_+", " ");
             }
-            s = s.replaceAll("\\s+", " ").trim();
+            if (isContainsWhitespaceOrControlChars(s)) {
+                s = s.replaceAll("\\s+", " ").trim();
+            }
             boolean is_nhx = false;
             final int ob = s.indexOf("[");
             if (ob > -1) {
@@ -687,6 +700,15 @@ public final class NHXParser implements PhylogenyParser, IteratingPhylogenyParse
         }
     }
 
+    private final static boolean isContainsWhitespaceOrControlChars(final String s) {
+        for (int i = 0; i < s.length(); ++i) {
+            if (s.charAt(i) <= ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private final static double doubleValue(final String str, final boolean allow_errors) throws NHXFormatException {
         try {
             return Double.parseDouble(str);
@@ -0,0 +1,573 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers.nhx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.forester.io.parsers.IteratingPhylogenyParser;
+import org.forester.io.parsers.PhylogenyParser;
+import org.forester.io.parsers.nhx.NHXParser.TAXONOMY_EXTRACTION;
+import org.forester.io.parsers.util.PhylogenyParserException;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.util.ForesterConstants;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Parser for NH/NHX files with many trees (such as posterior samples of
+ * BEAST or MrBayes), which parses trees on several threads.
+ * <p>
+ * Files are memory-mapped (in chunks of 2^30 bytes), other sources are read
+ * into memory. The source is split at the open parentheses which start trees,
+ * following the same rules for quotes, comments and brackets as NHXParser.
+ * For ASCII based encodings (such as UTF-8, the default) this is done on the
+ * bytes, and each tree is only decoded when it is parsed, so that files are
+ * never held in the heap as a whole. (Sources in other encodings, and char
+ * arrays, are split as chars.) The trees are then parsed by NHXParsers (with
+ * the same settings) on a thread pool, a bounded number of trees ahead of the
+ * caller; next() returns them in the order in which they appear in the
+ * source. The results are the same as those of NHXParser.
+ */
+public final class ParallelNHXParser implements PhylogenyParser, IteratingPhylogenyParser {
+
+    private final static int                    CHUNK_BITS        = 30;
+    private final static int                    QUEUED_PER_THREAD = 4;
+    private boolean                             _allow_errors_in_distance_to_parent;
+    private char[]                              _chars;
+    private final int                           _chunk_bits;
+    private final long                          _chunk_mask;
+    private ByteBuffer[]                        _chunks;
+    private final String                        _encoding;
+    private ExecutorService                     _executor;
+    private boolean                             _guess_rootedness;
+    private boolean                             _ignore_quotes;
+    private int                                 _next_tree;
+    private boolean                             _parse_beast_style_extended_tags;
+    private final ArrayDeque<Future<Phylogeny>> _queue;
+    private boolean                             _replace_underscores;
+    private long                                _size;
+    private Object                              _source;
+    private TAXONOMY_EXTRACTION                 _taxonomy_extraction;
+    private final int                           _threads;
+    private long[]                              _tree_starts;
+
+    public ParallelNHXParser( final int threads ) {
+        this( threads, ForesterConstants.UTF_8 );
+    }
+
+    public ParallelNHXParser( final int threads, final String encoding ) {
+        this( threads, encoding, CHUNK_BITS );
+    }
+
+    /**
+     * For testing: maps files in chunks of 2^chunk_bits bytes.
+     */
+    ParallelNHXParser( final int threads, final String encoding, final int chunk_bits ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        if ( ( chunk_bits < 1 ) || ( chunk_bits > CHUNK_BITS ) ) {
+            throw new IllegalArgumentException( "chunk bits out of range: " + chunk_bits );
+        }
+        _threads = threads;
+        _encoding = encoding;
+        _chunk_bits = chunk_bits;
+        _chunk_mask = ( 1L << chunk_bits ) - 1;
+        _queue = new ArrayDeque<Future<Phylogeny>>();
+        _taxonomy_extraction = TAXONOMY_EXTRACTION.NO;
+        _replace_underscores = NHXParser.REPLACE_UNDERSCORES_DEFAULT;
+        _guess_rootedness = true;
+        _tree_starts = new long[ 0 ];
+    }
+    public String getEncoding() {
+        return _encoding;
+    }
+
+    @Override
+    public String getName() {
+        return "NH/NHX Parser (parallel)";
+    }
+
+    public final int getNumberOfThreads() {
+        return _threads;
+    }
+
+    public final TAXONOMY_EXTRACTION getTaxonomyExtraction() {
+        return _taxonomy_extraction;
+    }
+
+    @Override
+    public final boolean hasNext() {
+        return !_queue.isEmpty() || ( _next_tree < _tree_starts.length );
+    }
+
+    @Override
+    public final Phylogeny next() throws IOException {
+        if ( !hasNext() ) {
+            return null;
+        }
+        submit();
+        final Future<Phylogeny> future = _queue.poll();
+        try {
+            final Phylogeny phy = future.get();
+            if ( hasNext() ) {
+                submit();
+            }
+            else {
+                shutdown();
+            }
+            return phy;
+        }
+        catch ( final InterruptedException e ) {
+            shutdown();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+        catch ( final ExecutionException e ) {
+            shutdown();
+            if ( e.getCause() instanceof IOException ) {
+                throw ( IOException ) e.getCause();
+            }
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+
+    @Override
+    public final Phylogeny[] parse() throws IOException {
+        final List<Phylogeny> l = new ArrayList<Phylogeny>();
+        while ( hasNext() ) {
+            l.add( next() );
+        }
+        reset();
+        return l.toArray( new Phylogeny[ l.size() ] );
+    }
+
+    @Override
+    public final void reset() throws IOException {
+        shutdown();
+        if ( _source == null ) {
+            throw new IOException( "source is not set" );
+        }
+        if ( ( _chars == null ) && ( _chunks == null ) ) {
+            read( _source );
+        }
+        _next_tree = 0;
+        if ( _tree_starts.length == 0 ) {
+            // No trees in parentheses (a single node, or nothing at all).
+            final Phylogeny[] p = createNHXParser( 0, _size ).parse();
+            if ( p.length > 0 ) {
+                _queue.add( CompletableFuture.completedFuture( p[ 0 ] ) );
+            }
+        }
+    }
+
+    public final void setAllowErrorsInDistanceToParent( final boolean allow_errors_in_distance_to_parent ) {
+        _allow_errors_in_distance_to_parent = allow_errors_in_distance_to_parent;
+    }
+
+    public final void setGuessRootedness( final boolean guess_rootedness ) {
+        _guess_rootedness = guess_rootedness;
+    }
+
+    public final void setIgnoreQuotes( final boolean ignore_quotes ) {
+        _ignore_quotes = ignore_quotes;
+    }
+
+    public final void setParseBeastStyleExtendedTags( final boolean parse_beast_style_extended_tags ) {
+        _parse_beast_style_extended_tags = parse_beast_style_extended_tags;
+    }
+
+    public final void setReplaceUnderscores( final boolean replace_underscores ) {
+        _replace_underscores = replace_underscores;
+    }
+
+    /**
+     * Sets the source (String, char[], File, InputStream, or URL) and reads
+     * it. As for NHXParser, settings have to be set before calling this
+     * method.
+     */
+    @Override
+    public final void setSource( final Object nhx_source ) throws IOException {
+        shutdown();
+        _source = nhx_source;
+        _chars = null;
+        _chunks = null;
+        reset();
+    }
+
+    public final void setTaxonomyExtraction( final TAXONOMY_EXTRACTION taxonomy_extraction ) {
+        _taxonomy_extraction = taxonomy_extraction;
+    }
+
+    /**
+     * Returns a NHXParser for the part of the source from start to end.
+     */
+    private final NHXParser createNHXParser( final long start, final long end ) throws IOException {
+        final NHXParser parser = new NHXParser( getEncoding() );
+        parser.setTaxonomyExtraction( _taxonomy_extraction );
+        parser.setReplaceUnderscores( _replace_underscores );
+        parser.setGuessRootedness( _guess_rootedness );
+        parser.setIgnoreQuotes( _ignore_quotes );
+        parser.setAllowErrorsInDistanceToParent( _allow_errors_in_distance_to_parent );
+        parser.setParseBeastStyleExtendedTags( _parse_beast_style_extended_tags );
+        if ( _chars != null ) {
+            parser.setSource( ( start == 0 ) && ( end == _chars.length ) ? _chars : Arrays
+                    .copyOfRange( _chars, ( int ) start, ( int ) end ) );
+        }
+        else {
+            parser.setSource( new ChunksInputStream( start, end ) );
+        }
+        return parser;
+    }
+
+    /**
+     * Returns the positions of the open parentheses which start trees in the
+     * chunks.
+     */
+    private final long[] findTreeStarts() {
+        final TreeStartScanner scanner = new TreeStartScanner( _ignore_quotes );
+        for( final ByteBuffer chunk : _chunks ) {
+            final int limit = chunk.limit();
+            for( int i = 0; i < limit; ++i ) {
+                scanner.scan( chunk.get( i ) & 0xFF );
+            }
+        }
+        return scanner.getStarts();
+    }
+
+    private final Phylogeny parseTree( final int i ) throws IOException {
+        final long end = ( i + 1 ) < _tree_starts.length ? _tree_starts[ i + 1 ] : _size;
+        final NHXParser parser = createNHXParser( _tree_starts[ i ], end );
+        return parser.hasNext() ? parser.next() : null;
+    }
+
+    /**
+     * Reads (or maps) the source, and finds the starts of its trees.
+     */
+    private final void read( final Object source ) throws IOException {
+        final boolean ascii_based = isAsciiBased( Charset.forName( getEncoding() ) );
+        if ( source instanceof char[] ) {
+            _chars = ( char[] ) source;
+        }
+        else if ( source instanceof String ) {
+            if ( ascii_based ) {
+                _chunks = new ByteBuffer[] { ByteBuffer.wrap( ( ( String ) source ).getBytes( getEncoding() ) ) };
+            }
+            else {
+                _chars = ( ( String ) source ).toCharArray();
+            }
+        }
+        else if ( source instanceof File ) {
+            final File f = ( File ) source;
+            final String error = ForesterUtil.isReadableFile( f );
+            if ( !ForesterUtil.isEmpty( error ) ) {
+                throw new PhylogenyParserException( error );
+            }
+            if ( ascii_based ) {
+                try (final FileInputStream is = new FileInputStream( f ); final FileChannel channel = is.getChannel()) {
+                    final long size = channel.size();
+                    final ByteBuffer[] chunks = new ByteBuffer[ ( int ) ( ( size + _chunk_mask ) >>> _chunk_bits ) ];
+                    for( int c = 0; c < chunks.length; ++c ) {
+                        final long offset = ( long ) c << _chunk_bits;
+                        chunks[ c ] = channel.map( FileChannel.MapMode.READ_ONLY,
+                                                   offset,
+                                                   Math.min( _chunk_mask + 1, size - offset ) );
+                    }
+                    _chunks = chunks;
+                }
+            }
+            else {
+                try (final InputStream is = new FileInputStream( f )) {
+                    _chars = readChars( is, getEncoding() );
+                }
+            }
+        }
+        else if ( source instanceof URL ) {
+            try (final InputStream is = ( ( URL ) source ).openStream()) {
+                read( is, ascii_based );
+            }
+        }
+        else if ( source instanceof InputStream ) {
+            read( ( InputStream ) source, ascii_based );
+        }
+        else {
+            throw new IllegalArgumentException( ParallelNHXParser.class + " can only parse objects of type String,"
+                    + " char[], File, InputStream, or URL " + " [attempt to parse object of " + source.getClass()
+                    + "]." );
+        }
+        if ( _chars != null ) {
+            _size = _chars.length;
+            _tree_starts = findTreeStarts( _chars, _ignore_quotes );
+        }
+        else {
+            _size = 0;
+            for( final ByteBuffer chunk : _chunks ) {
+                _size += chunk.limit();
+            }
+            _tree_starts = findTreeStarts();
+        }
+    }
+
+    private final void read( final InputStream is, final boolean ascii_based ) throws IOException {
+        if ( ascii_based ) {
+            _chunks = new ByteBuffer[] { ByteBuffer.wrap( is.readAllBytes() ) };
+        }
+        else {
+            _chars = readChars( is, getEncoding() );
+        }
+    }
+
+    private final void shutdown() {
+        _queue.clear();
+        if ( _executor != null ) {
+            _executor.shutdownNow();
+            _executor = null;
+        }
+    }
+
+    /**
+     * Submits trees to be parsed, up to QUEUED_PER_THREAD per thread (or,
+     * with one thread, parses the next tree).
+     */
+    private final void submit() {
+        if ( ( _threads > 1 ) && ( _executor == null ) ) {
+            _executor = Executors.newFixedThreadPool( _threads, r -> {
+                final Thread t = new Thread( r, "nhx-parser" );
+                t.setDaemon( true );
+                return t;
+            } );
+        }
+        while ( ( _next_tree < _tree_starts.length )
+                && ( _queue.size() < ( _threads > 1 ? QUEUED_PER_THREAD * _threads : 1 ) ) ) {
+            final int i = _next_tree++;
+            final Callable<Phylogeny> task = () -> parseTree( i );
+            if ( _executor != null ) {
+                _queue.add( _executor.submit( task ) );
+            }
+            else {
+                final FutureTask<Phylogeny> f = new FutureTask<Phylogeny>( task );
+                f.run();
+                _queue.add( f );
+            }
+        }
+    }
+
+    /**
+     * Returns the positions of the open parentheses which start trees in
+     * text.
+     */
+    final static long[] findTreeStarts( final char[] text, final boolean ignore_quotes ) {
+        final TreeStartScanner scanner = new TreeStartScanner( ignore_quotes );
+        for( final char c : text ) {
+            scanner.scan( c );
+        }
+        return scanner.getStarts();
+    }
+
+    /**
+     * Returns true for encodings in which the chars of the NH format (all
+     * ASCII) are single bytes which do not occur as part of other chars, so
+     * that trees can be found in the bytes.
+     */
+    private final static boolean isAsciiBased( final Charset charset ) {
+        return charset.equals( StandardCharsets.UTF_8 ) || charset.equals( StandardCharsets.US_ASCII )
+                || charset.name().startsWith( "ISO-8859-" ) || charset.name().startsWith( "windows-125" );
+    }
+
+    private final static char[] readChars( final InputStream is, final String encoding ) throws IOException {
+        final Reader reader = new InputStreamReader( is, encoding );
+        final StringBuilder sb = new StringBuilder();
+        final char[] buffer = new char[ 1 << 16 ];
+        int n;
+        while ( ( n = reader.read( buffer ) ) >= 0 ) {
+            sb.append( buffer, 0, n );
+        }
+        final char[] text = new char[ sb.length() ];
+        sb.getChars( 0, sb.length(), text, 0 );
+        return text;
+    }
+
+    /**
+     * Reads the bytes of the chunks from start to end (thread-safe, as only
+     * absolute gets are used).
+     */
+    private final class ChunksInputStream extends InputStream {
+
+        private final long _end;
+        private long       _position;
+
+        ChunksInputStream( final long start, final long end ) {
+            _position = start;
+            _end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if ( _position >= _end ) {
+                return -1;
+            }
+            final int b = _chunks[ ( int ) ( _position >>> _chunk_bits ) ].get( ( int ) ( _position & _chunk_mask ) );
+            ++_position;
+            return b & 0xFF;
+        }
+
+        @Override
+        public int read( final byte[] b, final int off, final int len ) throws IOException {
+            if ( _position >= _end ) {
+                return -1;
+            }
+            final ByteBuffer chunk = _chunks[ ( int ) ( _position >>> _chunk_bits ) ];
+            final int i = ( int ) ( _position & _chunk_mask );
+            final int n = ( int ) Math.min( Math.min( len, _end - _position ), chunk.limit() - i );
+            chunk.get( i, b, off, n );
+            _position += n;
+            return n;
+        }
+    }
+
+    /**
+     * Finds the open parentheses which start trees, char by char. This
+     * follows NHXParser.parseNext(), which starts a new tree at an open
+     * parenthesis at clade level 0 (outside of quotes, comments and
+     * brackets).
+     */
+    private final static class TreeStartScanner {
+
+        private boolean       _after_close_paren;
+        private int           _clade_level;
+        private final boolean _ignore_quotes;
+        private boolean       _in_comment;
+        private boolean       _in_double_quote;
+        private boolean       _in_open_bracket;
+        private boolean       _in_single_quote;
+        private int           _n;
+        private long          _position;
+        private boolean       _saw_colon;
+        private boolean       _saw_open_bracket;
+        private long[]        _starts;
+
+        TreeStartScanner( final boolean ignore_quotes ) {
+            _ignore_quotes = ignore_quotes;
+            _starts = new long[ 16 ];
+        }
+
+        long[] getStarts() {
+            return Arrays.copyOf( _starts, _n );
+        }
+
+        void scan( final int c ) {
+            final long i = _position++;
+            if ( !_in_single_quote && !_in_double_quote ) {
+                if ( c == ':' ) {
+                    _saw_colon = true;
+                }
+                else if ( !( ( c < 33 ) || ( c == 127 ) ) && _saw_colon
+                        && ( ( c != '[' ) && ( c != '.' ) && ( ( c < 48 ) || ( c > 57 ) ) ) ) {
+                    _saw_colon = false;
+                }
+                if ( _in_open_bracket && ( c == ']' ) ) {
+                    _in_open_bracket = false;
+                }
+            }
+            if ( ( c < 32 ) || ( c == 127 ) || ( _ignore_quotes && ( ( c == 32 ) || ( c == 34 ) || ( c == 39 ) ) )
+                    || ( ( c == 32 ) && ( !_in_single_quote && !_in_double_quote ) )
+                    || ( ( _clade_level == 0 ) && ( c == ';' ) && ( !_in_single_quote && !_in_double_quote ) ) ) {
+                // ignored
+            }
+            else if ( _in_comment ) {
+                if ( c == ']' ) {
+                    _in_comment = false;
+                }
+            }
+            else if ( _in_double_quote ) {
+                if ( c == '"' ) {
+                    _in_double_quote = false;
+                }
+            }
+            else if ( ( c == '"' ) && !_in_single_quote ) {
+                _in_double_quote = true;
+            }
+            else if ( _in_single_quote ) {
+                if ( c == 39 ) {
+                    _in_single_quote = false;
+                }
+            }
+            else if ( c == 39 ) {
+                _in_single_quote = true;
+            }
+            else if ( c == '[' ) {
+                _saw_open_bracket = true;
+                _in_open_bracket = true;
+            }
+            else if ( _saw_open_bracket ) {
+                if ( ( c != ']' ) && ( c != '&' )
+                        && !( ( _saw_colon || _after_close_paren ) && ( ( ( c > 47 ) && ( c < 58 ) ) || ( c == 46 )
+                                || ( c == 45 ) || ( c == 43 ) ) ) ) {
+                    _in_comment = true;
+                }
+                _saw_open_bracket = false;
+            }
+            else if ( ( c == '(' ) && !_in_open_bracket ) {
+                _after_close_paren = false;
+                if ( _clade_level == 0 ) {
+                    if ( _n == _starts.length ) {
+                        _starts = Arrays.copyOf( _starts, 2 * _n );
+                    }
+                    _starts[ _n++ ] = i;
+                    _clade_level = 1;
+                }
+                else {
+                    ++_clade_level;
+                }
+            }
+            else if ( ( c == ')' ) && !_in_open_bracket ) {
+                _after_close_paren = true;
+                --_clade_level;
+            }
+            else if ( ( c == ',' ) && !_in_open_bracket ) {
+                _after_close_paren = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers.nhx;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.io.parsers.IteratingPhylogenyParser;
+import org.forester.io.parsers.nhx.NHXParser.TAXONOMY_EXTRACTION;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.util.ForesterConstants;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Tests for {@link ParallelNHXParser}: the trees (and their order) must be the
+ * same as those of {@link NHXParser}, for files of the test directory and for
+ * sources with quotes, comments and annotations which contain parentheses.
+ * <p>
+ * main() compares the running times of both parsers on a file with many trees
+ * (a given file, or a generated file with 20000 trees of 100 external nodes,
+ * with BEAST-style annotations).
+ */
+public final class ParallelNHXParserTest {
+
+    private final static String[] SOURCES = {
+            "(a,b);(c,(d,e));((f,g),h)",
+            "(a,b)r;\n\n(c,d)s:1.0;  [comment (with) parens;] (e,f);",
+            "('a(1)':1,\"b;(\":2)'x,y':0.1;('c)':1,[&&NHX:S=x(y)]d:2);",
+            "(a[&height=1.0,rate={0.1,0.2}]:1.0,b[&posterior=0.5(]:2.0)[&prob=1.0e+00];(c:1[90],d:2);",
+            "(a:0.1[comment with ( and ;],b:[90]0.2);(c,d)",
+            "(a,b)[it's a comment](c,d);('e[',f)[&x='g]('];(h,i);",
+            "single_node:1.0;",
+            "",
+            "junk before (a,b); (c,(d,(e,f)));;; (g,h)name [a comment];" };
+
+    public static boolean test( final File test_dir ) {
+        try {
+            for( final String source : SOURCES ) {
+                for( final boolean ignore_quotes : new boolean[] { false, true } ) {
+                    if ( !isSameAsNHXParser( source, ignore_quotes, TAXONOMY_EXTRACTION.NO, false )
+                            || !isSameAsNHXParser( source.toCharArray(), ignore_quotes, TAXONOMY_EXTRACTION.NO, false ) ) {
+                        return fail( "different result for [" + source + "] (ignore quotes: " + ignore_quotes
+                                + ")" );
+                    }
+                }
+            }
+            final String[] files = { "basics.nh", "chars.nh", "phylogeny27.nhx", "phylogeny28.nhx", "quotes.nhx",
+                    "mafft.nh", "pplacer_2.tre", "wnt_psiblast_tree_seq_ids.nwk" };
+            for( final String name : files ) {
+                final File f = new File( test_dir + ForesterUtil.FILE_SEPARATOR + name );
+                if ( !isSameAsNHXParser( f, false, TAXONOMY_EXTRACTION.NO, false )
+                        || !isSameAsNHXParser( f, true, TAXONOMY_EXTRACTION.AGGRESSIVE, false ) ) {
+                    return fail( "different result for " + name );
+                }
+            }
+            final File posterior = File.createTempFile( "forester_parallel_nhx", ".nh" );
+            try {
+                writeRandomTrees( posterior, 300, 30, new Random( 1 ) );
+                if ( !isSameAsNHXParser( posterior, false, TAXONOMY_EXTRACTION.NO, true ) ) {
+                    return fail( "different result for generated trees" );
+                }
+            }
+            finally {
+                posterior.delete();
+            }
+            final File utf_16 = File.createTempFile( "forester_parallel_nhx", ".nh" );
+            try {
+                final String trees = "(\u00e4,b)c; ((d,e:1.0)f,\u00f6);";
+                Files.write( utf_16.toPath(), trees.getBytes( StandardCharsets.UTF_16 ) );
+                final List<String> expected = parseAll( new NHXParser( "UTF-16" ), utf_16 );
+                if ( ( expected.size() != 2 ) || !expected.equals( parseAll( new ParallelNHXParser( 2, "UTF-16" ),
+                                                                             utf_16 ) ) ) {
+                    return fail( "different result for UTF-16 file" );
+                }
+            }
+            finally {
+                utf_16.delete();
+            }
+            final ParallelNHXParser p = new ParallelNHXParser( 3 );
+            p.setSource( "(a,b);(c,d" );
+            p.next();
+            try {
+                p.next();
+                return fail( "unbalanced parentheses must be reported" );
+            }
+            catch ( final IOException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isSameAsNHXParser( final Object source,
+                                              final boolean ignore_quotes,
+                                              final TAXONOMY_EXTRACTION taxonomy_extraction,
+                                              final boolean beast ) throws IOException {
+        final NHXParser expected_parser = new NHXParser();
+        expected_parser.setIgnoreQuotes( ignore_quotes );
+        expected_parser.setTaxonomyExtraction( taxonomy_extraction );
+        expected_parser.setParseBeastStyleExtendedTags( beast );
+        final List<String> expected = parseAll( expected_parser, source );
+        for( final int threads : new int[] { 1, 2, 4 } ) {
+            // Small chunks, so that trees in files cross the boundaries of
+            // mapped chunks.
+            final ParallelNHXParser p = threads == 2 ? new ParallelNHXParser( threads, ForesterConstants.UTF_8, 7 )
+                    : new ParallelNHXParser( threads );
+            p.setIgnoreQuotes( ignore_quotes );
+            p.setTaxonomyExtraction( taxonomy_extraction );
+            p.setParseBeastStyleExtendedTags( beast );
+            // Twice, the second time after reset().
+            if ( !expected.equals( parseAll( p, source ) ) || !expected.equals( parseAll( p, null ) ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the trees as strings, or just "error" if the source is not
+     * valid. (NHXParser reports errors one tree ahead.)
+     */
+    private static List<String> parseAll( final IteratingPhylogenyParser p, final Object source ) {
+        final List<String> l = new ArrayList<String>();
+        try {
+            if ( source != null ) {
+                p.setSource( source );
+            }
+            else {
+                p.reset();
+            }
+            while ( p.hasNext() ) {
+                l.add( toString( p.next() ) );
+            }
+        }
+        catch ( final IOException | RuntimeException e ) {
+            l.clear();
+            l.add( "error" );
+        }
+        return l;
+    }
+
+    private static String toString( final Phylogeny phy ) {
+        return phy.isRooted() + " " + phy.toNewHampshireX();
+    }
+
+    private static void writeRandomTrees( final File f, final int trees, final int external_nodes, final Random r )
+            throws IOException {
+        try (final Writer w = new FileWriter( f )) {
+            for( int t = 0; t < trees; ++t ) {
+                final List<String> clades = new ArrayList<String>();
+                for( int i = 0; i < external_nodes; ++i ) {
+                    clades.add( "taxon_" + i + "[&rate=" + r.nextDouble() + "]:" + r.nextDouble() );
+                }
+                while ( clades.size() > 1 ) {
+                    final String a = clades.remove( r.nextInt( clades.size() ) );
+                    final String b = clades.remove( r.nextInt( clades.size() ) );
+                    clades.add( "(" + a + "," + b + ")[&posterior=" + r.nextDouble() + ",height_95%_HPD={"
+                            + r.nextDouble() + "," + ( 1 + r.nextDouble() ) + "}]:" + r.nextDouble() );
+                }
+                w.write( "tree STATE_" + t + " = [&R] " + clades.get( 0 ) + ";\n" );
+            }
+        }
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "ParallelNHXParser test failed: " + msg );
+        return false;
+    }
+
+    public static void main( final String[] args ) throws IOException {
+        final File f;
+        if ( args.length > 0 ) {
+            f = new File( args[ 0 ] );
+        }
+        else {
+            f = File.createTempFile( "forester_parallel_nhx", ".nh" );
+            f.deleteOnExit();
+            writeRandomTrees( f, 20000, 100, new Random( 42 ) );
+        }
+        final int threads = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : Runtime.getRuntime()
+                .availableProcessors();
+        System.out.println( "File    : " + f + " (" + f.length() + " bytes)" );
+        System.out.println( "Threads : " + threads );
+        for( int round = 0; round < 3; ++round ) {
+            long time = System.currentTimeMillis();
+            final NHXParser nhx = new NHXParser();
+            nhx.setParseBeastStyleExtendedTags( true );
+            nhx.setSource( f );
+            int n = 0;
+            while ( nhx.hasNext() ) {
+                nhx.next();
+                ++n;
+            }
+            System.out.println( "NHXParser         : " + n + " trees in " + ( System.currentTimeMillis() - time )
+                    + "ms" );
+            time = System.currentTimeMillis();
+            final ParallelNHXParser parallel = new ParallelNHXParser( threads );
+            parallel.setParseBeastStyleExtendedTags( true );
+            parallel.setSource( f );
+            n = 0;
+            while ( parallel.hasNext() ) {
+                parallel.next();
+                ++n;
+            }
+            System.out.println( "ParallelNHXParser : " + n + " trees in " + ( System.currentTimeMillis() - time )
+                    + "ms" );
+        }
+    }
+}
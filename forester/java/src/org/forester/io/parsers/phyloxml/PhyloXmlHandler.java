@@ -124,53 +124,9 @@ public final class PhyloXmlHandler extends DefaultHandler {
             else if ( local_name.equals( PhyloXmlMapping.SEQUENCE_RELATION ) ) {
                 try {
                     if ( getCurrentPhylogeny() != null ) {
-                        final SequenceRelation seqRelation = ( SequenceRelation ) SequenceRelationParser
-                                .getInstance( getCurrentPhylogeny() ).parse( getCurrentXmlElement() );
-                        final Map<String, Sequence> sequencesById = getSequenceMapByIdForPhylogeny( getCurrentPhylogeny() );
-                        final Sequence ref0 = sequencesById.get( seqRelation.getRef0().getSourceId() ), ref1 = sequencesById
-                                .get( seqRelation.getRef1().getSourceId() );
-                        if ( ref0 != null ) {
-                            // check for reverse relation
-                            boolean fFoundReverse = false;
-                            for( final SequenceRelation sr : ref0.getSequenceRelations() ) {
-                                if ( sr.getType().equals( seqRelation.getType() )
-                                        && ( ( sr.getRef0().isEqual( ref1 ) && sr.getRef1().isEqual( ref0 ) ) || ( sr
-                                                .getRef0().isEqual( ref0 ) && sr.getRef1().isEqual( ref1 ) ) ) ) {
-                                    // in this case we don't need to re-add it, but we make sure we don't loose the confidence value
-                                    fFoundReverse = true;
-                                    if ( ( sr.getConfidence() == null ) && ( seqRelation.getConfidence() != null ) ) {
-                                        sr.setConfidence( seqRelation.getConfidence() );
-                                    }
-                                }
-                            }
-                            if ( !fFoundReverse ) {
-                                ref0.addSequenceRelation( seqRelation );
-                            }
-                        }
-                        if ( ref1 != null ) {
-                            // check for reverse relation
-                            boolean fFoundReverse = false;
-                            for( final SequenceRelation sr : ref1.getSequenceRelations() ) {
-                                if ( sr.getType().equals( seqRelation.getType() )
-                                        && ( ( sr.getRef0().isEqual( ref1 ) && sr.getRef1().isEqual( ref0 ) ) || ( sr
-                                                .getRef0().isEqual( ref0 ) && sr.getRef1().isEqual( ref1 ) ) ) ) {
-                                    // in this case we don't need to re-add it, but we make sure we don't loose the confidence value
-                                    fFoundReverse = true;
-                                    if ( ( sr.getConfidence() == null ) && ( seqRelation.getConfidence() != null ) ) {
-                                        sr.setConfidence( seqRelation.getConfidence() );
-                                    }
-                                }
-                            }
-                            if ( !fFoundReverse ) {
-                                ref1.addSequenceRelation( seqRelation );
-                            }
-                        }
-                        // we add the type to the current phylogeny so we can know it needs to be displayed in the combo
-                        final Collection<SEQUENCE_RELATION_TYPE> relationTypesForCurrentPhylogeny = getCurrentPhylogeny()
-                                .getRelevantSequenceRelationTypes();
-                        if ( !relationTypesForCurrentPhylogeny.contains( seqRelation.getType() ) ) {
-                            relationTypesForCurrentPhylogeny.add( seqRelation.getType() );
-                        }
+                        addSequenceRelation( getCurrentXmlElement(), getCurrentPhylogeny() );
+                        // back to the phylogeny element (its name etc. are mapped when it ends)
+                        setCurrentXmlElement( getCurrentXmlElement().getParent() );
                     }
                 }
                 catch ( final PhyloXmlDataFormatException ex ) {
@@ -201,13 +157,8 @@ public final class PhyloXmlHandler extends DefaultHandler {
     }
 
     private void finishPhylogeny() throws SAXException {
-        getCurrentPhylogeny().recalculateNumberOfExternalDescendants( false );
+        completePhylogeny( getCurrentPhylogeny() );
         getPhylogenies().add( getCurrentPhylogeny() );
-        final HashMap<String, Sequence> phyloSequences = phylogenySequencesById.get( getCurrentPhylogeny() );
-        if ( phyloSequences != null ) {
-            getCurrentPhylogeny().setSequenceRelationQueries( phyloSequences.values() );
-            phylogenySequencesById.remove( getCurrentPhylogeny() );
-        }
     }
 
     private String getCurrentElementName() {
@@ -249,91 +200,9 @@ public final class PhyloXmlHandler extends DefaultHandler {
 
     private void mapElementToPhylogenyNode( final XmlElement xml_element, final PhylogenyNode node )
             throws PhylogenyParserException, PhyloXmlDataFormatException {
-        if ( xml_element.isHasAttribute( PhyloXmlMapping.BRANCH_LENGTH ) ) {
-            double d = 0;
-            try {
-                d = Double.parseDouble( xml_element.getAttribute( PhyloXmlMapping.BRANCH_LENGTH ) );
-            }
-            catch ( final NumberFormatException e ) {
-                throw new PhylogenyParserException( "ill formatted distance in clade attribute ["
-                        + xml_element.getAttribute( PhyloXmlMapping.BRANCH_LENGTH ) + "]: " + e.getMessage() );
-            }
-            node.setDistanceToParent( d );
-        }
-        if ( xml_element.isHasAttribute( PhyloXmlMapping.NODE_COLLAPSE ) ) {
-            final String collapse_str = xml_element.getAttribute( PhyloXmlMapping.NODE_COLLAPSE );
-            if ( !ForesterUtil.isEmpty( collapse_str ) && collapse_str.trim().equalsIgnoreCase( "true" ) ) {
-                node.setCollapse( true );
-            }
-        }
+        mapCladeAttributes( xml_element, node );
         for( int i = 0; i < xml_element.getNumberOfChildElements(); ++i ) {
-            final XmlElement element = xml_element.getChildElement( i );
-            final String qualified_name = element.getQualifiedName();
-            if ( qualified_name.equals( PhyloXmlMapping.BRANCH_LENGTH ) ) {
-                if ( node.getDistanceToParent() != PhylogenyDataUtil.BRANCH_LENGTH_DEFAULT ) {
-                    throw new PhylogenyParserException( "ill advised attempt to set distance twice for the same clade (probably via element and via attribute)" );
-                }
-                node.setDistanceToParent( element.getValueAsDouble() );
-            }
-            if ( qualified_name.equals( PhyloXmlMapping.NODE_NAME ) ) {
-                node.setName( element.getValueAsString() );
-            }
-            //  else if ( qualified_name.equals( PhyloXmlMapping.NODE_IDENTIFIER ) ) {
-            //      node.getNodeData().setNodeIdentifier( ( Identifier ) IdentifierParser.getInstance().parse( element ) );
-            //  }
-            else if ( qualified_name.equals( PhyloXmlMapping.TAXONOMY ) ) {
-                node.getNodeData().addTaxonomy( ( Taxonomy ) TaxonomyParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.SEQUENCE ) ) {
-                final Sequence sequence = ( Sequence ) SequenceParser.getInstance().parse( element );
-                node.getNodeData().addSequence( sequence );
-                // we temporarily store all sequences that have a source ID so we can access them easily when we need to attach relations to them
-                final String sourceId = sequence.getSourceId();
-                if ( ( getCurrentPhylogeny() != null ) && !ForesterUtil.isEmpty( sourceId ) ) {
-                    getSequenceMapByIdForPhylogeny( getCurrentPhylogeny() ).put( sourceId, sequence );
-                }
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.DISTRIBUTION ) ) {
-                node.getNodeData().addDistribution( ( Distribution ) DistributionParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.CLADE_DATE ) ) {
-                node.getNodeData().setDate( ( Date ) DateParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.REFERENCE ) ) {
-                node.getNodeData().addReference( ( Reference ) ReferenceParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.BINARY_CHARACTERS ) ) {
-                node.getNodeData().setBinaryCharacters( ( BinaryCharacters ) BinaryCharactersParser.getInstance()
-                                                        .parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.COLOR ) ) {
-                node.getBranchData().setBranchColor( ( BranchColor ) ColorParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.CONFIDENCE ) ) {
-                node.getBranchData().addConfidence( ( Confidence ) ConfidenceParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.WIDTH ) ) {
-                node.getBranchData().setBranchWidth( ( BranchWidth ) BranchWidthParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.EVENTS ) ) {
-                node.getNodeData().setEvent( ( Event ) EventParser.getInstance().parse( element ) );
-            }
-            else if ( qualified_name.equals( PhyloXmlMapping.PROPERTY ) ) {
-                final Property prop = ( Property ) PropertyParser.getInstance().parse( element );
-                if ( prop.getRef().startsWith( NodeVisualData.APTX_VISUALIZATION_REF )
-                        && ( prop.getAppliesTo() == AppliesTo.NODE ) ) {
-                    if ( node.getNodeData().getNodeVisualData() == null ) {
-                        node.getNodeData().setNodeVisualData( new NodeVisualData() );
-                    }
-                    node.getNodeData().getNodeVisualData().parseProperty( prop );
-                }
-                else {
-                    if ( !node.getNodeData().isHasProperties() ) {
-                        node.getNodeData().setProperties( new PropertiesList() );
-                    }
-                    node.getNodeData().getProperties().addProperty( prop );
-                }
-            }
+            mapCladeChildElement( xml_element.getChildElement( i ), node, getCurrentPhylogeny() );
         }
     }
 
@@ -398,22 +267,8 @@ public final class PhyloXmlHandler extends DefaultHandler {
             else if ( local_name.equals( PhyloXmlMapping.PHYLOGENY ) ) {
                 setCurrentXmlElement( new XmlElement( "", "", "", null ) );
                 newPhylogeny();
-                final XmlElement element = new XmlElement( namespace_uri, local_name, local_name, attributes );
-                if ( element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_IS_REROOTABLE_ATTR ) ) {
-                    getCurrentPhylogeny().setRerootable( Boolean.parseBoolean( element
-                                                                               .getAttribute( PhyloXmlMapping.PHYLOGENY_IS_REROOTABLE_ATTR ) ) );
-                }
-                if ( element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_BRANCHLENGTH_UNIT_ATTR ) ) {
-                    getCurrentPhylogeny()
-                    .setDistanceUnit( element.getAttribute( PhyloXmlMapping.PHYLOGENY_BRANCHLENGTH_UNIT_ATTR ) );
-                }
-                if ( element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_IS_ROOTED_ATTR ) ) {
-                    getCurrentPhylogeny().setRooted( Boolean.parseBoolean( element
-                                                                           .getAttribute( PhyloXmlMapping.PHYLOGENY_IS_ROOTED_ATTR ) ) );
-                }
-                if ( element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_TYPE_ATTR ) ) {
-                    getCurrentPhylogeny().setType( ( element.getAttribute( PhyloXmlMapping.PHYLOGENY_TYPE_ATTR ) ) );
-                }
+                mapPhylogenyAttributes( new XmlElement( namespace_uri, local_name, local_name, attributes ),
+                                        getCurrentPhylogeny() );
             }
             else if ( local_name.equals( PHYLOXML ) ) {
             }
@@ -454,29 +309,216 @@ public final class PhyloXmlHandler extends DefaultHandler {
     private static void mapElementToPhylogeny( final XmlElement xml_element, final Phylogeny phylogeny )
             throws PhylogenyParserException, PhyloXmlDataFormatException {
         for( int i = 0; i < xml_element.getNumberOfChildElements(); ++i ) {
-            final XmlElement element = xml_element.getChildElement( i );
-            final String qualified_name = element.getQualifiedName();
-            if ( qualified_name.equals( PhyloXmlMapping.PHYLOGENY_NAME ) ) {
-                phylogeny.setName( element.getValueAsString() );
+            mapPhylogenyChildElement( xml_element.getChildElement( i ), phylogeny );
+        }
+    }
+
+    static void mapCladeAttributes( final XmlElement xml_element, final PhylogenyNode node )
+            throws PhylogenyParserException {
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.BRANCH_LENGTH ) ) {
+            double d = 0;
+            try {
+                d = Double.parseDouble( xml_element.getAttribute( PhyloXmlMapping.BRANCH_LENGTH ) );
+            }
+            catch ( final NumberFormatException e ) {
+                throw new PhylogenyParserException( "ill formatted distance in clade attribute ["
+                        + xml_element.getAttribute( PhyloXmlMapping.BRANCH_LENGTH ) + "]: " + e.getMessage() );
+            }
+            node.setDistanceToParent( d );
+        }
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.NODE_COLLAPSE ) ) {
+            final String collapse_str = xml_element.getAttribute( PhyloXmlMapping.NODE_COLLAPSE );
+            if ( !ForesterUtil.isEmpty( collapse_str ) && collapse_str.trim().equalsIgnoreCase( "true" ) ) {
+                node.setCollapse( true );
             }
-            else if ( qualified_name.equals( PhyloXmlMapping.PHYLOGENY_DESCRIPTION ) ) {
-                phylogeny.setDescription( element.getValueAsString() );
+        }
+    }
+
+    /**
+     * Maps one child element of a clade element (other than a clade) to the data of its node; sequences with a
+     * source id are remembered for the sequence relations of the phylogeny (if not null).
+     */
+    static void mapCladeChildElement( final XmlElement element, final PhylogenyNode node, final Phylogeny phylogeny )
+            throws PhylogenyParserException, PhyloXmlDataFormatException {
+        final String qualified_name = element.getQualifiedName();
+        if ( qualified_name.equals( PhyloXmlMapping.BRANCH_LENGTH ) ) {
+            if ( node.getDistanceToParent() != PhylogenyDataUtil.BRANCH_LENGTH_DEFAULT ) {
+                throw new PhylogenyParserException( "ill advised attempt to set distance twice for the same clade (probably via element and via attribute)" );
             }
-            else if ( qualified_name.equals( PhyloXmlMapping.IDENTIFIER ) ) {
-                phylogeny.setIdentifier( ( Identifier ) IdentifierParser.getInstance().parse( element ) );
+            node.setDistanceToParent( element.getValueAsDouble() );
+        }
+        if ( qualified_name.equals( PhyloXmlMapping.NODE_NAME ) ) {
+            node.setName( element.getValueAsString() );
+        }
+        //  else if ( qualified_name.equals( PhyloXmlMapping.NODE_IDENTIFIER ) ) {
+        //      node.getNodeData().setNodeIdentifier( ( Identifier ) IdentifierParser.getInstance().parse( element ) );
+        //  }
+        else if ( qualified_name.equals( PhyloXmlMapping.TAXONOMY ) ) {
+            node.getNodeData().addTaxonomy( ( Taxonomy ) TaxonomyParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.SEQUENCE ) ) {
+            final Sequence sequence = ( Sequence ) SequenceParser.getInstance().parse( element );
+            node.getNodeData().addSequence( sequence );
+            // we temporarily store all sequences that have a source ID so we can access them easily when we need to attach relations to them
+            final String sourceId = sequence.getSourceId();
+            if ( ( phylogeny != null ) && !ForesterUtil.isEmpty( sourceId ) ) {
+                getSequenceMapByIdForPhylogeny( phylogeny ).put( sourceId, sequence );
             }
-            else if ( qualified_name.equals( PhyloXmlMapping.CONFIDENCE ) ) {
-                phylogeny.setConfidence( ( Confidence ) ConfidenceParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.DISTRIBUTION ) ) {
+            node.getNodeData().addDistribution( ( Distribution ) DistributionParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.CLADE_DATE ) ) {
+            node.getNodeData().setDate( ( Date ) DateParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.REFERENCE ) ) {
+            node.getNodeData().addReference( ( Reference ) ReferenceParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.BINARY_CHARACTERS ) ) {
+            node.getNodeData().setBinaryCharacters( ( BinaryCharacters ) BinaryCharactersParser.getInstance()
+                                                    .parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.COLOR ) ) {
+            node.getBranchData().setBranchColor( ( BranchColor ) ColorParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.CONFIDENCE ) ) {
+            node.getBranchData().addConfidence( ( Confidence ) ConfidenceParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.WIDTH ) ) {
+            node.getBranchData().setBranchWidth( ( BranchWidth ) BranchWidthParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.EVENTS ) ) {
+            node.getNodeData().setEvent( ( Event ) EventParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.PROPERTY ) ) {
+            final Property prop = ( Property ) PropertyParser.getInstance().parse( element );
+            if ( prop.getRef().startsWith( NodeVisualData.APTX_VISUALIZATION_REF )
+                    && ( prop.getAppliesTo() == AppliesTo.NODE ) ) {
+                if ( node.getNodeData().getNodeVisualData() == null ) {
+                    node.getNodeData().setNodeVisualData( new NodeVisualData() );
+                }
+                node.getNodeData().getNodeVisualData().parseProperty( prop );
             }
-            else if ( qualified_name.equals( PhyloXmlMapping.PROPERTY ) ) {
-                // a <property> that is a DIRECT child of <phylogeny> (applies_to="phylogeny") -> tree-level property.
-                // (node/branch properties live inside <clade> and are handled by mapElementToPhylogenyNode.)
-                final Property prop = ( Property ) PropertyParser.getInstance().parse( element );
-                if ( phylogeny.getProperties() == null ) {
-                    phylogeny.setProperties( new PropertiesList() );
+            else {
+                if ( !node.getNodeData().isHasProperties() ) {
+                    node.getNodeData().setProperties( new PropertiesList() );
                 }
-                phylogeny.getProperties().addProperty( prop );
+                node.getNodeData().getProperties().addProperty( prop );
             }
         }
     }
+
+    static void mapPhylogenyAttributes( final XmlElement xml_element, final Phylogeny phylogeny ) {
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_IS_REROOTABLE_ATTR ) ) {
+            phylogeny.setRerootable( Boolean.parseBoolean( xml_element
+                    .getAttribute( PhyloXmlMapping.PHYLOGENY_IS_REROOTABLE_ATTR ) ) );
+        }
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_BRANCHLENGTH_UNIT_ATTR ) ) {
+            phylogeny.setDistanceUnit( xml_element.getAttribute( PhyloXmlMapping.PHYLOGENY_BRANCHLENGTH_UNIT_ATTR ) );
+        }
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_IS_ROOTED_ATTR ) ) {
+            phylogeny.setRooted( Boolean.parseBoolean( xml_element
+                    .getAttribute( PhyloXmlMapping.PHYLOGENY_IS_ROOTED_ATTR ) ) );
+        }
+        if ( xml_element.isHasAttribute( PhyloXmlMapping.PHYLOGENY_TYPE_ATTR ) ) {
+            phylogeny.setType( ( xml_element.getAttribute( PhyloXmlMapping.PHYLOGENY_TYPE_ATTR ) ) );
+        }
+    }
+
+    /**
+     * Maps one child element of a phylogeny element (other than clades and sequence relations) to the phylogeny.
+     */
+    static void mapPhylogenyChildElement( final XmlElement element, final Phylogeny phylogeny )
+            throws PhylogenyParserException, PhyloXmlDataFormatException {
+        final String qualified_name = element.getQualifiedName();
+        if ( qualified_name.equals( PhyloXmlMapping.PHYLOGENY_NAME ) ) {
+            phylogeny.setName( element.getValueAsString() );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.PHYLOGENY_DESCRIPTION ) ) {
+            phylogeny.setDescription( element.getValueAsString() );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.IDENTIFIER ) ) {
+            phylogeny.setIdentifier( ( Identifier ) IdentifierParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.CONFIDENCE ) ) {
+            phylogeny.setConfidence( ( Confidence ) ConfidenceParser.getInstance().parse( element ) );
+        }
+        else if ( qualified_name.equals( PhyloXmlMapping.PROPERTY ) ) {
+            // a <property> that is a DIRECT child of <phylogeny> (applies_to="phylogeny") -> tree-level property.
+            // (node/branch properties live inside <clade> and are handled by mapElementToPhylogenyNode.)
+            final Property prop = ( Property ) PropertyParser.getInstance().parse( element );
+            if ( phylogeny.getProperties() == null ) {
+                phylogeny.setProperties( new PropertiesList() );
+            }
+            phylogeny.getProperties().addProperty( prop );
+        }
+    }
+
+    /**
+     * To be called once all elements of a phylogeny are mapped.
+     */
+    static void completePhylogeny( final Phylogeny phylogeny ) {
+        phylogeny.recalculateNumberOfExternalDescendants( false );
+        final HashMap<String, Sequence> phyloSequences = phylogenySequencesById.get( phylogeny );
+        if ( phyloSequences != null ) {
+            phylogeny.setSequenceRelationQueries( phyloSequences.values() );
+            phylogenySequencesById.remove( phylogeny );
+        }
+        SequenceRelationParser.removeInstance( phylogeny );
+    }
+
+    /**
+     * Adds the sequence relation of a sequence_relation element to the two sequences it refers to (unless they
+     * already have it, in either direction).
+     */
+    static void addSequenceRelation( final XmlElement element, final Phylogeny phylogeny )
+            throws PhyloXmlDataFormatException {
+        final SequenceRelation seqRelation = ( SequenceRelation ) SequenceRelationParser
+                .getInstance( phylogeny ).parse( element );
+        final Map<String, Sequence> sequencesById = getSequenceMapByIdForPhylogeny( phylogeny );
+        final Sequence ref0 = sequencesById.get( seqRelation.getRef0().getSourceId() ), ref1 = sequencesById
+                .get( seqRelation.getRef1().getSourceId() );
+        if ( ref0 != null ) {
+            // check for reverse relation
+            boolean fFoundReverse = false;
+            for( final SequenceRelation sr : ref0.getSequenceRelations() ) {
+                if ( sr.getType().equals( seqRelation.getType() )
+                        && ( ( sr.getRef0().isEqual( ref1 ) && sr.getRef1().isEqual( ref0 ) ) || ( sr
+                                .getRef0().isEqual( ref0 ) && sr.getRef1().isEqual( ref1 ) ) ) ) {
+                    // in this case we don't need to re-add it, but we make sure we don't loose the confidence value
+                    fFoundReverse = true;
+                    if ( ( sr.getConfidence() == null ) && ( seqRelation.getConfidence() != null ) ) {
+                        sr.setConfidence( seqRelation.getConfidence() );
+                    }
+                }
+            }
+            if ( !fFoundReverse ) {
+                ref0.addSequenceRelation( seqRelation );
+            }
+        }
+        if ( ref1 != null ) {
+            // check for reverse relation
+            boolean fFoundReverse = false;
+            for( final SequenceRelation sr : ref1.getSequenceRelations() ) {
+                if ( sr.getType().equals( seqRelation.getType() )
+                        && ( ( sr.getRef0().isEqual( ref1 ) && sr.getRef1().isEqual( ref0 ) ) || ( sr
+                                .getRef0().isEqual( ref0 ) && sr.getRef1().isEqual( ref1 ) ) ) ) {
+                    // in this case we don't need to re-add it, but we make sure we don't loose the confidence value
+                    fFoundReverse = true;
+                    if ( ( sr.getConfidence() == null ) && ( seqRelation.getConfidence() != null ) ) {
+                        sr.setConfidence( seqRelation.getConfidence() );
+                    }
+                }
+            }
+            if ( !fFoundReverse ) {
+                ref1.addSequenceRelation( seqRelation );
+            }
+        }
+        // we add the type to the current phylogeny so we can know it needs to be displayed in the combo
+        final Collection<SEQUENCE_RELATION_TYPE> relationTypesForCurrentPhylogeny = phylogeny
+                .getRelevantSequenceRelationTypes();
+        if ( !relationTypesForCurrentPhylogeny.contains( seqRelation.getType() ) ) {
+            relationTypesForCurrentPhylogeny.add( seqRelation.getType() );
+        }
+    }
 }
@@ -0,0 +1,471 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers.phyloxml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.forester.io.parsers.IteratingPhylogenyParser;
+import org.forester.io.parsers.PhylogenyParser;
+import org.forester.io.parsers.util.PhylogenyParserException;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.util.ForesterConstants;
+import org.forester.util.ForesterUtil;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A pull (StAX) phyloXML parser which reads one phylogeny at a time, for files with more (or larger) phylogenies
+ * than fit into memory at once.
+ * <p>
+ * The data of a clade are mapped to its node as soon as each of its child elements ends (using the same data
+ * parsers as {@link PhyloXmlParser}), so that no element tree is built for clades; only the element being read
+ * is held. Sources can be files (zip files by suffix), URLs, input streams (zipped ones if so set) and
+ * StringBuffers, as for {@link PhyloXmlParser}. If a schema location is set, the source is first validated
+ * against it in a separate (streaming) pass, which is possible for files, URLs and StringBuffers.
+ */
+public final class PhyloXmlIteratingParser implements PhylogenyParser, IteratingPhylogenyParser, Closeable {
+
+    private final static XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+    static {
+        FACTORY.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+        FACTORY.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+    }
+    // the parent (for error messages) of the child elements of clades and phylogenies, as in PhyloXmlHandler
+    private final XmlElement             _clade           = new XmlElement( "",
+                                                                            PhyloXmlMapping.CLADE,
+                                                                            PhyloXmlMapping.CLADE,
+                                                                            null );
+    private final XmlElement             _phylogeny       = new XmlElement( "", "", "", null );
+    private final StringBuilder          _value           = new StringBuilder();
+    private String                       _schema_location;
+    private Object                       _source;
+    private boolean                      _zipped_inputstream;
+    private XMLStreamReader              _reader;
+    private Closeable                    _input;
+    private Phylogeny                    _next;
+
+    public PhyloXmlIteratingParser() {
+        _zipped_inputstream = false;
+    }
+
+    @Override
+    public String getName() {
+        return "phyloXML Iterating Parser";
+    }
+
+    @Override
+    public boolean hasNext() {
+        return _next != null;
+    }
+
+    @Override
+    public Phylogeny next() throws IOException {
+        final Phylogeny phy = _next;
+        parseNext();
+        return phy;
+    }
+
+    @Override
+    public Phylogeny[] parse() throws IOException {
+        final List<Phylogeny> l = new ArrayList<Phylogeny>();
+        while ( hasNext() ) {
+            l.add( next() );
+        }
+        return l.toArray( new Phylogeny[ l.size() ] );
+    }
+
+    @Override
+    public void reset() throws IOException {
+        close();
+        _next = null;
+        if ( !ForesterUtil.isEmpty( _schema_location ) ) {
+            validate();
+        }
+        _reader = createReader();
+        parseNext();
+    }
+
+    @Override
+    public void setSource( final Object source ) throws IOException {
+        _source = source;
+        reset();
+    }
+
+    /**
+     * To be set before setSource(); sources which are not valid cause a PhyloXmlException, as for PhyloXmlParser.
+     */
+    public void setValidateAgainstSchema( final String schema_location ) {
+        _schema_location = schema_location;
+    }
+
+    /**
+     * To be set before setSource() for input streams (and URLs) of zip files.
+     */
+    public void setZippedInputstream( final boolean zipped_inputstream ) {
+        _zipped_inputstream = zipped_inputstream;
+    }
+
+    /**
+     * Closes the source; this happens anyway once all phylogenies have been read, or after an error.
+     */
+    @Override
+    public void close() {
+        _next = null;
+        if ( _reader != null ) {
+            try {
+                _reader.close();
+            }
+            catch ( final XMLStreamException e ) {
+                // Ignore
+            }
+            _reader = null;
+        }
+        if ( _input != null ) {
+            try {
+                _input.close();
+            }
+            catch ( final IOException e ) {
+                // Ignore
+            }
+            _input = null;
+        }
+    }
+
+    private XMLStreamReader createReader() throws IOException {
+        final Reader reader = openReader();
+        try {
+            return FACTORY.createXMLStreamReader( reader );
+        }
+        catch ( final XMLStreamException e ) {
+            close();
+            throw new PhylogenyParserException( "failed to parse [" + _source + "]: " + e.getLocalizedMessage() );
+        }
+    }
+
+    private Reader openReader() throws IOException {
+        if ( _source == null ) {
+            throw new PhylogenyParserException( getClass() + ": attempt to parse null object." );
+        }
+        final Reader reader;
+        if ( _source instanceof File ) {
+            final File f = ( File ) _source;
+            final String error = ForesterUtil.isReadableFile( f );
+            if ( !ForesterUtil.isEmpty( error ) ) {
+                throw new PhylogenyParserException( error );
+            }
+            if ( f.getName().toLowerCase().endsWith( ".zip" ) ) {
+                final ZipFile zip_file = new ZipFile( f );
+                _input = zip_file;
+                reader = createReaderFromZipFile( zip_file );
+            }
+            else {
+                final InputStream is = new FileInputStream( f );
+                _input = is;
+                reader = createReader( is );
+            }
+        }
+        else if ( _source instanceof URL ) {
+            final InputStream is = ( ( URL ) _source ).openStream();
+            _input = is;
+            reader = createReader( is );
+        }
+        else if ( _source instanceof InputStream ) {
+            reader = createReader( ( InputStream ) _source );
+        }
+        else if ( _source instanceof StringBuffer ) {
+            reader = new StringReader( _source.toString() );
+        }
+        else {
+            throw new PhylogenyParserException( "phyloXML parser: attempt to parse object of unsupported type: \""
+                    + _source.getClass() + "\"" );
+        }
+        return reader;
+    }
+
+    private Reader createReader( final InputStream is ) throws IOException {
+        if ( _zipped_inputstream ) {
+            final ZipInputStream zip_is = new ZipInputStream( is );
+            zip_is.getNextEntry();
+            return new BufferedReader( new InputStreamReader( zip_is, ForesterConstants.UTF_8 ) );
+        }
+        return new BufferedReader( new InputStreamReader( new BufferedInputStream( is ), ForesterConstants.UTF_8 ) );
+    }
+
+    private Reader createReaderFromZipFile( final ZipFile zip_file ) throws IOException {
+        final Enumeration<? extends ZipEntry> zip_file_entries = zip_file.entries();
+        while ( zip_file_entries.hasMoreElements() ) {
+            final ZipEntry zip_file_entry = zip_file_entries.nextElement();
+            if ( !zip_file_entry.isDirectory() && ( zip_file_entry.getSize() > 0 ) ) {
+                return new BufferedReader( new InputStreamReader( zip_file.getInputStream( zip_file_entry ),
+                                                                  ForesterConstants.UTF_8 ) );
+            }
+        }
+        close();
+        throw new PhylogenyParserException( "zip file \"" + _source + "\" appears not to contain any entries" );
+    }
+
+    /**
+     * An element (without children) with the name and attributes of the current start element.
+     */
+    private XmlElement createElement() {
+        final AttributesImpl attributes = new AttributesImpl();
+        for( int i = 0; i < _reader.getAttributeCount(); ++i ) {
+            final String local_name = _reader.getAttributeLocalName( i );
+            final String prefix = _reader.getAttributePrefix( i );
+            attributes.addAttribute( _reader.getAttributeNamespace( i ),
+                                     local_name,
+                                     ForesterUtil.isEmpty( prefix ) ? local_name : prefix + ":" + local_name,
+                                     "CDATA",
+                                     _reader.getAttributeValue( i ) );
+        }
+        final String name = _reader.getLocalName();
+        return new XmlElement( _reader.getNamespaceURI(), name, name, attributes );
+    }
+
+    private void parseNext() throws IOException {
+        _next = null;
+        if ( _reader == null ) {
+            return;
+        }
+        try {
+            while ( _reader.hasNext() ) {
+                if ( ( _reader.next() == XMLStreamConstants.START_ELEMENT ) && isPhyloXml()
+                        && _reader.getLocalName().equals( PhyloXmlMapping.PHYLOGENY ) ) {
+                    _next = readPhylogeny();
+                    return;
+                }
+            }
+            close();
+        }
+        catch ( final XMLStreamException e ) {
+            close();
+            throw new PhylogenyParserException( "failed to parse [" + _source + "]: " + e.getLocalizedMessage() );
+        }
+        catch ( final IOException e ) {
+            close();
+            throw new PhylogenyParserException( "failed to parse [" + _source + "]: " + e.getLocalizedMessage() );
+        }
+        catch ( final RuntimeException e ) {
+            close();
+            throw new PhylogenyParserException( "failed to parse [" + _source + "]: " + e );
+        }
+    }
+
+    /**
+     * Reads the current phylogeny element, up to and including its end tag.
+     */
+    private Phylogeny readPhylogeny() throws XMLStreamException, IOException {
+        final Phylogeny phylogeny = new Phylogeny();
+        PhyloXmlHandler.mapPhylogenyAttributes( createElement(), phylogeny );
+        PhylogenyNode node = null;
+        int clade_depth = 0;
+        // the innermost open child element of the current clade (or of the phylogeny), with its open ancestors
+        XmlElement element = null;
+        // as in PhyloXmlHandler, an element gets the text between its start tag and the next tag
+        boolean in_value = false;
+        while ( _reader.hasNext() ) {
+            switch ( _reader.next() ) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    if ( !isPhyloXml() ) {
+                        break;
+                    }
+                    setValue( element, in_value );
+                    in_value = false;
+                    if ( ( element == null ) && _reader.getLocalName().equals( PhyloXmlMapping.CLADE ) ) {
+                        if ( node == null ) {
+                            node = new PhylogenyNode();
+                            phylogeny.setRoot( node );
+                        }
+                        else {
+                            final PhylogenyNode child = new PhylogenyNode();
+                            node.addAsChild( child );
+                            node = child;
+                        }
+                        ++clade_depth;
+                        PhyloXmlHandler.mapCladeAttributes( createElement(), node );
+                    }
+                    else {
+                        final XmlElement e = createElement();
+                        if ( element != null ) {
+                            element.addChildElement( e );
+                        }
+                        else {
+                            e.setParent( clade_depth > 0 ? _clade : _phylogeny );
+                        }
+                        element = e;
+                        in_value = true;
+                    }
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE: {
+                    if ( in_value ) {
+                        _value.append( _reader.getTextCharacters(), _reader.getTextStart(), _reader.getTextLength() );
+                    }
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    if ( !isPhyloXml() ) {
+                        break;
+                    }
+                    setValue( element, in_value );
+                    in_value = false;
+                    if ( element == null ) {
+                        final String name = _reader.getLocalName();
+                        if ( name.equals( PhyloXmlMapping.CLADE ) && ( node != null ) ) {
+                            --clade_depth;
+                            if ( !node.isRoot() ) {
+                                node = node.getParent();
+                            }
+                        }
+                        else if ( name.equals( PhyloXmlMapping.PHYLOGENY ) ) {
+                            PhyloXmlHandler.completePhylogeny( phylogeny );
+                            return phylogeny;
+                        }
+                    }
+                    else if ( element.getParent() == _clade ) {
+                        PhyloXmlHandler.mapCladeChildElement( element, node, phylogeny );
+                        element = null;
+                    }
+                    else if ( element.getParent() == _phylogeny ) {
+                        if ( element.getQualifiedName().equals( PhyloXmlMapping.SEQUENCE_RELATION ) ) {
+                            PhyloXmlHandler.addSequenceRelation( element, phylogeny );
+                        }
+                        else {
+                            PhyloXmlHandler.mapPhylogenyChildElement( element, phylogeny );
+                        }
+                        element = null;
+                    }
+                    else {
+                        element = element.getParent();
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+        throw new PhylogenyParserException( "unexpected end of input within phylogeny" );
+    }
+
+    private boolean isPhyloXml() {
+        final String namespace_uri = _reader.getNamespaceURI();
+        return ForesterUtil.isEmpty( namespace_uri ) || namespace_uri.startsWith( ForesterConstants.PHYLO_XML_LOCATION );
+    }
+
+    /**
+     * Reads the whole source once with a validating SAX parser (configured as in PhyloXmlParser), without
+     * building any phylogeny.
+     */
+    private void validate() throws IOException {
+        if ( _source instanceof InputStream ) {
+            throw new PhylogenyParserException( "phyloXML parser: input streams cannot be validated against the schema" );
+        }
+        final Reader reader = openReader();
+        try {
+            final SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware( true );
+            factory.setFeature( PhyloXmlParser.SAX_FEATURES_VALIDATION, true );
+            factory.setFeature( PhyloXmlParser.APACHE_FEATURES_VALIDATION_SCHEMA, true );
+            factory.setFeature( PhyloXmlParser.APACHE_FEATURES_VALIDATION_SCHEMA_FULL, true );
+            final SAXParser parser = factory.newSAXParser();
+            parser.setProperty( PhyloXmlParser.JAXP_SCHEMA_LANGUAGE, PhyloXmlParser.W3C_XML_SCHEMA );
+            parser.setProperty( PhyloXmlParser.JAXP_SCHEMA_SOURCE, _schema_location );
+            parser.setProperty( PhyloXmlParser.APACHE_PROPERTIES_SCHEMA_EXTERNAL_LOCATION, _schema_location );
+            final XMLReader xml_reader = parser.getXMLReader();
+            xml_reader.setErrorHandler( new DefaultHandler() {
+
+                @Override
+                public void error( final SAXParseException e ) {
+                    throw new PhyloXmlException( "phyloXML error at line " + e.getLineNumber() + ": \n"
+                            + e.getLocalizedMessage() );
+                }
+
+                @Override
+                public void fatalError( final SAXParseException e ) {
+                    throw new PhyloXmlException( "fatal XML error at line " + e.getLineNumber() + ": \n"
+                            + e.getLocalizedMessage() );
+                }
+            } );
+            xml_reader.parse( new InputSource( reader ) );
+        }
+        catch ( final ParserConfigurationException e ) {
+            throw new PhylogenyParserException( "parser configuration exception: " + e.getLocalizedMessage() );
+        }
+        catch ( final SAXException e ) {
+            throw new PhylogenyParserException( "failed to validate [" + _source + "]: " + e.getLocalizedMessage() );
+        }
+        finally {
+            close();
+        }
+    }
+
+    private void setValue( final XmlElement element, final boolean in_value ) {
+        if ( in_value && ( _value.length() > 0 ) ) {
+            element.setValue( _value.toString() );
+        }
+        _value.setLength( 0 );
+    }
+
+    public static PhyloXmlIteratingParser createPhyloXmlIteratingParserXsdValidating() {
+        final PhyloXmlIteratingParser xml_parser = new PhyloXmlIteratingParser();
+        final URL xsd_url = PhyloXmlIteratingParser.class.getClassLoader()
+                .getResource( ForesterConstants.LOCAL_PHYLOXML_XSD_RESOURCE );
+        if ( xsd_url != null ) {
+            xml_parser.setValidateAgainstSchema( xsd_url.toString() );
+        }
+        else {
+            throw new RuntimeException( "failed to get URL for phyloXML XSD from jar file from ["
+                    + ForesterConstants.LOCAL_PHYLOXML_XSD_RESOURCE + "]" );
+        }
+        return xml_parser;
+    }
+}
@@ -0,0 +1,311 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.io.parsers.phyloxml;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.forester.io.parsers.util.PhylogenyParserException;
+import org.forester.phylogeny.Phylogeny;
+import org.forester.util.ForesterConstants;
+import org.forester.util.ForesterUtil;
+
+/**
+ * Tests for {@link PhyloXmlIteratingParser}: the phylogenies (and their order) must be the same as those of
+ * {@link PhyloXmlParser}, for the phyloXML files of the test directory (also zipped, as files and as input
+ * streams) and for a generated file with many annotated phylogenies; malformed input must be rejected.
+ * <p>
+ * main() compares the running times and heap use of both parsers on a file with many phylogenies (a given
+ * file, or a generated file with 1000 phylogenies of 500 external nodes).
+ */
+public final class PhyloXmlIteratingParserTest {
+
+    private final static String[] FILES = { "amphi_frost.xml", "chars.xml", "clade_analysis_test_2.xml",
+            "gene_tree_1.xml", "gsdi_test_gene_tree_sn_wnt.xml", "phyloxml_distribution.xml", "phyloxml_test_1.xml",
+            "phyloxml_test_t1.xml", "phyloxml_test_t2.xml", "phyloxml_test_t3.xml", "phyloxml_test_t4.xml",
+            "rio_Bcl-2_e1_20_mafft_05_40_fme.xml", "spec_test_1.xml", "special_characters.xml" };
+
+    public static boolean test( final File test_dir ) {
+        File generated = null;
+        File zip = null;
+        try {
+            for( final String name : FILES ) {
+                final File f = new File( test_dir + ForesterUtil.FILE_SEPARATOR + name );
+                if ( !isSameAsPhyloXmlParser( f ) ) {
+                    return fail( "different result for " + name );
+                }
+            }
+            generated = File.createTempFile( "forester_phyloxml_iterating", ".xml" );
+            writeRandomPhylogenies( generated, 50, 40, new Random( 1 ) );
+            if ( !isSameAsPhyloXmlParser( generated ) ) {
+                return fail( "different result for generated phylogenies" );
+            }
+            // zipped, as a file and as an input stream
+            zip = File.createTempFile( "forester_phyloxml_iterating", ".zip" );
+            final File t1 = new File( test_dir + ForesterUtil.FILE_SEPARATOR + "phyloxml_test_t1.xml" );
+            try (ZipOutputStream zos = new ZipOutputStream( new FileOutputStream( zip ) )) {
+                zos.putNextEntry( new ZipEntry( "phyloxml_test_t1.xml" ) );
+                Files.copy( t1.toPath(), zos );
+                zos.closeEntry();
+            }
+            final String expected = toString( parseAll( t1 ) );
+            final PhyloXmlIteratingParser p = new PhyloXmlIteratingParser();
+            p.setSource( zip );
+            if ( !toString( p.parse() ).equals( expected ) ) {
+                return fail( "zip file" );
+            }
+            try (InputStream is = new FileInputStream( zip )) {
+                p.setZippedInputstream( true );
+                p.setSource( is );
+                if ( !toString( p.parse() ).equals( expected ) ) {
+                    return fail( "zipped input stream" );
+                }
+            }
+            // reset, and one phylogeny at a time
+            p.setZippedInputstream( false );
+            p.setSource( generated );
+            int n = 0;
+            while ( p.hasNext() ) {
+                if ( p.next() == null ) {
+                    return fail( "null phylogeny" );
+                }
+                ++n;
+            }
+            if ( ( n != 50 ) || ( p.next() != null ) ) {
+                return fail( "expected 50 phylogenies, got " + n );
+            }
+            p.reset();
+            if ( p.parse().length != 50 ) {
+                return fail( "reset" );
+            }
+            // malformed input
+            final String[] malformed = {
+                    "<phyloxml><phylogeny><clade><name>a</name><clade></phylogeny></phyloxml>",
+                    "<phyloxml><phylogeny><clade branch_length=\"x\"><name>a</name></clade></phylogeny></phyloxml>",
+                    "<phyloxml><phylogeny><clade branch_length=\"1\"><branch_length>1</branch_length></clade></phylogeny></phyloxml>",
+                    "<phyloxml><phylogeny><clade><confidence type=\"b\">y</confidence></clade></phylogeny></phyloxml>",
+                    "<phyloxml><phylogeny><clade><clade><name>a</name></clade>" };
+            for( final String m : malformed ) {
+                try {
+                    p.setSource( new StringBuffer( m ) );
+                    while ( p.hasNext() ) {
+                        p.next();
+                    }
+                    return fail( "malformed input not rejected: " + m );
+                }
+                catch ( final PhylogenyParserException e ) {
+                    // expected
+                }
+            }
+            try {
+                p.setSource( new File( test_dir + ForesterUtil.FILE_SEPARATOR + "does_not_exist.xml" ) );
+                return fail( "missing file not rejected" );
+            }
+            catch ( final PhylogenyParserException e ) {
+                // expected
+            }
+            p.setSource( new StringBuffer( "<phyloxml xmlns=\"http://www.phyloxml.org\"></phyloxml>" ) );
+            if ( p.hasNext() || ( p.parse().length != 0 ) ) {
+                return fail( "empty document" );
+            }
+            // validation against the schema
+            final PhyloXmlIteratingParser v = PhyloXmlIteratingParser.createPhyloXmlIteratingParserXsdValidating();
+            for( final String name : new String[] { "phyloxml_test_t1.xml", "special_characters.xml" } ) {
+                final File f = new File( test_dir + ForesterUtil.FILE_SEPARATOR + name );
+                v.setSource( f );
+                if ( !toString( v.parse() ).equals( toString( parseAll( f ) ) ) ) {
+                    return fail( "different result when validating " + name );
+                }
+            }
+            final String invalid = "<phyloxml xmlns=\"http://www.phyloxml.org\"><phylogeny rooted=\"true\"><clade>"
+                    + "<name>a</name><no_such_element>1</no_such_element></clade></phylogeny></phyloxml>";
+            p.setSource( new StringBuffer( invalid ) );
+            if ( p.parse().length != 1 ) {
+                return fail( "schema violations must be ignored without validation" );
+            }
+            try {
+                v.setSource( new StringBuffer( invalid ) );
+                return fail( "schema violation not reported" );
+            }
+            catch ( final PhyloXmlException e ) {
+                // expected
+            }
+            try {
+                v.setSource( new ByteArrayInputStream( invalid.getBytes( ForesterConstants.UTF_8 ) ) );
+                return fail( "input streams cannot be validated" );
+            }
+            catch ( final PhylogenyParserException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        finally {
+            if ( generated != null ) {
+                generated.delete();
+            }
+            if ( zip != null ) {
+                zip.delete();
+            }
+        }
+        return true;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "PhyloXmlIteratingParser test failed: " + msg );
+        return false;
+    }
+
+    private static boolean isSameAsPhyloXmlParser( final File f ) throws IOException {
+        final PhyloXmlIteratingParser p = new PhyloXmlIteratingParser();
+        p.setSource( f );
+        final StringBuilder sb = new StringBuilder();
+        while ( p.hasNext() ) {
+            sb.append( toString( p.next() ) );
+        }
+        return sb.toString().equals( toString( parseAll( f ) ) );
+    }
+
+    private static Phylogeny[] parseAll( final File f ) throws IOException {
+        final PhyloXmlParser p = PhyloXmlParser.createPhyloXmlParser();
+        p.setSource( f );
+        return p.parse();
+    }
+
+    private static String toString( final Phylogeny[] phylogenies ) {
+        final StringBuilder sb = new StringBuilder();
+        for( final Phylogeny phylogeny : phylogenies ) {
+            sb.append( toString( phylogeny ) );
+        }
+        return sb.toString();
+    }
+
+    private static String toString( final Phylogeny phylogeny ) {
+        return phylogeny.isEmpty() ? "[empty: " + phylogeny.getName() + "]\n" : phylogeny.toPhyloXML( 0 );
+    }
+
+    /**
+     * Random phylogenies with names, branch lengths (as attributes and as elements), confidences, taxonomies,
+     * sequences and properties, and text split by comments and CDATA sections.
+     */
+    private static void writeRandomPhylogenies( final File f, final int phylogenies, final int external_nodes, final Random r )
+            throws IOException {
+        try (Writer w = Files.newBufferedWriter( f.toPath() )) {
+            w.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+            w.write( "<phyloxml xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns=\"http://www.phyloxml.org\">\n" );
+            for( int i = 0; i < phylogenies; ++i ) {
+                w.write( "<phylogeny rooted=\"true\" rerootable=\"" + ( ( i % 2 ) == 0 ) + "\">\n" );
+                w.write( "<name>tree <!-- a comment --> " + i + "</name>\n" );
+                w.write( "<description><![CDATA[a <tree>]]> &amp; more</description>\n" );
+                writeClade( w, external_nodes, r, 0 );
+                w.write( "<confidence type=\"probability\">0." + i + "</confidence>\n" );
+                w.write( "<property ref=\"tree:id\" datatype=\"xsd:integer\" applies_to=\"phylogeny\">" + i
+                        + "</property>\n" );
+                w.write( "</phylogeny>\n" );
+            }
+            w.write( "</phyloxml>\n" );
+        }
+    }
+
+    private static int writeClade( final Writer w, final int external_nodes, final Random r, int id )
+            throws IOException {
+        if ( r.nextBoolean() ) {
+            w.write( "<clade branch_length=\"" + r.nextInt( 100 ) / 10.0 + "\">" );
+        }
+        else {
+            w.write( "<clade>\n  <branch_length> " + r.nextInt( 100 ) / 10.0 + " </branch_length>" );
+        }
+        w.write( "<name>node_" + id++ + "</name>\n" );
+        if ( external_nodes > 1 ) {
+            w.write( "<confidence type=\"bootstrap\">" + r.nextInt( 101 ) + "</confidence>" );
+            final int left = 1 + r.nextInt( external_nodes - 1 );
+            id = writeClade( w, left, r, id );
+            id = writeClade( w, external_nodes - left, r, id );
+        }
+        else {
+            w.write( "<taxonomy><code>SP" + r.nextInt( 100 ) + "</code><scientific_name>Genus species "
+                    + r.nextInt( 1000 ) + "</scientific_name></taxonomy>\n" );
+            w.write( "<sequence><accession source=\"UniProtKB\">P" + r.nextInt( 100000 ) + "</accession>"
+                    + "<mol_seq>MAA<!-- x -->GGT" + "LKV".substring( r.nextInt( 3 ) ) + "</mol_seq></sequence>\n" );
+            w.write( "<property ref=\"my:x\" datatype=\"xsd:double\" applies_to=\"node\">" + r.nextDouble()
+                    + "</property>\n" );
+        }
+        w.write( "</clade>\n" );
+        return id;
+    }
+
+    public static void main( final String[] args ) throws IOException {
+        final File f;
+        if ( args.length > 0 ) {
+            f = new File( args[ 0 ] );
+        }
+        else {
+            f = File.createTempFile( "forester_phyloxml_iterating", ".xml" );
+            f.deleteOnExit();
+            writeRandomPhylogenies( f, 1000, 500, new Random( 42 ) );
+        }
+        System.out.println( "File: " + f + " (" + ( f.length() / 1000000 ) + "MB)" );
+        final Runtime rt = Runtime.getRuntime();
+        for( int round = 0; round < 3; ++round ) {
+            System.gc();
+            long time = System.currentTimeMillis();
+            final PhyloXmlIteratingParser ip = new PhyloXmlIteratingParser();
+            ip.setSource( f );
+            int n = 0;
+            long max_heap = 0;
+            while ( ip.hasNext() ) {
+                n += ip.next().getNumberOfExternalNodes();
+                max_heap = Math.max( max_heap, rt.totalMemory() - rt.freeMemory() );
+            }
+            System.out.print( "PhyloXmlIteratingParser: " + ( System.currentTimeMillis() - time ) + "ms (" + n
+                    + " external nodes, max heap " + ( max_heap / 1000000 ) + "MB)" );
+            System.gc();
+            time = System.currentTimeMillis();
+            try {
+                final Phylogeny[] phylogenies = parseAll( f );
+                n = 0;
+                for( final Phylogeny phylogeny : phylogenies ) {
+                    n += phylogeny.getNumberOfExternalNodes();
+                }
+                System.out.println( ", PhyloXmlParser: " + ( System.currentTimeMillis() - time ) + "ms (" + n
+                        + " external nodes, heap " + ( ( rt.totalMemory() - rt.freeMemory() ) / 1000000 ) + "MB)" );
+            }
+            catch ( final PhylogenyParserException e ) {
+                System.out.println( ", PhyloXmlParser: " + e.getMessage() );
+            }
+        }
+    }
+
+    private PhyloXmlIteratingParserTest() {
+        // static tests only
+    }
+}
@@ -83,4 +83,12 @@ public class SequenceRelationParser implements PhylogenyDataPhyloXmlParser {
         }
         return instance;
     }
+
+    /**
+     * Forgets the instance of a phylogeny once it is parsed (otherwise every phylogeny with sequence relations
+     * ever parsed would be kept).
+     */
+    public static void removeInstance( final Phylogeny phylogeny ) {
+        _instances.remove( phylogeny );
+    }
 }
@@ -163,25 +163,29 @@ public class BasicMsa implements Msa {
 
     @Override
     public void write( final Writer w, final MSA_FORMAT format ) throws IOException {
+        write( this, w, format );
+    }
+
+    static void write( final Msa msa, final Writer w, final MSA_FORMAT format ) throws IOException {
         switch ( format ) {
             case PHYLIP:
-                writeToPhylip( w );
+                writeToPhylip( msa, w );
                 break;
             case FASTA:
-                writeToFasta( w );
+                writeToFasta( msa, w );
                 break;
             case NEXUS:
-                writeToNexus( w );
+                writeToNexus( msa, w );
                 break;
             default:
                 throw new RuntimeException( "unknown format " + format );
         }
     }
 
-    private short determineMaxIdLength() {
+    private static short determineMaxIdLength( final Msa msa ) {
         short max = 0;
-        for( int row = 0; row < getNumberOfSequences(); ++row ) {
-            final short l = ( short ) getIdentifier( row ).length();
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            final short l = ( short ) msa.getIdentifier( row ).length();
             if ( l > max ) {
                 max = l;
             }
@@ -189,15 +193,15 @@ public class BasicMsa implements Msa {
         return max;
     }
 
-    private void writeToFasta( final Writer w ) throws IOException {
-        SequenceWriter.writeSeqs( asSequenceList(), w, SEQ_FORMAT.FASTA, 100 );
+    private static void writeToFasta( final Msa msa, final Writer w ) throws IOException {
+        SequenceWriter.writeSeqs( msa.asSequenceList(), w, SEQ_FORMAT.FASTA, 100 );
     }
 
-    private void writeToNexus( final Writer w ) throws IOException {
-        final int max = determineMaxIdLength() + 1;
+    private static void writeToNexus( final Msa msa, final Writer w ) throws IOException {
+        final int max = determineMaxIdLength( msa ) + 1;
         TYPE t = null;
-        for( int row = 0; row < getNumberOfSequences(); ++row ) {
-            t = ForesterUtil.guessMolecularSequenceType( getSequence( row ).getMolecularSequenceAsString() );
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            t = ForesterUtil.guessMolecularSequenceType( msa.getSequence( row ).getMolecularSequenceAsString() );
             if ( t != null ) {
                 break;
             }
@@ -216,19 +220,19 @@ public class BasicMsa implements Msa {
         }
         w.write( "Begin Data;" );
         w.write( ForesterUtil.LINE_SEPARATOR );
-        w.write( "   Dimensions NTax=" + getNumberOfSequences() );
-        w.write( " NChar=" + getLength() );
+        w.write( "   Dimensions NTax=" + msa.getNumberOfSequences() );
+        w.write( " NChar=" + msa.getLength() );
         w.write( ";" );
         w.write( ForesterUtil.LINE_SEPARATOR );
         w.write( "   Format DataType=" + type_str + " Interleave=No gap=-;" );
         w.write( ForesterUtil.LINE_SEPARATOR );
         w.write( "   Matrix" );
         w.write( ForesterUtil.LINE_SEPARATOR );
-        for( int row = 0; row < getNumberOfSequences(); ++row ) {
-            final MolecularSequence seq = getSequence( row );
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            final MolecularSequence seq = msa.getSequence( row );
             final String s = seq.getMolecularSequenceAsString();
             w.write( "      " );
-            w.write( ForesterUtil.pad( getIdentifier( row ).replace( ' ', '_' ), max, ' ', false ).toString() );
+            w.write( ForesterUtil.pad( msa.getIdentifier( row ).replace( ' ', '_' ), max, ' ', false ).toString() );
             w.write( " " );
             w.write( s );
             w.write( ForesterUtil.LINE_SEPARATOR );
@@ -239,14 +243,14 @@ public class BasicMsa implements Msa {
         w.write( ForesterUtil.LINE_SEPARATOR );
     }
 
-    private void writeToPhylip( final Writer w ) throws IOException {
-        final int max = determineMaxIdLength() + 1;
-        w.write( getNumberOfSequences() + " " + getLength() );
+    private static void writeToPhylip( final Msa msa, final Writer w ) throws IOException {
+        final int max = determineMaxIdLength( msa ) + 1;
+        w.write( msa.getNumberOfSequences() + " " + msa.getLength() );
         w.write( ForesterUtil.LINE_SEPARATOR );
-        for( int row = 0; row < getNumberOfSequences(); ++row ) {
-            w.write( ForesterUtil.pad( getIdentifier( row ).replace( ' ', '_' ), max, ' ', false ).toString() );
-            for( int col = 0; col < getLength(); ++col ) {
-                w.write( getResidueAt( row, col ) );
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            w.write( ForesterUtil.pad( msa.getIdentifier( row ).replace( ' ', '_' ), max, ' ', false ).toString() );
+            for( int col = 0; col < msa.getLength(); ++col ) {
+                w.write( msa.getResidueAt( row, col ) );
             }
             w.write( ForesterUtil.LINE_SEPARATOR );
         }
@@ -0,0 +1,465 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.msa;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.forester.sequence.BasicSequence;
+import org.forester.sequence.MolecularSequence;
+import org.forester.sequence.MolecularSequence.TYPE;
+import org.forester.util.ForesterUtil;
+
+/**
+ * A msa which stores one byte per residue (instead of the two of a char, as
+ * BasicMsa does), or, for nucleotides, half a byte.
+ * <p>
+ * The residues are stored either row by row (LAYOUT.ROWS, the default) or
+ * column by column (LAYOUT.COLUMNS), which is faster for methods which go
+ * through all the residues of a column, such as those of MsaMethods.
+ * Nucleotide msas (only IUPAC codes and gaps) can be packed into two
+ * residues per byte.
+ * <p>
+ * Columns are also available as bytes, and as counts per residue, which are
+ * cached (until a residue of the column is set). Residues are expected to be
+ * ASCII; other chars are truncated to their lowest byte.
+ */
+public class ByteMsa implements Msa {
+
+    public static enum LAYOUT {
+        ROWS, COLUMNS;
+    }
+
+    private final static byte[]               DNA_CODES = "-ACGTRYMKWSBDHVN".getBytes();
+    private final static byte[]               RNA_CODES = "-ACGURYMKWSBDHVN".getBytes();
+    private final AtomicReferenceArray<int[]> _counts;
+    private final byte[][]                    _data;
+    private final String[]                    _identifiers;
+    private final int                         _length;
+    private final LAYOUT                      _layout;
+    private final byte[]                      _nucleotide_codes;
+    private final byte[]                      _nucleotide_encoding;
+    private final TYPE                        _type;
+
+    public ByteMsa( final int rows, final int columns, final TYPE type ) {
+        this( new String[ rows ], columns, type, LAYOUT.ROWS, false );
+    }
+
+    /**
+     * Only use if you know what you are doing!
+     * <p>
+     * Uses the given arrays as they are (they are not copied); all rows must
+     * have the same length.
+     */
+    public ByteMsa( final String[] identifiers, final byte[][] data, final TYPE type ) {
+        if ( ( data.length < 1 ) || ( data[ 0 ].length < 1 ) ) {
+            throw new IllegalArgumentException( "byte msa of size zero are illegal" );
+        }
+        if ( identifiers.length != data.length ) {
+            throw new IllegalArgumentException( "number of identifiers [" + identifiers.length
+                    + "] does not match number of rows [" + data.length + "]" );
+        }
+        for( int row = 0; row < data.length; ++row ) {
+            if ( ForesterUtil.isEmpty( identifiers[ row ] ) ) {
+                throw new IllegalArgumentException( "illegal attempt to create msa with empty identifier" );
+            }
+            if ( data[ row ].length != data[ 0 ].length ) {
+                throw new IllegalArgumentException( "illegal attempt to build msa from sequences of unequal length ["
+                        + identifiers[ row ] + "]" );
+            }
+        }
+        _data = data;
+        _identifiers = identifiers;
+        _length = data[ 0 ].length;
+        _type = type;
+        _layout = LAYOUT.ROWS;
+        _nucleotide_codes = null;
+        _nucleotide_encoding = null;
+        _counts = new AtomicReferenceArray<>( _length );
+    }
+
+    private ByteMsa( final String[] identifiers,
+                     final int columns,
+                     final TYPE type,
+                     final LAYOUT layout,
+                     final boolean packed ) {
+        if ( ( identifiers.length < 1 ) || ( columns < 1 ) ) {
+            throw new IllegalArgumentException( "byte msa of size zero are illegal" );
+        }
+        _identifiers = identifiers;
+        _length = columns;
+        _type = type;
+        _layout = layout;
+        final int lines = layout == LAYOUT.ROWS ? identifiers.length : columns;
+        final int line_length = layout == LAYOUT.ROWS ? columns : identifiers.length;
+        _data = new byte[ lines ][ packed ? ( ( line_length + 1 ) >>> 1 ) : line_length ];
+        if ( packed ) {
+            _nucleotide_codes = type == TYPE.RNA ? RNA_CODES : DNA_CODES;
+            _nucleotide_encoding = new byte[ 256 ];
+            Arrays.fill( _nucleotide_encoding, ( byte ) -1 );
+            for( int i = 0; i < _nucleotide_codes.length; ++i ) {
+                _nucleotide_encoding[ _nucleotide_codes[ i ] ] = ( byte ) i;
+            }
+        }
+        else {
+            _nucleotide_codes = null;
+            _nucleotide_encoding = null;
+        }
+        _counts = new AtomicReferenceArray<>( columns );
+    }
+
+    @Override
+    public List<MolecularSequence> asSequenceList() {
+        final List<MolecularSequence> seqs = new ArrayList<>();
+        for( int i = 0; i < getNumberOfSequences(); ++i ) {
+            seqs.add( getSequence( i ) );
+        }
+        return seqs;
+    }
+
+    @Override
+    public List<Character> getColumnAt( final int col ) {
+        final byte[] column = getColumnAsBytes( col );
+        final List<Character> l = new ArrayList<>( column.length );
+        for( final byte b : column ) {
+            l.add( ( char ) ( b & 0xFF ) );
+        }
+        return l;
+    }
+
+    /**
+     * Returns the residues of column col (a new array).
+     */
+    public byte[] getColumnAsBytes( final int col ) {
+        if ( ( _layout == LAYOUT.COLUMNS ) && !isPacked() ) {
+            return _data[ col ].clone();
+        }
+        final byte[] column = new byte[ getNumberOfSequences() ];
+        for( int row = 0; row < column.length; ++row ) {
+            column[ row ] = get( row, col );
+        }
+        return column;
+    }
+
+    /**
+     * Returns the number of gaps in column col (from the cached residue
+     * counts).
+     */
+    public int getGapCount( final int col ) {
+        return getResidueCounts( col )[ MolecularSequence.GAP ];
+    }
+
+    @Override
+    public String getIdentifier( final int row ) {
+        return _identifiers[ row ];
+    }
+
+    public LAYOUT getLayout() {
+        return _layout;
+    }
+
+    @Override
+    public int getLength() {
+        return _length;
+    }
+
+    @Override
+    public int getNumberOfSequences() {
+        return _identifiers.length;
+    }
+
+    @Override
+    public char getResidueAt( final int row, final int col ) {
+        return ( char ) ( get( row, col ) & 0xFF );
+    }
+
+    /**
+     * Returns the residue at row and col as byte.
+     */
+    public byte getResidueByteAt( final int row, final int col ) {
+        return get( row, col );
+    }
+
+    /**
+     * Returns how often each residue (as index, 0 to 255) occurs in column col.
+     * <p>
+     * The counts are calculated once per column and cached (until a residue of
+     * the column is set); the returned array is not a copy and must not be
+     * modified.
+     */
+    public int[] getResidueCounts( final int col ) {
+        int[] counts = _counts.get( col );
+        if ( counts == null ) {
+            counts = new int[ 256 ];
+            if ( isPacked() ) {
+                final int[] code_counts = new int[ 16 ];
+                if ( _layout == LAYOUT.COLUMNS ) {
+                    final byte[] column = _data[ col ];
+                    final int rows = getNumberOfSequences();
+                    for( int i = 0; i < ( rows >>> 1 ); ++i ) {
+                        ++code_counts[ column[ i ] & 0xF ];
+                        ++code_counts[ ( column[ i ] >>> 4 ) & 0xF ];
+                    }
+                    if ( ( rows & 1 ) != 0 ) {
+                        ++code_counts[ column[ rows >>> 1 ] & 0xF ];
+                    }
+                }
+                else {
+                    final int shift = ( col & 1 ) << 2;
+                    final int i = col >>> 1;
+                    for( final byte[] row : _data ) {
+                        ++code_counts[ ( row[ i ] >>> shift ) & 0xF ];
+                    }
+                }
+                for( int code = 0; code < 16; ++code ) {
+                    counts[ _nucleotide_codes[ code ] ] = code_counts[ code ];
+                }
+            }
+            else if ( _layout == LAYOUT.COLUMNS ) {
+                for( final byte b : _data[ col ] ) {
+                    ++counts[ b & 0xFF ];
+                }
+            }
+            else {
+                for( final byte[] row : _data ) {
+                    ++counts[ row[ col ] & 0xFF ];
+                }
+            }
+            _counts.set( col, counts );
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the residues of row row (a new array).
+     */
+    public byte[] getRowAsBytes( final int row ) {
+        if ( ( _layout == LAYOUT.ROWS ) && !isPacked() ) {
+            return _data[ row ].clone();
+        }
+        final byte[] r = new byte[ getLength() ];
+        for( int col = 0; col < r.length; ++col ) {
+            r[ col ] = get( row, col );
+        }
+        return r;
+    }
+
+    @Override
+    public MolecularSequence getSequence( final int row ) {
+        final char[] s = new char[ getLength() ];
+        if ( ( _layout == LAYOUT.ROWS ) && !isPacked() ) {
+            final byte[] r = _data[ row ];
+            for( int col = 0; col < r.length; ++col ) {
+                s[ col ] = ( char ) ( r[ col ] & 0xFF );
+            }
+        }
+        else {
+            for( int col = 0; col < s.length; ++col ) {
+                s[ col ] = ( char ) ( get( row, col ) & 0xFF );
+            }
+        }
+        return new BasicSequence( getIdentifier( row ), s, getType() );
+    }
+
+    @Override
+    public MolecularSequence getSequence( final String id ) {
+        for( int i = 0; i < getNumberOfSequences(); ++i ) {
+            if ( getIdentifier( i ).equals( id ) ) {
+                return getSequence( i );
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StringBuffer getSequenceAsString( final int row ) {
+        final StringBuffer sb = new StringBuffer( getLength() );
+        for( int col = 0; col < getLength(); ++col ) {
+            sb.append( getResidueAt( row, col ) );
+        }
+        return sb;
+    }
+
+    @Override
+    public TYPE getType() {
+        return _type;
+    }
+
+    @Override
+    public boolean isGapAt( final int row, final int col ) {
+        return get( row, col ) == MolecularSequence.GAP;
+    }
+
+    /**
+     * Returns true if two nucleotides are stored per byte.
+     */
+    public boolean isPacked() {
+        return _nucleotide_codes != null;
+    }
+
+    @Override
+    public void setIdentifier( final int row, final String id ) {
+        if ( ForesterUtil.isEmpty( id ) ) {
+            throw new IllegalArgumentException( "illegal attempt to create msa with empty identifier" );
+        }
+        _identifiers[ row ] = id;
+    }
+
+    @Override
+    public void setResidueAt( final int row, final int col, final char residue ) {
+        set( row, col, ( byte ) residue );
+        _counts.set( col, null );
+    }
+
+    @Override
+    public String toString() {
+        final Writer w = new StringWriter();
+        try {
+            write( w, MSA_FORMAT.PHYLIP );
+        }
+        catch ( final IOException e ) {
+            e.printStackTrace();
+        }
+        return w.toString();
+    }
+
+    @Override
+    public void write( final Writer w, final MSA_FORMAT format ) throws IOException {
+        BasicMsa.write( this, w, format );
+    }
+
+    private byte get( final int row, final int col ) {
+        final int line = _layout == LAYOUT.ROWS ? row : col;
+        final int i = _layout == LAYOUT.ROWS ? col : row;
+        if ( _nucleotide_codes != null ) {
+            return _nucleotide_codes[ ( _data[ line ][ i >>> 1 ] >>> ( ( i & 1 ) << 2 ) ) & 0xF ];
+        }
+        return _data[ line ][ i ];
+    }
+
+    private void set( final int row, final int col, final byte residue ) {
+        final int line = _layout == LAYOUT.ROWS ? row : col;
+        final int i = _layout == LAYOUT.ROWS ? col : row;
+        if ( _nucleotide_codes != null ) {
+            final int code = _nucleotide_encoding[ residue & 0xFF ];
+            if ( code < 0 ) {
+                throw new IllegalArgumentException( "illegal attempt to store '" + ( char ) ( residue & 0xFF )
+                        + "' in a packed nucleotide msa" );
+            }
+            final int shift = ( i & 1 ) << 2;
+            _data[ line ][ i >>> 1 ] = ( byte ) ( ( _data[ line ][ i >>> 1 ] & ~( 0xF << shift ) ) | ( code << shift ) );
+        }
+        else {
+            _data[ line ][ i ] = residue;
+        }
+    }
+
+    public static ByteMsa createInstance( final List<MolecularSequence> seqs ) {
+        if ( seqs.size() < 1 ) {
+            throw new IllegalArgumentException( "cannot create msa from less than one sequence" );
+        }
+        final int length = seqs.get( 0 ).getLength();
+        final ByteMsa msa = new ByteMsa( seqs.size(), length, seqs.get( 0 ).getType() );
+        for( int row = 0; row < seqs.size(); ++row ) {
+            final MolecularSequence seq = seqs.get( row );
+            if ( seq.getLength() != length ) {
+                throw new IllegalArgumentException( "illegal attempt to build msa from sequences of unequal length ["
+                        + seq.getIdentifier() + "]" );
+            }
+            if ( seq.getType() != msa.getType() ) {
+                throw new IllegalArgumentException( "illegal attempt to build msa from sequences of different type ["
+                        + seq.getIdentifier() + "]" );
+            }
+            msa.setIdentifier( row, seq.getIdentifier() );
+            for( int col = 0; col < length; ++col ) {
+                msa._data[ row ][ col ] = ( byte ) seq.getResidueAt( col );
+            }
+        }
+        return msa;
+    }
+
+    /**
+     * Copies msa into a new ByteMsa with the given layout.
+     * <p>
+     * If pack_nucleotides is true and msa contains only nucleotides (IUPAC
+     * codes, upper case, with U only for type RNA and T only otherwise) and
+     * gaps, two residues are stored per byte (see isPacked()); residues set
+     * later are then restricted to these as well.
+     */
+    public static ByteMsa createInstance( final Msa msa, final LAYOUT layout, final boolean pack_nucleotides ) {
+        final int rows = msa.getNumberOfSequences();
+        final int length = msa.getLength();
+        final String[] ids = new String[ rows ];
+        for( int row = 0; row < rows; ++row ) {
+            if ( ForesterUtil.isEmpty( msa.getIdentifier( row ) ) ) {
+                throw new IllegalArgumentException( "illegal attempt to create msa with empty identifier" );
+            }
+            ids[ row ] = msa.getIdentifier( row );
+        }
+        final ByteMsa b = new ByteMsa( ids,
+                                       length,
+                                       msa.getType(),
+                                       layout,
+                                       pack_nucleotides && isNucleotides( msa ) );
+        if ( ( msa instanceof ByteMsa ) && !b.isPacked() && ( layout == LAYOUT.COLUMNS ) ) {
+            final ByteMsa m = ( ByteMsa ) msa;
+            for( int col = 0; col < length; ++col ) {
+                b._data[ col ] = m.getColumnAsBytes( col );
+            }
+        }
+        else if ( ( msa instanceof ByteMsa ) && !b.isPacked() ) {
+            final ByteMsa m = ( ByteMsa ) msa;
+            for( int row = 0; row < rows; ++row ) {
+                b._data[ row ] = m.getRowAsBytes( row );
+            }
+        }
+        else {
+            for( int row = 0; row < rows; ++row ) {
+                for( int col = 0; col < length; ++col ) {
+                    b.set( row, col, ( byte ) msa.getResidueAt( row, col ) );
+                }
+            }
+        }
+        return b;
+    }
+
+    private static boolean isNucleotides( final Msa msa ) {
+        final byte[] codes = msa.getType() == TYPE.RNA ? RNA_CODES : DNA_CODES;
+        final boolean[] allowed = new boolean[ 256 ];
+        for( final byte c : codes ) {
+            allowed[ c ] = true;
+        }
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            for( int col = 0; col < msa.getLength(); ++col ) {
+                final char c = msa.getResidueAt( row, col );
+                if ( ( c > 255 ) || !allowed[ c ] ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
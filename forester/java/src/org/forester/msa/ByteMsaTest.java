@@ -0,0 +1,270 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.msa;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.msa.ByteMsa.LAYOUT;
+import org.forester.msa.Msa.MSA_FORMAT;
+import org.forester.sequence.BasicSequence;
+import org.forester.sequence.MolecularSequence;
+
+/**
+ * Tests for {@link ByteMsa}: in both layouts, packed and not packed, it must
+ * hold the same residues as a BasicMsa, give the same results for the column
+ * methods of {@link MsaMethods}, and keep its residue counts up to date when
+ * residues are set.
+ * <p>
+ * main() compares the running times and heap use of column statistics
+ * (gap sums, residue distributions, consensus and entropy) for a BasicMsa and
+ * ByteMsas of a random nucleotide alignment (by default 2000 sequences of
+ * length 29903).
+ */
+public final class ByteMsaTest {
+
+    public static boolean test() {
+        try {
+            final Random r = new Random( 3 );
+            final Msa dna = createRandomMsa( 41, 57, "ACGTACGTN-RY", r );
+            final Msa aa = createRandomMsa( 30, 44, "ARNDCQEGHILKMFPSTWYVX-*BZ", r );
+            for( final LAYOUT layout : LAYOUT.values() ) {
+                for( final boolean pack : new boolean[] { false, true } ) {
+                    final ByteMsa b = ByteMsa.createInstance( dna, layout, pack );
+                    if ( b.isPacked() != pack ) {
+                        return fail( "packing of nucleotides" );
+                    }
+                    String error = compare( dna, b );
+                    if ( error != null ) {
+                        return fail( "nucleotides, " + layout + ( pack ? ", packed: " : ": " ) + error );
+                    }
+                    final ByteMsa c = ByteMsa.createInstance( aa, layout, pack );
+                    if ( c.isPacked() ) {
+                        return fail( "packed amino acids" );
+                    }
+                    error = compare( aa, c );
+                    if ( error != null ) {
+                        return fail( "amino acids, " + layout + ": " + error );
+                    }
+                    // copies of ByteMsas
+                    error = compare( dna, ByteMsa.createInstance( b, layout == LAYOUT.ROWS ? LAYOUT.COLUMNS
+                            : LAYOUT.ROWS, false ) );
+                    if ( error != null ) {
+                        return fail( "copy, " + layout + ": " + error );
+                    }
+                    // counts are updated when residues are set
+                    b.getResidueCounts( 5 );
+                    final int gaps = b.getGapCount( 5 );
+                    final char old = b.getResidueAt( 3, 5 );
+                    b.setResidueAt( 3, 5, old == '-' ? 'A' : '-' );
+                    if ( b.getGapCount( 5 ) != ( old == '-' ? gaps - 1 : gaps + 1 ) ) {
+                        return fail( "counts not updated, " + layout );
+                    }
+                    if ( b.getResidueAt( 3, 5 ) != ( old == '-' ? 'A' : '-' ) ) {
+                        return fail( "set residue, " + layout );
+                    }
+                    b.setResidueAt( 3, 5, old );
+                    if ( pack ) {
+                        try {
+                            b.setResidueAt( 0, 0, 'Z' );
+                            return fail( "illegal residue in packed msa" );
+                        }
+                        catch ( final IllegalArgumentException e ) {
+                            // expected
+                        }
+                    }
+                }
+            }
+            // the msa of the fasta parser
+            final ByteMsa p = ByteMsa.createInstance( dna.asSequenceList() );
+            if ( compare( dna, p ) != null ) {
+                return fail( "from sequences" );
+            }
+            try {
+                new ByteMsa( new String[] { "a", "b" }, new byte[][] { { 'A' }, { 'A', 'C' } },
+                             MolecularSequence.TYPE.DNA );
+                return fail( "rows of unequal length" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns null if the two msas are the same (also for the column methods
+     * of MsaMethods), otherwise the difference.
+     */
+    private static String compare( final Msa expected, final ByteMsa msa ) throws IOException {
+        if ( ( msa.getNumberOfSequences() != expected.getNumberOfSequences() )
+                || ( msa.getLength() != expected.getLength() ) ) {
+            return "size";
+        }
+        for( int row = 0; row < expected.getNumberOfSequences(); ++row ) {
+            if ( !msa.getIdentifier( row ).equals( expected.getIdentifier( row ) ) ) {
+                return "identifier of row " + row;
+            }
+            if ( !msa.getSequence( row ).getMolecularSequenceAsString()
+                    .equals( expected.getSequence( row ).getMolecularSequenceAsString() )
+                    || !msa.getSequenceAsString( row ).toString()
+                            .equals( expected.getSequenceAsString( row ).toString() ) ) {
+                return "sequence of row " + row;
+            }
+            if ( !new String( msa.getRowAsBytes( row ) ).equals( expected.getSequenceAsString( row ).toString() ) ) {
+                return "bytes of row " + row;
+            }
+            for( int col = 0; col < expected.getLength(); ++col ) {
+                if ( ( msa.getResidueAt( row, col ) != expected.getResidueAt( row, col ) )
+                        || ( msa.isGapAt( row, col ) != expected.isGapAt( row, col ) ) ) {
+                    return "residue at " + row + ", " + col;
+                }
+            }
+        }
+        for( int col = 0; col < expected.getLength(); ++col ) {
+            if ( !msa.getColumnAt( col ).equals( expected.getColumnAt( col ) ) ) {
+                return "column " + col;
+            }
+            final byte[] column = msa.getColumnAsBytes( col );
+            final int[] counts = new int[ 256 ];
+            for( int row = 0; row < column.length; ++row ) {
+                if ( column[ row ] != expected.getResidueAt( row, col ) ) {
+                    return "bytes of column " + col;
+                }
+                ++counts[ column[ row ] ];
+            }
+            if ( !Arrays.equals( counts, msa.getResidueCounts( col ) ) ) {
+                return "residue counts of column " + col;
+            }
+            if ( MsaMethods.calcGapSumPerColumn( msa, col ) != MsaMethods.calcGapSumPerColumn( expected, col ) ) {
+                return "gap sum of column " + col;
+            }
+            if ( !MsaMethods.calculateResidueDestributionPerColumn( msa, col )
+                    .equals( MsaMethods.calculateResidueDestributionPerColumn( expected, col ) )
+                    || !MsaMethods.calculateResidueDestributionPerColumnAllowGaps( msa, col )
+                            .equals( MsaMethods.calculateResidueDestributionPerColumnAllowGaps( expected, col ) ) ) {
+                return "residue distribution of column " + col;
+            }
+            if ( MsaMethods.calculateIdentityRatio( msa, col ) != MsaMethods.calculateIdentityRatio( expected, col ) ) {
+                return "identity ratio of column " + col;
+            }
+            for( final int k : new int[] { 6, 7, 20, 21 } ) {
+                if ( Math.abs( MsaMethods.calcNormalizedShannonsEntropy( k, msa, col )
+                        - MsaMethods.calcNormalizedShannonsEntropy( k, expected, col ) ) > 1E-12 ) {
+                    return "entropy (k=" + k + ") of column " + col;
+                }
+            }
+        }
+        if ( !MsaMethods.calculateMajorityConsensusSequence( msa )
+                .equals( MsaMethods.calculateMajorityConsensusSequence( expected ) ) ) {
+            return "consensus";
+        }
+        if ( MsaMethods.calcGapRatio( msa ) != MsaMethods.calcGapRatio( expected ) ) {
+            return "gap ratio";
+        }
+        for( final MSA_FORMAT format : MSA_FORMAT.values() ) {
+            final StringWriter w0 = new StringWriter();
+            final StringWriter w1 = new StringWriter();
+            expected.write( w0, format );
+            msa.write( w1, format );
+            if ( !w0.toString().equals( w1.toString() ) ) {
+                return "written as " + format;
+            }
+        }
+        return null;
+    }
+
+    private static Msa createRandomMsa( final int rows, final int length, final String residues, final Random r ) {
+        final List<MolecularSequence> seqs = new ArrayList<>();
+        for( int row = 0; row < rows; ++row ) {
+            final char[] s = new char[ length ];
+            for( int col = 0; col < length; ++col ) {
+                // columns with few residues, to have conserved columns as well
+                final int n = ( col % 3 ) == 0 ? 2 : residues.length();
+                s[ col ] = residues.charAt( r.nextInt( n ) );
+            }
+            seqs.add( new BasicSequence( "seq_" + row, s, MolecularSequence.TYPE.DNA ) );
+        }
+        return BasicMsa.createInstance( seqs );
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "ByteMsa test failed: " + msg );
+        return false;
+    }
+
+    private static long run( final String name, final Msa msa ) {
+        final long time = System.currentTimeMillis();
+        long x = 0;
+        for( int col = 0; col < msa.getLength(); ++col ) {
+            x += MsaMethods.calcGapSumPerColumn( msa, col );
+            x += MsaMethods.calculateResidueDestributionPerColumn( msa, col ).size();
+        }
+        x += MsaMethods.calculateMajorityConsensusSequence( msa ).length();
+        x += ( long ) MsaMethods.calcNormalizedShannonsEntropy( 21, msa );
+        System.out.println( name + ": " + ( System.currentTimeMillis() - time ) + "ms" );
+        return x;
+    }
+
+    public static void main( final String[] args ) {
+        final int rows = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 2000;
+        final int length = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 29903;
+        final Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long heap = rt.totalMemory() - rt.freeMemory();
+        final Msa basic = createRandomMsa( rows, length, "ACGTACGTACGTACGTACGTACGTACGTACGTN-", new Random( 42 ) );
+        System.gc();
+        System.out.println( "BasicMsa: " + ( ( ( rt.totalMemory() - rt.freeMemory() ) - heap ) / 1000000 ) + "MB" );
+        final List<Msa> msas = new ArrayList<>();
+        for( final LAYOUT layout : LAYOUT.values() ) {
+            for( final boolean pack : new boolean[] { false, true } ) {
+                System.gc();
+                heap = rt.totalMemory() - rt.freeMemory();
+                final ByteMsa b = ByteMsa.createInstance( basic, layout, pack );
+                System.gc();
+                System.out.println( "ByteMsa, " + layout + ( pack ? ", packed: " : ": " )
+                        + ( ( ( rt.totalMemory() - rt.freeMemory() ) - heap ) / 1000000 ) + "MB" );
+                msas.add( b );
+            }
+        }
+        for( int round = 0; round < 3; ++round ) {
+            run( "BasicMsa", basic );
+            for( final Msa msa : msas ) {
+                final ByteMsa b = ( ByteMsa ) msa;
+                // without the cached counts of the previous round
+                run( "ByteMsa, " + b.getLayout() + ( b.isPacked() ? ", packed" : "" ),
+                     ByteMsa.createInstance( b, b.getLayout(), b.isPacked() ) );
+            }
+        }
+    }
+
+    private ByteMsaTest() {
+        // static tests only
+    }
+}
@@ -20,17 +20,36 @@
 
 package org.forester.msa;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.forester.sequence.BasicSequence;
 import org.forester.sequence.MolecularSequence;
 
+/**
+ * A msa from which rows and columns can be deleted (without copying the
+ * residues).
+ * <p>
+ * For the repeated deletions of msa compaction, rows are found by identifier
+ * through an index, and the gap counts (and, once requested, the residue
+ * counts) of the columns are kept up to date on each deletion, so that
+ * deleting a row costs O(length) and the gap statistics of the remaining msa
+ * need not be recalculated from all its residues. Both are created lazily,
+ * on first use.
+ */
 public final class DeleteableMsa extends BasicMsa {
 
-    private int _length                 = 0;
-    private int _mapped_col_positions[] = null;
-    private int _mapped_row_positions[] = null;
-    private int _seqs                   = 0;
+    private int                  _gap_counts[]           = null;
+    private boolean              _has_duplicate_ids      = false;
+    private int                  _length                 = 0;
+    private int                  _mapped_col_positions[] = null;
+    private int                  _mapped_row_positions[] = null;
+    private int                  _residue_counts[][]     = null;
+    private Map<String, Integer> _rows_by_id             = null;
+    private int                  _seqs                   = 0;
+    private boolean              _wide_residues          = false;
 
     private DeleteableMsa( final BasicMsa msa ) {
         super( msa );
@@ -46,13 +65,15 @@ public final class DeleteableMsa extends BasicMsa {
         _seqs = msa.getNumberOfSequences();
     }
 
+    /**
+     * Returns the gap ratio of each column (from the gap counts).
+     */
     public final double[] calcGappiness() {
         final int length = getLength();
         final double gappiness[] = new double[ length ];
         final int seqs = getNumberOfSequences();
-        for( int row = 0; row < seqs; ++row ) {
-            for( int col = 0; col < length; ++col ) {
-            }
+        for( int col = 0; col < length; ++col ) {
+            gappiness[ col ] = ( double ) getGapCount( col ) / seqs;
         }
         return gappiness;
     }
@@ -82,30 +103,31 @@ public final class DeleteableMsa extends BasicMsa {
         if ( ( max_allowed_gap_ratio < 0 ) || ( max_allowed_gap_ratio > 1 ) ) {
             throw new IllegalArgumentException( "max allowed gap ration is out of range: " + max_allowed_gap_ratio );
         }
-        for( int col = getLength() - 1; col >= 0; --col ) {
-            final boolean delete = ( ( double ) MsaMethods.calcGapSumPerColumn( this, col ) / getNumberOfSequences() ) > max_allowed_gap_ratio;
-            if ( delete ) {
-                deleteColumn( col );
+        final int[] gap_counts = obtainGapCounts();
+        int length = 0;
+        for( int col = 0; col < _length; ++col ) {
+            final int m_col = _mapped_col_positions[ col ];
+            if ( ( ( double ) gap_counts[ m_col ] / _seqs ) <= max_allowed_gap_ratio ) {
+                _mapped_col_positions[ length++ ] = m_col;
             }
         }
+        _length = length;
     }
 
     final public void deleteGapOnlyColumns() {
-        for( int col = getLength() - 1; col >= 0; --col ) {
-            if ( isAllGap( col ) ) {
-                deleteColumn( col );
+        final int[] gap_counts = obtainGapCounts();
+        int length = 0;
+        for( int col = 0; col < _length; ++col ) {
+            final int m_col = _mapped_col_positions[ col ];
+            if ( gap_counts[ m_col ] < _seqs ) {
+                _mapped_col_positions[ length++ ] = m_col;
             }
         }
+        _length = length;
     }
 
     final public MolecularSequence deleteRow( final String id, final boolean return_removed_seq ) {
-        int row = -1;
-        for( int r = 0; r < getNumberOfSequences(); ++r ) {
-            if ( getIdentifier( r ).equals( id ) ) {
-                row = r;
-                break;
-            }
-        }
+        final int row = findRow( id );
         if ( row < 0 ) {
             throw new IllegalArgumentException( "id [" + id + "] not found" );
         }
@@ -122,6 +144,12 @@ public final class DeleteableMsa extends BasicMsa {
             }
         }
         deleteRow( row );
+        if ( _has_duplicate_ids ) {
+            _rows_by_id = null;
+        }
+        else {
+            _rows_by_id.remove( id );
+        }
         if ( return_removed_seq ) {
             return new BasicSequence( new String( s.getIdentifier() ), sb.toString(), s.getType() );
         }
@@ -130,6 +158,14 @@ public final class DeleteableMsa extends BasicMsa {
         }
     }
 
+    /**
+     * Returns the number of gaps in column col.
+     */
+    final public int getGapCount( final int col ) {
+        checkColumn( col );
+        return obtainGapCounts()[ _mapped_col_positions[ col ] ];
+    }
+
     @Override
     final public String getIdentifier( final int row ) {
         checkRow( row );
@@ -159,27 +195,77 @@ public final class DeleteableMsa extends BasicMsa {
         return new BasicSequence( getIdentifier( row ), getSequenceAsString( row ).toString(), getType() );
     }
 
-    final public boolean isAllGap( final int col ) {
-        final int m_col = _mapped_col_positions[ col ];
-        for( int j = 0; j < getNumberOfSequences(); ++j ) {
-            if ( super.getResidueAt( _mapped_row_positions[ j ], m_col ) != MolecularSequence.GAP ) {
-                return false;
+    /**
+     * Returns how often each residue (as index, 0 to 255) occurs in column
+     * col, or null if the msa contains residues beyond 255.
+     * <p>
+     * The counts of all columns are calculated on the first call, and then
+     * kept up to date as rows are deleted and residues set; the returned
+     * array is not a copy and must not be modified.
+     */
+    final public int[] getResidueCounts( final int col ) {
+        checkColumn( col );
+        if ( ( _residue_counts == null ) && !_wide_residues ) {
+            final int[][] counts = new int[ _mapped_col_positions.length ][];
+            for( int c = 0; c < _length; ++c ) {
+                counts[ _mapped_col_positions[ c ] ] = new int[ 256 ];
+            }
+            for( int row = 0; ( row < _seqs ) && !_wide_residues; ++row ) {
+                final int m_row = _mapped_row_positions[ row ];
+                for( int c = 0; c < _length; ++c ) {
+                    final int m_col = _mapped_col_positions[ c ];
+                    final char r = super.getResidueAt( m_row, m_col );
+                    if ( r > 255 ) {
+                        _wide_residues = true;
+                        break;
+                    }
+                    ++counts[ m_col ][ r ];
+                }
+            }
+            if ( !_wide_residues ) {
+                _residue_counts = counts;
             }
         }
-        return true;
+        return _residue_counts == null ? null : _residue_counts[ _mapped_col_positions[ col ] ];
+    }
+
+    final public boolean isAllGap( final int col ) {
+        return getGapCount( col ) == _seqs;
     }
 
     @Override
     final public void setIdentifier( final int row, final String id ) {
         checkRow( row );
         super.setIdentifier( _mapped_row_positions[ row ], id );
+        _rows_by_id = null;
     }
 
     @Override
     final public void setResidueAt( final int row, final int col, final char residue ) {
         checkRow( row );
         checkColumn( col );
-        super.setResidueAt( _mapped_row_positions[ row ], _mapped_col_positions[ col ], residue );
+        final int m_row = _mapped_row_positions[ row ];
+        final int m_col = _mapped_col_positions[ col ];
+        final char old = super.getResidueAt( m_row, m_col );
+        if ( _gap_counts != null ) {
+            if ( old == MolecularSequence.GAP ) {
+                --_gap_counts[ m_col ];
+            }
+            if ( residue == MolecularSequence.GAP ) {
+                ++_gap_counts[ m_col ];
+            }
+        }
+        if ( _residue_counts != null ) {
+            if ( residue > 255 ) {
+                _residue_counts = null;
+                _wide_residues = true;
+            }
+            else {
+                --_residue_counts[ m_col ][ old ];
+                ++_residue_counts[ m_col ][ residue ];
+            }
+        }
+        super.setResidueAt( m_row, m_col, residue );
     }
 
     final private void checkColumn( final int col ) {
@@ -194,22 +280,67 @@ public final class DeleteableMsa extends BasicMsa {
         }
     }
 
-    final private void deleteColumn( final int col ) {
-        checkColumn( col );
-        for( int c = col; c < ( _length - 1 ); ++c ) {
-            _mapped_col_positions[ c ] = _mapped_col_positions[ c + 1 ];
-        }
-        --_length;
-    }
-
     final private void deleteRow( final int row ) {
         checkRow( row );
-        for( int r = row; r < ( _seqs - 1 ); ++r ) {
-            _mapped_row_positions[ r ] = _mapped_row_positions[ r + 1 ];
+        final int m_row = _mapped_row_positions[ row ];
+        if ( ( _gap_counts != null ) || ( _residue_counts != null ) ) {
+            for( int c = 0; c < _length; ++c ) {
+                final int m_col = _mapped_col_positions[ c ];
+                final char r = super.getResidueAt( m_row, m_col );
+                if ( ( _gap_counts != null ) && ( r == MolecularSequence.GAP ) ) {
+                    --_gap_counts[ m_col ];
+                }
+                if ( _residue_counts != null ) {
+                    --_residue_counts[ m_col ][ r ];
+                }
+            }
         }
+        System.arraycopy( _mapped_row_positions, row + 1, _mapped_row_positions, row, _seqs - row - 1 );
         --_seqs;
     }
 
+    /**
+     * Returns the row of the first sequence with identifier id, or -1.
+     */
+    final private int findRow( final String id ) {
+        if ( _rows_by_id == null ) {
+            _rows_by_id = new HashMap<String, Integer>();
+            _has_duplicate_ids = false;
+            for( int row = 0; row < _seqs; ++row ) {
+                if ( _rows_by_id.putIfAbsent( getIdentifier( row ), _mapped_row_positions[ row ] ) != null ) {
+                    _has_duplicate_ids = true;
+                }
+            }
+        }
+        final Integer m_row = _rows_by_id.get( id );
+        if ( m_row == null ) {
+            return -1;
+        }
+        // the mapped row positions remain in ascending order
+        return Arrays.binarySearch( _mapped_row_positions, 0, _seqs, m_row );
+    }
+
+    /**
+     * Returns the gap counts of all (mapped) columns, calculating them on
+     * the first call.
+     */
+    final private int[] obtainGapCounts() {
+        if ( _gap_counts == null ) {
+            final int[] gap_counts = new int[ _mapped_col_positions.length ];
+            for( int row = 0; row < _seqs; ++row ) {
+                final int m_row = _mapped_row_positions[ row ];
+                for( int c = 0; c < _length; ++c ) {
+                    final int m_col = _mapped_col_positions[ c ];
+                    if ( super.getResidueAt( m_row, m_col ) == MolecularSequence.GAP ) {
+                        ++gap_counts[ m_col ];
+                    }
+                }
+            }
+            _gap_counts = gap_counts;
+        }
+        return _gap_counts;
+    }
+
     public final static DeleteableMsa createInstance( final List<MolecularSequence> seqs ) {
         return new DeleteableMsa( ( BasicMsa ) BasicMsa.createInstance( seqs ) );
     }
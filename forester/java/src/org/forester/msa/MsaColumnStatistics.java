@@ -0,0 +1,368 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.msa;
+
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.forester.sequence.MolecularSequence;
+
+/**
+ * Column statistics of a msa: normalized Shannon entropies (for k = 6, 7, 20
+ * and 21, as calculated by MsaMethods.calcNormalizedShannonsEntropy),
+ * majority consensus residues, identity ratios and gap ratios.
+ * <p>
+ * All of them are calculated in one pass over the residues, which are counted
+ * per column into arrays indexed by residue (for ByteMsas, their cached
+ * residue counts are used instead). The columns are processed in blocks, so
+ * that the residues of a row (of a row-wise msa) are read together, and the
+ * blocks are distributed over a fork/join pool.
+ * <p>
+ * Averages over ranges of columns (such as sliding windows) are calculated in
+ * constant time from prefix sums. They may thus differ from the averages of
+ * MsaMethods in the last digits.
+ */
+public final class MsaColumnStatistics {
+
+    private final static int    BLOCK_SIZE = 64;
+    private final static int    ENTROPY_6  = 0;
+    private final static int    ENTROPY_7  = 1;
+    private final static int    ENTROPY_20 = 2;
+    private final static int    ENTROPY_21 = 3;
+    private final static int    IDENTITY   = 4;
+    private final static int    GAPS       = 5;
+    private final static int    OTHERS     = 6;
+    private final static byte[] CLASSES    = new byte[ 256 ];
+    private final char[]        _consensus;
+    private final Msa           _msa;
+    private final int[][]       _nans;
+    private final double[][]    _sums;
+    private final double[][]    _values;
+    static {
+        final String classes = "arpoes";
+        for( int c = 0; c < CLASSES.length; ++c ) {
+            final int i = classes.indexOf( MsaMethods.calcResidueClass( ( char ) c ) );
+            CLASSES[ c ] = ( byte ) ( i < 0 ? OTHERS : i );
+        }
+    }
+
+    private MsaColumnStatistics( final Msa msa ) {
+        _msa = msa;
+        _consensus = new char[ msa.getLength() ];
+        _values = new double[ 6 ][ msa.getLength() ];
+        _sums = new double[ 6 ][];
+        _nans = new int[ 6 ][];
+    }
+
+    /**
+     * Returns the average gap ratio of the columns first_col to last_col
+     * (inclusive).
+     */
+    public double calcAvgGapRatio( final int first_col, final int last_col ) {
+        return calcAvg( GAPS, first_col, last_col );
+    }
+
+    /**
+     * Returns the average identity ratio of the columns first_col to last_col
+     * (inclusive).
+     */
+    public double calcAvgIdentityRatio( final int first_col, final int last_col ) {
+        return calcAvg( IDENTITY, first_col, last_col );
+    }
+
+    /**
+     * Returns the average normalized Shannon entropy of the columns first_col
+     * to last_col (inclusive).
+     */
+    public double calcAvgNormalizedShannonsEntropy( final int k, final int first_col, final int last_col ) {
+        return calcAvg( entropyIndex( k ), first_col, last_col );
+    }
+
+    /**
+     * Returns the majority residue (gaps included) of column col; of residues
+     * with the same count the lowest one.
+     */
+    public char getConsensusResidue( final int col ) {
+        return _consensus[ col ];
+    }
+
+    public String getConsensusSequence() {
+        return new String( _consensus );
+    }
+
+    public double getGapRatio( final int col ) {
+        return _values[ GAPS ][ col ];
+    }
+
+    /**
+     * Returns the count of the majority residue (gaps excluded) of column col,
+     * divided by the number of sequences.
+     */
+    public double getIdentityRatio( final int col ) {
+        return _values[ IDENTITY ][ col ];
+    }
+
+    public int getLength() {
+        return _consensus.length;
+    }
+
+    public double getNormalizedShannonsEntropy( final int k, final int col ) {
+        return _values[ entropyIndex( k ) ][ col ];
+    }
+
+    private double calcAvg( final int i, final int first_col, final int last_col ) {
+        if ( ( first_col < 0 ) || ( last_col >= getLength() ) || ( first_col > last_col ) ) {
+            throw new IllegalArgumentException( "illegal range of columns: " + first_col + "-" + last_col );
+        }
+        if ( _nans[ i ][ last_col + 1 ] > _nans[ i ][ first_col ] ) {
+            return Double.NaN;
+        }
+        return ( _sums[ i ][ last_col + 1 ] - _sums[ i ][ first_col ] ) / ( ( 1 + last_col ) - first_col );
+    }
+
+    private void calcBlock( final int block ) {
+        final int first = block * BLOCK_SIZE;
+        final int last = Math.min( first + BLOCK_SIZE, getLength() );
+        final char[] residues = new char[ 256 ];
+        final int[] counts = new int[ 256 ];
+        if ( _msa instanceof ByteMsa ) {
+            for( int col = first; col < last; ++col ) {
+                calcColumn( col, residues, counts, toDense( ( ( ByteMsa ) _msa ).getResidueCounts( col ),
+                                                            residues,
+                                                            counts ) );
+            }
+            return;
+        }
+        final int[][] column_counts = new int[ last - first ][ 256 ];
+        final boolean[] wide = new boolean[ last - first ];
+        for( int row = 0; row < _msa.getNumberOfSequences(); ++row ) {
+            for( int col = first; col < last; ++col ) {
+                final char r = _msa.getResidueAt( row, col );
+                if ( r < 256 ) {
+                    ++column_counts[ col - first ][ r ];
+                }
+                else {
+                    wide[ col - first ] = true;
+                }
+            }
+        }
+        for( int col = first; col < last; ++col ) {
+            if ( wide[ col - first ] ) {
+                // residues beyond 255 (rare): counted once more, as for MsaMethods
+                final SortedMap<Character, Integer> dist = MsaMethods
+                        .calculateResidueDestributionPerColumnAllowGaps( _msa, col );
+                final char[] wide_residues = new char[ dist.size() ];
+                final int[] wide_counts = new int[ dist.size() ];
+                int m = 0;
+                for( final Entry<Character, Integer> e : dist.entrySet() ) {
+                    wide_residues[ m ] = e.getKey();
+                    wide_counts[ m++ ] = e.getValue();
+                }
+                calcColumn( col, wide_residues, wide_counts, m );
+            }
+            else {
+                calcColumn( col, residues, counts, toDense( column_counts[ col - first ], residues, counts ) );
+            }
+        }
+    }
+
+    /**
+     * Calculates all statistics of column col from the counts of its m
+     * distinct residues (in ascending order).
+     */
+    private void calcColumn( final int col, final char[] residues, final int[] counts, final int m ) {
+        final double n = _msa.getNumberOfSequences();
+        final int[] class_counts = new int[ OTHERS + 1 ];
+        double s20 = 0;
+        double s21 = 0;
+        int d20 = 0;
+        int max = 0;
+        int max_non_gap = 0;
+        int gaps = 0;
+        char consensus = MolecularSequence.GAP;
+        for( int i = 0; i < m; ++i ) {
+            final char r = residues[ i ];
+            final int na = counts[ i ];
+            final double pa = na / n;
+            final double x = pa * Math.log( pa );
+            s21 += x;
+            if ( na > max ) {
+                max = na;
+                consensus = r;
+            }
+            if ( r == MolecularSequence.GAP ) {
+                gaps = na;
+            }
+            else {
+                s20 += x;
+                ++d20;
+                if ( na > max_non_gap ) {
+                    max_non_gap = na;
+                }
+            }
+            class_counts[ r < 256 ? CLASSES[ r ] : OTHERS ] += na;
+        }
+        double s6 = 0;
+        double s7 = 0;
+        int d6 = 0;
+        int d7 = 0;
+        for( int i = 0; i <= OTHERS; ++i ) {
+            if ( class_counts[ i ] > 0 ) {
+                final double pa = class_counts[ i ] / n;
+                final double x = pa * Math.log( pa );
+                s7 += x;
+                ++d7;
+                if ( i != OTHERS ) {
+                    s6 += x;
+                    ++d6;
+                }
+            }
+        }
+        _consensus[ col ] = consensus;
+        _values[ ENTROPY_6 ][ col ] = normalize( s6, d6, n, 6 );
+        _values[ ENTROPY_7 ][ col ] = normalize( s7, d7, n, 7 );
+        _values[ ENTROPY_20 ][ col ] = normalize( s20, d20, n, 20 );
+        _values[ ENTROPY_21 ][ col ] = normalize( s21, m, n, 21 );
+        _values[ IDENTITY ][ col ] = max_non_gap / n;
+        _values[ GAPS ][ col ] = gaps / n;
+    }
+
+    /**
+     * Calculates the prefix sums of the values; undefined values (entropies
+     * of columns without residues of one sequence) are counted separately, so
+     * that they only make the averages of the ranges which contain them
+     * undefined.
+     */
+    private void calcSums() {
+        for( int i = 0; i < _values.length; ++i ) {
+            final double[] sums = new double[ getLength() + 1 ];
+            final int[] nans = new int[ getLength() + 1 ];
+            for( int col = 0; col < getLength(); ++col ) {
+                final double v = _values[ i ][ col ];
+                sums[ col + 1 ] = Double.isNaN( v ) ? sums[ col ] : sums[ col ] + v;
+                nans[ col + 1 ] = Double.isNaN( v ) ? nans[ col ] + 1 : nans[ col ];
+            }
+            _sums[ i ] = sums;
+            _nans[ i ] = nans;
+        }
+    }
+
+    public static MsaColumnStatistics calculate( final Msa msa ) {
+        return calculate( msa, Runtime.getRuntime().availableProcessors() );
+    }
+
+    public static MsaColumnStatistics calculate( final Msa msa, final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        final MsaColumnStatistics stats = new MsaColumnStatistics( msa );
+        final int blocks = ( msa.getLength() + BLOCK_SIZE - 1 ) / BLOCK_SIZE;
+        if ( ( threads == 1 ) || ( blocks < 2 ) ) {
+            for( int block = 0; block < blocks; ++block ) {
+                stats.calcBlock( block );
+            }
+        }
+        else {
+            final ForkJoinPool pool = new ForkJoinPool( threads );
+            try {
+                pool.invoke( stats.new BlockTask( 0, blocks ) );
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        stats.calcSums();
+        return stats;
+    }
+
+    private static int entropyIndex( final int k ) {
+        switch ( k ) {
+            case 6:
+                return ENTROPY_6;
+            case 7:
+                return ENTROPY_7;
+            case 20:
+                return ENTROPY_20;
+            case 21:
+                return ENTROPY_21;
+            default:
+                throw new IllegalArgumentException( "illegal value for k: " + k );
+        }
+    }
+
+    /**
+     * As MsaMethods.calcNormalizedShannonsEntropy: s is the sum of pa log pa
+     * over the distinct residue types of the column.
+     */
+    private static double normalize( final double s, final int distinct, final double n, final int k ) {
+        if ( distinct == 1 ) {
+            return 0;
+        }
+        if ( n < k ) {
+            return -( s / ( Math.log( n ) ) );
+        }
+        else {
+            return -( s / ( Math.log( k ) ) );
+        }
+    }
+
+    /**
+     * Copies the non-zero counts of a count array indexed by residue into
+     * residues and counts, and returns their number.
+     */
+    private static int toDense( final int[] residue_counts, final char[] residues, final int[] counts ) {
+        int m = 0;
+        for( int r = 0; r < residue_counts.length; ++r ) {
+            if ( residue_counts[ r ] > 0 ) {
+                residues[ m ] = ( char ) r;
+                counts[ m++ ] = residue_counts[ r ];
+            }
+        }
+        return m;
+    }
+
+    private final class BlockTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int         _first;
+        private final int         _last;
+
+        BlockTask( final int first, final int last ) {
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if ( ( _last - _first ) <= 1 ) {
+                for( int block = _first; block < _last; ++block ) {
+                    calcBlock( block );
+                }
+            }
+            else {
+                final int mid = ( _first + _last ) >>> 1;
+                invokeAll( new BlockTask( _first, mid ), new BlockTask( mid, _last ) );
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.msa;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.msa.ByteMsa.LAYOUT;
+import org.forester.sequence.BasicSequence;
+import org.forester.sequence.MolecularSequence;
+
+/**
+ * Tests for {@link MsaColumnStatistics}: for BasicMsas, DeleteableMsas and
+ * ByteMsas, with one and with several threads, the entropies, consensus,
+ * identity ratios and gap ratios must be the same as those of the per column
+ * methods of {@link MsaMethods}, and the averages over ranges of columns the
+ * same as those of MsaMethods.calcAvgNormalizedShannonsEntropy (apart from
+ * rounding).
+ * <p>
+ * main() compares the running times of the per column methods of MsaMethods
+ * (entropies for k = 7 and 21 in sliding windows of 10 columns, consensus,
+ * identity ratios) with those of MsaColumnStatistics, with one thread and
+ * with all processors, for a random protein alignment (by default 2000
+ * sequences of length 5000).
+ */
+public final class MsaColumnStatisticsTest {
+
+    private final static int[]  K          = { 6, 7, 20, 21 };
+    private final static String AA         = "ARNDCQEGHILKMFPSTWYVX-*BZ";
+    private final static double ZERO_DIFF  = 1.0E-9;
+
+    public static boolean test() {
+        try {
+            final Random r = new Random( 5 );
+            final Msa aa = createRandomMsa( 37, 150, AA, r );
+            final List<Msa> msas = new ArrayList<>();
+            msas.add( aa );
+            msas.add( DeleteableMsa.createInstance( createRandomMsa( 23, 70, AA, r ) ) );
+            msas.add( ByteMsa.createInstance( aa, LAYOUT.COLUMNS, false ) );
+            msas.add( ByteMsa.createInstance( createRandomMsa( 19, 130, "ACGTN-", r ), LAYOUT.ROWS, true ) );
+            // one sequence, residues beyond 255
+            msas.add( createRandomMsa( 1, 10, AA, r ) );
+            final Msa wide = createRandomMsa( 12, 20, AA, r );
+            wide.setResidueAt( 3, 4, '\u0416' );
+            wide.setResidueAt( 7, 4, '\u0416' );
+            wide.setResidueAt( 2, 9, '\u03b1' );
+            msas.add( wide );
+            for( final Msa msa : msas ) {
+                for( final int threads : new int[] { 1, 4 } ) {
+                    final String error = compare( msa, MsaColumnStatistics.calculate( msa, threads ) );
+                    if ( error != null ) {
+                        return fail( msa.getClass().getSimpleName() + " (" + msa.getNumberOfSequences() + "x"
+                                + msa.getLength() + "), " + threads + " thread(s): " + error );
+                    }
+                }
+            }
+            final MsaColumnStatistics stats = MsaColumnStatistics.calculate( aa );
+            for( final int[] range : new int[][] { { 0, -1 }, { -1, 3 }, { 5, 150 }, { 6, 5 } } ) {
+                try {
+                    stats.calcAvgGapRatio( range[ 0 ], range[ 1 ] );
+                    return fail( "illegal range of columns " + range[ 0 ] + "-" + range[ 1 ] );
+                }
+                catch ( final IllegalArgumentException e ) {
+                    // expected
+                }
+            }
+            try {
+                stats.getNormalizedShannonsEntropy( 4, 0 );
+                return fail( "illegal k" );
+            }
+            catch ( final IllegalArgumentException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns null if the statistics are the same as those of MsaMethods,
+     * otherwise the difference.
+     */
+    private static String compare( final Msa msa, final MsaColumnStatistics stats ) {
+        if ( stats.getLength() != msa.getLength() ) {
+            return "length";
+        }
+        if ( !stats.getConsensusSequence().equals( MsaMethods.calculateMajorityConsensusSequence( msa ) ) ) {
+            return "consensus";
+        }
+        for( int col = 0; col < msa.getLength(); ++col ) {
+            for( final int k : K ) {
+                if ( !isEqual( stats.getNormalizedShannonsEntropy( k, col ),
+                               MsaMethods.calcNormalizedShannonsEntropy( k, msa, col ) ) ) {
+                    return "entropy (k=" + k + ") of column " + col;
+                }
+            }
+            if ( stats.getIdentityRatio( col ) != MsaMethods.calculateIdentityRatio( msa, col ) ) {
+                return "identity ratio of column " + col;
+            }
+            if ( stats.getGapRatio( col ) != ( ( double ) MsaMethods.calcGapSumPerColumn( msa, col ) / msa
+                    .getNumberOfSequences() ) ) {
+                return "gap ratio of column " + col;
+            }
+        }
+        for( int first = 0; first < msa.getLength(); first += 3 ) {
+            final int last = Math.min( msa.getLength() - 1, first + 9 );
+            for( final int k : K ) {
+                if ( !isEqual( stats.calcAvgNormalizedShannonsEntropy( k, first, last ),
+                               MsaMethods.calcAvgNormalizedShannonsEntropy( k, msa, first, last ) ) ) {
+                    return "average entropy (k=" + k + ") of columns " + first + "-" + last;
+                }
+            }
+            if ( !isEqual( stats.calcAvgIdentityRatio( first, last ),
+                           MsaMethods.calculateIdentityRatio( first, last, msa ).arithmeticMean() ) ) {
+                return "average identity ratio of columns " + first + "-" + last;
+            }
+        }
+        if ( !isEqual( stats.calcAvgGapRatio( 0, msa.getLength() - 1 ), MsaMethods.calcGapRatio( msa ) ) ) {
+            return "gap ratio";
+        }
+        return null;
+    }
+
+    private static Msa createRandomMsa( final int rows, final int length, final String residues, final Random r ) {
+        final List<MolecularSequence> seqs = new ArrayList<>();
+        for( int row = 0; row < rows; ++row ) {
+            final char[] s = new char[ length ];
+            for( int col = 0; col < length; ++col ) {
+                // columns with few residues, to have conserved columns as well
+                final int n = ( col % 4 ) == 0 ? 1 + ( col % 3 ) : residues.length();
+                s[ col ] = residues.charAt( r.nextInt( n ) );
+            }
+            seqs.add( new BasicSequence( "seq_" + row, s, MolecularSequence.TYPE.AA ) );
+        }
+        return BasicMsa.createInstance( seqs );
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "MsaColumnStatistics test failed: " + msg );
+        return false;
+    }
+
+    private static boolean isEqual( final double a, final double b ) {
+        return ( Double.isNaN( a ) && Double.isNaN( b ) ) || ( Math.abs( a - b ) < ZERO_DIFF );
+    }
+
+    public static void main( final String[] args ) {
+        final int rows = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 2000;
+        final int length = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 5000;
+        final Msa msa = createRandomMsa( rows, length, AA, new Random( 42 ) );
+        final int threads = Runtime.getRuntime().availableProcessors();
+        for( int round = 0; round < 3; ++round ) {
+            long time = System.currentTimeMillis();
+            double x = 0;
+            for( int col = 0; col < ( length - 9 ); ++col ) {
+                x += MsaMethods.calcAvgNormalizedShannonsEntropy( 7, msa, col, col + 9 );
+                x += MsaMethods.calcAvgNormalizedShannonsEntropy( 21, msa, col, col + 9 );
+                x += MsaMethods.calculateIdentityRatio( msa, col );
+            }
+            x += MsaMethods.calculateMajorityConsensusSequence( msa ).length();
+            System.out.print( "MsaMethods: " + ( System.currentTimeMillis() - time ) + "ms" );
+            for( final int t : new int[] { 1, threads } ) {
+                time = System.currentTimeMillis();
+                final MsaColumnStatistics stats = MsaColumnStatistics.calculate( msa, t );
+                double y = 0;
+                for( int col = 0; col < ( length - 9 ); ++col ) {
+                    y += stats.calcAvgNormalizedShannonsEntropy( 7, col, col + 9 );
+                    y += stats.calcAvgNormalizedShannonsEntropy( 21, col, col + 9 );
+                    y += stats.getIdentityRatio( col );
+                }
+                y += stats.getConsensusSequence().length();
+                System.out.print( ", MsaColumnStatistics (" + t + " thread(s)): " + ( System.currentTimeMillis() - time )
+                        + "ms" + ( isEqual( x, y ) ? "" : " (different result)" ) );
+            }
+            System.out.println();
+        }
+    }
+
+    private MsaColumnStatisticsTest() {
+        // static tests only
+    }
+}
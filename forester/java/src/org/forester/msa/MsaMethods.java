@@ -146,6 +146,12 @@ public final class MsaMethods {
 
     public static double calcGapRatio( final Msa msa ) {
         int gaps = 0;
+        if ( ( msa instanceof ByteMsa ) || ( msa instanceof DeleteableMsa ) ) {
+            for( int col = 0; col < msa.getLength(); ++col ) {
+                gaps += calcGapSumPerColumn( msa, col );
+            }
+            return ( double ) gaps / ( msa.getLength() * msa.getNumberOfSequences() );
+        }
         for( int seq = 0; seq < msa.getNumberOfSequences(); ++seq ) {
             for( int i = 0; i < msa.getLength(); ++i ) {
                 if ( msa.getResidueAt( seq, i ) == MolecularSequence.GAP ) {
@@ -157,6 +163,12 @@ public final class MsaMethods {
     }
 
     public static int calcGapSumPerColumn( final Msa msa, final int col ) {
+        if ( msa instanceof ByteMsa ) {
+            return ( ( ByteMsa ) msa ).getGapCount( col );
+        }
+        if ( msa instanceof DeleteableMsa ) {
+            return ( ( DeleteableMsa ) msa ).getGapCount( col );
+        }
         int gap_rows = 0;
         for( int j = 0; j < msa.getNumberOfSequences(); ++j ) {
             if ( msa.isGapAt( j, col ) ) {
@@ -286,6 +298,15 @@ public final class MsaMethods {
     public static SortedMap<Character, Integer> calculateResidueDestributionPerColumn( final Msa msa,
                                                                                        final int column ) {
         final SortedMap<Character, Integer> map = new TreeMap<>();
+        final int[] counts = obtainResidueCounts( msa, column );
+        if ( counts != null ) {
+            for( int r = 0; r < counts.length; ++r ) {
+                if ( ( counts[ r ] > 0 ) && ( r != MolecularSequence.GAP ) ) {
+                    map.put( ( char ) r, counts[ r ] );
+                }
+            }
+            return map;
+        }
         for( final Character r : msa.getColumnAt( column ) ) {
             if ( r != MolecularSequence.GAP ) {
                 if ( !map.containsKey( r ) ) {
@@ -302,6 +323,15 @@ public final class MsaMethods {
     public static SortedMap<Character, Integer> calculateResidueDestributionPerColumnAllowGaps( final Msa msa,
                                                                                                 final int column ) {
         final SortedMap<Character, Integer> map = new TreeMap<>();
+        final int[] counts = obtainResidueCounts( msa, column );
+        if ( counts != null ) {
+            for( int r = 0; r < counts.length; ++r ) {
+                if ( counts[ r ] > 0 ) {
+                    map.put( ( char ) r, counts[ r ] );
+                }
+            }
+            return map;
+        }
         for( final Character r : msa.getColumnAt( column ) ) {
             if ( !map.containsKey( r ) ) {
                 map.put( r, 1 );
@@ -374,6 +404,15 @@ public final class MsaMethods {
 
     final private static HashMap<Character, Integer> calcResidueDistribution20( final Msa msa, final int col ) {
         final HashMap<Character, Integer> counts = new HashMap<>();
+        final int[] residue_counts = obtainResidueCounts( msa, col );
+        if ( residue_counts != null ) {
+            for( int r = 0; r < residue_counts.length; ++r ) {
+                if ( ( residue_counts[ r ] > 0 ) && ( r != MolecularSequence.GAP ) ) {
+                    counts.put( ( char ) r, residue_counts[ r ] );
+                }
+            }
+            return counts;
+        }
         for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
             final char c = msa.getResidueAt( row, col );
             if ( c != MolecularSequence.GAP ) {
@@ -390,6 +429,15 @@ public final class MsaMethods {
 
     final private static HashMap<Character, Integer> calcResidueDistribution21( final Msa msa, final int col ) {
         final HashMap<Character, Integer> counts = new HashMap<>();
+        final int[] residue_counts = obtainResidueCounts( msa, col );
+        if ( residue_counts != null ) {
+            for( int r = 0; r < residue_counts.length; ++r ) {
+                if ( residue_counts[ r ] > 0 ) {
+                    counts.put( ( char ) r, residue_counts[ r ] );
+                }
+            }
+            return counts;
+        }
         for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
             final char c = msa.getResidueAt( row, col );
             if ( !counts.containsKey( c ) ) {
@@ -403,39 +451,37 @@ public final class MsaMethods {
     }
 
     final private static HashMap<Character, Integer> calcResidueDistribution6( final Msa msa, final int col ) {
-        // Residues are classified into one of tex2html_wrap199 types:
-        // aliphatic [AVLIMC], aromatic [FWYH], polar [STNQ], positive [KR], negative [DE],
-        // special conformations [GP] and gaps. This convention follows that
-        // of Mirny & Shakhnovich (1999, J Mol Biol 291:177-196).
+        return calcResidueClassDistribution( msa, col, false );
+    }
+
+    final private static HashMap<Character, Integer> calcResidueDistribution7( final Msa msa, final int col ) {
+        return calcResidueClassDistribution( msa, col, true );
+    }
+
+    /**
+     * Distribution of the residue classes of calcResidueClass; the residues
+     * of no class (gaps and others) are counted as '-' if count_others is
+     * true, and ignored otherwise.
+     */
+    final private static HashMap<Character, Integer> calcResidueClassDistribution( final Msa msa,
+                                                                                   final int col,
+                                                                                   final boolean count_others ) {
         final HashMap<Character, Integer> counts = new HashMap<>();
-        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
-            final char c = msa.getResidueAt( row, col );
-            char x;
-            if ( ( c == 'A' ) || ( c == 'V' ) || ( c == 'L' ) || ( c == 'I' ) || ( c == 'M' ) || ( c == 'C' ) ) {
-                // aliphatic
-                x = 'a';
-            }
-            else if ( ( c == 'F' ) || ( c == 'W' ) || ( c == 'Y' ) || ( c == 'H' ) ) {
-                // aromatic
-                x = 'r';
-            }
-            else if ( ( c == 'S' ) || ( c == 'T' ) || ( c == 'N' ) || ( c == 'Q' ) ) {
-                // polar
-                x = 'p';
-            }
-            else if ( ( c == 'K' ) || ( c == 'R' ) ) {
-                // positive
-                x = 'o';
-            }
-            else if ( ( c == 'D' ) || ( c == 'E' ) ) {
-                // negative
-                x = 'e';
-            }
-            else if ( ( c == 'G' ) || ( c == 'P' ) ) {
-                // aliphatic - special conformation
-                x = 's';
+        final int[] residue_counts = obtainResidueCounts( msa, col );
+        if ( residue_counts != null ) {
+            for( int r = 0; r < residue_counts.length; ++r ) {
+                if ( residue_counts[ r ] > 0 ) {
+                    final char x = calcResidueClass( ( char ) r );
+                    if ( count_others || ( x != MolecularSequence.GAP ) ) {
+                        counts.merge( x, residue_counts[ r ], Integer::sum );
+                    }
+                }
             }
-            else {
+            return counts;
+        }
+        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
+            final char x = calcResidueClass( msa.getResidueAt( row, col ) );
+            if ( !count_others && ( x == MolecularSequence.GAP ) ) {
                 continue;
             }
             if ( !counts.containsKey( x ) ) {
@@ -448,46 +494,49 @@ public final class MsaMethods {
         return counts;
     }
 
-    final private static HashMap<Character, Integer> calcResidueDistribution7( final Msa msa, final int col ) {
+    /**
+     * Returns the cached residue counts of column col for msas which keep
+     * them (ByteMsa, DeleteableMsa), null otherwise.
+     */
+    final private static int[] obtainResidueCounts( final Msa msa, final int col ) {
+        if ( msa instanceof ByteMsa ) {
+            return ( ( ByteMsa ) msa ).getResidueCounts( col );
+        }
+        else if ( msa instanceof DeleteableMsa ) {
+            return ( ( DeleteableMsa ) msa ).getResidueCounts( col );
+        }
+        return null;
+    }
+
+    final static char calcResidueClass( final char c ) {
         // Residues are classified into one of tex2html_wrap199 types:
         // aliphatic [AVLIMC], aromatic [FWYH], polar [STNQ], positive [KR], negative [DE],
         // special conformations [GP] and gaps. This convention follows that
         // of Mirny & Shakhnovich (1999, J Mol Biol 291:177-196).
-        final HashMap<Character, Integer> counts = new HashMap<>();
-        for( int row = 0; row < msa.getNumberOfSequences(); ++row ) {
-            final char c = msa.getResidueAt( row, col );
-            char x = '-';
-            if ( ( c == 'A' ) || ( c == 'V' ) || ( c == 'L' ) || ( c == 'I' ) || ( c == 'M' ) || ( c == 'C' ) ) {
-                // aliphatic
-                x = 'a';
-            }
-            else if ( ( c == 'F' ) || ( c == 'W' ) || ( c == 'Y' ) || ( c == 'H' ) ) {
-                // aromatic
-                x = 'r';
-            }
-            else if ( ( c == 'S' ) || ( c == 'T' ) || ( c == 'N' ) || ( c == 'Q' ) ) {
-                // polar
-                x = 'p';
-            }
-            else if ( ( c == 'K' ) || ( c == 'R' ) ) {
-                // positive
-                x = 'o';
-            }
-            else if ( ( c == 'D' ) || ( c == 'E' ) ) {
-                // negative
-                x = 'e';
-            }
-            else if ( ( c == 'G' ) || ( c == 'P' ) ) {
-                // aliphatic - special conformation
-                x = 's';
-            }
-            if ( !counts.containsKey( x ) ) {
-                counts.put( x, 1 );
-            }
-            else {
-                counts.put( x, 1 + counts.get( x ) );
-            }
+        if ( ( c == 'A' ) || ( c == 'V' ) || ( c == 'L' ) || ( c == 'I' ) || ( c == 'M' ) || ( c == 'C' ) ) {
+            // aliphatic
+            return 'a';
         }
-        return counts;
+        else if ( ( c == 'F' ) || ( c == 'W' ) || ( c == 'Y' ) || ( c == 'H' ) ) {
+            // aromatic
+            return 'r';
+        }
+        else if ( ( c == 'S' ) || ( c == 'T' ) || ( c == 'N' ) || ( c == 'Q' ) ) {
+            // polar
+            return 'p';
+        }
+        else if ( ( c == 'K' ) || ( c == 'R' ) ) {
+            // positive
+            return 'o';
+        }
+        else if ( ( c == 'D' ) || ( c == 'E' ) ) {
+            // negative
+            return 'e';
+        }
+        else if ( ( c == 'G' ) || ( c == 'P' ) ) {
+            // aliphatic - special conformation
+            return 's';
+        }
+        return '-';
     }
 }
@@ -25,13 +25,15 @@ import org.forester.util.ForesterUtil;
 public final class GapContribution implements Comparable<GapContribution> {
 
     private final String _id;
+    private final int    _row;
     private double       _value;
 
-    GapContribution( final String id ) {
+    GapContribution( final String id, final int row ) {
         if ( ForesterUtil.isEmpty( id ) ) {
             throw new IllegalArgumentException( "id is empty or null" );
         }
         _id = id;
+        _row = row;
         _value = 0;
     }
 
@@ -65,6 +67,7 @@ public final class GapContribution implements Comparable<GapContribution> {
         else if ( getValue() > o.getValue() ) {
             return -1;
         }
-        return 0;
+        // equal contributions in the order of the rows
+        return Integer.compare( _row, o._row );
     }
 }
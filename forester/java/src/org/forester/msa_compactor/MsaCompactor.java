@@ -30,6 +30,7 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -39,7 +40,7 @@ import org.forester.evoinference.distance.NeighborJoiningF;
 import org.forester.evoinference.distance.PairwiseDistanceCalculator;
 import org.forester.evoinference.distance.PairwiseDistanceCalculator.PWD_DISTANCE_METHOD;
 import org.forester.evoinference.matrix.distance.BasicSymmetricalDistanceMatrix;
-import org.forester.evoinference.tools.BootstrapResampler;
+import org.forester.evoinference.tools.BootstrapPipeline;
 import org.forester.io.parsers.nhx.NHXParser.TAXONOMY_EXTRACTION;
 import org.forester.io.parsers.phyloxml.PhyloXmlDataFormatException;
 import org.forester.io.parsers.util.ParserUtils;
@@ -51,7 +52,6 @@ import org.forester.msa.Msa;
 import org.forester.msa.Msa.MSA_FORMAT;
 import org.forester.msa.MsaInferrer;
 import org.forester.msa.MsaMethods;
-import org.forester.msa.ResampleableMsa;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyMethods;
 import org.forester.phylogeny.PhylogenyMethods.DESCENDANT_SORT_PRIORITY;
@@ -61,7 +61,6 @@ import org.forester.phylogeny.data.NodeVisualData.NodeFill;
 import org.forester.phylogeny.data.NodeVisualData.NodeShape;
 import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
 import org.forester.sequence.MolecularSequence;
-import org.forester.tools.ConfidenceAssessor;
 import org.forester.util.BasicDescriptiveStatistics;
 import org.forester.util.DescriptiveStatistics;
 import org.forester.util.ForesterUtil;
@@ -128,12 +127,8 @@ public class MsaCompactor {
 
     public final List<MsaProperties> chart( final int step, final boolean realign, final boolean normalize_for_effective_seq_length )
             throws IOException, InterruptedException {
-        final GapContribution stats[] = calcGapContribtionsStats( normalize_for_effective_seq_length );
-        final List<String> to_remove_ids = new ArrayList<String>();
+        final PriorityQueue<GapContribution> to_remove = calcGapContribtionsHeap( normalize_for_effective_seq_length );
         final List<MsaProperties> msa_props = new ArrayList<MsaProperties>();
-        for( final GapContribution gap_gontribution : stats ) {
-            to_remove_ids.add( gap_gontribution.getId() );
-        }
         Phylogeny phy = null;
         if ( _phylogentic_inference ) {
             System.out.println( "calculating phylogentic tree..." );
@@ -155,7 +150,7 @@ public class MsaCompactor {
         System.out.println();
         int i = 0;
         while ( _msa.getNumberOfSequences() > x ) {
-            final String id = to_remove_ids.get( i );
+            final String id = to_remove.poll().getId();
             _msa.deleteRow( id, false );
             if ( realign && isPrintMsaStatsWriteOutfileAndRealign( i ) ) {
                 removeGapColumns();
@@ -301,12 +296,8 @@ public class MsaCompactor {
 
     public final List<MsaProperties> removeViaGapAverage( final double mean_gapiness ) throws IOException,
     InterruptedException {
-        final GapContribution stats[] = calcGapContribtionsStats( _normalize_for_effective_seq_length );
-        final List<String> to_remove_ids = new ArrayList<String>();
+        final PriorityQueue<GapContribution> to_remove = calcGapContribtionsHeap( _normalize_for_effective_seq_length );
         final List<MsaProperties> msa_props = new ArrayList<MsaProperties>();
-        for( final GapContribution gap_gontribution : stats ) {
-            to_remove_ids.add( gap_gontribution.getId() );
-        }
         Phylogeny phy = null;
         if ( _phylogentic_inference ) {
             System.out.println( "calculating phylogentic tree..." );
@@ -321,7 +312,7 @@ public class MsaCompactor {
         System.out.println();
         int i = 0;
         while ( MsaMethods.calcGapRatio( _msa ) > mean_gapiness ) {
-            final String id = to_remove_ids.get( i );
+            final String id = to_remove.poll().getId();
             _removed_seq_ids.add( id );
             final MolecularSequence deleted = _msa.deleteRow( id, true );
             _removed_seqs.add( deleted );
@@ -359,12 +350,8 @@ public class MsaCompactor {
     }
 
     public List<MsaProperties> removeViaLength( final int length ) throws IOException, InterruptedException {
-        final GapContribution stats[] = calcGapContribtionsStats( _normalize_for_effective_seq_length );
-        final List<String> to_remove_ids = new ArrayList<String>();
+        final PriorityQueue<GapContribution> to_remove = calcGapContribtionsHeap( _normalize_for_effective_seq_length );
         final List<MsaProperties> msa_props = new ArrayList<MsaProperties>();
-        for( final GapContribution gap_gontribution : stats ) {
-            to_remove_ids.add( gap_gontribution.getId() );
-        }
         Phylogeny phy = null;
         if ( _phylogentic_inference ) {
             System.out.println( "calculating phylogentic tree..." );
@@ -379,7 +366,7 @@ public class MsaCompactor {
         System.out.println();
         int i = 0;
         while ( _msa.getLength() > length ) {
-            final String id = to_remove_ids.get( i );
+            final String id = to_remove.poll().getId();
             _removed_seq_ids.add( id );
             final MolecularSequence deleted = _msa.deleteRow( id, true );
             _removed_seqs.add( deleted );
@@ -417,11 +404,11 @@ public class MsaCompactor {
 
     public final List<MsaProperties> removeWorstOffenders( final int to_remove ) throws IOException,
     InterruptedException {
-        final GapContribution stats[] = calcGapContribtionsStats( _normalize_for_effective_seq_length );
+        final PriorityQueue<GapContribution> heap = calcGapContribtionsHeap( _normalize_for_effective_seq_length );
         final List<String> to_remove_ids = new ArrayList<String>();
         final List<MsaProperties> msa_props = new ArrayList<MsaProperties>();
         for( int j = 0; j < to_remove; ++j ) {
-            to_remove_ids.add( stats[ j ].getId() );
+            to_remove_ids.add( heap.poll().getId() );
         }
         Phylogeny phy = null;
         if ( _phylogentic_inference ) {
@@ -561,39 +548,35 @@ public class MsaCompactor {
     }
 
     private final GapContribution[] calcGapContribtions( final boolean normalize_for_effective_seq_length ) {
-        final double gappiness[] = calcGappiness();
+        final double gappiness[] = _msa.calcGappiness();
+        final int length = _msa.getLength();
         final GapContribution stats[] = new GapContribution[ _msa.getNumberOfSequences() ];
         for( int row = 0; row < _msa.getNumberOfSequences(); ++row ) {
-            stats[ row ] = new GapContribution( _msa.getIdentifier( row ) );
-            for( int col = 0; col < _msa.getLength(); ++col ) {
+            stats[ row ] = new GapContribution( _msa.getIdentifier( row ), row );
+            int non_gaps = 0;
+            for( int col = 0; col < length; ++col ) {
                 if ( !_msa.isGapAt( row, col ) ) {
                     stats[ row ].addToValue( gappiness[ col ] );
+                    ++non_gaps;
                 }
             }
             if ( normalize_for_effective_seq_length ) {
-                stats[ row ].divideValue( calcNonGapResidues( _msa.getSequence( row ) ) );
+                stats[ row ].divideValue( non_gaps );
             }
             else {
-                stats[ row ].divideValue( _msa.getLength() );
+                stats[ row ].divideValue( length );
             }
         }
         return stats;
     }
 
-    final private GapContribution[] calcGapContribtionsStats( final boolean normalize_for_effective_seq_length ) {
-        final GapContribution stats[] = calcGapContribtions( normalize_for_effective_seq_length );
-        Arrays.sort( stats );
-        return stats;
-    }
-
-    private final double[] calcGappiness() {
-        final int l = _msa.getLength();
-        final double gappiness[] = new double[ l ];
-        final int seqs = _msa.getNumberOfSequences();
-        for( int i = 0; i < l; ++i ) {
-            gappiness[ i ] = ( double ) MsaMethods.calcGapSumPerColumn( _msa, i ) / seqs;
-        }
-        return gappiness;
+    /**
+     * Returns the gap contributions as max-heap, to be polled one by one as
+     * sequences are removed (rather than sorting all of them upfront, as
+     * usually only part of them is removed).
+     */
+    final private PriorityQueue<GapContribution> calcGapContribtionsHeap( final boolean normalize_for_effective_seq_length ) {
+        return new PriorityQueue<GapContribution>( Arrays.asList( calcGapContribtions( normalize_for_effective_seq_length ) ) );
     }
 
     private final Phylogeny collapse( final Msa msa, final int threshold ) {
@@ -673,16 +656,11 @@ public class MsaCompactor {
         final Phylogeny master_phy = inferNJphylogeny( PWD_DISTANCE_METHOD.KIMURA_DISTANCE, _msa, true, matrix );
         final int seed = 15;
         final int n = 100;
-        final ResampleableMsa resampleable_msa = new ResampleableMsa( _msa );
-        final int[][] resampled_column_positions = BootstrapResampler.createResampledColumnPositions( _msa.getLength(),
-                                                                                                      n,
-                                                                                                      seed );
-        final Phylogeny[] eval_phys = new Phylogeny[ n ];
-        for( int i = 0; i < n; ++i ) {
-            resampleable_msa.resample( resampled_column_positions[ i ] );
-            eval_phys[ i ] = inferNJphylogeny( PWD_DISTANCE_METHOD.KIMURA_DISTANCE, resampleable_msa, false, null );
-        }
-        ConfidenceAssessor.evaluate( "bootstrap", eval_phys, master_phy, true, 1 );
+        BootstrapPipeline.createInstance( PWD_DISTANCE_METHOD.KIMURA_DISTANCE ).evaluate( "bootstrap",
+                                                                                          _msa,
+                                                                                          master_phy,
+                                                                                          n,
+                                                                                          seed );
         PhylogenyMethods.extractFastaInformation( master_phy );
         return master_phy;
     }
@@ -0,0 +1,502 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.phylogeny;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * The rerooting tree traversal behind PhylogenyMethods.madRoot.
+ * <p>
+ * All per-node sums are kept in arrays indexed by postorder position, and the
+ * external nodes of each subtree form a contiguous range of external node
+ * indices (their order in a postorder traversal). Tip pairs are not stored:
+ * their contributions are streamed, either into the sums of the node at
+ * which they meet (visiting, for each internal node, the pairs between its
+ * child subtrees) or into the per-tip sums (visiting, for each tip, the other
+ * tips from the left to the right, via the ranges of its ancestors). Memory
+ * is therefore O(n), time O(n^2).
+ * <p>
+ * Both kinds of visits are split into work units which do not depend on the
+ * number of threads, and their results are combined in a fixed order, so that
+ * the result is the same regardless of the number of threads.
+ * <p>
+ * Branches are identified across rerooting by the bipartition they induce:
+ * the side not containing external node 0 is a contiguous range of external
+ * node indices (it is a clade of the tree rooted at external node 0, which
+ * comes first in the postorder of the original tree), and so is determined
+ * by its size and the sum of its external node indices.
+ */
+final class MadRooting {
+
+    private final static int                          MIN_PAIRS_PER_UNIT = 1 << 16;
+    private final static int                          TIPS_PER_UNIT      = 64;
+    private final static double                       EPSILON            = 1e-9;
+    private final int[]                               _child_start;
+    private final int[]                               _children;
+    private final double[]                            _depth;
+    private final Map<PhylogenyNode, Integer>         _index;
+    private final int                                 _max_depth;
+    private final int                                 _n;
+    private final PhylogenyNode[]                     _nodes;
+    private final int[]                               _parent;
+    private final Phylogeny                           _phy;
+    private final int                                 _threads;
+    private final double[]                            _tip_depth;
+    private final int[]                               _tip_end;
+    private final int[]                               _tip_node;
+    private final int[]                               _tip_start;
+
+    private MadRooting( final Phylogeny phy, final int threads ) {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        _phy = phy;
+        _threads = threads;
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNodeIterator it = phy.iteratorPostorder(); it.hasNext(); ) {
+            nodes.add( it.next() );
+        }
+        final int size = nodes.size();
+        _nodes = nodes.toArray( new PhylogenyNode[ size ] );
+        _index = new IdentityHashMap<PhylogenyNode, Integer>( 2 * size );
+        for( int i = 0; i < size; ++i ) {
+            _index.put( _nodes[ i ], i );
+        }
+        _parent = new int[ size ];
+        _child_start = new int[ size + 1 ];
+        _children = new int[ size - 1 ];
+        _tip_start = new int[ size ];
+        _tip_end = new int[ size ];
+        int tips = 0;
+        int c = 0;
+        for( int v = 0; v < size; ++v ) {
+            final PhylogenyNode node = _nodes[ v ];
+            _parent[ v ] = node.isRoot() ? -1 : _index.get( node.getParent() );
+            _child_start[ v ] = c;
+            if ( node.isExternal() ) {
+                _tip_start[ v ] = tips;
+                _tip_end[ v ] = ++tips;
+            }
+            else {
+                for( int d = 0; d < node.getNumberOfDescendants(); ++d ) {
+                    _children[ c++ ] = _index.get( node.getChildNode( d ) );
+                }
+                _tip_start[ v ] = _tip_start[ _children[ _child_start[ v ] ] ];
+                _tip_end[ v ] = _tip_end[ _children[ c - 1 ] ];
+            }
+        }
+        _child_start[ size ] = c;
+        _n = tips;
+        _tip_node = new int[ _n ];
+        _tip_depth = new double[ _n ];
+        _depth = new double[ size ];
+        int max_depth = 0;
+        final int[] steps = new int[ size ];
+        for( int v = size - 2; v >= 0; --v ) {
+            final int p = _parent[ v ];
+            _depth[ v ] = _depth[ p ] + nonNegative( _nodes[ v ].getDistanceToParent() );
+            steps[ v ] = steps[ p ] + 1;
+            max_depth = Math.max( max_depth, steps[ v ] );
+        }
+        _max_depth = max_depth;
+        for( int v = 0; v < size; ++v ) {
+            if ( _nodes[ v ].isExternal() ) {
+                _tip_node[ _tip_start[ v ] ] = v;
+                _tip_depth[ _tip_start[ v ] ] = _depth[ v ];
+            }
+        }
+    }
+
+    private final void execute() {
+        final int size = _nodes.length;
+        final int root = size - 1;
+        // Pass 1: the "within-subtree" deviation sums, from the pairs meeting
+        // at each node: dwn = sum dev^2 over pairs with LCA inside the subtree,
+        // w0 = sum_{i!=j in subtree} 1/d^2 (ordered), w1 = sum_{i!=j in subtree}
+        // (2*depth[j]/d^2 - 1/d) (j second), w2 = sum_{i!=j in subtree}
+        // (2*depth[j]/d - 1)^2 (j second).
+        final double[] down_within = new double[ size ];
+        final double[] w0 = new double[ size ];
+        final double[] w1 = new double[ size ];
+        final double[] w2 = new double[ size ];
+        final List<int[]> units = createPairUnits();
+        final double[][] unit_sums = new double[ units.size() ][];
+        run( units.size(), u -> unit_sums[ u ] = sumPairs( units.get( u ) ) );
+        int u = 0;
+        for( int v = 0; v < size; ++v ) {
+            double dwn = 0, sw0 = 0, sw1 = 0, sw2 = 0;
+            for( int c = _child_start[ v ]; c < _child_start[ v + 1 ]; ++c ) {
+                final int child = _children[ c ];
+                dwn += down_within[ child ];
+                sw0 += w0[ child ];
+                sw1 += w1[ child ];
+                sw2 += w2[ child ];
+            }
+            while ( ( u < units.size() ) && ( units.get( u )[ 0 ] == v ) ) {
+                dwn += unit_sums[ u ][ 0 ];
+                sw0 += unit_sums[ u ][ 1 ];
+                sw1 += unit_sums[ u ][ 2 ];
+                sw2 += unit_sums[ u ][ 3 ];
+                unit_sums[ u++ ] = null;
+            }
+            down_within[ v ] = dwn;
+            w0[ v ] = sw0;
+            w1[ v ] = sw1;
+            w2[ v ] = sw2;
+        }
+        // Pass 2: per-tip sums over all other tips, then per-subtree "all-i"
+        // sums a0,a1,a2 (the between-set cross sums for a branch are then
+        // b_k = a_k - w_k).
+        final double[] colsum0 = new double[ _n ];
+        final double[] colsum_inv = new double[ _n ];
+        run( ( _n + TIPS_PER_UNIT - 1 ) / TIPS_PER_UNIT, t -> sumTips( t * TIPS_PER_UNIT,
+                                                                        Math.min( _n, ( t + 1 ) * TIPS_PER_UNIT ),
+                                                                        colsum0,
+                                                                        colsum_inv ) );
+        final double[] b0 = new double[ size ];
+        final double[] b1 = new double[ size ];
+        final double[] b2 = new double[ size ];
+        final double[] a0 = new double[ size ];
+        final double[] a1 = new double[ size ];
+        final double[] a2 = new double[ size ];
+        for( int v = 0; v < size; ++v ) {
+            if ( _nodes[ v ].isExternal() ) {
+                final int t = _tip_start[ v ];
+                a0[ v ] = colsum0[ t ];
+                a1[ v ] = ( 2.0 * _tip_depth[ t ] * colsum0[ t ] ) - colsum_inv[ t ];
+                a2[ v ] = ( ( 4.0 * _tip_depth[ t ] * _tip_depth[ t ] * colsum0[ t ] )
+                        - ( 4.0 * _tip_depth[ t ] * colsum_inv[ t ] ) ) + ( _n - 1 );
+            }
+            else {
+                for( int c = _child_start[ v ]; c < _child_start[ v + 1 ]; ++c ) {
+                    a0[ v ] += a0[ _children[ c ] ];
+                    a1[ v ] += a1[ _children[ c ] ];
+                    a2[ v ] += a2[ _children[ c ] ];
+                }
+            }
+            b0[ v ] = a0[ v ] - w0[ v ];
+            b1[ v ] = a1[ v ] - w1[ v ];
+            b2[ v ] = a2[ v ] - w2[ v ];
+        }
+        // Pass 3 (pre-order): up_within[node] = deviation sum of the pairs
+        // whose ancestor lies in the complement of subtree(node), via the
+        // rerooting recursion, so every branch's total is O(1).
+        final double[] up_within = new double[ size ];
+        for( int p = root; p >= 0; --p ) {
+            if ( _child_start[ p ] == _child_start[ p + 1 ] ) {
+                continue;
+            }
+            double sum_children_down = 0;
+            double sum_children_eval_at_p = 0;
+            for( int c = _child_start[ p ]; c < _child_start[ p + 1 ]; ++c ) {
+                final int child = _children[ c ];
+                sum_children_down += down_within[ child ];
+                sum_children_eval_at_p += evalCross( _depth[ child ],
+                                                     b0[ child ],
+                                                     b1[ child ],
+                                                     b2[ child ],
+                                                     nonNegative( _nodes[ child ].getDistanceToParent() ) );
+            }
+            // cross deviation among all groups meeting at p (its child
+            // subtrees and its complement)
+            final double sc_p = p == root ? 0.0 : evalCross( _depth[ p ], b0[ p ], b1[ p ], b2[ p ], 0.0 );
+            final double cross_among = ( sum_children_eval_at_p + sc_p ) / 2.0;
+            for( int c = _child_start[ p ]; c < _child_start[ p + 1 ]; ++c ) {
+                final int child = _children[ c ];
+                final double eval_c_at_p = evalCross( _depth[ child ],
+                                                      b0[ child ],
+                                                      b1[ child ],
+                                                      b2[ child ],
+                                                      nonNegative( _nodes[ child ].getDistanceToParent() ) );
+                up_within[ child ] = up_within[ p ] + ( sum_children_down - down_within[ child ] )
+                        + ( cross_among - eval_c_at_p );
+            }
+        }
+        // Choose the branch and position minimizing the total ancestor
+        // deviation, and record each branch's minimal MAD value (=
+        // sqrt(ssd / number-of-pairs)) keyed by its bipartition, so it
+        // survives the parent/child flips of rerooting.
+        final double n_pairs = ( _n * ( _n - 1.0 ) ) / 2.0;
+        final long[] keys = calculateBipartitionKeys();
+        final Map<Long, Double> bipartition_to_mad = new HashMap<Long, Double>();
+        double best_ssd = Double.POSITIVE_INFINITY;
+        PhylogenyNode best_node = null;
+        double best_x = 0;
+        for( int c = 0; c < root; ++c ) {
+            final double branch_length = nonNegative( _nodes[ c ].getDistanceToParent() );
+            // optimal root position x (distance from c toward its parent),
+            // clamped to the branch
+            double x = ( b0[ c ] > EPSILON ) ? ( _depth[ c ] - ( b1[ c ] / ( 2.0 * b0[ c ] ) ) ) : 0.0;
+            if ( x < 0 ) {
+                x = 0;
+            }
+            else if ( x > branch_length ) {
+                x = branch_length;
+            }
+            final double cross_ssd = evalCross( _depth[ c ], b0[ c ], b1[ c ], b2[ c ], x );
+            final double ssd = cross_ssd + down_within[ c ] + up_within[ c ];
+            // ssd is a sum of squares (>= 0); clamp away any tiny negative
+            // from floating-point cancellation (near-clock branches have ssd
+            // ~ 0) so sqrt never yields NaN
+            final double mad = Math.sqrt( Math.max( 0.0, ssd ) / n_pairs );
+            final Double prev = bipartition_to_mad.get( keys[ c ] );
+            if ( ( prev == null ) || ( mad < prev ) ) {
+                // two half-edges of a bifurcating root share a key
+                bipartition_to_mad.put( keys[ c ], mad );
+            }
+            if ( ssd < best_ssd ) {
+                best_ssd = ssd;
+                best_node = _nodes[ c ];
+                best_x = x;
+            }
+        }
+        if ( best_node != null ) {
+            _phy.reRoot( best_node, best_x );
+            _phy.recalculateNumberOfExternalDescendants( true );
+            final long[] rerooted_keys = calculateBipartitionKeys();
+            int v = 0;
+            for( final PhylogenyNodeIterator it = _phy.iteratorPostorder(); it.hasNext(); ++v ) {
+                final PhylogenyNode c = it.next();
+                if ( !c.isRoot() && c.isInternal() ) {
+                    // annotate internal branches only; the root edge always
+                    // has an internal endpoint
+                    final Double mad = bipartition_to_mad.get( rerooted_keys[ v ] );
+                    if ( mad != null ) {
+                        PhylogenyMethods.setMadConfidence( c, mad );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns, for the nodes of the phylogeny in its current rooting (in
+     * postorder), a key of the bipartition induced by the branch to their
+     * parent (by the size and the sum of the external node indices of the
+     * side not containing external node 0).
+     */
+    private final long[] calculateBipartitionKeys() {
+        final List<long[]> stack = new ArrayList<long[]>();
+        final List<Long> keys = new ArrayList<Long>();
+        final long all = ( ( long ) _n * ( _n - 1 ) ) / 2;
+        for( final PhylogenyNodeIterator it = _phy.iteratorPostorder(); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            // { size, sum of external node indices, contains external node 0 }
+            final long[] clade = new long[ 3 ];
+            if ( node.isExternal() ) {
+                final int t = _tip_start[ _index.get( node ) ];
+                clade[ 0 ] = 1;
+                clade[ 1 ] = t;
+                clade[ 2 ] = t == 0 ? 1 : 0;
+            }
+            else {
+                for( int d = 0; d < node.getNumberOfDescendants(); ++d ) {
+                    final long[] child = stack.remove( stack.size() - 1 );
+                    clade[ 0 ] += child[ 0 ];
+                    clade[ 1 ] += child[ 1 ];
+                    clade[ 2 ] |= child[ 2 ];
+                }
+            }
+            stack.add( clade );
+            final long size = clade[ 2 ] == 0 ? clade[ 0 ] : _n - clade[ 0 ];
+            final long sum = clade[ 2 ] == 0 ? clade[ 1 ] : all - clade[ 1 ];
+            // the side is the range [first, first + size)
+            final long first = size == 0 ? 0 : ( sum - ( ( size * ( size - 1 ) ) / 2 ) ) / size;
+            keys.add( ( first * ( _n + 1 ) ) + size );
+        }
+        final long[] a = new long[ keys.size() ];
+        for( int i = 0; i < a.length; ++i ) {
+            a[ i ] = keys.get( i );
+        }
+        return a;
+    }
+
+    /**
+     * Splits the tip pairs meeting at each internal node into work units of
+     * { node, child, first tip, last tip (exclusive) }, each covering the
+     * pairs of a range of tips below the child with the tips below the
+     * following children. Units are in postorder of their nodes.
+     */
+    private final List<int[]> createPairUnits() {
+        final List<int[]> units = new ArrayList<int[]>();
+        for( int v = 0; v < _nodes.length; ++v ) {
+            for( int c = _child_start[ v ]; c < ( _child_start[ v + 1 ] - 1 ); ++c ) {
+                final int child = _children[ c ];
+                final int pairs_per_tip = _tip_end[ v ] - _tip_end[ child ];
+                final int tips_per_unit = Math.max( 1, MIN_PAIRS_PER_UNIT / pairs_per_tip );
+                for( int i = _tip_start[ child ]; i < _tip_end[ child ]; i += tips_per_unit ) {
+                    units.add( new int[] { v, child, i, Math.min( _tip_end[ child ], i + tips_per_unit ) } );
+                }
+            }
+        }
+        return units;
+    }
+
+    private final void run( final int tasks, final IntConsumer task ) {
+        if ( ( _threads == 1 ) || ( tasks < 2 ) ) {
+            for( int t = 0; t < tasks; ++t ) {
+                task.accept( t );
+            }
+            return;
+        }
+        final int workers = Math.min( _threads, tasks );
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool( workers );
+        try {
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for( int w = 0; w < workers; ++w ) {
+                futures.add( executor.submit( () -> {
+                    int t;
+                    while ( ( t = next.getAndIncrement() ) < tasks ) {
+                        task.accept( t );
+                    }
+                } ) );
+            }
+            for( final Future<?> future : futures ) {
+                future.get();
+            }
+        }
+        catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( e );
+        }
+        catch ( final ExecutionException e ) {
+            if ( e.getCause() instanceof RuntimeException ) {
+                throw ( RuntimeException ) e.getCause();
+            }
+            throw new IllegalStateException( e.getCause() );
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the sums { dev^2, 1/d^2, 2*depth[j]/d^2 - 1/d, (2*depth[j]/d -
+     * 1)^2 } (the last three over both orderings) over the pairs of a unit.
+     * For a pair whose common ancestor m is at depth depth[m], d = depth[i] +
+     * depth[j] - 2*depth[m] and the deviation is 2*(depth[i]-depth[m])/d - 1.
+     */
+    private final double[] sumPairs( final int[] unit ) {
+        final int m = unit[ 0 ];
+        final double dm = _depth[ m ];
+        final int first_j = _tip_end[ unit[ 1 ] ];
+        final int end_j = _tip_end[ m ];
+        double dwn = 0, sw0 = 0, sw1 = 0, sw2 = 0;
+        for( int i = unit[ 2 ]; i < unit[ 3 ]; ++i ) {
+            final double di = _tip_depth[ i ];
+            for( int j = first_j; j < end_j; ++j ) {
+                final double dj = _tip_depth[ j ];
+                final double dij = ( di - dm ) + ( dj - dm );
+                if ( dij > EPSILON ) {
+                    final double inv = 1.0 / dij;
+                    final double inv2 = inv * inv;
+                    final double dev = ( 2.0 * ( di - dm ) * inv ) - 1.0;
+                    dwn += dev * dev;
+                    sw0 += 2.0 * inv2; // both orderings
+                    sw1 += ( 2.0 * ( di + dj ) * inv2 ) - ( 2.0 * inv );
+                    final double gi = ( 2.0 * di * inv ) - 1.0;
+                    final double gj = ( 2.0 * dj * inv ) - 1.0;
+                    sw2 += ( gi * gi ) + ( gj * gj );
+                }
+            }
+        }
+        return new double[] { dwn, sw0, sw1, sw2 };
+    }
+
+    /**
+     * Sets colsum0[i] to sum_{j!=i} 1/d^2 and colsum_inv[i] to sum_{j!=i} 1/d
+     * for the tips i in [first, end), visiting the other tips j from the left
+     * to the right: first those left of i, in the subtrees of the ancestors of
+     * i from the root downwards, then those right of i, upwards.
+     */
+    private final void sumTips( final int first, final int end, final double[] colsum0, final double[] colsum_inv ) {
+        final int[] path = new int[ _max_depth + 1 ];
+        for( int i = first; i < end; ++i ) {
+            int length = 0;
+            for( int v = _tip_node[ i ]; v >= 0; v = _parent[ v ] ) {
+                path[ length++ ] = v;
+            }
+            final double di = _tip_depth[ i ];
+            double s0 = 0, sinv = 0;
+            for( int k = length - 1; k > 0; --k ) {
+                final int m = path[ k ];
+                final double dm = _depth[ m ];
+                for( int j = _tip_start[ m ]; j < _tip_start[ path[ k - 1 ] ]; ++j ) {
+                    final double dij = ( _tip_depth[ j ] - dm ) + ( di - dm );
+                    if ( dij > EPSILON ) {
+                        final double inv = 1.0 / dij;
+                        s0 += inv * inv;
+                        sinv += inv;
+                    }
+                }
+            }
+            for( int k = 1; k < length; ++k ) {
+                final int m = path[ k ];
+                final double dm = _depth[ m ];
+                for( int j = _tip_end[ path[ k - 1 ] ]; j < _tip_end[ m ]; ++j ) {
+                    final double dij = ( di - dm ) + ( _tip_depth[ j ] - dm );
+                    if ( dij > EPSILON ) {
+                        final double inv = 1.0 / dij;
+                        s0 += inv * inv;
+                        sinv += inv;
+                    }
+                }
+            }
+            colsum0[ i ] = s0;
+            colsum_inv[ i ] = sinv;
+        }
+    }
+
+    final static void execute( final Phylogeny phy, final int threads ) {
+        new MadRooting( phy, threads ).execute();
+    }
+
+    // Sum of squared cross-pair deviations between subtree(c) and its
+    // complement, for the root placed at distance x from c toward its parent.
+    // With K = 2*(x - depth[c]) the per-pair deviation is K/d + (2*depth[j]/d
+    // - 1), so the sum is K^2*b0 + 2*K*b1 + b2 (b0,b1,b2 = the between-set
+    // sums).
+    private final static double evalCross( final double depth_c,
+                                           final double b0,
+                                           final double b1,
+                                           final double b2,
+                                           final double x ) {
+        final double k = 2.0 * ( x - depth_c );
+        return ( k * k * b0 ) + ( 2.0 * k * b1 ) + b2;
+    }
+
+    private final static double nonNegative( final double d ) {
+        return ( d < 0 ) ? 0 : d;
+    }
+}
@@ -67,6 +67,8 @@ public class Phylogeny {
     private boolean                                             _rerootable;
     private HashMap<Long, PhylogenyNode>                        _id_to_node_map;
     private List<PhylogenyNode>                                 _external_nodes_set;
+    private PhylogenyLCAIndex                                   _lca_index;
+    private PhylogenyNodeIndex                                  _node_index;
     private Collection<Sequence>                                _sequenceRelationQueries;
     private Collection<SequenceRelation.SEQUENCE_RELATION_TYPE> _relevant_sequence_relation_types;
     /** Tree-level properties: phyloXML {@code <property applies_to="phylogeny">} children of {@code <phylogeny>}
@@ -176,11 +178,25 @@ public class Phylogeny {
      * corrected, if they are lacking/obsolete in this.)
      */
     public Phylogeny copy( final PhylogenyNode source ) {
-        final Phylogeny tree = new Phylogeny();
         if ( isEmpty() ) {
+            final Phylogeny tree = new Phylogeny();
             tree.init();
             return tree;
         }
+        final Phylogeny tree = copyAttributes();
+        tree._root = PhylogenyMethods.copySubTree( source );
+        return tree;
+    }
+
+    /**
+     * Returns a new Phylogeny without nodes which has deep copies of the
+     * tree-level attributes of this Phylogeny (name, description, type,
+     * rooted, rerootable, distance unit, confidence, identifier, properties).
+     * <p>
+     * (Used by the undo history, which records the nodes separately.)
+     */
+    public Phylogeny copyAttributes() {
+        final Phylogeny tree = new Phylogeny();
         tree._rooted = _rooted;
         tree._name = new String( _name );
         tree._description = new String( _description );
@@ -203,7 +219,6 @@ public class Phylogeny {
             tree._properties = ( PropertiesList ) _properties.copy();
         }
         tree.setAllowMultipleParents( isAllowMultipleParents() );
-        tree._root = PhylogenyMethods.copySubTree( source );
         return tree;
     }
 
@@ -242,6 +257,9 @@ public class Phylogeny {
      * to allow client multiple deletions in linear time).
      * Need to call 'recalculateNumberOfExternalDescendants(boolean)' after this
      * if tree is to be displayed.
+     * <p>
+     * The node index (for lookups by name etc. and the node count) is updated,
+     * not rebuilt, so that multiple deletions remain in linear time.
      *
      * @param remove_us the parent node of the subtree to be deleted
      */
@@ -249,6 +267,11 @@ public class Phylogeny {
         if ( isEmpty() || ( remove_us.isRoot() && ( getNumberOfExternalNodes() != 1 ) ) ) {
             return;
         }
+        final PhylogenyNodeIndex node_index = isNodeIndexValid() && ( remove_us.getNodeIndex() == _node_index )
+                ? _node_index : null;
+        if ( node_index != null ) {
+            node_index.removeSubtree( remove_us );
+        }
         if ( remove_us.isRoot() && ( getNumberOfExternalNodes() == 1 ) ) {
             init();
         }
@@ -260,6 +283,9 @@ public class Phylogeny {
             final PhylogenyNode p = remove_us.getParent();
             if ( p.isRoot() ) {
                 if ( p.getNumberOfDescendants() == 2 ) {
+                    if ( node_index != null ) {
+                        node_index.remove( p );
+                    }
                     if ( removed_node.isFirstChildNode() ) {
                         setRoot( getRoot().getChildNode( 1 ) );
                         getRoot().setParent( null );
@@ -276,6 +302,9 @@ public class Phylogeny {
             else {
                 final PhylogenyNode pp = removed_node.getParent().getParent();
                 if ( p.getNumberOfDescendants() == 2 ) {
+                    if ( node_index != null ) {
+                        node_index.remove( p );
+                    }
                     final int pi = p.getChildNodeIndex();
                     if ( removed_node.isFirstChildNode() ) {
                         p.getChildNode( 1 )
@@ -298,11 +327,21 @@ public class Phylogeny {
             }
         }
         remove_us.removeConnections();
-        externalNodesHaveChanged();
+        _external_nodes_set = null;
+        if ( ( node_index != null ) && ( node_index == _node_index ) ) {
+            node_index.revalidate( _root );
+        }
     }
 
+    /**
+     * To be called after external nodes have been added or removed, or after
+     * names, sequences or taxonomies of nodes have been changed (for the node
+     * to be found under its new values by getNodes(String),
+     * getNodesViaSequenceName(String), etc.).
+     */
     public void externalNodesHaveChanged() {
         _external_nodes_set = null;
+        _node_index = null;
     }
 
     public String[] getAllExternalNodeNames() {
@@ -395,6 +434,20 @@ public class Phylogeny {
         return _identifier;
     }
 
+    /**
+     * Returns an index for constant time LCA and distance queries on this
+     * Phylogeny. The index is built on first use, and rebuilt if the topology
+     * or branch lengths of this Phylogeny have been changed since.
+     *
+     * @see PhylogenyLCAIndex
+     */
+    public PhylogenyLCAIndex getLCAIndex() {
+        if ( ( _lca_index == null ) || !_lca_index.isValid() || ( _lca_index.getRoot() != _root ) ) {
+            _lca_index = new PhylogenyLCAIndex( this );
+        }
+        return _lca_index;
+    }
+
     /**
      * Returns the name of this Phylogeny.
      */
@@ -453,18 +506,15 @@ public class Phylogeny {
     }
 
     /**
-     * This is time-inefficient since it runs a iterator each time it is called.
+     * Returns the number of nodes of this Phylogeny (counted once, and again
+     * after the topology has been changed).
      *
      */
     public int getNodeCount() {
         if ( isEmpty() ) {
             return 0;
         }
-        int c = 0;
-        for( final PhylogenyNodeIterator it = iteratorPreorder(); it.hasNext(); it.next() ) {
-            ++c;
-        }
-        return c;
+        return getNodeIndex().getNumberOfNodes();
     }
 
     /**
@@ -481,14 +531,7 @@ public class Phylogeny {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getName().equals( name ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.NAME, name );
     }
 
     public List<PhylogenyNode> getNodesPartialMatch( final String name ) {
@@ -526,72 +569,35 @@ public class Phylogeny {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getNodeData().isHasSequence() && n.getNodeData().getSequence().getName().equals( seq_name ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.SEQUENCE_NAME, seq_name );
     }
 
     public List<PhylogenyNode> getNodesViaSequenceSymbol( final String seq_name ) {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getNodeData().isHasSequence() && n.getNodeData().getSequence().getSymbol().equals( seq_name ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.SEQUENCE_SYMBOL, seq_name );
     }
 
     public List<PhylogenyNode> getNodesViaGeneName( final String seq_name ) {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getNodeData().isHasSequence() && n.getNodeData().getSequence().getGeneName().equals( seq_name ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.GENE_NAME, seq_name );
     }
 
     public List<PhylogenyNode> getNodesViaTaxonomyCode( final String taxonomy_code ) {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getNodeData().isHasTaxonomy()
-                    && n.getNodeData().getTaxonomy().getTaxonomyCode().equals( taxonomy_code ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.TAXONOMY_CODE, taxonomy_code );
     }
     
     public List<PhylogenyNode> getNodesViaScientificName( final String scientific_name ) {
         if ( isEmpty() ) {
             return null;
         }
-        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
-        for( final PhylogenyNodeIterator iter = iteratorPreorder(); iter.hasNext(); ) {
-            final PhylogenyNode n = iter.next();
-            if ( n.getNodeData().isHasTaxonomy()
-                    && n.getNodeData().getTaxonomy().getScientificName().equals( scientific_name ) ) {
-                nodes.add( n );
-            }
-        }
-        return nodes;
+        return getNodeIndex().getNodes( PhylogenyNodeIndex.KEY.SCIENTIFIC_NAME, scientific_name );
     }
 
     /**
@@ -770,6 +776,8 @@ public class Phylogeny {
         _type = "";
         _distance_unit = "";
         _id_to_node_map = null;
+        _lca_index = null;
+        _node_index = null;
         _confidence = null;
         _identifier = null;
         _properties = null;
@@ -867,20 +875,26 @@ public class Phylogeny {
             return;
         }
         _id_to_node_map = null;
+        // Sets the ids to the levels first, and then adds the first of the
+        // new ids obtained (one per level).
         long max = 0;
         for( final PhylogenyNodeIterator it = iteratorPreorder(); it.hasNext(); ) {
             final PhylogenyNode node = it.next();
             if ( node.isRoot() ) {
-                node.setId( PhylogenyNode.getNodeCount() );
+                node.setObtainedId( 0 );
             }
             else {
-                node.setId( node.getParent().getId() + 1 );
+                node.setObtainedId( node.getParent().getId() + 1 );
                 if ( node.getId() > max ) {
                     max = node.getId();
                 }
             }
         }
-        PhylogenyNode.setNodeCount( max + 1 );
+        final long first = PhylogenyNode.obtainNewIds( max + 1 );
+        for( final PhylogenyNodeIterator it = iteratorPreorder(); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            node.setObtainedId( node.getId() + first );
+        }
     }
 
     /**
@@ -993,7 +1007,7 @@ public class Phylogeny {
                 final int index = n.getChildNodeIndex();
                 final double dn = n.getDistanceToParent();
                 final PhylogenyNode prev_root = getRoot();
-                prev_root.getDescendants().remove( index );
+                prev_root.removeChildNode( index );
                 final PhylogenyNode new_root = new PhylogenyNode();
                 new_root.setChildNode( 0, n );
                 new_root.setChildNode( 1, prev_root );
@@ -1291,6 +1305,13 @@ public class Phylogeny {
         return retour;
     }
 
+    private PhylogenyNodeIndex getNodeIndex() {
+        if ( !isNodeIndexValid() ) {
+            _node_index = new PhylogenyNodeIndex( this );
+        }
+        return _node_index;
+    }
+
     /**
      * List all species contains in all leaf under a node Olivier CHABROL :
      * olivier.chabrol@univ-provence.fr
@@ -1337,6 +1358,10 @@ public class Phylogeny {
         return _allow_multiple_parents;
     }
 
+    private boolean isNodeIndexValid() {
+        return ( _node_index != null ) && _node_index.isValid() && ( _node_index.getRoot() == _root );
+    }
+
     /**
      * Util method to check if all element of a list is contains in the
      * rangeList. Olivier CHABROL : olivier.chabrol@univ-provence.fr
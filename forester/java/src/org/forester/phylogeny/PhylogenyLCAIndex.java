@@ -0,0 +1,191 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.phylogeny;
+
+/**
+ * Index for constant time LCA and distance queries on a phylogeny.
+ * <p>
+ * The LCA of two nodes is the node of least depth between their first
+ * occurrences in an Euler tour of the phylogeny; it is found with a range
+ * minimum query on a sparse table (of size O(n log n)). The distance between
+ * two nodes is calculated from the distances of the nodes and their LCA to the
+ * root (as for PhylogenyMethods.calculateDistance, negative branch lengths
+ * are counted as zero).
+ * <p>
+ * An index is obtained with Phylogeny.getLCAIndex(). It becomes invalid as
+ * soon as the topology or a branch length of one of its nodes is changed (via
+ * the methods of PhylogenyNode), and Phylogeny.getLCAIndex() then builds a new
+ * one. While an index is valid, PhylogenyMethods.calculateLCA,
+ * calculateDistance, and getEventAtLCA use it for nodes which are part of it.
+ */
+public final class PhylogenyLCAIndex {
+
+    private final int[]           _depths;
+    private final double[]        _distances_to_root;
+    private final int[]           _first_occurrences;
+    private final PhylogenyNode[] _nodes;
+    private final PhylogenyNode   _root;
+    private final int[][]         _table;
+    private volatile boolean      _valid;
+
+    PhylogenyLCAIndex( final Phylogeny phy ) {
+        if ( phy.isEmpty() ) {
+            throw new IllegalArgumentException( "attempt to index empty phylogeny" );
+        }
+        _root = phy.getRoot();
+        final int n = phy.getNodeCount();
+        _nodes = new PhylogenyNode[ n ];
+        _depths = new int[ n ];
+        _distances_to_root = new double[ n ];
+        _first_occurrences = new int[ n ];
+        final int[] tour = new int[ ( 2 * n ) - 1 ];
+        final int[] next_child = new int[ n ];
+        final PhylogenyNode[] stack = new PhylogenyNode[ n ];
+        int top = 0;
+        int pos = 0;
+        int count = 0;
+        stack[ 0 ] = _root;
+        addNode( _root, count, 0, 0.0 );
+        _first_occurrences[ count ] = pos;
+        tour[ pos++ ] = count++;
+        while ( top >= 0 ) {
+            final PhylogenyNode node = stack[ top ];
+            if ( next_child[ top ] < node.getNumberOfDescendants() ) {
+                final PhylogenyNode child = node.getChildNode( next_child[ top ]++ );
+                final int parent = node.getLCAIndexPosition();
+                addNode( child,
+                         count,
+                         _depths[ parent ] + 1,
+                         _distances_to_root[ parent ]
+                                 + ( child.getDistanceToParent() > 0.0 ? child.getDistanceToParent() : 0.0 ) );
+                _first_occurrences[ count ] = pos;
+                tour[ pos++ ] = count++;
+                stack[ ++top ] = child;
+                next_child[ top ] = 0;
+            }
+            else if ( --top >= 0 ) {
+                tour[ pos++ ] = stack[ top ].getLCAIndexPosition();
+            }
+        }
+        int levels = 1;
+        while ( ( 1 << levels ) <= tour.length ) {
+            ++levels;
+        }
+        _table = new int[ levels ][];
+        _table[ 0 ] = tour;
+        for( int k = 1; k < levels; ++k ) {
+            final int[] prev = _table[ k - 1 ];
+            final int half = 1 << ( k - 1 );
+            final int[] current = new int[ ( tour.length - ( 1 << k ) ) + 1 ];
+            for( int i = 0; i < current.length; ++i ) {
+                current[ i ] = shallower( prev[ i ], prev[ i + half ] );
+            }
+            _table[ k ] = current;
+        }
+        _valid = true;
+    }
+
+    /**
+     * Returns the distance between nodes n1 and n2 (the sum of the branch
+     * lengths on the path between them).
+     */
+    public final double calculateDistance( final PhylogenyNode n1, final PhylogenyNode n2 ) {
+        final int lca = calculateLCA( getPosition( n1 ), getPosition( n2 ) );
+        return ( _distances_to_root[ n1.getLCAIndexPosition() ] - _distances_to_root[ lca ] )
+                + ( _distances_to_root[ n2.getLCAIndexPosition() ] - _distances_to_root[ lca ] );
+    }
+
+    /**
+     * Returns the LCA of nodes n1 and n2.
+     */
+    public final PhylogenyNode calculateLCA( final PhylogenyNode n1, final PhylogenyNode n2 ) {
+        return _nodes[ calculateLCA( getPosition( n1 ), getPosition( n2 ) ) ];
+    }
+
+    public final int getNumberOfNodes() {
+        return _nodes.length;
+    }
+
+    /**
+     * Returns true if node is part of this index (and the index is still
+     * valid).
+     */
+    public final boolean isIndexed( final PhylogenyNode node ) {
+        return _valid && ( node.getLCAIndex() == this );
+    }
+
+    /**
+     * Returns false if the topology or a branch length of one of the nodes of
+     * this index has changed since it was built.
+     */
+    public final boolean isValid() {
+        return _valid;
+    }
+
+    private final void addNode( final PhylogenyNode node, final int i, final int depth, final double distance_to_root ) {
+        final PhylogenyLCAIndex previous = node.getLCAIndex();
+        if ( ( previous != null ) && ( previous != this ) ) {
+            // Nodes can only be part of one index.
+            previous.invalidate();
+        }
+        node.setLCAIndex( this, i );
+        _nodes[ i ] = node;
+        _depths[ i ] = depth;
+        _distances_to_root[ i ] = distance_to_root;
+    }
+
+    private final int calculateLCA( final int i1, final int i2 ) {
+        int l = _first_occurrences[ i1 ];
+        int r = _first_occurrences[ i2 ];
+        if ( l > r ) {
+            final int t = l;
+            l = r;
+            r = t;
+        }
+        final int k = 31 - Integer.numberOfLeadingZeros( ( r - l ) + 1 );
+        return shallower( _table[ k ][ l ], _table[ k ][ ( r - ( 1 << k ) ) + 1 ] );
+    }
+
+    private final int getPosition( final PhylogenyNode node ) {
+        if ( node == null ) {
+            throw new IllegalArgumentException( "node is null" );
+        }
+        if ( !_valid ) {
+            throw new IllegalStateException( "LCA index is no longer valid (phylogeny has been changed)" );
+        }
+        if ( node.getLCAIndex() != this ) {
+            throw new IllegalArgumentException( "node [" + node + "] is not part of this LCA index" );
+        }
+        return node.getLCAIndexPosition();
+    }
+
+    private final int shallower( final int i1, final int i2 ) {
+        return _depths[ i1 ] <= _depths[ i2 ] ? i1 : i2;
+    }
+
+    final PhylogenyNode getRoot() {
+        return _root;
+    }
+
+    final void invalidate() {
+        _valid = false;
+    }
+}
@@ -25,7 +25,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -174,12 +173,19 @@ public class PhylogenyMethods {
 
     /**
      * Calculates the distance between PhylogenyNodes node1 and node2.
+     * <p>
+     * Takes constant time if both nodes are part of the same valid
+     * PhylogenyLCAIndex (see Phylogeny.getLCAIndex()).
      *
      * @param node1
      * @param node2
      * @return distance between node1 and node2
      */
     public static double calculateDistance(final PhylogenyNode node1, final PhylogenyNode node2) {
+        final PhylogenyLCAIndex index = getCommonLCAIndex(node1, node2);
+        if (index != null) {
+            return index.calculateDistance(node1, node2);
+        }
         final PhylogenyNode lca = calculateLCA(node1, node2);
         final PhylogenyNode n1 = node1;
         final PhylogenyNode n2 = node2;
@@ -188,6 +194,9 @@ public class PhylogenyMethods {
 
     /**
      * Returns the LCA of PhylogenyNodes node1 and node2.
+     * <p>
+     * Takes constant time if both nodes are part of the same valid
+     * PhylogenyLCAIndex (see Phylogeny.getLCAIndex()).
      *
      * @param node1
      * @param node2
@@ -203,6 +212,10 @@ public class PhylogenyMethods {
         if (node1 == node2) {
             return node1;
         }
+        final PhylogenyLCAIndex index = getCommonLCAIndex(node1, node2);
+        if (index != null) {
+            return index.calculateLCA(node1, node2);
+        }
         if ((node1.getParent() == node2.getParent())) {
             return node1.getParent();
         }
@@ -483,6 +496,8 @@ public class PhylogenyMethods {
         if (n.isInternal()) {
             throw new IllegalArgumentException("node is not external");
         }
+        // Builds the index used by getEventAtLCA below.
+        phy.getLCAIndex();
         final ArrayList<PhylogenyNode> to_delete = new ArrayList<>();
         for (final PhylogenyNodeIterator it = phy.iteratorExternalForward(); it.hasNext(); ) {
             final PhylogenyNode i = it.next();
@@ -795,8 +810,6 @@ public class PhylogenyMethods {
         phylogeny.recalculateNumberOfExternalDescendants(true);
     }
 
-    private static final double MAD_EPSILON = 1e-9;
-
     /**
      * Roots the tree using the Minimal Ancestor Deviation (MAD) method of Tria, Landan and Dagan
      * (Nature Ecology &amp; Evolution 1, 0193, 2017; doi:10.1038/s41559-017-0193).
@@ -809,8 +822,8 @@ public class PhylogenyMethods {
      * <p>
      * Requires branch lengths and at least three external nodes; otherwise it is a no-op (use
      * {@link #midpointRoot(Phylogeny)} for trees without branch lengths). Runs in O(n^2) time and
-     * memory for {@code n} tips, via a rerooting tree traversal that shares per-subtree sums across
-     * all candidate branches (rather than re-scanning all tip pairs for each branch).
+     * O(n) memory for {@code n} tips, via a rerooting tree traversal that shares per-subtree sums
+     * across all candidate branches (rather than re-scanning all tip pairs for each branch).
      * <p>
      * Each internal branch is also annotated with a {@link Confidence} of type
      * {@value #MAD_CONFIDENCE_TYPE} whose value is that branch's minimal ancestor deviation -- the
@@ -823,262 +836,28 @@ public class PhylogenyMethods {
      * independent brute force over many random tree shapes -- keep those tests green.
      */
     public static void madRoot(final Phylogeny phylogeny) {
+        madRoot(phylogeny, 1);
+    }
+
+    /**
+     * Same as {@link #madRoot(Phylogeny)}, but distributes the O(n^2) tip pair sums over the given
+     * number of threads. The result does not depend on the number of threads.
+     */
+    public static void madRoot(final Phylogeny phylogeny, final int threads) {
         if ((phylogeny == null) || (phylogeny.getNumberOfExternalNodes() < 3)) {
             return;
         }
         if (calculateMaxDistanceToRoot(phylogeny) <= 0) {
             return; // no usable branch lengths
         }
-        final List<PhylogenyNode> tips = phylogeny.getExternalNodes();
-        final int n = tips.size();
-        final Map<Long, Integer> tip_index = new HashMap<>();
-        for (int i = 0; i < n; ++i) {
-            tip_index.put(tips.get(i).getId(), i);
-        }
-        // depth (distance from the current root) of every node
-        final Map<Long, Double> depth = new HashMap<>();
-        depth.put(phylogeny.getRoot().getId(), 0.0);
-        for (final PhylogenyNodeIterator it = phylogeny.iteratorPreorder(); it.hasNext(); ) {
-            final PhylogenyNode node = it.next();
-            if (!node.isRoot()) {
-                depth.put(node.getId(), depth.get(node.getParent().getId()) + nonNegative(node.getDistanceToParent()));
-            }
-        }
-        final double[] tip_depth = new double[n];
-        for (int i = 0; i < n; ++i) {
-            tip_depth[i] = depth.get(tips.get(i).getId());
-        }
-        // Pass 1 (post-order): fill the tip-to-tip distance matrix d[][] at each pair's LCA, and the
-        // "within-subtree" deviation sums. For a pair whose common ancestor m is at depth depth[m],
-        // d[i][j] = depth[i] + depth[j] - 2*depth[m] and the deviation is 2*(depth[i]-depth[m])/d - 1.
-        final double[][] d = new double[n][n];
-        final Map<Long, Double> down_within = new HashMap<>(); // sum dev^2 over pairs with LCA inside the subtree
-        final Map<Long, Double> w0 = new HashMap<>(); // sum_{i!=j in subtree} 1/d^2                 (ordered)
-        final Map<Long, Double> w1 = new HashMap<>(); // sum_{i!=j in subtree} (2*depth[j]/d^2 - 1/d) (j second)
-        final Map<Long, Double> w2 = new HashMap<>(); // sum_{i!=j in subtree} (2*depth[j]/d - 1)^2   (j second)
-        final Map<Long, List<Integer>> subtree_tips = new HashMap<>();
-        for (final PhylogenyNodeIterator it = phylogeny.iteratorPostorder(); it.hasNext(); ) {
-            final PhylogenyNode node = it.next();
-            if (node.isExternal()) {
-                final List<Integer> one = new ArrayList<>();
-                one.add(tip_index.get(node.getId()));
-                subtree_tips.put(node.getId(), one);
-                down_within.put(node.getId(), 0.0);
-                w0.put(node.getId(), 0.0);
-                w1.put(node.getId(), 0.0);
-                w2.put(node.getId(), 0.0);
-                continue;
-            }
-            final double dm = depth.get(node.getId());
-            final List<PhylogenyNode> children = node.getDescendants();
-            double dwn = 0, sw0 = 0, sw1 = 0, sw2 = 0;
-            for (final PhylogenyNode child : children) {
-                dwn += down_within.get(child.getId());
-                sw0 += w0.get(child.getId());
-                sw1 += w1.get(child.getId());
-                sw2 += w2.get(child.getId());
-            }
-            // pairs whose lowest common ancestor is this node: one tip from each of two children
-            for (int a = 0; a < children.size(); ++a) {
-                final List<Integer> la = subtree_tips.get(children.get(a).getId());
-                for (int b = a + 1; b < children.size(); ++b) {
-                    final List<Integer> lb = subtree_tips.get(children.get(b).getId());
-                    for (final int i : la) {
-                        final double di = tip_depth[i];
-                        for (final int j : lb) {
-                            final double dj = tip_depth[j];
-                            final double dij = (di - dm) + (dj - dm); // depth[i] + depth[j] - 2*depth[m]
-                            d[i][j] = dij;
-                            d[j][i] = dij;
-                            if (dij > MAD_EPSILON) {
-                                final double inv = 1.0 / dij;
-                                final double inv2 = inv * inv;
-                                final double dev = (2.0 * (di - dm) * inv) - 1.0;
-                                dwn += dev * dev;
-                                sw0 += 2.0 * inv2; // both orderings
-                                sw1 += (2.0 * (di + dj) * inv2) - (2.0 * inv);
-                                final double gi = (2.0 * di * inv) - 1.0;
-                                final double gj = (2.0 * dj * inv) - 1.0;
-                                sw2 += (gi * gi) + (gj * gj);
-                            }
-                        }
-                    }
-                }
-            }
-            final List<Integer> merged = new ArrayList<>();
-            for (final PhylogenyNode child : children) {
-                merged.addAll(subtree_tips.remove(child.getId())); // children lists no longer needed
-            }
-            subtree_tips.put(node.getId(), merged);
-            down_within.put(node.getId(), dwn);
-            w0.put(node.getId(), sw0);
-            w1.put(node.getId(), sw1);
-            w2.put(node.getId(), sw2);
-        }
-        // Pass 2: column sums over the distance matrix, then per-subtree "all-i" sums a0,a1,a2 (the
-        // between-set cross sums for a branch are then b_k = a_k - w_k).
-        final double[] colsum0 = new double[n]; // sum_{i!=j} 1/d^2
-        final double[] colsum_inv = new double[n]; // sum_{i!=j} 1/d
-        for (int j = 0; j < n; ++j) {
-            double s0 = 0, sinv = 0;
-            final double[] dj = d[j];
-            for (int i = 0; i < n; ++i) {
-                final double dij = dj[i];
-                if ((i != j) && (dij > MAD_EPSILON)) {
-                    final double inv = 1.0 / dij;
-                    s0 += inv * inv;
-                    sinv += inv;
-                }
-            }
-            colsum0[j] = s0;
-            colsum_inv[j] = sinv;
-        }
-        final double[] colsum1 = new double[n];
-        final double[] colsum2 = new double[n];
-        for (int j = 0; j < n; ++j) {
-            colsum1[j] = (2.0 * tip_depth[j] * colsum0[j]) - colsum_inv[j];
-            colsum2[j] = (4.0 * tip_depth[j] * tip_depth[j] * colsum0[j]) - (4.0 * tip_depth[j] * colsum_inv[j])
-                    + (n - 1);
-        }
-        final Map<Long, Double> b0 = new HashMap<>();
-        final Map<Long, Double> b1 = new HashMap<>();
-        final Map<Long, Double> b2 = new HashMap<>();
-        final Map<Long, Double> a0 = new HashMap<>();
-        final Map<Long, Double> a1 = new HashMap<>();
-        final Map<Long, Double> a2 = new HashMap<>();
-        for (final PhylogenyNodeIterator it = phylogeny.iteratorPostorder(); it.hasNext(); ) {
-            final PhylogenyNode node = it.next();
-            double s0, s1, s2;
-            if (node.isExternal()) {
-                final int idx = tip_index.get(node.getId());
-                s0 = colsum0[idx];
-                s1 = colsum1[idx];
-                s2 = colsum2[idx];
-            }
-            else {
-                s0 = s1 = s2 = 0;
-                for (final PhylogenyNode child : node.getDescendants()) {
-                    s0 += a0.get(child.getId());
-                    s1 += a1.get(child.getId());
-                    s2 += a2.get(child.getId());
-                }
-            }
-            a0.put(node.getId(), s0);
-            a1.put(node.getId(), s1);
-            a2.put(node.getId(), s2);
-            b0.put(node.getId(), s0 - w0.get(node.getId()));
-            b1.put(node.getId(), s1 - w1.get(node.getId()));
-            b2.put(node.getId(), s2 - w2.get(node.getId()));
-        }
-        // Pass 3 (pre-order): up_within[node] = deviation sum of the pairs whose ancestor lies in the
-        // complement of subtree(node), via the rerooting recursion, so every branch's total is O(1).
-        final Map<Long, Double> up_within = new HashMap<>();
-        up_within.put(phylogeny.getRoot().getId(), 0.0);
-        for (final PhylogenyNodeIterator it = phylogeny.iteratorPreorder(); it.hasNext(); ) {
-            final PhylogenyNode p = it.next();
-            final List<PhylogenyNode> children = p.getDescendants();
-            if (children.isEmpty()) {
-                continue;
-            }
-            double sum_children_down = 0;
-            double sum_children_eval_at_p = 0;
-            for (final PhylogenyNode c : children) {
-                sum_children_down += down_within.get(c.getId());
-                sum_children_eval_at_p += evalCross(depth.get(c.getId()), b0.get(c.getId()), b1.get(c.getId()),
-                        b2.get(c.getId()), nonNegative(c.getDistanceToParent()));
-            }
-            // cross deviation among all groups meeting at p (its child subtrees and its complement)
-            final double sc_p = p.isRoot() ? 0.0
-                    : evalCross(depth.get(p.getId()), b0.get(p.getId()), b1.get(p.getId()), b2.get(p.getId()), 0.0);
-            final double cross_among = (sum_children_eval_at_p + sc_p) / 2.0;
-            final double up_p = up_within.get(p.getId());
-            for (final PhylogenyNode c : children) {
-                final double eval_c_at_p = evalCross(depth.get(c.getId()), b0.get(c.getId()), b1.get(c.getId()),
-                        b2.get(c.getId()), nonNegative(c.getDistanceToParent()));
-                up_within.put(c.getId(),
-                        up_p + (sum_children_down - down_within.get(c.getId())) + (cross_among - eval_c_at_p));
-            }
-        }
-        // choose the branch and position minimizing the total ancestor deviation, and record each
-        // branch's minimal MAD value (= sqrt(ssd / number-of-pairs)) keyed by its bipartition, so it
-        // survives the parent/child flips of rerooting
-        final double n_pairs = (n * (n - 1.0)) / 2.0;
-        final Map<BitSet, Double> bipartition_to_mad = new HashMap<>();
-        double best_ssd = Double.POSITIVE_INFINITY;
-        PhylogenyNode best_node = null;
-        double best_x = 0;
-        for (final PhylogenyNodeIterator it = phylogeny.iteratorPostorder(); it.hasNext(); ) {
-            final PhylogenyNode c = it.next();
-            if (c.isRoot()) {
-                continue;
-            }
-            final double depth_c = depth.get(c.getId());
-            final double bb0 = b0.get(c.getId());
-            final double bb1 = b1.get(c.getId());
-            final double bb2 = b2.get(c.getId());
-            final double branch_length = nonNegative(c.getDistanceToParent());
-            // optimal root position x (distance from c toward its parent), clamped to the branch
-            double x = (bb0 > MAD_EPSILON) ? (depth_c - (bb1 / (2.0 * bb0))) : 0.0;
-            if (x < 0) {
-                x = 0;
-            }
-            else if (x > branch_length) {
-                x = branch_length;
-            }
-            final double cross_ssd = evalCross(depth_c, bb0, bb1, bb2, x);
-            final double ssd = cross_ssd + down_within.get(c.getId()) + up_within.get(c.getId());
-            // ssd is a sum of squares (>= 0); clamp away any tiny negative from floating-point
-            // cancellation (near-clock branches have ssd ~ 0) so sqrt never yields NaN
-            final double mad = Math.sqrt(Math.max(0.0, ssd) / n_pairs);
-            final BitSet key = canonicalBipartition(c, tip_index, n);
-            final Double prev = bipartition_to_mad.get(key);
-            if ((prev == null) || (mad < prev)) {
-                bipartition_to_mad.put(key, mad); // two half-edges of a bifurcating root share a key
-            }
-            if (ssd < best_ssd) {
-                best_ssd = ssd;
-                best_node = c;
-                best_x = x;
-            }
-        }
-        if (best_node != null) {
-            phylogeny.reRoot(best_node, best_x);
-            phylogeny.recalculateNumberOfExternalDescendants(true);
-            for (final PhylogenyNodeIterator it = phylogeny.iteratorPostorder(); it.hasNext(); ) {
-                final PhylogenyNode c = it.next();
-                if (!c.isRoot() && c.isInternal()) {
-                    // annotate internal branches only; the root edge always has an internal endpoint
-                    final Double mad = bipartition_to_mad.get(canonicalBipartition(c, tip_index, n));
-                    if (mad != null) {
-                        setMadConfidence(c, mad);
-                    }
-                }
-            }
-        }
+        MadRooting.execute(phylogeny, threads);
     }
 
     /** The phyloXML/Newick confidence {@code type} used for per-branch MAD ancestor-deviation values. */
     public static final String MAD_CONFIDENCE_TYPE = "MAD";
 
-    // The bipartition induced by a branch, as the set of tip indices on the side NOT containing tip 0
-    // (a fixed canonical orientation, so the same edge maps to the same key regardless of rooting).
-    private static BitSet canonicalBipartition(final PhylogenyNode node, final Map<Long, Integer> tip_index,
-                                               final int n) {
-        final BitSet bits = new BitSet(n);
-        for (final PhylogenyNode ext : node.getAllExternalDescendants()) {
-            final Integer idx = tip_index.get(ext.getId());
-            if (idx != null) {
-                bits.set(idx);
-            }
-        }
-        if (bits.get(0)) {
-            bits.flip(0, n);
-        }
-        return bits;
-    }
-
     // Replaces any existing MAD confidence on the branch (so re-running is idempotent), keeping others.
-    private static void setMadConfidence(final PhylogenyNode node, final double value) {
+    static void setMadConfidence(final PhylogenyNode node, final double value) {
         final List<Confidence> confidences = node.getBranchData().getConfidences();
         for (final Iterator<Confidence> it = confidences.iterator(); it.hasNext(); ) {
             if (MAD_CONFIDENCE_TYPE.equals(it.next().getType())) {
@@ -1110,19 +889,6 @@ public class PhylogenyMethods {
         }
     }
 
-    // Sum of squared cross-pair deviations between subtree(c) and its complement, for the root placed
-    // at distance x from c toward its parent. With K = 2*(x - depth[c]) the per-pair deviation is
-    // K/d + (2*depth[j]/d - 1), so the sum is K^2*b0 + 2*K*b1 + b2 (b0,b1,b2 = the between-set sums).
-    private static double evalCross(final double depth_c, final double b0, final double b1, final double b2,
-                                    final double x) {
-        final double k = 2.0 * (x - depth_c);
-        return (k * k * b0) + (2.0 * k * b1) + b2;
-    }
-
-    private static double nonNegative(final double d) {
-        return (d < 0) ? 0 : d;
-    }
-
     public static void normalizeBootstrapValues(final Phylogeny phylogeny,
                                                 final double max_bootstrap_value,
                                                 final double max_normalized_value) {
@@ -1262,11 +1028,10 @@ public class PhylogenyMethods {
             return;
         }
         phy.setIdToNodeMap(null);
-        long i = PhylogenyNode.getNodeCount();
+        long i = PhylogenyNode.obtainNewIds(phy.getNodeCount());
         for (final PhylogenyNodeIterator it = phy.iteratorPreorder(); it.hasNext(); ) {
-            it.next().setId(i++);
+            it.next().setObtainedId(i++);
         }
-        PhylogenyNode.setNodeCount(i);
     }
 
     public final static Phylogeny[] readPhylogenies(final PhylogenyParser parser, final File file)
@@ -2001,6 +1766,18 @@ public class PhylogenyMethods {
         return l;
     }
 
+    /**
+     * Returns the LCA index both n1 and n2 are part of, or null if there is
+     * no such (valid) index.
+     */
+    private static PhylogenyLCAIndex getCommonLCAIndex(final PhylogenyNode n1, final PhylogenyNode n2) {
+        final PhylogenyLCAIndex index = n1.getLCAIndex();
+        if ((index != null) && (n2.getLCAIndex() == index) && index.isValid()) {
+            return index;
+        }
+        return null;
+    }
+
     /**
      * Calculates the distance between PhylogenyNodes n1 and n2.
      * PRECONDITION: n1 is a descendant of n2.
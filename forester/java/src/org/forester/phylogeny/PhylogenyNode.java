@@ -22,6 +22,7 @@ package org.forester.phylogeny;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.forester.io.parsers.nhx.NHXFormatException;
 import org.forester.io.parsers.nhx.NHXParser;
@@ -44,34 +45,37 @@ import org.forester.util.ForesterUtil;
  */
 public final class PhylogenyNode implements Comparable<PhylogenyNode> {
 
-    private static long              NODE_COUNT       = 0;
-    private BranchData               _branch_data;
-    private boolean                  _collapse;
-    private ArrayList<PhylogenyNode> _descendants;
-    private double                   _distance_parent = PhylogenyDataUtil.BRANCH_LENGTH_DEFAULT;
-    private long                     _id;
-    private byte                     _indicator;
-    private PhylogenyNode            _link;
-    private NodeData                 _node_data;
-    private PhylogenyNode            _parent;
-    private int                      _sum_ext_nodes;
-    private float                    _x;
-    private float                    _x_secondary;
-    private float                    _y;
-    private float                    _y_secondary;
+    private final static int                  ID_BLOCK_SIZE    = 1024;
+    private final static ThreadLocal<IdBlock> ID_BLOCK         = ThreadLocal.withInitial( IdBlock::new );
+    private final static AtomicLong           NODE_COUNT       = new AtomicLong();
+    private BranchData                        _branch_data;
+    private boolean                           _collapse;
+    private ArrayList<PhylogenyNode>          _descendants;
+    private double                            _distance_parent = PhylogenyDataUtil.BRANCH_LENGTH_DEFAULT;
+    private long                              _id;
+    private byte                              _indicator;
+    private PhylogenyLCAIndex                 _lca_index;
+    private int                               _lca_index_position;
+    private PhylogenyNode                     _link;
+    private NodeData                          _node_data;
+    private PhylogenyNodeIndex                _node_index;
+    private PhylogenyNode                     _parent;
+    private int                               _sum_ext_nodes;
+    private float                             _x;
+    private float                             _x_secondary;
+    private float                             _y;
+    private float                             _y_secondary;
 
     /**
      * Default constructor for PhylogenyNode.
      */
     public PhylogenyNode() {
-        setId( PhylogenyNode.getNodeCount() );
-        PhylogenyNode.increaseNodeCount();
+        _id = PhylogenyNode.obtainNewId();
         setSumExtNodes( 1 ); // For ext node, this number is 1 (not 0!!)
     }
 
     public PhylogenyNode( final String node_name ) {
-        setId( PhylogenyNode.getNodeCount() );
-        PhylogenyNode.increaseNodeCount();
+        _id = PhylogenyNode.obtainNewId();
         setSumExtNodes( 1 ); // For ext node, this number is 1 (not 0!!)
         if ( node_name != null ) {
             getNodeData().setNodeName( node_name );
@@ -82,8 +86,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
                            final NHXParser.TAXONOMY_EXTRACTION taxonomy_extraction,
                            final boolean replace_underscores ) throws NHXFormatException, PhyloXmlDataFormatException {
         NHXParser.parseNHX( nhx, this, taxonomy_extraction, replace_underscores, false, false, false );
-        setId( PhylogenyNode.getNodeCount() );
-        PhylogenyNode.increaseNodeCount();
+        _id = PhylogenyNode.obtainNewId();
         setSumExtNodes( 1 ); // For ext node, this number is 1 (not 0!!).
     }
     
@@ -98,11 +101,18 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
                             false,
                             false,
                             parse_extended_tags );
-        setId( PhylogenyNode.getNodeCount() );
-        PhylogenyNode.increaseNodeCount();
+        _id = PhylogenyNode.obtainNewId();
         setSumExtNodes( 1 ); // For ext node, this number is 1 (not 0!!).
     }
 
+    /**
+     * Creates a node with the given id (for copies).
+     */
+    private PhylogenyNode( final long id ) {
+        _id = id;
+        setSumExtNodes( 1 );
+    }
+
     /**
      * Adds PhylogenyNode n to the list of child nodes and sets the _parent of n
      * to this.
@@ -156,9 +166,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      * @see #getLink()
      */
     final public PhylogenyNode copyNodeData() {
-        final PhylogenyNode node = new PhylogenyNode();
-        PhylogenyNode.decreaseNodeCount();
-        node._id = _id;
+        final PhylogenyNode node = new PhylogenyNode( _id );
         node._sum_ext_nodes = _sum_ext_nodes;
         node._indicator = _indicator;
         node._x = _x;
@@ -183,9 +191,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      * @see #getLink()
      */
     final public PhylogenyNode copyNodeDataShallow() {
-        final PhylogenyNode node = new PhylogenyNode();
-        PhylogenyNode.decreaseNodeCount();
-        node._id = _id;
+        final PhylogenyNode node = new PhylogenyNode( _id );
         node._sum_ext_nodes = _sum_ext_nodes;
         node._indicator = _indicator;
         node._x = _x;
@@ -751,6 +757,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
             throw new IllegalArgumentException( "attempt to get child node " + i + " of a node with "
                     + getNumberOfDescendants() + " child nodes." );
         }
+        invalidateIndexes();
         getDescendants().remove( i );
     }
 
@@ -759,6 +766,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
     }
 
     public void removeConnections() {
+        invalidateIndexes();
         _parent = null;
         _link = null;
         _descendants = null;
@@ -799,10 +807,25 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
             addChildNode( node );
         }
         else {
+            invalidateIndexes();
             getDescendants().set( i, node );
         }
     }
 
+    /**
+     * Replaces the NodeData of this PhylogenyNode (names, sequences,
+     * taxonomies...), so the maps of the node index are built again on next
+     * use.
+     */
+    final public void setNodeData( final NodeData node_data ) {
+        _node_data = node_data;
+        if ( _node_index != null ) {
+            for( final PhylogenyNodeIndex.KEY key : PhylogenyNodeIndex.KEY.values() ) {
+                _node_index.removeMap( key );
+            }
+        }
+    }
+
     /**
      * Sets whether this PhylogenyNode should be drawn as collapsed.
      */
@@ -815,6 +838,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      * PhylogenyNode to double d.
      */
     final public void setDistanceToParent( final double d ) {
+        invalidateLCAIndex();
         _distance_parent = d;
     }
 
@@ -839,12 +863,16 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      */
     final public void setName( final String node_name ) {
         getNodeData().setNodeName( node_name );
+        if ( _node_index != null ) {
+            _node_index.removeMap( PhylogenyNodeIndex.KEY.NAME );
+        }
     }
 
     /**
      * Sets the _parent PhylogenyNode of this PhylogenyNode to n.
      */
     final public void setParent( final PhylogenyNode n ) {
+        invalidateIndexes();
         _parent = n;
     }
 
@@ -1054,17 +1082,46 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      * should not be set to values lower than getNodeCount() -- which this method
      * does not allow.
      */
-    synchronized final protected void setId( final long i ) {
+    final protected void setId( final long i ) {
         if ( i < getNodeCount() ) {
             throw new IllegalArgumentException( "attempt to set node id to a value less than total node count (thus violating the uniqueness of node ids)" );
         }
         _id = i;
     }
 
+    final void setNodeIndex( final PhylogenyNodeIndex node_index ) {
+        _node_index = node_index;
+    }
+
+    final void setLCAIndex( final PhylogenyLCAIndex lca_index, final int position ) {
+        _lca_index = lca_index;
+        _lca_index_position = position;
+    }
+
+    /**
+     * Sets the Id of this PhylogenyNode to i, which must have been obtained
+     * with obtainNewIds.
+     */
+    final void setObtainedId( final long i ) {
+        _id = i;
+    }
+
     final BranchData getBranchDataDirectly() {
         return _branch_data;
     }
 
+    final PhylogenyLCAIndex getLCAIndex() {
+        return _lca_index;
+    }
+
+    final PhylogenyNodeIndex getNodeIndex() {
+        return _node_index;
+    }
+
+    final int getLCAIndexPosition() {
+        return _lca_index_position;
+    }
+
     final NodeData getNodeDataDirectly() {
         return _node_data;
     }
@@ -1074,6 +1131,7 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
             addChildNode( node );
         }
         else {
+            invalidateIndexes();
             getDescendants().set( i, node );
         }
     }
@@ -1096,9 +1154,34 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
      *            the PhylogenyNode to add
      */
     final private void addChildNode( final PhylogenyNode child ) {
+        invalidateIndexes();
         getDescendants().add( child );
     }
 
+    /**
+     * Invalidates the LCA index and the node index this PhylogenyNode is part
+     * of (if any), to be called before its topology is changed.
+     */
+    final private void invalidateIndexes() {
+        invalidateLCAIndex();
+        if ( _node_index != null ) {
+            // Not reset, since Phylogeny.deleteSubtree revalidates the node
+            // index after updating it.
+            _node_index.invalidate();
+        }
+    }
+
+    /**
+     * Invalidates the LCA index this PhylogenyNode is part of (if any), to be
+     * called before its topology or branch length is changed.
+     */
+    final private void invalidateLCAIndex() {
+        if ( _lca_index != null ) {
+            _lca_index.invalidate();
+            _lca_index = null;
+        }
+    }
+
     public static PhylogenyNode createInstanceFromNhxString( final String nhx ) throws NHXFormatException,
     PhyloXmlDataFormatException {
         return new PhylogenyNode( nhx, NHXParser.TAXONOMY_EXTRACTION.NO, false );
@@ -1126,33 +1209,58 @@ public final class PhylogenyNode implements Comparable<PhylogenyNode> {
     }
 
     /**
-     * Returns the total number of all Nodes created so far.
+     * Returns the total number of all Nodes created so far (more precisely,
+     * the number of node ids handed out, or reserved by threads, so far; ids
+     * of new nodes are never lower than this).
      *
      * @return total number of Nodes (long)
      */
-    synchronized final public static long getNodeCount() {
-        return NODE_COUNT;
+    final public static long getNodeCount() {
+        return NODE_COUNT.get();
     }
 
     /**
-     * Decreases the total number of all Nodes created so far by one.
+     * Returns a new (unique) id.
+     * <p>
+     * Ids are taken from a global atomic counter, one at a time, so that they
+     * are consecutive in single threaded use. A thread which finds the counter
+     * contended (by failing to increase it) reserves blocks of ID_BLOCK_SIZE
+     * ids from then on, and hands these out without synchronization.
      */
-    final static synchronized void decreaseNodeCount() {
-        --NODE_COUNT;
+    final static long obtainNewId() {
+        final IdBlock block = ID_BLOCK.get();
+        if ( block._next < block._end ) {
+            return block._next++;
+        }
+        if ( !block._contended ) {
+            final long id = NODE_COUNT.get();
+            if ( NODE_COUNT.compareAndSet( id, id + 1 ) ) {
+                return id;
+            }
+            block._contended = true;
+        }
+        final long first = NODE_COUNT.getAndAdd( ID_BLOCK_SIZE );
+        block._next = first + 1;
+        block._end = first + ID_BLOCK_SIZE;
+        return first;
     }
 
     /**
-     * Sets the total number of all Nodes created so far to i.
+     * Returns the first of n consecutive new (unique) ids (in one step, so that
+     * this is safe to use from multiple threads).
      */
-    synchronized final static void setNodeCount( final long i ) {
-        PhylogenyNode.NODE_COUNT = i;
+    final static long obtainNewIds( final long n ) {
+        return NODE_COUNT.getAndAdd( n );
     }
 
     /**
-     * Increases the total number of all Nodes created so far by one.
+     * The block of ids reserved by a thread.
      */
-    synchronized final private static void increaseNodeCount() {
-        ++NODE_COUNT;
+    private final static class IdBlock {
+
+        private boolean _contended;
+        private long    _end;
+        private long    _next;
     }
 
     public enum NH_CONVERSION_SUPPORT_VALUE_STYLE {
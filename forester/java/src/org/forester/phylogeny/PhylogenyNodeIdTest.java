@@ -0,0 +1,192 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.phylogeny;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * Tests for the allocation of node ids: ids of nodes created on many threads
+ * at once must be unique, copies keep the ids of the original nodes, and
+ * levelOrderReID does not reuse ids.
+ * <p>
+ * main() times the building and copying of trees on 1 and on 32 (or a given
+ * number of) threads.
+ */
+public final class PhylogenyNodeIdTest {
+
+    public static boolean test() {
+        try {
+            final long count = PhylogenyNode.getNodeCount();
+            final PhylogenyNode a = new PhylogenyNode();
+            final PhylogenyNode b = new PhylogenyNode( "b" );
+            if ( ( b.getId() != ( a.getId() + 1 ) ) || ( a.getId() < count ) ) {
+                return fail( "ids of nodes created on one thread must be consecutive" );
+            }
+            final Phylogeny p = createRandomPhylogeny( 50, new Random( 1 ) );
+            final Phylogeny copy = p.copy();
+            final PhylogenyNodeIterator it_p = p.iteratorPreorder();
+            final PhylogenyNodeIterator it_c = copy.iteratorPreorder();
+            while ( it_p.hasNext() ) {
+                if ( it_p.next().getId() != it_c.next().getId() ) {
+                    return fail( "copied nodes must have the ids of the original nodes" );
+                }
+            }
+            final PhylogenyNode single = new PhylogenyNode( "single" );
+            final Phylogeny s = new Phylogeny();
+            s.setRoot( single );
+            s.levelOrderReID();
+            if ( new PhylogenyNode().getId() <= single.getId() ) {
+                return fail( "levelOrderReID must not lower the node count" );
+            }
+            final int threads = 8;
+            final int trees = 40;
+            final long[][] ids = new long[ threads ][];
+            final ExecutorService executor = Executors.newFixedThreadPool( threads );
+            try {
+                final List<Future<?>> futures = new ArrayList<Future<?>>();
+                for( int t = 0; t < threads; ++t ) {
+                    final int thread = t;
+                    futures.add( executor.submit( () -> {
+                        final Random r = new Random( thread );
+                        final List<Long> l = new ArrayList<Long>();
+                        for( int i = 0; i < trees; ++i ) {
+                            final Phylogeny phy = createRandomPhylogeny( 100, r );
+                            // Copies share ids with the original, re-ided trees do not.
+                            final Phylogeny re_ided = phy.copy();
+                            PhylogenyMethods.preOrderReId( re_ided );
+                            for( final Phylogeny x : new Phylogeny[] { phy, re_ided } ) {
+                                for( final PhylogenyNodeIterator it = x.iteratorPreorder(); it.hasNext(); ) {
+                                    l.add( it.next().getId() );
+                                }
+                            }
+                        }
+                        ids[ thread ] = new long[ l.size() ];
+                        for( int i = 0; i < l.size(); ++i ) {
+                            ids[ thread ][ i ] = l.get( i );
+                        }
+                    } ) );
+                }
+                for( final Future<?> future : futures ) {
+                    future.get();
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+            int n = 0;
+            for( final long[] x : ids ) {
+                n += x.length;
+            }
+            final long[] all = new long[ n ];
+            n = 0;
+            for( final long[] x : ids ) {
+                System.arraycopy( x, 0, all, n, x.length );
+                n += x.length;
+            }
+            Arrays.sort( all );
+            for( int i = 1; i < all.length; ++i ) {
+                if ( all[ i ] == all[ i - 1 ] ) {
+                    return fail( "node id " + all[ i ] + " has been handed out more than once" );
+                }
+            }
+            if ( all[ all.length - 1 ] >= PhylogenyNode.getNodeCount() ) {
+                return fail( "node ids must be lower than the node count" );
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static Phylogeny createRandomPhylogeny( final int external_nodes, final Random r ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( int i = 0; i < external_nodes; ++i ) {
+            final PhylogenyNode n = new PhylogenyNode( "n" + i );
+            n.setDistanceToParent( r.nextDouble() );
+            nodes.add( n );
+        }
+        while ( nodes.size() > 1 ) {
+            final PhylogenyNode parent = new PhylogenyNode();
+            parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            parent.setDistanceToParent( r.nextDouble() );
+            nodes.add( parent );
+        }
+        final Phylogeny p = new Phylogeny();
+        p.setRoot( nodes.get( 0 ) );
+        p.setRooted( true );
+        return p;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "PhylogenyNode id test failed: " + msg );
+        return false;
+    }
+
+    private static long time( final int threads, final int trees_per_thread ) throws InterruptedException,
+            ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try {
+            final long start = System.nanoTime();
+            final List<Future<?>> futures = new ArrayList<Future<?>>();
+            for( int t = 0; t < threads; ++t ) {
+                final int thread = t;
+                futures.add( executor.submit( () -> {
+                    final Random r = new Random( thread );
+                    for( int i = 0; i < trees_per_thread; ++i ) {
+                        createRandomPhylogeny( 1000, r ).copy();
+                    }
+                } ) );
+            }
+            for( final Future<?> future : futures ) {
+                future.get();
+            }
+            return ( System.nanoTime() - start ) / 1000000;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void main( final String[] args ) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 32;
+        final int trees = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 200;
+        System.out.println( "Processors : " + Runtime.getRuntime().availableProcessors() );
+        System.out.println( "Trees      : " + trees + " per thread, with 1000 external nodes, built and copied" );
+        for( int round = 0; round < 3; ++round ) {
+            final long t1 = time( 1, trees );
+            final long tn = time( threads, trees );
+            System.out.println( "1 thread: " + t1 + "ms; " + threads + " threads: " + tn + "ms (" + ( threads * trees )
+                    + " trees, " + ( ( ( double ) ( threads * t1 ) ) / tn ) + " x throughput)" );
+        }
+    }
+}
@@ -0,0 +1,219 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.phylogeny;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.forester.phylogeny.data.NodeData;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+import org.forester.phylogeny.iterators.PreorderTreeIterator;
+
+/**
+ * Index of the nodes of a phylogeny by name, sequence name, sequence symbol,
+ * gene name, taxonomy code, and scientific name, which also holds the number
+ * of nodes.
+ * <p>
+ * The number of nodes is counted when the index is built; the map for a key is
+ * built on first use (nodes with the same value are in preorder). An index
+ * becomes invalid as soon as the topology of one of its nodes is changed (via
+ * the methods of PhylogenyNode), and Phylogeny then builds a new one.
+ * Phylogeny.deleteSubtree updates the index instead.
+ * <p>
+ * Changes of node names via PhylogenyNode.setName cause the map for names to
+ * be rebuilt. Any other change of the names, sequences, or taxonomies of nodes
+ * (of any phylogeny, as counted by NodeData.getLookupValueChanges()) causes
+ * all maps to be rebuilt on their next use, so that nodes are always found
+ * under their current values.
+ */
+final class PhylogenyNodeIndex {
+
+    enum KEY {
+        GENE_NAME, NAME, SCIENTIFIC_NAME, SEQUENCE_NAME, SEQUENCE_SYMBOL, TAXONOMY_CODE;
+    }
+
+    private long                                             _lookup_value_changes;
+    private final Map<KEY, Map<String, List<PhylogenyNode>>> _maps;
+    private int                                              _number_of_nodes;
+    private PhylogenyNode                                    _root;
+    private volatile boolean                                 _valid;
+
+    PhylogenyNodeIndex( final Phylogeny phy ) {
+        if ( phy.isEmpty() ) {
+            throw new IllegalArgumentException( "attempt to index empty phylogeny" );
+        }
+        _root = phy.getRoot();
+        _maps = new EnumMap<KEY, Map<String, List<PhylogenyNode>>>( KEY.class );
+        int n = 0;
+        for( final PhylogenyNodeIterator it = new PreorderTreeIterator( _root ); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            final PhylogenyNodeIndex previous = node.getNodeIndex();
+            if ( ( previous != null ) && ( previous != this ) ) {
+                // Nodes can only be part of one index.
+                previous.invalidate();
+            }
+            node.setNodeIndex( this );
+            ++n;
+        }
+        _number_of_nodes = n;
+        _valid = true;
+    }
+
+    /**
+     * Returns a new list of the nodes with value for key (empty if there are
+     * none).
+     */
+    final synchronized List<PhylogenyNode> getNodes( final KEY key, final String value ) {
+        if ( value == null ) {
+            return new ArrayList<PhylogenyNode>();
+        }
+        final long lookup_value_changes = NodeData.getLookupValueChanges();
+        if ( lookup_value_changes != _lookup_value_changes ) {
+            _maps.clear();
+            _lookup_value_changes = lookup_value_changes;
+        }
+        Map<String, List<PhylogenyNode>> map = _maps.get( key );
+        if ( map == null ) {
+            map = buildMap( key );
+        }
+        List<PhylogenyNode> nodes = map.get( value );
+        if ( nodes == null ) {
+            return new ArrayList<PhylogenyNode>();
+        }
+        for( final PhylogenyNode node : nodes ) {
+            if ( !value.equals( getValue( key, node ) ) ) {
+                nodes = buildMap( key ).get( value );
+                if ( nodes == null ) {
+                    return new ArrayList<PhylogenyNode>();
+                }
+                break;
+            }
+        }
+        return new ArrayList<PhylogenyNode>( nodes );
+    }
+
+    final int getNumberOfNodes() {
+        return _number_of_nodes;
+    }
+
+    final PhylogenyNode getRoot() {
+        return _root;
+    }
+
+    final void invalidate() {
+        _valid = false;
+    }
+
+    final boolean isValid() {
+        return _valid;
+    }
+
+    /**
+     * Removes the map for key, to be built again on next use (called by
+     * PhylogenyNode.setName and setNodeData).
+     */
+    final synchronized void removeMap( final KEY key ) {
+        _maps.remove( key );
+    }
+
+    /**
+     * Removes node and its descendants from this index (to be called before
+     * their connections are removed).
+     */
+    final synchronized void removeSubtree( final PhylogenyNode node ) {
+        for( final PhylogenyNodeIterator it = new PreorderTreeIterator( node ); it.hasNext(); ) {
+            remove( it.next() );
+        }
+    }
+
+    /**
+     * Removes node (but not its descendants) from this index.
+     */
+    final synchronized void remove( final PhylogenyNode node ) {
+        for( final Map.Entry<KEY, Map<String, List<PhylogenyNode>>> e : _maps.entrySet() ) {
+            final List<PhylogenyNode> nodes = e.getValue().get( getValue( e.getKey(), node ) );
+            if ( nodes != null ) {
+                // By identity, since PhylogenyNode.equals compares data.
+                for( int i = 0; i < nodes.size(); ++i ) {
+                    if ( nodes.get( i ) == node ) {
+                        nodes.remove( i );
+                        break;
+                    }
+                }
+            }
+        }
+        if ( node.getNodeIndex() == this ) {
+            node.setNodeIndex( null );
+        }
+        --_number_of_nodes;
+    }
+
+    /**
+     * Marks this index (of a phylogeny with the given, possibly new, root) as
+     * valid again, after the changes of topology it has been updated for.
+     */
+    final void revalidate( final PhylogenyNode root ) {
+        _root = root;
+        _valid = true;
+    }
+
+    private final Map<String, List<PhylogenyNode>> buildMap( final KEY key ) {
+        final Map<String, List<PhylogenyNode>> map = new HashMap<String, List<PhylogenyNode>>();
+        for( final PhylogenyNodeIterator it = new PreorderTreeIterator( _root ); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            final String value = getValue( key, node );
+            if ( value != null ) {
+                List<PhylogenyNode> nodes = map.get( value );
+                if ( nodes == null ) {
+                    nodes = new ArrayList<PhylogenyNode>( 1 );
+                    map.put( value, nodes );
+                }
+                nodes.add( node );
+            }
+        }
+        _maps.put( key, map );
+        return map;
+    }
+
+    private final static String getValue( final KEY key, final PhylogenyNode node ) {
+        switch ( key ) {
+            case NAME:
+                return node.getName();
+            case SEQUENCE_NAME:
+                return node.getNodeData().isHasSequence() ? node.getNodeData().getSequence().getName() : null;
+            case SEQUENCE_SYMBOL:
+                return node.getNodeData().isHasSequence() ? node.getNodeData().getSequence().getSymbol() : null;
+            case GENE_NAME:
+                return node.getNodeData().isHasSequence() ? node.getNodeData().getSequence().getGeneName() : null;
+            case TAXONOMY_CODE:
+                return node.getNodeData().isHasTaxonomy() ? node.getNodeData().getTaxonomy().getTaxonomyCode()
+                        : null;
+            case SCIENTIFIC_NAME:
+                return node.getNodeData().isHasTaxonomy() ? node.getNodeData().getTaxonomy().getScientificName()
+                        : null;
+            default:
+                throw new IllegalArgumentException( "unknown key " + key );
+        }
+    }
+}
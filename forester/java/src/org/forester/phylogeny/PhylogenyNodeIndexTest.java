@@ -0,0 +1,284 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.phylogeny;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.forester.io.parsers.phyloxml.PhyloXmlDataFormatException;
+import org.forester.phylogeny.data.Sequence;
+import org.forester.phylogeny.data.Taxonomy;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * Tests for the lookups of nodes by name, sequence, and taxonomy, and for the
+ * node count, of Phylogeny (which use a PhylogenyNodeIndex): the results must
+ * be the same as those of a traversal, also after the topology or the node
+ * names have been changed.
+ * <p>
+ * main() times the lookup of all external nodes by name in a phylogeny with
+ * 100000 (or a given number of) external nodes.
+ */
+public final class PhylogenyNodeIndexTest {
+
+    public static boolean test() {
+        try {
+            final Random r = new Random( 1 );
+            final Phylogeny p = createRandomPhylogeny( 300, 40, r );
+            if ( !isConsistent( p, "initial" ) ) {
+                return false;
+            }
+            for( int i = 0; i < 60; ++i ) {
+                final List<PhylogenyNode> ext = p.getExternalNodes();
+                p.deleteSubtree( ext.get( r.nextInt( ext.size() ) ), ( i % 2 ) == 0 );
+                if ( !isConsistent( p, "deletion " + i ) ) {
+                    return false;
+                }
+            }
+            final PhylogenyNode internal = p.getRoot().getChildNode( 0 ).getChildNode( 0 );
+            if ( internal.isExternal() ) {
+                return fail( "unexpected topology of random phylogeny" );
+            }
+            p.deleteSubtree( internal, true );
+            if ( !isConsistent( p, "deletion of internal node" ) ) {
+                return false;
+            }
+            p.getExternalNodes().get( 3 ).setName( "renamed" );
+            if ( ( p.getNodes( "renamed" ).size() != 1 ) || !isConsistent( p, "renaming" ) ) {
+                return fail( "renamed node not found" );
+            }
+            final PhylogenyNode added = new PhylogenyNode( "n1" );
+            p.getExternalNodes().get( 5 ).getParent().addAsChild( added );
+            if ( !isConsistent( p, "addition of node" ) ) {
+                return false;
+            }
+            p.reRoot( added );
+            if ( !isConsistent( p, "rerooting" ) ) {
+                return false;
+            }
+            final PhylogenyNode n = p.getExternalNodes().get( 7 );
+            final String code = n.getNodeData().getTaxonomy().getTaxonomyCode();
+            p.getNodesViaTaxonomyCode( code );
+            n.getNodeData().getTaxonomy().setTaxonomyCode( "ABCDE" );
+            // Data set after a lookup must be found without externalNodesHaveChanged().
+            for( final PhylogenyNode x : p.getNodesViaTaxonomyCode( code ) ) {
+                if ( x == n ) {
+                    return fail( "node found under its old taxonomy code" );
+                }
+            }
+            if ( !p.getNodesViaTaxonomyCode( "ABCDE" ).contains( n ) || !isConsistent( p, "change of taxonomy code" ) ) {
+                return fail( "node not found under its new taxonomy code" );
+            }
+            final PhylogenyNode m = p.getExternalNodes().get( 8 );
+            final Taxonomy t = new Taxonomy();
+            t.setTaxonomyCode( "ABCDE" );
+            m.getNodeData().setTaxonomy( t );
+            if ( ( p.getNodesViaTaxonomyCode( "ABCDE" ).size() != 2 ) || !isConsistent( p, "new taxonomy" ) ) {
+                return fail( "node not found under the taxonomy code of its new taxonomy" );
+            }
+            p.getNodesViaSequenceName( "seq" );
+            final Sequence seq = new Sequence();
+            m.getNodeData().setSequence( seq );
+            seq.setName( "seq" );
+            if ( ( p.getNodesViaSequenceName( "seq" ).size() != 1 ) || !isConsistent( p, "new sequence" ) ) {
+                return fail( "node not found under the name of its new sequence" );
+            }
+            // Lookups must return new lists, and deletion of the nodes in the list must work.
+            final List<PhylogenyNode> l = p.getNodes( "n2" );
+            l.clear();
+            for( final PhylogenyNode x : p.getNodes( "n3" ) ) {
+                if ( x.isExternal() ) {
+                    p.deleteSubtree( x, true );
+                }
+            }
+            if ( !isConsistent( p, "deletion of found nodes" ) ) {
+                return false;
+            }
+            final Phylogeny s = new Phylogeny();
+            s.setRoot( new PhylogenyNode( "single" ) );
+            if ( ( s.getNodeCount() != 1 ) || ( s.getNodes( "single" ).size() != 1 ) ) {
+                return fail( "single node" );
+            }
+            s.deleteSubtree( s.getRoot(), true );
+            if ( !s.isEmpty() || ( s.getNodeCount() != 0 ) ) {
+                return fail( "deletion of single node" );
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+
+    private static Phylogeny createRandomPhylogeny( final int external_nodes,
+                                                    final int different_names,
+                                                    final Random r ) throws PhyloXmlDataFormatException {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( int i = 0; i < external_nodes; ++i ) {
+            final PhylogenyNode n = new PhylogenyNode( "n" + r.nextInt( different_names ) );
+            final Sequence seq = new Sequence();
+            seq.setName( "seq" + r.nextInt( different_names ) );
+            seq.setSymbol( "sym" + r.nextInt( different_names ) );
+            seq.setGeneName( "gene" + r.nextInt( different_names ) );
+            n.getNodeData().addSequence( seq );
+            final Taxonomy tax = new Taxonomy();
+            // Taxonomy codes have at most five characters.
+            tax.setTaxonomyCode( "TX" + r.nextInt( Math.min( different_names, 1000 ) ) );
+            tax.setScientificName( "Species " + r.nextInt( different_names ) );
+            n.getNodeData().addTaxonomy( tax );
+            nodes.add( n );
+        }
+        while ( nodes.size() > 1 ) {
+            final PhylogenyNode parent = new PhylogenyNode( r.nextBoolean() ? ""
+                    : ( "n" + r.nextInt( different_names ) ) );
+            parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            parent.addAsChild( nodes.remove( r.nextInt( nodes.size() ) ) );
+            nodes.add( parent );
+        }
+        final Phylogeny p = new Phylogeny();
+        p.setRoot( nodes.get( 0 ) );
+        p.setRooted( true );
+        return p;
+    }
+
+    private static List<PhylogenyNode> getNodesByTraversal( final Phylogeny p,
+                                                            final PhylogenyNodeIndex.KEY key,
+                                                            final String value ) {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNodeIterator it = p.iteratorPreorder(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            final String v;
+            switch ( key ) {
+                case NAME:
+                    v = n.getName();
+                    break;
+                case SEQUENCE_NAME:
+                    v = n.getNodeData().isHasSequence() ? n.getNodeData().getSequence().getName() : null;
+                    break;
+                case SEQUENCE_SYMBOL:
+                    v = n.getNodeData().isHasSequence() ? n.getNodeData().getSequence().getSymbol() : null;
+                    break;
+                case GENE_NAME:
+                    v = n.getNodeData().isHasSequence() ? n.getNodeData().getSequence().getGeneName() : null;
+                    break;
+                case TAXONOMY_CODE:
+                    v = n.getNodeData().isHasTaxonomy() ? n.getNodeData().getTaxonomy().getTaxonomyCode() : null;
+                    break;
+                default:
+                    v = n.getNodeData().isHasTaxonomy() ? n.getNodeData().getTaxonomy().getScientificName() : null;
+            }
+            if ( value.equals( v ) ) {
+                nodes.add( n );
+            }
+        }
+        return nodes;
+    }
+
+    private static List<PhylogenyNode> getNodesByIndex( final Phylogeny p,
+                                                        final PhylogenyNodeIndex.KEY key,
+                                                        final String value ) {
+        switch ( key ) {
+            case NAME:
+                return p.getNodes( value );
+            case SEQUENCE_NAME:
+                return p.getNodesViaSequenceName( value );
+            case SEQUENCE_SYMBOL:
+                return p.getNodesViaSequenceSymbol( value );
+            case GENE_NAME:
+                return p.getNodesViaGeneName( value );
+            case TAXONOMY_CODE:
+                return p.getNodesViaTaxonomyCode( value );
+            default:
+                return p.getNodesViaScientificName( value );
+        }
+    }
+
+    private static boolean isConsistent( final Phylogeny p, final String after ) {
+        int count = 0;
+        for( final PhylogenyNodeIterator it = p.iteratorPreorder(); it.hasNext(); it.next() ) {
+            ++count;
+        }
+        if ( p.getNodeCount() != count ) {
+            return fail( "node count " + p.getNodeCount() + " instead of " + count + " after " + after );
+        }
+        final String[] prefixes = { "n", "seq", "sym", "gene", "TX", "Species " };
+        final PhylogenyNodeIndex.KEY[] keys = { PhylogenyNodeIndex.KEY.NAME, PhylogenyNodeIndex.KEY.SEQUENCE_NAME,
+                PhylogenyNodeIndex.KEY.SEQUENCE_SYMBOL, PhylogenyNodeIndex.KEY.GENE_NAME,
+                PhylogenyNodeIndex.KEY.TAXONOMY_CODE, PhylogenyNodeIndex.KEY.SCIENTIFIC_NAME };
+        for( int k = 0; k < keys.length; ++k ) {
+            final List<String> values = new ArrayList<String>();
+            for( int i = 0; i < 41; ++i ) {
+                values.add( prefixes[ k ] + i );
+            }
+            values.add( "" );
+            values.add( "renamed" );
+            values.add( "ABCDE" );
+            values.add( "FGHIJ" );
+            for( final String value : values ) {
+                final List<PhylogenyNode> expected = getNodesByTraversal( p, keys[ k ], value );
+                final List<PhylogenyNode> found = getNodesByIndex( p, keys[ k ], value );
+                boolean same = expected.size() == found.size();
+                for( int i = 0; same && ( i < expected.size() ); ++i ) {
+                    same = expected.get( i ) == found.get( i );
+                }
+                if ( !same ) {
+                    return fail( "different nodes for " + keys[ k ] + " [" + value + "] after " + after + ": "
+                            + found.size() + " instead of " + expected.size() );
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "PhylogenyNodeIndex test failed: " + msg );
+        return false;
+    }
+
+    public static void main( final String[] args ) throws PhyloXmlDataFormatException {
+        final int external_nodes = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 100000;
+        final Phylogeny p = createRandomPhylogeny( external_nodes, Integer.MAX_VALUE, new Random( 42 ) );
+        final List<String> names = new ArrayList<String>();
+        for( final PhylogenyNodeIterator it = p.iteratorExternalForward(); it.hasNext(); ) {
+            names.add( it.next().getName() );
+        }
+        System.out.println( "External nodes : " + external_nodes );
+        for( int round = 0; round < 3; ++round ) {
+            long time = System.currentTimeMillis();
+            int found = 0;
+            for( final String name : names ) {
+                found += p.getNodes( name ).size();
+            }
+            System.out.println( "getNodes(String) for all external nodes: " + found + " found in "
+                    + ( System.currentTimeMillis() - time ) + "ms" );
+            time = System.currentTimeMillis();
+            long count = 0;
+            for( int i = 0; i < names.size(); ++i ) {
+                count += p.getNodeCount();
+            }
+            System.out.println( "getNodeCount() " + names.size() + " times: " + count + " in "
+                    + ( System.currentTimeMillis() - time ) + "ms" );
+            p.externalNodesHaveChanged();
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.forester.io.parsers.phyloxml.PhyloXmlUtil;
 import org.forester.phylogeny.data.Property.AppliesTo;
@@ -31,6 +32,8 @@ import org.forester.util.ForesterUtil;
 
 public class NodeData implements PhylogenyData {
 
+    // changes of the values nodes are looked up by (see getLookupValueChanges)
+    private final static LongAdder LOOKUP_VALUE_CHANGES = new LongAdder();
     private String             _node_name;
     private Event              _event;
     private List<Sequence>     _sequences;
@@ -80,6 +83,7 @@ public class NodeData implements PhylogenyData {
             _sequences = new ArrayList<Sequence>();
         }
         _sequences.add( sequence );
+        lookupValueChanged();
     }
 
     public void addTaxonomy( final Taxonomy taxonomy ) {
@@ -87,6 +91,7 @@ public class NodeData implements PhylogenyData {
             _taxonomies = new ArrayList<Taxonomy>();
         }
         _taxonomies.add( taxonomy );
+        lookupValueChanged();
     }
 
     @Override
@@ -377,6 +382,7 @@ public class NodeData implements PhylogenyData {
             _sequences = new ArrayList<Sequence>();
         }
         _sequences.set( index, sequence );
+        lookupValueChanged();
     }
 
     /**
@@ -393,6 +399,7 @@ public class NodeData implements PhylogenyData {
         else {
             _sequences.set( 0, sequence );
         }
+        lookupValueChanged();
     }
 
     private void setSequences( final List<Sequence> sequences ) {
@@ -408,6 +415,7 @@ public class NodeData implements PhylogenyData {
             _taxonomies = new ArrayList<Taxonomy>();
         }
         _taxonomies.set( index, taxonomy );
+        lookupValueChanged();
     }
 
     /**
@@ -424,6 +432,7 @@ public class NodeData implements PhylogenyData {
         else {
             _taxonomies.set( 0, taxonomy );
         }
+        lookupValueChanged();
     }
 
     @Override
@@ -520,6 +529,7 @@ public class NodeData implements PhylogenyData {
 
     public void setNodeName( final String node_name ) {
         _node_name = node_name;
+        lookupValueChanged();
     }
 
     public void setNodeVisualData( final NodeVisualData node_visual_data ) {
@@ -529,4 +539,18 @@ public class NodeData implements PhylogenyData {
     public NodeVisualData getNodeVisualData() {
         return _node_visual_data;
     }
+
+    /**
+     * Returns the number of changes so far, of any node, of the values
+     * Phylogeny looks nodes up by: node names, sequences and their names,
+     * symbols and gene names, and taxonomies and their codes and scientific
+     * names. Phylogeny looks nodes up again when this has changed.
+     */
+    public static long getLookupValueChanges() {
+        return LOOKUP_VALUE_CHANGES.sum();
+    }
+
+    static void lookupValueChanged() {
+        LOOKUP_VALUE_CHANGES.increment();
+    }
 }
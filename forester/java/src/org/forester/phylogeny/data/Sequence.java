@@ -392,6 +392,7 @@ public class Sequence implements PhylogenyData, MultipleUris, Comparable<Sequenc
 
     public void setGeneName( final String gene_name ) {
         _gene_name = gene_name;
+        NodeData.lookupValueChanged();
     }
 
     public void setLocation( final String description ) {
@@ -408,6 +409,7 @@ public class Sequence implements PhylogenyData, MultipleUris, Comparable<Sequenc
 
     public void setName( final String name ) {
         _name = name;
+        NodeData.lookupValueChanged();
     }
 
     public void setSourceId( final String source_id ) {
@@ -419,6 +421,7 @@ public class Sequence implements PhylogenyData, MultipleUris, Comparable<Sequenc
             throw new PhyloXmlDataFormatException( "illegal sequence symbol: [" + symbol + "]" );
         }
         _symbol = symbol;
+        NodeData.lookupValueChanged();
     }
 
     public void setType( final String type ) throws PhyloXmlDataFormatException {
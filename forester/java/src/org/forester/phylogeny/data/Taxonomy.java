@@ -308,6 +308,7 @@ public class Taxonomy implements PhylogenyData, MultipleUris, Comparable<Taxonom
 
     public void setScientificName( final String scientific_name ) {
         _scientific_name = scientific_name;
+        NodeData.lookupValueChanged();
     }
 
     private void setSynonyms( final List<String> synonyms ) {
@@ -320,6 +321,7 @@ public class Taxonomy implements PhylogenyData, MultipleUris, Comparable<Taxonom
             throw new PhyloXmlDataFormatException( "illegal taxonomy code: [" + taxonomy_code + "]" );
         }
         _taxonomy_code = taxonomy_code;
+        NodeData.lookupValueChanged();
     }
 
     @Override
@@ -32,6 +32,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.forester.datastructures.IntMatrix;
 import org.forester.io.parsers.IteratingPhylogenyParser;
@@ -41,6 +47,7 @@ import org.forester.io.parsers.nhx.NHXParser;
 import org.forester.io.parsers.nhx.NHXParser.TAXONOMY_EXTRACTION;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyLCAIndex;
 import org.forester.phylogeny.PhylogenyMethods;
 import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.data.Taxonomy;
@@ -84,8 +91,12 @@ public final class RIO {
                  int last,
                  final boolean produce_log,
                  final boolean verbose,
-                 final boolean transfer_taxonomy )
+                 final boolean transfer_taxonomy,
+                 final int threads )
             throws IOException, SDIException, RIOException {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
         if ( ( last == DEFAULT_RANGE ) && ( first >= 0 ) ) {
             last = END_OF_GT;
         }
@@ -106,7 +117,7 @@ public final class RIO {
         _removed_gene_tree_nodes = null;
         _duplications_stats = new BasicDescriptiveStatistics();
         p.reset();
-        inferOrthologs( p, species_tree, algorithm, outgroup, first, last, transfer_taxonomy );
+        inferOrthologs( p, species_tree, algorithm, outgroup, first, last, transfer_taxonomy, threads );
         _species_tree = species_tree;
     }
 
@@ -195,13 +206,21 @@ public final class RIO {
         return _species_tree;
     }
 
+    /**
+     * If threads is larger than one (and the algorithm is GSDIR with
+     * re-rooting by the algorithm), the first gene tree is analyzed on this
+     * thread, and the following ones on worker threads (see GeneTreeWorkers),
+     * while parsing continues on this thread. Results are the same as for one
+     * thread.
+     */
     private final void inferOrthologs( final IteratingPhylogenyParser parser,
                                        final Phylogeny species_tree,
                                        final ALGORITHM algorithm,
                                        final String outgroup,
                                        int first,
                                        final int last,
-                                       final boolean transfer_taxonomy )
+                                       final boolean transfer_taxonomy,
+                                       final int threads )
             throws SDIException, RIOException, FileNotFoundException, IOException {
         if ( !parser.hasNext() ) {
             throw new RIOException( "no gene trees to analyze" );
@@ -216,50 +235,76 @@ public final class RIO {
         int i = 0;
         int counter = 0;
         final boolean no_range = ( first < 0 ) || ( last < first );
-        while ( parser.hasNext() ) {
-            final Phylogeny gt = parser.next();
-            if ( no_range || ( ( i >= first ) && ( i <= last ) ) ) {
-                if ( gt.isEmpty() ) {
-                    throw new RIOException( "gene tree #" + i + " is empty" );
-                }
-                if ( gt.getNumberOfExternalNodes() == 1 ) {
-                    throw new RIOException( "gene tree #" + i + " has only one external node" );
-                }
-                if ( _verbose ) {
-                    System.out.print( "\r" + i );
-                }
-                if ( counter == 0 ) {
+        final boolean parallel = ( threads > 1 ) && ( algorithm == ALGORITHM.GSDIR )
+                && ( _rerooting == REROOTING.BY_ALGORITHM );
+        GeneTreeWorkers workers = null;
+        try {
+            while ( parser.hasNext() ) {
+                final Phylogeny gt = parser.next();
+                if ( no_range || ( ( i >= first ) && ( i <= last ) ) ) {
+                    if ( gt.isEmpty() ) {
+                        throw new RIOException( "gene tree #" + i + " is empty" );
+                    }
+                    if ( gt.getNumberOfExternalNodes() == 1 ) {
+                        throw new RIOException( "gene tree #" + i + " has only one external node" );
+                    }
+                    if ( _verbose ) {
+                        System.out.print( "\r" + i );
+                    }
+                    if ( counter == 0 ) {
+                        if ( algorithm == ALGORITHM.SDIR ) {
+                            // Removes from species_tree all species not found in gene_tree.
+                            PhylogenyMethods.taxonomyBasedDeletionOfExternalNodes( gt, species_tree );
+                            if ( species_tree.isEmpty() ) {
+                                throw new RIOException( "failed to establish species based mapping between gene and species trees" );
+                            }
+                        }
+                        gene_tree_ext_nodes = gt.getNumberOfExternalNodes();
+                    }
+                    else if ( gene_tree_ext_nodes != gt.getNumberOfExternalNodes() ) {
+                        throw new RIOException( "gene tree #" + i + " has a different number of external nodes ("
+                                + gt.getNumberOfExternalNodes() + ") than the preceding gene tree(s) ("
+                                + gene_tree_ext_nodes + ")" );
+                    }
                     if ( algorithm == ALGORITHM.SDIR ) {
-                        // Removes from species_tree all species not found in gene_tree.
-                        PhylogenyMethods.taxonomyBasedDeletionOfExternalNodes( gt, species_tree );
-                        if ( species_tree.isEmpty() ) {
+                        // Removes from gene_tree all species not found in species_tree.
+                        PhylogenyMethods.taxonomyBasedDeletionOfExternalNodes( species_tree, gt );
+                        if ( gt.isEmpty() ) {
                             throw new RIOException( "failed to establish species based mapping between gene and species trees" );
                         }
                     }
-                    gene_tree_ext_nodes = gt.getNumberOfExternalNodes();
-                }
-                else if ( gene_tree_ext_nodes != gt.getNumberOfExternalNodes() ) {
-                    throw new RIOException( "gene tree #" + i + " has a different number of external nodes ("
-                            + gt.getNumberOfExternalNodes() + ") than the preceding gene tree(s) ("
-                            + gene_tree_ext_nodes + ")" );
-                }
-                if ( algorithm == ALGORITHM.SDIR ) {
-                    // Removes from gene_tree all species not found in species_tree.
-                    PhylogenyMethods.taxonomyBasedDeletionOfExternalNodes( species_tree, gt );
-                    if ( gt.isEmpty() ) {
-                        throw new RIOException( "failed to establish species based mapping between gene and species trees" );
+                    if ( workers != null ) {
+                        if ( !workers.submit( gt, counter ) ) {
+                            break;
+                        }
                     }
+                    else {
+                        final Phylogeny analyzed_gt = performOrthologInference( gt,
+                                                                                species_tree,
+                                                                                algorithm,
+                                                                                outgroup,
+                                                                                counter,
+                                                                                transfer_taxonomy );
+                        RIO.calculateOrthologTable( analyzed_gt, true, counter );
+                        if ( parallel ) {
+                            workers = new GeneTreeWorkers( species_tree, threads, transfer_taxonomy );
+                        }
+                    }
+                    ++counter;
                 }
-                final Phylogeny analyzed_gt = performOrthologInference( gt,
-                                                                        species_tree,
-                                                                        algorithm,
-                                                                        outgroup,
-                                                                        counter,
-                                                                        transfer_taxonomy );
-                RIO.calculateOrthologTable( analyzed_gt, true, counter );
-                ++counter;
+                ++i;
             }
-            ++i;
+        }
+        catch ( final IOException | SDIException | RIOException | RuntimeException e ) {
+            if ( workers != null ) {
+                // A failure on a worker thread (for a preceding gene tree)
+                // takes precedence, as it would in the serial analysis.
+                workers.finish();
+            }
+            throw e;
+        }
+        if ( workers != null ) {
+            workers.finish();
         }
         if ( _verbose ) {
             System.out.print( "\rGene trees analyzed                 :\t" + counter );
@@ -437,7 +482,7 @@ public final class RIO {
         final Phylogeny assigned_tree;
         final int dups;
         if ( _rerooting == REROOTING.BY_ALGORITHM ) {
-            final GSDIR gsdir = new GSDIR( gene_tree, species_tree, true, i == 0, transfer_taxonomy );
+            final GSDIR gsdir = new GSDIR( gene_tree, species_tree, true, i == 0, transfer_taxonomy, true );
             assigned_tree = gsdir.getMinDuplicationsSumGeneTree();
             if ( i == 0 ) {
                 _removed_gene_tree_nodes = gsdir.getStrippedExternalGeneTreeNodes();
@@ -698,6 +743,13 @@ public final class RIO {
                         transfer_taxonomy );
     }
 
+    /**
+     * Analyzes the gene trees from p. If threads is larger than one, parsing
+     * continues on the calling thread while the gene trees are analyzed on
+     * threads worker threads (only for ALGORITHM.GSDIR with
+     * REROOTING.BY_ALGORITHM; otherwise the analysis is serial). Results are
+     * the same regardless of the number of threads.
+     */
     public final static RIO executeAnalysis( final IteratingPhylogenyParser p,
                                              final File species_tree_file,
                                              final ALGORITHM algorithm,
@@ -707,7 +759,8 @@ public final class RIO {
                                              final int last,
                                              final boolean produce_log,
                                              final boolean verbose,
-                                             final boolean transfer_taxonomy )
+                                             final boolean transfer_taxonomy,
+                                             final int threads )
             throws IOException, SDIException, RIOException {
         final Phylogeny g0 = p.next();
         if ( ( g0 == null ) || g0.isEmpty() || ( g0.getNumberOfExternalNodes() < 2 ) ) {
@@ -725,7 +778,32 @@ public final class RIO {
                         last,
                         produce_log,
                         verbose,
-                        transfer_taxonomy );
+                        transfer_taxonomy,
+                        threads );
+    }
+
+    public final static RIO executeAnalysis( final IteratingPhylogenyParser p,
+                                             final File species_tree_file,
+                                             final ALGORITHM algorithm,
+                                             final REROOTING rerooting,
+                                             final String outgroup,
+                                             final int first,
+                                             final int last,
+                                             final boolean produce_log,
+                                             final boolean verbose,
+                                             final boolean transfer_taxonomy )
+            throws IOException, SDIException, RIOException {
+        return executeAnalysis( p,
+                                species_tree_file,
+                                algorithm,
+                                rerooting,
+                                outgroup,
+                                first,
+                                last,
+                                produce_log,
+                                verbose,
+                                transfer_taxonomy,
+                                1 );
     }
 
     public final static RIO executeAnalysis( final IteratingPhylogenyParser p,
@@ -746,7 +824,8 @@ public final class RIO {
                         DEFAULT_RANGE,
                         produce_log,
                         verbose,
-                        transfer_taxonomy );
+                        transfer_taxonomy,
+                        1 );
     }
 
     public final static RIO executeAnalysis( final IteratingPhylogenyParser p,
@@ -769,7 +848,33 @@ public final class RIO {
                         last,
                         produce_log,
                         verbose,
-                        transfer_taxonomy );
+                        transfer_taxonomy,
+                        1 );
+    }
+
+    public final static RIO executeAnalysis( final IteratingPhylogenyParser p,
+                                             final Phylogeny species_tree,
+                                             final ALGORITHM algorithm,
+                                             final REROOTING rerooting,
+                                             final String outgroup,
+                                             final int first,
+                                             final int last,
+                                             final boolean produce_log,
+                                             final boolean verbose,
+                                             final boolean transfer_taxonomy,
+                                             final int threads )
+            throws IOException, SDIException, RIOException {
+        return new RIO( p,
+                        species_tree,
+                        algorithm,
+                        rerooting,
+                        outgroup,
+                        first,
+                        last,
+                        produce_log,
+                        verbose,
+                        transfer_taxonomy,
+                        threads );
     }
 
     public final static RIO executeAnalysis( final Phylogeny[] gene_trees, final Phylogeny species_tree )
@@ -981,7 +1086,7 @@ public final class RIO {
 
     private final static void updateCounts( final IntMatrix m, final int counter, final Phylogeny g )
             throws RIOException {
-        PhylogenyMethods.preOrderReId( g );
+        final PhylogenyLCAIndex lca_index = g.getLCAIndex();
         final HashMap<String, PhylogenyNode> map = PhylogenyMethods.createNameToExtNodeMap( g );
         for( int x = 0; x < m.size(); ++x ) {
             final String mx = m.getLabel( x );
@@ -997,13 +1102,252 @@ public final class RIO {
                 if ( ny == null ) {
                     throw new RIOException( "node \"" + my + "\" not present in gene tree #" + counter );
                 }
-                if ( !PhylogenyMethods.calculateLCAonTreeWithIdsInPreOrder( nx, ny ).isDuplication() ) {
+                if ( !lca_index.calculateLCA( nx, ny ).isDuplication() ) {
                     m.inreaseByOne( x, y );
                 }
             }
         }
     }
 
+    private final static class IndexedGeneTree {
+
+        private final Phylogeny _gene_tree;
+        private final int       _i;
+
+        IndexedGeneTree( final Phylogeny gene_tree, final int i ) {
+            _gene_tree = gene_tree;
+            _i = i;
+        }
+    }
+
+    /**
+     * GSDIR analyses of gene trees #1 and following, for one thread each.
+     * <p>
+     * Each worker has its own copy of the species tree (as stripped by the
+     * analysis of gene tree #0), ortholog table and record of duplications.
+     * These are merged in finish(). The record of duplications is kept by
+     * gene tree number, so that duplications statistics, as well as the
+     * gene trees with minimal duplications (the one with the shortest
+     * maximal distance to root, and the lowest number, for each number of
+     * duplications), are the same as for the serial analysis.
+     */
+    private final class GeneTreeWorkers {
+
+        private final static int                     QUEUED_PER_THREAD = 2;
+        private final ExecutorService                _executor;
+        private final List<Future<?>>                _futures;
+        private final BlockingQueue<IndexedGeneTree> _queue;
+        private final List<Shard>                    _shards;
+        private final int                            _threads;
+        private Exception                            _failure;
+        private int                                  _failure_i;
+        private boolean                              _finished;
+        private int                                  _submitted;
+
+        GeneTreeWorkers( final Phylogeny species_tree, final int threads, final boolean transfer_taxonomy ) {
+            _threads = threads;
+            _queue = new ArrayBlockingQueue<IndexedGeneTree>( QUEUED_PER_THREAD * threads );
+            _shards = new ArrayList<Shard>();
+            _futures = new ArrayList<Future<?>>();
+            final List<String> labels = new ArrayList<String>();
+            for( int x = 0; x < _m.size(); ++x ) {
+                labels.add( _m.getLabel( x ) );
+            }
+            _executor = Executors.newFixedThreadPool( threads );
+            for( int w = 0; w < threads; ++w ) {
+                final Shard shard = new Shard( species_tree.copy(), new IntMatrix( labels ) );
+                _shards.add( shard );
+                _futures.add( _executor.submit( () -> {
+                    IndexedGeneTree t;
+                    while ( ( t = take() ) != null ) {
+                        if ( isToBeAnalyzed( t._i ) ) {
+                            try {
+                                analyze( t._gene_tree, t._i, shard, transfer_taxonomy );
+                            }
+                            catch ( final SDIException | RIOException | RuntimeException e ) {
+                                fail( t._i, e );
+                            }
+                        }
+                    }
+                } ) );
+            }
+        }
+
+        private final void analyze( final Phylogeny gene_tree,
+                                    final int i,
+                                    final Shard shard,
+                                    final boolean transfer_taxonomy ) throws SDIException, RIOException {
+            final GSDIR gsdir = new GSDIR( gene_tree, shard._species_tree, true, false, transfer_taxonomy, true );
+            final Phylogeny assigned_tree = gsdir.getMinDuplicationsSumGeneTree();
+            assigned_tree.setRerootable( false );
+            if ( _ext_nodes != assigned_tree.getNumberOfExternalNodes() ) {
+                throw new RIOException( "after stripping gene tree #" + i
+                        + " has a different number of external nodes (" + assigned_tree.getNumberOfExternalNodes()
+                        + ") than the preceding gene tree(s) (" + _ext_nodes + ")" );
+            }
+            shard.add( i, gsdir.getMinDuplicationsSum(), assigned_tree );
+            updateCounts( shard._m, i, assigned_tree );
+        }
+
+        private final synchronized void fail( final int i, final Exception e ) {
+            if ( ( _failure == null ) || ( i < _failure_i ) ) {
+                _failure = e;
+                _failure_i = i;
+            }
+        }
+
+        private final synchronized boolean isToBeAnalyzed( final int i ) {
+            return ( _failure == null ) || ( i < _failure_i );
+        }
+
+        private final void merge() {
+            final int[] dups = new int[ _submitted + 1 ];
+            final Map<Integer, MinDuplicationsGeneTree> min_dup_trees = new HashMap<Integer, MinDuplicationsGeneTree>();
+            for( final Map.Entry<Integer, Phylogeny> e : _dup_to_tree_map.entrySet() ) {
+                min_dup_trees.put( e.getKey(), new MinDuplicationsGeneTree( e.getValue(), 0 ) );
+            }
+            for( final Shard shard : _shards ) {
+                for( int j = 0; j < shard._numbers.size(); ++j ) {
+                    dups[ shard._numbers.get( j ) ] = shard._dups.get( j );
+                }
+                for( final Map.Entry<Integer, MinDuplicationsGeneTree> e : shard._min_dup_trees.entrySet() ) {
+                    final MinDuplicationsGeneTree current = min_dup_trees.get( e.getKey() );
+                    if ( ( current == null ) || e.getValue().isBetterThan( current ) ) {
+                        min_dup_trees.put( e.getKey(), e.getValue() );
+                    }
+                }
+                for( int x = 0; x < _m.size(); ++x ) {
+                    for( int y = 0; y < _m.size(); ++y ) {
+                        _m.set( x, y, _m.get( x, y ) + shard._m.get( x, y ) );
+                    }
+                }
+            }
+            for( int i = 1; i < dups.length; ++i ) {
+                _duplications_stats.addValue( dups[ i ] );
+            }
+            for( final Map.Entry<Integer, MinDuplicationsGeneTree> e : min_dup_trees.entrySet() ) {
+                _dup_to_tree_map.put( e.getKey(), e.getValue()._tree );
+            }
+            _min_dub_gene_tree = _dup_to_tree_map.get( ( int ) _duplications_stats.getMin() );
+        }
+
+        private final IndexedGeneTree take() {
+            try {
+                final IndexedGeneTree t = _queue.take();
+                return t._gene_tree != null ? t : null;
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * Waits for all submitted gene trees to be analyzed, throws the
+         * exception of the lowest numbered gene tree which failed (if any),
+         * and otherwise merges the results into those of gene tree #0.
+         */
+        final void finish() throws SDIException, RIOException {
+            if ( _finished ) {
+                return;
+            }
+            _finished = true;
+            try {
+                for( int w = 0; w < _threads; ++w ) {
+                    _queue.put( new IndexedGeneTree( null, -1 ) );
+                }
+                for( final Future<?> future : _futures ) {
+                    future.get();
+                }
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( e );
+            }
+            catch ( final ExecutionException e ) {
+                throw new IllegalStateException( e.getCause() );
+            }
+            finally {
+                _executor.shutdownNow();
+            }
+            if ( _failure instanceof SDIException ) {
+                throw ( SDIException ) _failure;
+            }
+            else if ( _failure instanceof RIOException ) {
+                throw ( RIOException ) _failure;
+            }
+            else if ( _failure != null ) {
+                throw ( RuntimeException ) _failure;
+            }
+            merge();
+        }
+
+        /**
+         * Queues gene tree #i (waiting if all workers are busy). Returns false
+         * if the analysis of a gene tree has already failed.
+         */
+        final boolean submit( final Phylogeny gene_tree, final int i ) {
+            synchronized ( this ) {
+                if ( _failure != null ) {
+                    return false;
+                }
+            }
+            try {
+                _queue.put( new IndexedGeneTree( gene_tree, i ) );
+            }
+            catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException( e );
+            }
+            _submitted = i;
+            return true;
+        }
+    }
+
+    private final static class MinDuplicationsGeneTree {
+
+        private final double    _distance;
+        private final int       _i;
+        private final Phylogeny _tree;
+
+        MinDuplicationsGeneTree( final Phylogeny tree, final int i ) {
+            _tree = tree;
+            _i = i;
+            _distance = PhylogenyMethods.calculateMaxDistanceToRoot( tree );
+        }
+
+        final boolean isBetterThan( final MinDuplicationsGeneTree other ) {
+            return ( _distance < other._distance ) || ( ( _distance == other._distance ) && ( _i < other._i ) );
+        }
+    }
+
+    private final static class Shard {
+
+        private final List<Integer>                         _dups;
+        private final IntMatrix                             _m;
+        private final Map<Integer, MinDuplicationsGeneTree> _min_dup_trees;
+        private final List<Integer>                         _numbers;
+        private final Phylogeny                             _species_tree;
+
+        Shard( final Phylogeny species_tree, final IntMatrix m ) {
+            _species_tree = species_tree;
+            _m = m;
+            _dups = new ArrayList<Integer>();
+            _numbers = new ArrayList<Integer>();
+            _min_dup_trees = new HashMap<Integer, MinDuplicationsGeneTree>();
+        }
+
+        final void add( final int i, final int dups, final Phylogeny assigned_tree ) {
+            _numbers.add( i );
+            _dups.add( dups );
+            final MinDuplicationsGeneTree t = new MinDuplicationsGeneTree( assigned_tree, i );
+            final MinDuplicationsGeneTree current = _min_dup_trees.get( dups );
+            if ( ( current == null ) || t.isBetterThan( current ) ) {
+                _min_dup_trees.put( dups, t );
+            }
+        }
+    }
+
     public enum REROOTING {
                            NONE,
                            BY_ALGORITHM,
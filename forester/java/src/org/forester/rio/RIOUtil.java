@@ -38,8 +38,10 @@ import org.forester.io.parsers.IteratingPhylogenyParser;
 import org.forester.io.parsers.PhylogenyParser;
 import org.forester.io.parsers.nexus.NexusPhylogeniesParser;
 import org.forester.io.parsers.nhx.NHXParser;
+import org.forester.io.parsers.nhx.ParallelNHXParser;
 import org.forester.io.parsers.nhx.NHXParser.TAXONOMY_EXTRACTION;
 import org.forester.io.parsers.phyloxml.PhyloXmlDataFormatException;
+import org.forester.io.parsers.phyloxml.PhyloXmlIteratingParser;
 import org.forester.io.parsers.phyloxml.PhyloXmlParser;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.io.writers.PhylogenyWriter;
@@ -97,7 +99,8 @@ public final class RIOUtil {
                                               final boolean perform_gsdir_on_best_tree,
                                               final File outdir,
                                               final File best_trees_indir,
-                                              final String best_trees_suffix ) {
+                                              final String best_trees_suffix,
+                                              final int threads ) {
         try {
             final SortedMap<String, String> id_map;
             if ( perform_id_mapping ) {
@@ -106,63 +109,56 @@ public final class RIOUtil {
             else {
                 id_map = null;
             }
-            final RIO rio;
-            boolean iterating = false;
             final PhylogenyParser p = ParserUtils.createParserDependingOnFileType( gene_trees_file, true );
-            if ( p instanceof PhyloXmlParser ) {
-                rio = RIO.executeAnalysis( gene_trees_file,
-                                           species_tree_file,
-                                           algorithm,
-                                           rerooting,
-                                           outgroup,
-                                           gt_first,
-                                           gt_last,
-                                           logfile != null,
-                                           true,
-                                           transfer_taxonomy );
+            if ( p instanceof NHXParser ) {
+                final NHXParser nhx = ( NHXParser ) p;
+                nhx.setReplaceUnderscores( false );
+                nhx.setIgnoreQuotes( true );
+                nhx.setTaxonomyExtraction( TAXONOMY_EXTRACTION.AGGRESSIVE );
+            }
+            else if ( p instanceof NexusPhylogeniesParser ) {
+                final NexusPhylogeniesParser nex = ( NexusPhylogeniesParser ) p;
+                nex.setReplaceUnderscores( false );
+                nex.setIgnoreQuotes( true );
+                nex.setTaxonomyExtraction( TAXONOMY_EXTRACTION.AGGRESSIVE );
+            }
+            else if ( !( p instanceof PhyloXmlParser ) ) {
+                throw new RuntimeException( "unknown parser type: " + p );
+            }
+            final IteratingPhylogenyParser ip;
+            if ( ( p instanceof NHXParser ) && ( threads > 1 ) ) {
+                // Gene trees are parsed in parallel as well.
+                final ParallelNHXParser nhx = new ParallelNHXParser( threads );
+                nhx.setReplaceUnderscores( false );
+                nhx.setIgnoreQuotes( true );
+                nhx.setTaxonomyExtraction( TAXONOMY_EXTRACTION.AGGRESSIVE );
+                ip = nhx;
+            }
+            else if ( p instanceof PhyloXmlParser ) {
+                // phyloXML gene trees are streamed as well (validated against the schema in a separate pass).
+                ip = PhyloXmlIteratingParser.createPhyloXmlIteratingParserXsdValidating();
             }
             else {
-                iterating = true;
-                if ( p instanceof NHXParser ) {
-                    final NHXParser nhx = ( NHXParser ) p;
-                    nhx.setReplaceUnderscores( false );
-                    nhx.setIgnoreQuotes( true );
-                    nhx.setTaxonomyExtraction( TAXONOMY_EXTRACTION.AGGRESSIVE );
-                }
-                else if ( p instanceof NexusPhylogeniesParser ) {
-                    final NexusPhylogeniesParser nex = ( NexusPhylogeniesParser ) p;
-                    nex.setReplaceUnderscores( false );
-                    nex.setIgnoreQuotes( true );
-                    nex.setTaxonomyExtraction( TAXONOMY_EXTRACTION.AGGRESSIVE );
-                }
-                else {
-                    throw new RuntimeException( "unknown parser type: " + p );
-                }
-                final IteratingPhylogenyParser ip = ( IteratingPhylogenyParser ) p;
-                ip.setSource( gene_trees_file );
-                rio = RIO.executeAnalysis( ip,
-                                           species_tree_file,
-                                           algorithm,
-                                           rerooting,
-                                           outgroup,
-                                           gt_first,
-                                           gt_last,
-                                           logfile != null,
-                                           !use_gene_trees_dir,
-                                           transfer_taxonomy );
+                ip = ( IteratingPhylogenyParser ) p;
             }
+            ip.setSource( gene_trees_file );
+            final RIO rio = RIO.executeAnalysis( ip,
+                                                 species_tree_file,
+                                                 algorithm,
+                                                 rerooting,
+                                                 outgroup,
+                                                 gt_first,
+                                                 gt_last,
+                                                 logfile != null,
+                                                 !use_gene_trees_dir,
+                                                 transfer_taxonomy,
+                                                 threads );
             if ( !use_gene_trees_dir ) {
                 if ( algorithm == ALGORITHM.GSDIR ) {
                     System.out.println( "Taxonomy linking based on           :\t" + rio.getGSDIRtaxCompBase() );
                 }
             }
-            final IntMatrix m;
-            if ( iterating ) {
-                m = rio.getOrthologTable();
-            }
-            else {
-                m = RIO.calculateOrthologTable( rio.getAnalyzedGeneTrees(), true );
-            }
+            final IntMatrix m = rio.getOrthologTable();
             final GSDIR gsdir_for_best_tree;
             if ( perform_gsdir_on_best_tree ) {
                 gsdir_for_best_tree = analyzeConsensusTree( gene_trees_file,
@@ -388,7 +384,7 @@ public final class RIOUtil {
                 }
             }
         }
-        final GSDIR gsdir_for_best_tree = new GSDIR( best_tree, species_tree, true, true, true );
+        final GSDIR gsdir_for_best_tree = new GSDIR( best_tree, species_tree, true, true, true, true );
         final Phylogeny result_gene_tree = gsdir_for_best_tree.getMinDuplicationsSumGeneTree();
         result_gene_tree.setRerootable( false );
         PhylogenyMethods.orderAppearance( result_gene_tree.getRoot(), true, true, DESCENDANT_SORT_PRIORITY.NODE_NAME );
@@ -21,6 +21,7 @@
 package org.forester.rio;
 
 import java.io.File;
+import java.util.TreeSet;
 
 import org.forester.datastructures.IntMatrix;
 import org.forester.io.parsers.nhx.NHXParser;
@@ -49,6 +50,9 @@ public final class TestRIO {
         else {
             System.out.println( "OK" );
         }
+        if ( !testRIO_GSDIR_Iterating_Parallel() ) {
+            System.out.println( "testRIO GSDIR iterating parallel failed" );
+        }
     }
 
     public static boolean test() {
@@ -58,6 +62,9 @@ public final class TestRIO {
         if ( !testRIO_GSDIR_Iterating() ) {
             return false;
         }
+        if ( !testRIO_GSDIR_Iterating_Parallel() ) {
+            return false;
+        }
         return true;
     }
 
@@ -843,4 +850,92 @@ public final class TestRIO {
         }
         return true;
     }
-}
\ No newline at end of file
+
+    private static boolean testRIO_GSDIR_Iterating_Parallel() {
+        try {
+            final File gene_trees_file = new File( PATH_TO_TEST_DATA + "rio_Bcl-2_e1_20_mafft_05_40_fme.mlt" );
+            final File species_tree_file = new File( PATH_TO_TEST_DATA + "rio_species.xml" );
+            final int[][] ranges = { { RIO.DEFAULT_RANGE, RIO.DEFAULT_RANGE }, { 10, 60 } };
+            for( final int[] range : ranges ) {
+                String expected = null;
+                for( final int threads : new int[] { 1, 2, 4, 7 } ) {
+                    final NHXParser nhx = new NHXParser();
+                    nhx.setReplaceUnderscores( false );
+                    nhx.setIgnoreQuotes( true );
+                    nhx.setTaxonomyExtraction( NHXParser.TAXONOMY_EXTRACTION.AGGRESSIVE );
+                    nhx.setSource( gene_trees_file );
+                    final RIO rio = RIO.executeAnalysis( nhx,
+                                                         species_tree_file,
+                                                         ALGORITHM.GSDIR,
+                                                         REROOTING.BY_ALGORITHM,
+                                                         "",
+                                                         range[ 0 ],
+                                                         range[ 1 ],
+                                                         true,
+                                                         false,
+                                                         true,
+                                                         threads );
+                    final StringBuilder sb = new StringBuilder();
+                    sb.append( rio.getOrthologTable().toString() );
+                    sb.append( rio.getDuplicationsStatistics().getData() );
+                    sb.append( rio.getMinDuplicationsGeneTree().toNewHampshire() );
+                    for( final int dups : new TreeSet<Integer>( rio.getDuplicationsToTreeMap().keySet() ) ) {
+                        sb.append( dups );
+                        sb.append( rio.getDuplicationsToTreeMap().get( dups ).toNewHampshire() );
+                    }
+                    sb.append( rio.getLog() );
+                    sb.append( rio.getExtNodesOfAnalyzedGeneTrees() );
+                    sb.append( rio.getRemovedGeneTreeNodes().size() );
+                    if ( expected == null ) {
+                        if ( rio.getDuplicationsStatistics().getN() != ( range[ 0 ] < 0 ? 100 : 51 ) ) {
+                            return false;
+                        }
+                        expected = sb.toString();
+                    }
+                    else if ( !expected.equals( sb.toString() ) ) {
+                        return false;
+                    }
+                }
+            }
+            // Failures are reported for the lowest numbered gene tree, as for
+            // the serial analysis.
+            final String gene_trees_str = "((MOUSE,RAT),(HUMAN,CAEEL));((MOUSE,RAT),(HUMAN,CAEEL));"
+                    + "((MOUSE,RAT),(HUMAN,CAEEL));((MOUSE,RAT),(HUMAN,ARATH));((MOUSE,RAT),(HUMAN,CAEEL));"
+                    + "((MOUSE,RAT),HUMAN);";
+            final PhylogenyFactory factory = ParserBasedPhylogenyFactory.getInstance();
+            for( final int threads : new int[] { 1, 3 } ) {
+                final Phylogeny species_tree = factory.create( "(((MOUSE,RAT),HUMAN),CAEEL);", new NHXParser() )[ 0 ];
+                species_tree.setRooted( true );
+                PhylogenyMethods.transferNodeNameToField( species_tree, PhylogenyNodeField.TAXONOMY_CODE, true );
+                final NHXParser nhx = new NHXParser();
+                nhx.setTaxonomyExtraction( NHXParser.TAXONOMY_EXTRACTION.AGGRESSIVE );
+                nhx.setSource( gene_trees_str );
+                try {
+                    RIO.executeAnalysis( nhx,
+                                         species_tree,
+                                         ALGORITHM.GSDIR,
+                                         REROOTING.BY_ALGORITHM,
+                                         "",
+                                         RIO.DEFAULT_RANGE,
+                                         RIO.DEFAULT_RANGE,
+                                         false,
+                                         false,
+                                         false,
+                                         threads );
+                    return false;
+                }
+                catch ( final RIOException e ) {
+                    if ( e.getMessage().indexOf( "gene tree #3" ) < 0 ) {
+                        System.out.println( e.getMessage() );
+                        return false;
+                    }
+                }
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,301 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.sdi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyBranch;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * Calculates the sum of duplications (under the most parsimonious duplication
+ * model, as used by GSDIR) for every possible rooting of a gene tree, without
+ * re-rooting it.
+ * <p>
+ * Each branch of the (unrooted) gene tree separates two clades. The mapping
+ * onto the species tree and the number of duplications within each of these
+ * clades are calculated once for the clades below each node (in postorder)
+ * and once for the clades above each node (in preorder, from the values of the
+ * parent and sibling). The sum for a rooting is then obtained from the two
+ * clades separated by its branch.
+ * <p>
+ * For clades which map onto a species node with more than two descendants,
+ * the children of that species node which contain species of the clade are
+ * also calculated once per clade (in the same two passes), as they decide
+ * whether a node is a duplication. This needs time and memory in the order of
+ * the number of gene tree nodes times the number of descendants of such
+ * species nodes.
+ * <p>
+ * Preconditions: external nodes of the gene tree must be linked to the
+ * species tree, and the species tree must be labeled in preorder.
+ */
+final class AllRootingsDuplications {
+
+    private final int[]                       _child_1;
+    private final int[]                       _child_2;
+    private final int[]                       _down_dups;
+    private final List<Set<PhylogenyNode>>    _down_keys;
+    private final PhylogenyNode[]             _down_mapping;
+    private final Map<PhylogenyNode, Integer> _index;
+    private final PhylogenyNode[]             _nodes;
+    private final int[]                       _parent;
+    private final int                         _root;
+    private final int[]                       _root_children;
+    private final int[]                       _up_dups;
+    private final List<Set<PhylogenyNode>>    _up_keys;
+    private final PhylogenyNode[]             _up_mapping;
+
+    private AllRootingsDuplications( final Phylogeny gene_tree ) throws SDIException {
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        for( final PhylogenyNodeIterator it = gene_tree.iteratorPostorder(); it.hasNext(); ) {
+            nodes.add( it.next() );
+        }
+        final int n = nodes.size();
+        _nodes = nodes.toArray( new PhylogenyNode[ n ] );
+        _index = new IdentityHashMap<PhylogenyNode, Integer>( 2 * n );
+        for( int i = 0; i < n; ++i ) {
+            _index.put( _nodes[ i ], i );
+        }
+        _root = n - 1;
+        _parent = new int[ n ];
+        _child_1 = new int[ n ];
+        _child_2 = new int[ n ];
+        for( int i = 0; i < n; ++i ) {
+            final PhylogenyNode g = _nodes[ i ];
+            _parent[ i ] = g.isRoot() ? -1 : _index.get( g.getParent() );
+            if ( g.isInternal() && !g.isRoot() ) {
+                if ( g.getNumberOfDescendants() != 2 ) {
+                    throw new SDIException( "gene tree contains internal node with " + g.getNumberOfDescendants()
+                            + " descendents" );
+                }
+                _child_1[ i ] = _index.get( g.getChildNode1() );
+                _child_2[ i ] = _index.get( g.getChildNode2() );
+            }
+            else {
+                _child_1[ i ] = -1;
+                _child_2[ i ] = -1;
+            }
+        }
+        final PhylogenyNode root = _nodes[ _root ];
+        _root_children = new int[ root.getNumberOfDescendants() ];
+        for( int c = 0; c < _root_children.length; ++c ) {
+            _root_children[ c ] = _index.get( root.getChildNode( c ) );
+        }
+        _down_mapping = new PhylogenyNode[ n ];
+        _down_dups = new int[ n ];
+        _up_mapping = new PhylogenyNode[ n ];
+        _up_dups = new int[ n ];
+        _down_keys = new ArrayList<Set<PhylogenyNode>>( Collections.nCopies( n, ( Set<PhylogenyNode> ) null ) );
+        _up_keys = new ArrayList<Set<PhylogenyNode>>( Collections.nCopies( n, ( Set<PhylogenyNode> ) null ) );
+        calculateDown();
+        calculateUp();
+    }
+
+    /**
+     * Returns the sum of duplications for the gene tree rooted on branch b.
+     */
+    private final int calculateDuplications( final PhylogenyBranch b ) {
+        final PhylogenyNode n1 = b.getFirstNode();
+        final PhylogenyNode n2 = b.getSecondNode();
+        final int x = n1.getParent() == n2 ? _index.get( n1 ) : n2.getParent() == n1 ? _index.get( n2 ) : _index
+                .get( n1 );
+        return _down_dups[ x ] + _up_dups[ x ] + ( isDuplication( x, false, x, true ) ? 1 : 0 );
+    }
+
+    private final void calculateDown() {
+        for( int i = 0; i < _root; ++i ) {
+            if ( _child_1[ i ] < 0 ) {
+                final PhylogenyNode m = _nodes[ i ].getLink();
+                _down_mapping[ i ] = m;
+                if ( isNotBinary( m ) ) {
+                    final Set<PhylogenyNode> keys = new HashSet<PhylogenyNode>();
+                    keys.add( ascend( m, m ) );
+                    _down_keys.set( i, keys );
+                }
+            }
+            else {
+                final int a = _child_1[ i ];
+                final int b = _child_2[ i ];
+                final PhylogenyNode m = calculateLCA( _down_mapping[ a ], _down_mapping[ b ] );
+                _down_mapping[ i ] = m;
+                if ( isNotBinary( m ) ) {
+                    final Set<PhylogenyNode> keys = new HashSet<PhylogenyNode>();
+                    addKeys( a, false, m, keys );
+                    addKeys( b, false, m, keys );
+                    _down_keys.set( i, keys );
+                }
+                _down_dups[ i ] = _down_dups[ a ] + _down_dups[ b ] + ( isDuplication( a, false, b, false ) ? 1 : 0 );
+            }
+        }
+    }
+
+    private final void calculateUp() {
+        for( int i = _root - 1; i >= 0; --i ) {
+            final int p = _parent[ i ];
+            if ( p == _root ) {
+                if ( _root_children.length == 2 ) {
+                    final int sibling = _root_children[ 0 ] == i ? _root_children[ 1 ] : _root_children[ 0 ];
+                    _up_mapping[ i ] = _down_mapping[ sibling ];
+                    _up_keys.set( i, _down_keys.get( sibling ) );
+                    _up_dups[ i ] = _down_dups[ sibling ];
+                }
+                else {
+                    final int[] others = getOtherRootChildren( i );
+                    _up_mapping[ i ] = calculateLCA( _down_mapping[ others[ 0 ] ], _down_mapping[ others[ 1 ] ] );
+                    if ( isNotBinary( _up_mapping[ i ] ) ) {
+                        final Set<PhylogenyNode> keys = new HashSet<PhylogenyNode>();
+                        addKeys( others[ 0 ], false, _up_mapping[ i ], keys );
+                        addKeys( others[ 1 ], false, _up_mapping[ i ], keys );
+                        _up_keys.set( i, keys );
+                    }
+                    _up_dups[ i ] = _down_dups[ others[ 0 ] ] + _down_dups[ others[ 1 ] ]
+                            + ( isDuplication( others[ 0 ], false, others[ 1 ], false ) ? 1 : 0 );
+                }
+            }
+            else {
+                final int sibling = _child_1[ p ] == i ? _child_2[ p ] : _child_1[ p ];
+                _up_mapping[ i ] = calculateLCA( _down_mapping[ sibling ], _up_mapping[ p ] );
+                if ( isNotBinary( _up_mapping[ i ] ) ) {
+                    final Set<PhylogenyNode> keys = new HashSet<PhylogenyNode>();
+                    addKeys( sibling, false, _up_mapping[ i ], keys );
+                    addKeys( p, true, _up_mapping[ i ], keys );
+                    _up_keys.set( i, keys );
+                }
+                _up_dups[ i ] = _down_dups[ sibling ] + _up_dups[ p ]
+                        + ( isDuplication( sibling, false, p, true ) ? 1 : 0 );
+            }
+        }
+    }
+
+    // Adds to keys, for the external nodes of the clade, the node reached by
+    // GSDI.determineEvent when ascending from the mapped species towards s
+    // (s is the mapping of the clade, or one of its ancestors).
+    private final void addKeys( final int i, final boolean up, final PhylogenyNode s, final Set<PhylogenyNode> keys ) {
+        final PhylogenyNode m = getMapping( i, up );
+        if ( m != s ) {
+            keys.add( ascend( m, s ) );
+        }
+        else {
+            keys.addAll( getKeys( i, up ) );
+        }
+    }
+
+    // The keys of addKeys for the clade and its own mapping (only present
+    // for mappings with more than two descendants).
+    private final Set<PhylogenyNode> getKeys( final int i, final boolean up ) {
+        return up ? _up_keys.get( i ) : _down_keys.get( i );
+    }
+
+    private final PhylogenyNode getMapping( final int i, final boolean up ) {
+        return up ? _up_mapping[ i ] : _down_mapping[ i ];
+    }
+
+    private final int[] getOtherRootChildren( final int i ) {
+        final int[] others = new int[ 2 ];
+        int o = 0;
+        for( final int c : _root_children ) {
+            if ( c != i ) {
+                others[ o++ ] = c;
+            }
+        }
+        return others;
+    }
+
+    /**
+     * Same as GSDI.determineEvent (most parsimonious duplication model) for a
+     * node with the two given clades as children: clade i1 is the clade
+     * below node i1 if up1 is false, otherwise the clade above it.
+     */
+    private final boolean isDuplication( final int i1, final boolean up1, final int i2, final boolean up2 ) {
+        final PhylogenyNode m1 = getMapping( i1, up1 );
+        final PhylogenyNode m2 = getMapping( i2, up2 );
+        final PhylogenyNode s = calculateLCA( m1, m2 );
+        if ( ( m1 != s ) && ( m2 != s ) ) {
+            return false;
+        }
+        if ( !isNotBinary( s ) ) {
+            return true;
+        }
+        if ( m1 != s ) {
+            return getKeys( i2, up2 ).contains( ascend( m1, s ) );
+        }
+        if ( m2 != s ) {
+            return getKeys( i1, up1 ).contains( ascend( m2, s ) );
+        }
+        final Set<PhylogenyNode> keys_1 = getKeys( i1, up1 );
+        final Set<PhylogenyNode> keys_2 = getKeys( i2, up2 );
+        final boolean smaller_1 = keys_1.size() < keys_2.size();
+        for( final PhylogenyNode k : smaller_1 ? keys_1 : keys_2 ) {
+            if ( ( smaller_1 ? keys_2 : keys_1 ).contains( k ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the sums of duplications for the gene tree rooted on each of
+     * the branches.
+     */
+    final static int[] calculateDuplications( final Phylogeny gene_tree, final List<PhylogenyBranch> branches )
+            throws SDIException {
+        final AllRootingsDuplications a = new AllRootingsDuplications( gene_tree );
+        final int[] dups = new int[ branches.size() ];
+        for( int i = 0; i < dups.length; ++i ) {
+            dups[ i ] = a.calculateDuplications( branches.get( i ) );
+        }
+        return dups;
+    }
+
+    private final static PhylogenyNode ascend( PhylogenyNode n, final PhylogenyNode s ) {
+        while ( ( n.getParent() != s ) && ( n.getParent() != null ) ) {
+            n = n.getParent();
+            if ( n.isRoot() ) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    private final static boolean isNotBinary( final PhylogenyNode s ) {
+        return s.getNumberOfDescendants() != 2;
+    }
+
+    private final static PhylogenyNode calculateLCA( PhylogenyNode s1, PhylogenyNode s2 ) {
+        while ( s1 != s2 ) {
+            if ( s1.getId() > s2.getId() ) {
+                s1 = s1.getParent();
+            }
+            else {
+                s2 = s2.getParent();
+            }
+        }
+        return s1;
+    }
+}
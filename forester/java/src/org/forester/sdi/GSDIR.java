@@ -51,6 +51,24 @@ public class GSDIR implements GSDII {
                   final boolean strip_species_tree,
                   final boolean transfer_taxonomy )
             throws SDIException {
+        this( gene_tree, species_tree, strip_gene_tree, strip_species_tree, transfer_taxonomy, false );
+    }
+
+    /**
+     * If all_rootings_incremental is true, the sums of duplications for all
+     * rootings of the gene tree are calculated in two traversals (see
+     * AllRootingsDuplications), instead of by re-rooting the gene tree on each
+     * branch and running GSDI on it. Only the rootings with the minimal sum
+     * are actually re-rooted (to break ties by tree length, and to obtain the
+     * resulting gene tree). Results are the same in either mode.
+     */
+    public GSDIR( final Phylogeny gene_tree,
+                  final Phylogeny species_tree,
+                  final boolean strip_gene_tree,
+                  final boolean strip_species_tree,
+                  final boolean transfer_taxonomy,
+                  final boolean all_rootings_incremental )
+            throws SDIException {
         final NodesLinkingResult nodes_linking_result = GSDI
                 .linkNodesOfG( gene_tree, species_tree, strip_gene_tree, strip_species_tree );
         _stripped_gene_tree_nodes = nodes_linking_result.getStrippedGeneTreeNodes();
@@ -70,9 +88,29 @@ public class GSDIR implements GSDII {
             gene_tree_branches_post_order.add( new PhylogenyBranch( gene_tree.getRoot().getChildNode1(),
                                                                     gene_tree.getRoot().getChildNode2() ) );
         }
+        _duplications_sum_stats = new BasicDescriptiveStatistics();
+        final int root_descendants = gene_tree.getRoot().getNumberOfDescendants();
+        final int[] sums;
+        if ( all_rootings_incremental && ( ( root_descendants == 2 ) || ( root_descendants == 3 ) ) ) {
+            sums = executeIncremental( gene_tree, species_tree, transfer_taxonomy, gene_tree_branches_post_order );
+        }
+        else {
+            sums = execute( gene_tree, species_tree, transfer_taxonomy, gene_tree_branches_post_order );
+        }
+        _min_duplications_sum = sums[ 0 ];
+        _speciations_sum = sums[ 1 ];
+    }
+
+    /**
+     * Returns the minimal duplications sum and the speciations sum of its
+     * rooting.
+     */
+    private final int[] execute( final Phylogeny gene_tree,
+                                 final Phylogeny species_tree,
+                                 final boolean transfer_taxonomy,
+                                 final List<PhylogenyBranch> gene_tree_branches_post_order ) throws SDIException {
         int min_duplications_sum = Integer.MAX_VALUE;
         int speciations_sum = 0;
-        _duplications_sum_stats = new BasicDescriptiveStatistics();
         for( final PhylogenyBranch branch : gene_tree_branches_post_order ) {
             reRoot( branch, gene_tree );
             PhylogenyMethods.preOrderReId( species_tree );
@@ -103,8 +141,76 @@ public class GSDIR implements GSDII {
             }
             _duplications_sum_stats.addValue( gsdi_result.getDuplicationsSum() );
         }
-        _min_duplications_sum = min_duplications_sum;
-        _speciations_sum = speciations_sum;
+        return new int[] { min_duplications_sum, speciations_sum };
+    }
+
+    /**
+     * As execute, from the duplications sums of AllRootingsDuplications.
+     */
+    private final int[] executeIncremental( final Phylogeny gene_tree,
+                                            final Phylogeny species_tree,
+                                            final boolean transfer_taxonomy,
+                                            final List<PhylogenyBranch> gene_tree_branches_post_order )
+            throws SDIException {
+        PhylogenyMethods.preOrderReId( species_tree );
+        final int[] dups = AllRootingsDuplications.calculateDuplications( gene_tree, gene_tree_branches_post_order );
+        if ( !gene_tree_branches_post_order.isEmpty() ) {
+            // As in the re-rooting loop, the first branch is re-rooted from
+            // the original tree. This removes a bifurcating original root, so
+            // that the branch between its children becomes re-rootable, and
+            // its length is split in the same manner as for any other branch.
+            reRoot( gene_tree_branches_post_order.get( 0 ), gene_tree );
+        }
+        int min_duplications_sum = Integer.MAX_VALUE;
+        int best = -1;
+        double best_max_distance_to_root = Double.NaN;
+        double best_max_depth = Double.NaN;
+        for( int i = 0; i < dups.length; ++i ) {
+            if ( dups[ i ] > min_duplications_sum ) {
+                continue;
+            }
+            if ( dups[ i ] < min_duplications_sum ) {
+                min_duplications_sum = dups[ i ];
+                best = i;
+                best_max_distance_to_root = Double.NaN;
+            }
+            else {
+                // Same as getIndexesOfShortestTree, for the best so far and
+                // this rooting.
+                if ( Double.isNaN( best_max_distance_to_root ) ) {
+                    reRootUnlessRootedOn( gene_tree_branches_post_order.get( best ), gene_tree );
+                    best_max_distance_to_root = PhylogenyMethods.calculateMaxDistanceToRoot( gene_tree );
+                    best_max_depth = PhylogenyMethods.calculateMaxDepth( gene_tree );
+                }
+                reRoot( gene_tree_branches_post_order.get( i ), gene_tree );
+                final boolean depth = !( best_max_distance_to_root > 0 );
+                final double d = depth ? PhylogenyMethods.calculateMaxDepth( gene_tree ) : PhylogenyMethods
+                        .calculateMaxDistanceToRoot( gene_tree );
+                if ( d < ( depth ? best_max_depth : best_max_distance_to_root ) ) {
+                    best = i;
+                    best_max_distance_to_root = PhylogenyMethods.calculateMaxDistanceToRoot( gene_tree );
+                    best_max_depth = PhylogenyMethods.calculateMaxDepth( gene_tree );
+                }
+            }
+            _duplications_sum_stats.addValue( dups[ i ] );
+        }
+        int speciations_sum = 0;
+        if ( best >= 0 ) {
+            reRootUnlessRootedOn( gene_tree_branches_post_order.get( best ), gene_tree );
+            final GSDIsummaryResult gsdi_result = GSDI.geneTreePostOrderTraversal( gene_tree,
+                                                                                   true,
+                                                                                   Integer.MAX_VALUE );
+            if ( gsdi_result.getDuplicationsSum() != min_duplications_sum ) {
+                throw new RuntimeException( "this should not have happened: duplications sum of best rooting is "
+                        + gsdi_result.getDuplicationsSum() + " instead of " + min_duplications_sum );
+            }
+            speciations_sum = gsdi_result.getSpeciationsSum();
+            _min_duplications_sum_gene_tree = gene_tree.copy();
+            if ( transfer_taxonomy ) {
+                transferTaxonomy( _min_duplications_sum_gene_tree );
+            }
+        }
+        return new int[] { min_duplications_sum, speciations_sum };
     }
 
     public BasicDescriptiveStatistics getDuplicationsSumStats() {
@@ -179,6 +285,16 @@ public class GSDIR implements GSDII {
         return shortests;
     }
 
+    // Re-rooting on the branch the phylogeny is already rooted on is not
+    // possible (its nodes are not adjacent).
+    private static final void reRootUnlessRootedOn( final PhylogenyBranch b, final Phylogeny phy ) {
+        final PhylogenyNode p = b.getFirstNode().getParent();
+        if ( ( p == null ) || !p.isRoot() || ( p.getNumberOfDescendants() != 2 )
+                || ( b.getSecondNode().getParent() != p ) ) {
+            reRoot( b, phy );
+        }
+    }
+
     /**
      * Places the root of this Phylogeny on Branch b. The new root is always
      * placed on the middle of the branch b.
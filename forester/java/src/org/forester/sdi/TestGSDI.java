@@ -21,16 +21,22 @@
 package org.forester.sdi;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.forester.development.DevelopmentTools;
 import org.forester.io.parsers.nhx.NHXParser;
 import org.forester.io.parsers.util.ParserUtils;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyMethods;
+import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.data.Event;
 import org.forester.phylogeny.factories.ParserBasedPhylogenyFactory;
 import org.forester.phylogeny.factories.PhylogenyFactory;
 import org.forester.sdi.SDIutil.TaxonomyComparisonBase;
+import org.forester.util.BasicDescriptiveStatistics;
 import org.forester.util.ForesterUtil;
 
 public final class TestGSDI {
@@ -39,16 +45,24 @@ public final class TestGSDI {
             + "forester/test_data" + ForesterUtil.getFileSeparator();
 
     public static void main( final String[] args ) {
+        boolean failed = false;
         if ( !TestGSDI.testGSDI_against_binary_gene_tree() ) {
             System.out.println( "binary failed" );
+            failed = true;
         }
         if ( !TestGSDI.testGSDI_general() ) {
             System.out.println( "general failed" );
+            failed = true;
         }
         if ( !TestGSDI.testGSDIR_general() ) {
             System.out.println( "general re-rooting failed" );
+            failed = true;
         }
-        else {
+        if ( !TestGSDI.testGSDIR_incremental() ) {
+            System.out.println( "incremental re-rooting failed" );
+            failed = true;
+        }
+        if ( !failed ) {
             System.out.println( "OK" );
         }
     }
@@ -63,6 +77,9 @@ public final class TestGSDI {
         if ( !TestGSDI.testGSDIR_general() ) {
             return false;
         }
+        if ( !TestGSDI.testGSDIR_incremental() ) {
+            return false;
+        }
         return true;
     }
 
@@ -72,6 +89,53 @@ public final class TestGSDI {
         return p;
     }
 
+    // Random tree over the given species; if polytomies is true, internal
+    // nodes have up to four children.
+    private final static String createRandomNewick( final Random r,
+                                                    final List<String> species,
+                                                    final boolean polytomies,
+                                                    final boolean lengths ) {
+        final List<String> subtrees = new ArrayList<String>();
+        for( final String sp : species ) {
+            subtrees.add( sp + "_" + subtrees.size() + ( lengths ? ":" + ( 1 + r.nextInt( 9 ) ) : "" ) + "[&&NHX:S="
+                    + sp + "]" );
+        }
+        while ( subtrees.size() > ( polytomies ? 1 : 3 ) ) {
+            final int k = Math.min( subtrees.size(), polytomies ? 2 + r.nextInt( 3 ) : 2 );
+            final StringBuilder sb = new StringBuilder( "(" );
+            for( int i = 0; i < k; ++i ) {
+                if ( i > 0 ) {
+                    sb.append( "," );
+                }
+                sb.append( subtrees.remove( r.nextInt( subtrees.size() ) ) );
+            }
+            sb.append( ")" );
+            if ( lengths ) {
+                sb.append( ":" + ( 1 + r.nextInt( 9 ) ) );
+            }
+            subtrees.add( sb.toString() );
+        }
+        if ( subtrees.size() == 1 ) {
+            return subtrees.get( 0 ) + ";";
+        }
+        if ( ( subtrees.size() == 3 ) && r.nextBoolean() ) {
+            subtrees.add( "(" + subtrees.remove( 0 ) + "," + subtrees.remove( 0 ) + ")" );
+        }
+        return "(" + ForesterUtil.stringListToString( subtrees, "," ) + ");";
+    }
+
+    private final static String toSortedString( final PhylogenyNode n ) {
+        if ( n.isExternal() ) {
+            return n.getName();
+        }
+        final List<String> children = new ArrayList<String>();
+        for( final PhylogenyNode c : n.getDescendants() ) {
+            children.add( toSortedString( c ) );
+        }
+        Collections.sort( children );
+        return "(" + ForesterUtil.stringListToString( children, "," ) + ")" + n.getNodeData().getEvent();
+    }
+
     private final static Event getEvent( final Phylogeny p, final String n1, final String n2 ) {
         return PhylogenyMethods.calculateLCA( p.getNode( n1 ), p.getNode( n2 ) ).getNodeData().getEvent();
     }
@@ -1529,4 +1593,56 @@ public final class TestGSDI {
         }
         return true;
     }
+
+    private static boolean testGSDIR_incremental() {
+        try {
+            final Random r = new Random( 42 );
+            final List<String> all_species = new ArrayList<String>();
+            for( int i = 0; i < 12; ++i ) {
+                all_species.add( "SP" + i );
+            }
+            for( int t = 0; t < 200; ++t ) {
+                final Phylogeny s = createPhylogeny( createRandomNewick( r, all_species, t % 2 == 0, false ) );
+                final List<String> gene_species = new ArrayList<String>();
+                final int n = 2 + r.nextInt( 30 );
+                for( int i = 0; i < n; ++i ) {
+                    gene_species.add( all_species.get( r.nextInt( t % 3 == 0 ? 3 : all_species.size() ) ) );
+                }
+                final Phylogeny g = createPhylogeny( createRandomNewick( r, gene_species, false, t % 4 != 0 ) );
+                final GSDIR classic = new GSDIR( g.copy(), s.copy(), false, false, true, false );
+                final GSDIR incremental = new GSDIR( g.copy(), s.copy(), false, false, true, true );
+                if ( classic.getMinDuplicationsSum() != incremental.getMinDuplicationsSum() ) {
+                    return false;
+                }
+                if ( classic.getSpeciationsSum() != incremental.getSpeciationsSum() ) {
+                    return false;
+                }
+                final BasicDescriptiveStatistics cs = classic.getDuplicationsSumStats();
+                final BasicDescriptiveStatistics is = incremental.getDuplicationsSumStats();
+                if ( ( cs.getN() != is.getN() ) || ( cs.getSum() != is.getSum() ) || ( cs.getMin() != is.getMin() ) ) {
+                    return false;
+                }
+                // Order of children can depend on the preceding re-rootings.
+                if ( !toSortedString( classic.getMinDuplicationsSumGeneTree().getRoot() )
+                        .equals( toSortedString( incremental.getMinDuplicationsSumGeneTree().getRoot() ) ) ) {
+                    return false;
+                }
+            }
+            // Multifurcating gene tree: both modes must fail the same way.
+            final Phylogeny s = createPhylogeny( "((A[&&NHX:S=A],B[&&NHX:S=B]),C[&&NHX:S=C])" );
+            final Phylogeny g = createPhylogeny( "((A[&&NHX:S=A],B[&&NHX:S=B],C[&&NHX:S=C]),A[&&NHX:S=A],B[&&NHX:S=B])" );
+            try {
+                new GSDIR( g, s, false, false, true, true );
+                return false;
+            }
+            catch ( final SDIException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        return true;
+    }
 }
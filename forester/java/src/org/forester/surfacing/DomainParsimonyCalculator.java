@@ -34,6 +34,7 @@ import org.forester.evoinference.matrix.character.BasicCharacterStateMatrix;
 import org.forester.evoinference.matrix.character.CharacterStateMatrix;
 import org.forester.evoinference.matrix.character.CharacterStateMatrix.BinaryStates;
 import org.forester.evoinference.matrix.character.CharacterStateMatrix.GainLossStates;
+import org.forester.evoinference.parsimony.BinaryParsimony;
 import org.forester.evoinference.parsimony.DolloParsimony;
 import org.forester.evoinference.parsimony.FitchParsimony;
 import org.forester.phylogeny.Phylogeny;
@@ -365,7 +366,8 @@ final class DomainParsimonyCalculator {
 
     private void executeDolloParsimony( final boolean on_domain_presence ) {
         reset();
-        final DolloParsimony dollo = DolloParsimony.createInstance();
+        final BinaryParsimony dollo = BinaryParsimony.createInstance( BinaryParsimony.METHOD.DOLLO, Runtime
+                .getRuntime().availableProcessors() );
         dollo.setReturnGainLossMatrix( true );
         dollo.setReturnInternalStates( true );
         CharacterStateMatrix<BinaryStates> states = null;
@@ -392,14 +394,6 @@ final class DomainParsimonyCalculator {
         if ( use_last ) {
             System.out.println( "   Fitch parsimony: use_last = true" );
         }
-        final FitchParsimony<BinaryStates> fitch = new FitchParsimony<BinaryStates>();
-        fitch.setRandomize( randomize );
-        if ( randomize ) {
-            fitch.setRandomNumberSeed( random_number_seed );
-        }
-        fitch.setUseLast( use_last );
-        fitch.setReturnGainLossMatrix( true );
-        fitch.setReturnInternalStates( true );
         CharacterStateMatrix<BinaryStates> states = null;
         if ( on_domain_presence ) {
             states = createMatrixOfDomainPresenceOrAbsence( getGenomeWideCombinableDomainsList() );
@@ -407,6 +401,27 @@ final class DomainParsimonyCalculator {
         else {
             states = createMatrixOfBinaryDomainCombinationPresenceOrAbsence( getGenomeWideCombinableDomainsList() );
         }
+        if ( !randomize ) {
+            final BinaryParsimony fitch = BinaryParsimony.createInstance( BinaryParsimony.METHOD.FITCH, Runtime
+                    .getRuntime().availableProcessors() );
+            fitch.setUseLast( use_last );
+            fitch.setReturnGainLossMatrix( true );
+            fitch.setReturnInternalStates( true );
+            fitch.execute( getPhylogeny(), states );
+            setGainLossMatrix( fitch.getGainLossMatrix() );
+            setBinaryInternalStatesMatrix( fitch.getInternalStatesMatrix() );
+            setCost( fitch.getCost() );
+            setTotalGains( fitch.getTotalGains() );
+            setTotalLosses( fitch.getTotalLosses() );
+            setTotalUnchanged( fitch.getTotalUnchanged() );
+            return;
+        }
+        final FitchParsimony<BinaryStates> fitch = new FitchParsimony<BinaryStates>();
+        fitch.setRandomize( randomize );
+        fitch.setRandomNumberSeed( random_number_seed );
+        fitch.setUseLast( use_last );
+        fitch.setReturnGainLossMatrix( true );
+        fitch.setReturnInternalStates( true );
         fitch.execute( getPhylogeny(), states, true );
         setGainLossMatrix( fitch.getGainLossMatrix() );
         setBinaryInternalStatesMatrix( fitch.getInternalStatesMatrix() );
@@ -2875,6 +2875,8 @@ final class SurfacingUtil {
             out_dc_for_go_mapping_unique.close();
             final SortedMap<String, Integer> lca_rank_counts = new TreeMap<>();
             final SortedMap<String, Integer> lca_ancestor_species_counts = new TreeMap<>();
+            // Builds the index used by PhylogenyMethods.calculateLCA below.
+            local_phylogeny_l.getLCAIndex();
             for( final String dc : more_than_once ) {
                 final List<PhylogenyNode> nodes = new ArrayList<>();
                 for( final PhylogenyNodeIterator it = local_phylogeny_l.iteratorExternalForward(); it.hasNext(); ) {
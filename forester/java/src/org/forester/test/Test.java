@@ -32,6 +32,7 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Locale;
 import java.util.EnumSet;
 import java.util.Set;
@@ -70,6 +71,7 @@ import org.forester.msa.MsaMethods;
 import org.forester.pccx.TestPccx;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyBranch;
+import org.forester.phylogeny.PhylogenyLCAIndex;
 import org.forester.phylogeny.PhylogenyMethods;
 import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.PhylogenyNode.NH_CONVERSION_SUPPORT_VALUE_STYLE;
@@ -108,6 +110,7 @@ import org.forester.species.BasicSpecies;
 import org.forester.species.Species;
 import org.forester.surfacing.TestSurfacing;
 import org.forester.tools.ConfidenceAssessor;
+import org.forester.tools.SupportCounter;
 import org.forester.tools.SupportCount;
 import org.forester.tools.TreeSplitMatrix;
 import org.forester.util.AsciiHistogram;
@@ -427,6 +430,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Node spatial index (hit-testing, culling): ");
+        if (org.forester.archaeopteryx.NodeSpatialIndexTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("NCBI taxonomy lineage service: ");
         if (org.forester.ws.seqdb.NcbiTaxonomyLineageServiceTest.test()) {
             System.out.println("OK.");
@@ -435,6 +446,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("NCBI taxdump lineage service (offline index): ");
+        if (org.forester.ws.seqdb.NcbiTaxdumpLineageServiceTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Taxon lineage: ");
         if (org.forester.ws.seqdb.TaxonLineageTest.test()) {
             System.out.println("OK.");
@@ -1027,6 +1046,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Aggregate sub-pixel clades (render): ");
+        if (org.forester.archaeopteryx.LevelOfDetailRenderTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Domain architectures vertical (render): ");
         if (org.forester.archaeopteryx.DomainArchitectureVerticalRenderTest.test()) {
             System.out.println("OK.");
@@ -1475,6 +1502,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Parallel NH/NHX parsing: ");
+        if (org.forester.io.parsers.nhx.ParallelNHXParserTest.test(new File(PATH_TO_TEST_DATA))) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Nexus tree parsing (translating): ");
         if (Test.testNexusTreeParsingTranslating()) {
             System.out.println("OK.");
@@ -1531,6 +1566,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("phyloXML parsing (iterating, StAX): ");
+        if (org.forester.io.parsers.phyloxml.PhyloXmlIteratingParserTest.test(new File(PATH_TO_TEST_DATA))) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Tol XML parsing: ");
         if (Test.testBasicTolXMLparsing()) {
             System.out.println("OK.");
@@ -1619,6 +1662,22 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Node ids (concurrent): ");
+        if (org.forester.phylogeny.PhylogenyNodeIdTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
+        System.out.print("Node index (lookup by name, sequence, taxonomy): ");
+        if (org.forester.phylogeny.PhylogenyNodeIndexTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Methods on last external nodes: ");
         if (Test.testLastExternalNodeMethods()) {
             System.out.println("OK.");
@@ -1731,6 +1790,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("LCA index: ");
+        if (Test.testLCAIndex()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Calculation of distance between nodes: ");
         if (Test.testGetDistance()) {
             System.out.println("OK.");
@@ -1821,6 +1888,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("GO ontology index (transitive closure): ");
+        if (org.forester.go.GoOntologyIndexTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("GO: ");
         System.out.println();
         if (TestGo.test(new File(PATH_TO_TEST_DATA))) {
@@ -1862,6 +1937,14 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Confidence Assessor (split index): ");
+        if (Test.testConfidenceAssessorSplitIndex()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Basic table: ");
         if (Test.testBasicTable()) {
             System.out.println("OK.");
@@ -1902,6 +1985,30 @@ public final class Test {
             System.out.println("failed.");
             failed++;
         }
+        System.out.print("Fasta parser (memory-mapped, parallel): ");
+        if (org.forester.io.parsers.MappedFastaParserTest.test(new File(PATH_TO_TEST_DATA))) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
+        System.out.print("Byte msa: ");
+        if (org.forester.msa.ByteMsaTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
+        System.out.print("Msa column statistics: ");
+        if (org.forester.msa.MsaColumnStatisticsTest.test()) {
+            System.out.println("OK.");
+            succeeded++;
+        } else {
+            System.out.println("failed.");
+            failed++;
+        }
         System.out.print("Creation of balanced phylogeny: ");
         if (Test.testCreateBalancedPhylogeny()) {
             System.out.println("OK.");
@@ -4442,6 +4549,134 @@ public final class Test {
         return true;
     }
 
+    private static boolean testConfidenceAssessorSplitIndex() {
+        try {
+            final PhylogenyFactory factory = ParserBasedPhylogenyFactory.getInstance();
+            final Random r = new Random(31);
+            for (final boolean strict : new boolean[]{true, false}) {
+                final String target_nh = createRandomNewick(r, 80, 0, 0);
+                final StringBuilder evaluators_nh = new StringBuilder();
+                for (int i = 0; i < 30; ++i) {
+                    evaluators_nh.append(strict ? createRandomNewick(r, 80, 0, 0) : createRandomNewick(r, 80, 8, 3));
+                    evaluators_nh.append(";");
+                }
+                final Phylogeny[] evaluators = factory.create(evaluators_nh.toString(), new NHXParser());
+                final Phylogeny ref = factory.create(target_nh, new NHXParser())[0];
+                final List<TreeSplitMatrix> matrices = new ArrayList<>();
+                for (final Phylogeny evaluator : evaluators) {
+                    matrices.add(new TreeSplitMatrix(evaluator, strict, ref));
+                }
+                final List<Integer> expected = new ArrayList<>();
+                boolean some_partial = false;
+                for (final PhylogenyNodeIterator it = ref.iteratorPostorder(); it.hasNext();) {
+                    final PhylogenyNode n = it.next();
+                    int c = -1;
+                    if (!n.isExternal() && !n.isRoot()) {
+                        final Set<PhylogenyNode> ext = new HashSet<>(n.getAllExternalDescendants());
+                        c = 0;
+                        for (final TreeSplitMatrix m : matrices) {
+                            if (m.match(ext)) {
+                                ++c;
+                            }
+                        }
+                        if ((c > 0) && (c < evaluators.length)) {
+                            some_partial = true;
+                        }
+                    }
+                    expected.add(c);
+                }
+                if (!some_partial) {
+                    return false;
+                }
+                final Phylogeny t0 = factory.create(target_nh, new NHXParser())[0];
+                ConfidenceAssessor.evaluate("bootstrap", evaluators, t0, strict, 1);
+                if (!isEqual(t0, expected)) {
+                    return false;
+                }
+                for (final int threads : new int[]{1, 4}) {
+                    final Phylogeny t = factory.create(target_nh, new NHXParser())[0];
+                    final NHXParser parser = new NHXParser();
+                    parser.setSource(evaluators_nh.toString());
+                    if (ConfidenceAssessor.evaluate("bootstrap", parser, t, strict, 1, threads) != evaluators.length) {
+                        return false;
+                    }
+                    if (!isEqual(t, expected)) {
+                        return false;
+                    }
+                }
+            }
+            final Phylogeny t = factory.create("((((A,B),C),D),E)", new NHXParser())[0];
+            final NHXParser parser = new NHXParser();
+            parser.setSource("((((A,B),C),D),E);((((A,B),C),D),X);");
+            try {
+                ConfidenceAssessor.evaluate("bootstrap", parser, t, true, 1, 2);
+                return false;
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+            // a first evaluator without a last one: to the end
+            final Phylogeny t_f = factory.create("((((A,B),C),D),E)", new NHXParser())[0];
+            final SupportCounter sc = new SupportCounter(t_f, false);
+            parser.setSource("((((A,B),C),D),E);(((A,B),(C,D)),E);((((A,B),C),D),E);((((A,C),B),D),E);");
+            if ((ConfidenceAssessor.count(parser, new SupportCounter[]{sc}, 1, 0, 2) != 3)
+                    || (sc.getCount(t_f.getNode("A").getParent()) != 2)) {
+                return false;
+            }
+            parser.reset();
+            if (ConfidenceAssessor.count(parser, new SupportCounter[]{new SupportCounter(t_f, false)}, 1, 2, 1) != 2) {
+                return false;
+            }
+            // confidences of the same type are not added to existing ones (as for evaluate)
+            sc.setConfidences("bootstrap", 1);
+            try {
+                sc.setConfidences("bootstrap", 1);
+                return false;
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+        } catch (final Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
+    // Joins randomly chosen neighbors of t0..t(n-1), so that random trees share
+    // many splits.
+    private static String createRandomNewick(final Random r, final int n, final int missing, final int extra) {
+        final List<String> clusters = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            clusters.add("t" + i);
+        }
+        for (int i = 0; i < missing; ++i) {
+            clusters.remove(r.nextInt(clusters.size()));
+        }
+        for (int i = 0; i < extra; ++i) {
+            clusters.add(r.nextInt(clusters.size()), "x" + i);
+        }
+        while (clusters.size() > 1) {
+            final int i = r.nextInt(clusters.size() - 1);
+            clusters.set(i, "(" + clusters.get(i) + "," + clusters.remove(i + 1) + ")");
+        }
+        return clusters.get(0);
+    }
+
+    private static boolean isEqual(final Phylogeny t, final List<Integer> expected_counts) {
+        int i = 0;
+        for (final PhylogenyNodeIterator it = t.iteratorPostorder(); it.hasNext();) {
+            final PhylogenyNode n = it.next();
+            final int expected = expected_counts.get(i++);
+            if (n.getBranchData().getNumberOfConfidences() > 0) {
+                if (!isEqual(n.getBranchData().getConfidence(0).getValue(), expected)) {
+                    return false;
+                }
+            } else if (!n.isExternal() && !n.isRoot() && !n.getParent().isRoot()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean testCopyOfNodeData() {
         try {
             final PhylogenyNode n1 = PhylogenyNode
@@ -6672,6 +6907,98 @@ public final class Test {
         return true;
     }
 
+    private static boolean testLCAIndex() {
+        try {
+            final Random random = new Random(42);
+            for (int t = 0; t < 50; ++t) {
+                final List<PhylogenyNode> nodes = new ArrayList<>();
+                nodes.add(new PhylogenyNode("0"));
+                final int size = 1 + random.nextInt(60);
+                for (int i = 1; i < size; ++i) {
+                    final PhylogenyNode n = new PhylogenyNode(String.valueOf(i));
+                    nodes.get(random.nextInt(nodes.size())).addAsChild(n);
+                    n.setDistanceToParent(random.nextInt(10) == 0 ? -1 : random.nextDouble());
+                    nodes.add(n);
+                }
+                final Phylogeny p = new Phylogeny();
+                p.setRoot(nodes.get(0));
+                if (!isLCAIndexConsistent(p, nodes)) {
+                    return false;
+                }
+                if (p.getLCAIndex() != p.getLCAIndex()) {
+                    return false;
+                }
+                if (p.getLCAIndex().getNumberOfNodes() != size) {
+                    return false;
+                }
+                if (size < 3) {
+                    continue;
+                }
+                PhylogenyLCAIndex index = p.getLCAIndex();
+                nodes.get(1 + random.nextInt(size - 1)).setDistanceToParent(random.nextDouble());
+                if (index.isValid() || (p.getLCAIndex() == index) || !isLCAIndexConsistent(p, nodes)) {
+                    return false;
+                }
+                index = p.getLCAIndex();
+                final PhylogenyNode n = new PhylogenyNode("new");
+                nodes.get(random.nextInt(size)).addAsChild(n);
+                n.setDistanceToParent(1);
+                nodes.add(n);
+                if (index.isValid() || !isLCAIndexConsistent(p, nodes)) {
+                    return false;
+                }
+                try {
+                    index.calculateLCA(nodes.get(0), nodes.get(1));
+                    return false;
+                } catch (final IllegalStateException e) {
+                    // expected
+                }
+                p.getLCAIndex();
+                p.reRoot(nodes.get(1 + random.nextInt(size - 1)));
+                final List<PhylogenyNode> rerooted = new ArrayList<>();
+                for (final PhylogenyNodeIterator it = p.iteratorPreorder(); it.hasNext(); ) {
+                    rerooted.add(it.next());
+                }
+                if (!isLCAIndexConsistent(p, rerooted)) {
+                    return false;
+                }
+            }
+        } catch (final Exception e) {
+            e.printStackTrace(System.out);
+            return false;
+        }
+        return true;
+    }
+
+    // Compares LCAs and distances calculated with and without LCA index
+    // (unless p already has a valid one).
+    private static boolean isLCAIndexConsistent(final Phylogeny p, final List<PhylogenyNode> nodes) {
+        final int size = nodes.size();
+        final PhylogenyNode[][] lcas = new PhylogenyNode[size][size];
+        final double[][] distances = new double[size][size];
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                lcas[i][j] = PhylogenyMethods.calculateLCA(nodes.get(i), nodes.get(j));
+                distances[i][j] = PhylogenyMethods.calculateDistance(nodes.get(i), nodes.get(j));
+            }
+        }
+        final PhylogenyLCAIndex index = p.getLCAIndex();
+        for (int i = 0; i < size; ++i) {
+            for (int j = 0; j < size; ++j) {
+                final PhylogenyNode a = nodes.get(i);
+                final PhylogenyNode b = nodes.get(j);
+                if ((index.calculateLCA(a, b) != lcas[i][j]) || (PhylogenyMethods.calculateLCA(a, b) != lcas[i][j])) {
+                    return false;
+                }
+                if (!isEqual(index.calculateDistance(a, b), distances[i][j])
+                        || !isEqual(PhylogenyMethods.calculateDistance(a, b), distances[i][j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private static boolean testGetLCA2() {
         try {
             final PhylogenyFactory factory = ParserBasedPhylogenyFactory.getInstance();
@@ -7463,10 +7790,11 @@ public final class Test {
     //                               force on the chosen root AND every per-branch value, over many
     //                               tree shapes (binary, multifurcating, caterpillar, star) and sizes
     //   - testMADdeterminismEtc:    determinism, structural validity, and finiteness on clock trees
+    //   - testMADthreads:           identical rooting and per-branch values for any number of threads
     private static boolean testMADrooting() {
         try {
             return testMADexactCases() && testMADguards() && testMADbranchSupport()
-                    && testMADbruteForceEquiv() && testMADdeterminismEtc();
+                    && testMADbruteForceEquiv() && testMADdeterminismEtc() && testMADthreads();
         } catch (final Exception e) {
             e.printStackTrace(System.out);
             return false;
@@ -7629,6 +7957,31 @@ public final class Test {
         return true;
     }
 
+    private static boolean testMADthreads() {
+        // large enough for the tip pairs meeting at a node to be split into several work units
+        final Phylogeny[] trees = new Phylogeny[] { randomTree(1500, 7, 2), randomMultifurcatingTree(1200, 3),
+                caterpillarTree(700, 5), randomTree(20, 11, 3) };
+        for (final Phylogeny tree : trees) {
+            final Phylogeny a = tree.copy();
+            PhylogenyMethods.madRoot(a);
+            for (final int threads : new int[] { 2, 5 }) {
+                final Phylogeny b = tree.copy();
+                PhylogenyMethods.madRoot(b, threads);
+                if (!a.toNewHampshire().equals(b.toNewHampshire())) {
+                    return false;
+                }
+                final List<PhylogenyNode> na = PhylogenyMethods.obtainAllNodesAsList(a);
+                final List<PhylogenyNode> nb = PhylogenyMethods.obtainAllNodesAsList(b);
+                for (int i = 0; i < na.size(); ++i) {
+                    if (Double.compare(madConfidence(na.get(i)), madConfidence(nb.get(i))) != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     // Sum of squared MAD ancestor deviations of the tree's CURRENT rooting (each pair's ancestor is
     // its LCA); independent of PhylogenyMethods.madRoot's internals, so it can validate them.
     private static double madScoreSsd(final Phylogeny phy) {
@@ -8205,6 +8558,60 @@ public final class Test {
                 System.out.println(fasta);
                 return false;
             }
+            // duplicate identifiers: the first one is deleted first
+            final List<MolecularSequence> l3 = new ArrayList<>();
+            l3.add(BasicSequence.createAaSequence("a", "A-"));
+            l3.add(BasicSequence.createAaSequence("b", "B-"));
+            l3.add(BasicSequence.createAaSequence("a", "C-"));
+            final DeleteableMsa dmsa3 = DeleteableMsa.createInstance(l3);
+            if (!dmsa3.deleteRow("a", true).getMolecularSequenceAsString().equals("A")
+                    || !dmsa3.deleteRow("a", true).getMolecularSequenceAsString().equals("C")) {
+                return false;
+            }
+            try {
+                dmsa3.deleteRow("a", false);
+                return false;
+            } catch (final IllegalArgumentException e) {
+                // expected
+            }
+            // gap and residue counts kept up to date on deletions must be the same as those of a new msa
+            final Random r = new Random(7);
+            final String residues = "--ACDEFGHIKLMNPQRSTVWY";
+            final List<MolecularSequence> l4 = new ArrayList<>();
+            for (int i = 0; i < 60; ++i) {
+                final StringBuilder sb = new StringBuilder();
+                for (int j = 0; j < 80; ++j) {
+                    sb.append(j % 7 == 0 ? '-' : residues.charAt(r.nextInt(residues.length())));
+                }
+                l4.add(BasicSequence.createAaSequence("s" + i, sb.toString()));
+            }
+            final DeleteableMsa dmsa4 = DeleteableMsa.createInstance(l4);
+            dmsa4.getResidueCounts(0);
+            while (dmsa4.getNumberOfSequences() > 3) {
+                dmsa4.deleteRow(dmsa4.getIdentifier(r.nextInt(dmsa4.getNumberOfSequences())), false);
+                dmsa4.setResidueAt(0, r.nextInt(dmsa4.getLength()), residues.charAt(r.nextInt(residues.length())));
+                if (r.nextInt(5) == 0) {
+                    dmsa4.deleteGapColumns(0.9);
+                }
+                dmsa4.deleteGapOnlyColumns();
+                final Msa msa4 = BasicMsa.createInstance(dmsa4.asSequenceList());
+                if (msa4.getLength() != dmsa4.getLength()) {
+                    return false;
+                }
+                for (int col = 0; col < msa4.getLength(); ++col) {
+                    if ((MsaMethods.calcGapSumPerColumn(msa4, col) != dmsa4.getGapCount(col))
+                            || dmsa4.isAllGap(col)
+                            || !MsaMethods.calculateResidueDestributionPerColumnAllowGaps(msa4, col)
+                                    .equals(MsaMethods.calculateResidueDestributionPerColumnAllowGaps(dmsa4, col))) {
+                        return false;
+                    }
+                }
+                if ((MsaMethods.calcGapRatio(msa4) != MsaMethods.calcGapRatio(dmsa4))
+                        || (MsaMethods.calcNormalizedShannonsEntropy(7, msa4) != MsaMethods.calcNormalizedShannonsEntropy(7, dmsa4))
+                        || (MsaMethods.calcNormalizedShannonsEntropy(21, msa4) != MsaMethods.calcNormalizedShannonsEntropy(21, dmsa4))) {
+                    return false;
+                }
+            }
         } catch (final Exception e) {
             e.printStackTrace(System.out);
             return false;
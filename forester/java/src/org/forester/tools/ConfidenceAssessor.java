@@ -20,12 +20,16 @@
 
 package org.forester.tools;
 
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.forester.io.parsers.IteratingPhylogenyParser;
 import org.forester.phylogeny.Phylogeny;
 import org.forester.phylogeny.PhylogenyNode;
 import org.forester.phylogeny.data.Confidence;
@@ -38,18 +42,6 @@ public final class ConfidenceAssessor {
         // Hidden constructor.
     }
 
-    private final static void addExternalNodesToMap( final Map<PhylogenyNode, Set<PhylogenyNode>> node_to_ext_nodes_map,
-                                                     final PhylogenyNode node ) {
-        final Set<PhylogenyNode> ex_descs = new HashSet<PhylogenyNode>();
-        for( final PhylogenyNode n : node.getAllExternalDescendants() ) {
-            if ( ex_descs.contains( n ) ) {
-                throw new IllegalArgumentException( "node [" + n.toString() + "] of target is not unique" );
-            }
-            ex_descs.add( n );
-        }
-        node_to_ext_nodes_map.put( node, ex_descs );
-    }
-
     private final static void checkPreconditions( final String confidence_type,
                                                   final Phylogeny[] evaluators,
                                                   final Phylogeny target,
@@ -62,17 +54,23 @@ public final class ConfidenceAssessor {
         if ( evaluators.length < 1 ) {
             throw new IllegalArgumentException( "need at least one evaluator topology" );
         }
+        if ( ( first != 0 ) || ( last != 0 ) ) {
+            if ( ( last >= evaluators.length ) || ( last <= first ) ) {
+                throw new IllegalArgumentException( "illegal value for last evaluator topology to use" );
+            }
+        }
+        checkPreconditions( confidence_type, target, value );
+    }
+
+    private final static void checkPreconditions( final String confidence_type,
+                                                  final Phylogeny target,
+                                                  final double value ) {
         if ( ForesterUtil.isEmpty( confidence_type ) ) {
             throw new IllegalArgumentException( "attempt to use empty confidence type" );
         }
         if ( value <= 0 ) {
             throw new IllegalArgumentException( "attempt to use zero or negative \'count value\'" );
         }
-        if ( ( first != 0 ) || ( last != 0 ) ) {
-            if ( ( last >= evaluators.length ) || ( last <= first ) ) {
-                throw new IllegalArgumentException( "illegal value for last evaluator topology to use" );
-            }
-        }
         final Set<PhylogenyNode> nodes = new HashSet<PhylogenyNode>();
         for( final PhylogenyNodeIterator it = target.iteratorPostorder(); it.hasNext(); ) {
             final PhylogenyNode node = it.next();
@@ -115,8 +113,8 @@ public final class ConfidenceAssessor {
         if ( ( first != 0 ) || ( last != 0 ) ) {
             all = false;
         }
+        final SupportCounter support_counter = new SupportCounter( target, strict );
         int counter = 0;
-        final Map<PhylogenyNode, Set<PhylogenyNode>> node_to_ext_nodes_map = new HashMap<PhylogenyNode, Set<PhylogenyNode>>();
         for( final Phylogeny evaluator : evaluators ) {
             if ( all || ( ( counter >= first ) && ( counter <= last ) ) ) {
                 if ( strict ) {
@@ -127,46 +125,101 @@ public final class ConfidenceAssessor {
                                                             + target.getNumberOfExternalNodes() + "]" );
                     }
                 }
-                final TreeSplitMatrix s = new TreeSplitMatrix( evaluator, strict, target );
-                for( final PhylogenyNodeIterator it = target.iteratorPostorder(); it.hasNext(); ) {
-                    final PhylogenyNode node = it.next();
-                    if ( !node.isExternal() && !node.isRoot() ) {
-                        if ( node.getParent().isRoot()
-                                && ( target.getRoot().getNumberOfDescendants() == 2 )
-                                && ( target.getRoot().getChildNode1().isExternal() || target.getRoot().getChildNode2()
-                                        .isExternal() ) ) {
-                            continue;
+                support_counter.count( evaluator );
+            }
+            ++counter;
+        }
+        support_counter.setConfidences( confidence_type, value );
+    }
+
+    /**
+     * Adds support values of confidence_type to target, counting the
+     * evaluator phylogenies as they are read from evaluators (the whole set is
+     * never held in memory) on the given number of threads.
+     *
+     * Returns the number of evaluators used.
+     */
+    public final static int evaluate( final String confidence_type,
+                                      final IteratingPhylogenyParser evaluators,
+                                      final Phylogeny target,
+                                      final boolean strict,
+                                      final double value,
+                                      final int threads ) throws IOException {
+        checkPreconditions( confidence_type, target, value );
+        final SupportCounter support_counter = new SupportCounter( target, strict );
+        final int n = count( evaluators, new SupportCounter[] { support_counter }, 0, 0, threads );
+        support_counter.setConfidences( confidence_type, value );
+        return n;
+    }
+
+    /**
+     * Counts the evaluator phylogenies read from evaluators (from first to
+     * last, or from first to the end if last is zero) with each of the
+     * support counters. At most two evaluators per thread are held in memory
+     * at any time.
+     *
+     * Returns the number of evaluators counted.
+     */
+    public final static int count( final IteratingPhylogenyParser evaluators,
+                                   final SupportCounter[] support_counters,
+                                   final int first,
+                                   final int last,
+                                   final int threads ) throws IOException {
+        if ( threads < 1 ) {
+            throw new IllegalArgumentException( "number of threads must be at least one" );
+        }
+        if ( ( first < 0 ) || ( last < 0 ) || ( ( last != 0 ) && ( last <= first ) ) ) {
+            throw new IllegalArgumentException( "illegal value for first or last evaluator topology to use" );
+        }
+        final boolean to_end = last == 0;
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool( threads ) : null;
+        final Semaphore in_flight = new Semaphore( 2 * threads );
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        int counter = 0;
+        int counted = 0;
+        try {
+            while ( evaluators.hasNext() && ( to_end || ( counter <= last ) ) && ( failure.get() == null ) ) {
+                final Phylogeny evaluator = evaluators.next();
+                if ( counter >= first ) {
+                    final int number = counter;
+                    final Runnable task = () -> {
+                        try {
+                            for( final SupportCounter support_counter : support_counters ) {
+                                support_counter.count( evaluator );
+                            }
                         }
-                        if ( !node_to_ext_nodes_map.containsKey( node ) ) {
-                            addExternalNodesToMap( node_to_ext_nodes_map, node );
+                        catch ( final RuntimeException e ) {
+                            failure.compareAndSet( null, new IllegalArgumentException( "evaluator #" + number + ": "
+                                    + e.getMessage(), e ) );
                         }
-                        final Set<PhylogenyNode> ex_descs = node_to_ext_nodes_map.get( node );
-                        final Confidence c = ConfidenceAssessor.obtainConfidence( node, confidence_type );
-                        if ( s.match( ex_descs ) ) {
-                            c.setValue( c.getValue() + value );
+                        finally {
+                            in_flight.release();
                         }
+                    };
+                    in_flight.acquireUninterruptibly();
+                    if ( executor != null ) {
+                        executor.execute( task );
                     }
+                    else {
+                        task.run();
+                    }
+                    ++counted;
                 }
+                ++counter;
             }
-            ++counter;
+            in_flight.acquireUninterruptibly( 2 * threads );
         }
-    }
-
-    private final static Confidence obtainConfidence( final PhylogenyNode n, final String confidence_type ) {
-        final List<Confidence> confidences = n.getBranchData().getConfidences();
-        Confidence match = null;
-        for( final Confidence confidence : confidences ) {
-            if ( confidence.getType().equals( confidence_type ) ) {
-                if ( match != null ) {
-                    throw new IllegalArgumentException( "confidence [" + confidence_type + "] is not unique" );
-                }
-                match = confidence;
+        finally {
+            if ( executor != null ) {
+                executor.shutdownNow();
             }
         }
-        if ( match == null ) {
-            match = new Confidence( 0, confidence_type );
-            confidences.add( match );
+        if ( failure.get() != null ) {
+            throw failure.get();
+        }
+        if ( !to_end && ( counter <= last ) ) {
+            throw new IllegalArgumentException( "illegal value for last evaluator topology to use" );
         }
-        return match;
+        return counted;
     }
 }
@@ -0,0 +1,294 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.tools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.forester.phylogeny.Phylogeny;
+import org.forester.phylogeny.PhylogenyNode;
+import org.forester.phylogeny.data.Confidence;
+import org.forester.phylogeny.iterators.PhylogenyNodeIterator;
+
+/**
+ * Counts, for each internal node of a target phylogeny, in how many evaluator
+ * phylogenies the corresponding split is present.
+ * <p>
+ * Splits are encoded as bitsets (long[]) over the external nodes of the
+ * target, in canonical form (the side not containing the first external
+ * node). The splits of the target are kept in a hash table, so that counting
+ * an evaluator takes one lookup per node of the evaluator, and the count of a
+ * target node is obtained with one lookup.
+ * <p>
+ * External nodes are matched by name. In non-strict mode, evaluators may lack
+ * external nodes of the target (a target split can then only be present if
+ * all its external nodes are present in the evaluator) or contain additional
+ * ones (which are ignored).
+ * <p>
+ * Evaluators are counted one at a time (and can be discarded afterwards), so
+ * that memory does not grow with the number of evaluators. Counting is
+ * thread-safe; since counts are integers, the result does not depend on the
+ * order in which evaluators are counted.
+ *
+ * @see ConfidenceAssessor
+ */
+public final class SupportCounter {
+
+    private final long[]               _all;
+    private final int[]                _counts;
+    private final PhylogenyNode[]      _nodes;
+    private final long[][]             _splits;
+    private final Map<Split, int[]>    _split_to_nodes;
+    private final boolean              _strict;
+    private final Map<String, Integer> _taxa;
+    private final int                  _words;
+    private int                        _evaluators;
+
+    public SupportCounter( final Phylogeny target, final boolean strict ) {
+        if ( ( target == null ) || target.isEmpty() ) {
+            throw new IllegalArgumentException( "attempt to count support on empty target" );
+        }
+        _strict = strict;
+        _taxa = new HashMap<String, Integer>();
+        for( final PhylogenyNodeIterator it = target.iteratorExternalForward(); it.hasNext(); ) {
+            final PhylogenyNode n = it.next();
+            if ( _taxa.put( n.getName(), _taxa.size() ) != null ) {
+                throw new IllegalArgumentException( "node [" + n.toString() + "] of target is not unique" );
+            }
+        }
+        _words = ( _taxa.size() + 63 ) >>> 6;
+        _all = new long[ _words ];
+        for( int i = 0; i < _taxa.size(); ++i ) {
+            _all[ i >>> 6 ] |= 1L << i;
+        }
+        final List<PhylogenyNode> nodes = new ArrayList<PhylogenyNode>();
+        final List<long[]> splits = new ArrayList<long[]>();
+        final Map<PhylogenyNode, long[]> node_splits = new HashMap<PhylogenyNode, long[]>();
+        final PhylogenyNode root = target.getRoot();
+        final boolean skip_root_split = ( root.getNumberOfDescendants() == 2 )
+                && ( root.getChildNode1().isExternal() || root.getChildNode2().isExternal() );
+        for( final PhylogenyNodeIterator it = target.iteratorPostorder(); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            final long[] split = new long[ _words ];
+            if ( node.isExternal() ) {
+                final int i = _taxa.get( node.getName() );
+                split[ i >>> 6 ] |= 1L << i;
+            }
+            else {
+                for( int d = 0; d < node.getNumberOfDescendants(); ++d ) {
+                    or( split, node_splits.remove( node.getChildNode( d ) ) );
+                }
+            }
+            node_splits.put( node, split );
+            if ( !node.isExternal() && !node.isRoot() ) {
+                if ( skip_root_split && node.getParent().isRoot() ) {
+                    continue;
+                }
+                nodes.add( node );
+                splits.add( split );
+            }
+        }
+        _nodes = nodes.toArray( new PhylogenyNode[ nodes.size() ] );
+        _splits = splits.toArray( new long[ splits.size() ][] );
+        _counts = new int[ _nodes.length ];
+        _split_to_nodes = new HashMap<Split, int[]>();
+        for( int i = 0; i < _nodes.length; ++i ) {
+            final Split key = new Split( canonical( _splits[ i ], _all ) );
+            final int[] existing = _split_to_nodes.get( key );
+            if ( existing == null ) {
+                _split_to_nodes.put( key, new int[] { i } );
+            }
+            else {
+                final int[] n = Arrays.copyOf( existing, existing.length + 1 );
+                n[ existing.length ] = i;
+                _split_to_nodes.put( key, n );
+            }
+        }
+    }
+
+    /**
+     * Adds one to the count of each target node whose split is present in
+     * evaluator.
+     */
+    public final void count( final Phylogeny evaluator ) {
+        if ( _strict && ( evaluator.getNumberOfExternalNodes() != _taxa.size() ) ) {
+            throw new IllegalArgumentException( "evaluator does not have the same number of external nodes ["
+                    + evaluator.getNumberOfExternalNodes() + "] than the corresponding target [" + _taxa.size() + "]" );
+        }
+        // Splits of all nodes of the evaluator, restricted to the external
+        // nodes shared with the target, are looked up as they are built. If
+        // the evaluator lacks external nodes of the target, this is redone
+        // afterwards, since the complement of a split then depends on the
+        // external nodes present.
+        final boolean[] matches = new boolean[ _nodes.length ];
+        final List<long[]> evaluator_splits = _strict ? null : new ArrayList<long[]>();
+        final Deque<long[]> stack = new ArrayDeque<long[]>();
+        final long[] shared = new long[ _words ];
+        for( final PhylogenyNodeIterator it = evaluator.iteratorPostorder(); it.hasNext(); ) {
+            final PhylogenyNode node = it.next();
+            final long[] split = new long[ _words ];
+            if ( node.isExternal() ) {
+                final Integer i = _taxa.get( node.getName() );
+                if ( i != null ) {
+                    final long bit = 1L << i;
+                    if ( ( shared[ i >>> 6 ] & bit ) != 0 ) {
+                        throw new IllegalArgumentException( "node [" + node.toString() + "] of evaluator is not unique" );
+                    }
+                    shared[ i >>> 6 ] |= bit;
+                    split[ i >>> 6 ] = bit;
+                }
+                else if ( _strict ) {
+                    throw new IllegalArgumentException( "external nodes of target and evaluator do not match" );
+                }
+            }
+            else {
+                for( int d = 0; d < node.getNumberOfDescendants(); ++d ) {
+                    or( split, stack.pop() );
+                }
+            }
+            stack.push( split );
+            final int[] ns = _split_to_nodes.get( new Split( canonical( split, _all ) ) );
+            if ( ns != null ) {
+                for( final int i : ns ) {
+                    matches[ i ] = true;
+                }
+            }
+            if ( evaluator_splits != null ) {
+                evaluator_splits.add( split );
+            }
+        }
+        if ( !Arrays.equals( shared, _all ) ) {
+            final Set<Split> present = new HashSet<Split>();
+            for( final long[] split : evaluator_splits ) {
+                present.add( new Split( canonical( split, shared ) ) );
+            }
+            for( int i = 0; i < _nodes.length; ++i ) {
+                matches[ i ] = isSubset( _splits[ i ], shared )
+                        && present.contains( new Split( canonical( _splits[ i ], shared ) ) );
+            }
+        }
+        synchronized ( this ) {
+            for( int i = 0; i < _nodes.length; ++i ) {
+                if ( matches[ i ] ) {
+                    ++_counts[ i ];
+                }
+            }
+            ++_evaluators;
+        }
+    }
+
+    /**
+     * Returns the count for node of the target, or -1 if the split of node is
+     * not assessed (external nodes, the root, and the redundant split next to
+     * a bifurcating root with an external child).
+     */
+    public final synchronized int getCount( final PhylogenyNode node ) {
+        for( int i = 0; i < _nodes.length; ++i ) {
+            if ( _nodes[ i ] == node ) {
+                return _counts[ i ];
+            }
+        }
+        return -1;
+    }
+
+    public final synchronized int getNumberOfEvaluators() {
+        return _evaluators;
+    }
+
+    /**
+     * Adds a confidence of confidence_type with value count * value to each
+     * assessed node of the target. As for ConfidenceAssessor.evaluate, the
+     * target must not have confidences of confidence_type yet (an
+     * IllegalArgumentException is thrown otherwise, before any confidence is
+     * added).
+     */
+    public final synchronized void setConfidences( final String confidence_type, final double value ) {
+        for( final PhylogenyNode node : _nodes ) {
+            for( final Confidence confidence : node.getBranchData().getConfidences() ) {
+                if ( confidence.getType().equals( confidence_type ) ) {
+                    throw new IllegalArgumentException( "confidence [" + confidence_type
+                            + "] is already present in target" );
+                }
+            }
+        }
+        for( int i = 0; i < _nodes.length; ++i ) {
+            _nodes[ i ].getBranchData().addConfidence( new Confidence( _counts[ i ] * value, confidence_type ) );
+        }
+    }
+
+    // Returns the side of split (within all) which does not contain the first
+    // element of all.
+    private final static long[] canonical( final long[] split, final long[] all ) {
+        final long[] c = new long[ split.length ];
+        int first = 0;
+        while ( ( first < all.length ) && ( all[ first ] == 0 ) ) {
+            ++first;
+        }
+        final boolean flip = ( first < all.length ) && ( ( split[ first ] & Long.lowestOneBit( all[ first ] ) ) != 0 );
+        for( int w = 0; w < split.length; ++w ) {
+            c[ w ] = flip ? all[ w ] & ~split[ w ] : split[ w ] & all[ w ];
+        }
+        return c;
+    }
+
+    private final static boolean isSubset( final long[] a, final long[] b ) {
+        for( int w = 0; w < a.length; ++w ) {
+            if ( ( a[ w ] & ~b[ w ] ) != 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final static void or( final long[] a, final long[] b ) {
+        for( int w = 0; w < a.length; ++w ) {
+            a[ w ] |= b[ w ];
+        }
+    }
+
+    private final static class Split {
+
+        private final long[] _bits;
+        private final int    _hash;
+
+        Split( final long[] bits ) {
+            _bits = bits;
+            _hash = Arrays.hashCode( bits );
+        }
+
+        @Override
+        public final boolean equals( final Object o ) {
+            return ( o instanceof Split ) && Arrays.equals( _bits, ( ( Split ) o )._bits );
+        }
+
+        @Override
+        public final int hashCode() {
+            return _hash;
+        }
+    }
+}
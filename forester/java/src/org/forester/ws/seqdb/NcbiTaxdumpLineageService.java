@@ -0,0 +1,583 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.ws.seqdb;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.forester.util.ForesterUtil;
+
+/**
+ * An offline {@link TaxonomicLineageService} backed by a local copy of the NCBI taxonomy dump
+ * ({@code nodes.dmp}, {@code names.dmp} and, optionally, {@code merged.dmp} from
+ * {@code https://ftp.ncbi.nlm.nih.gov/pub/taxonomy/taxdump.tar.gz}), for machines without network access
+ * and for annotating very many tips: it never does network I/O.
+ *
+ * <p>The dump is converted ONCE into a compact binary index ({@link #buildIndex}) which is then
+ * memory-mapped, so opening it is instant and the operating system shares its pages between processes.
+ * The index holds, for every taxon sorted by tax-id, the parent, rank, scientific name and common name,
+ * plus a table of the (lower-cased) hashes of the scientific names, synonyms and common names sorted by
+ * hash, and the merged tax-ids. A tax-id or a name is resolved by binary search, and its lineage by
+ * following the parents to the root -- a few microseconds, without allocating more than the returned
+ * {@link TaxonLineage}. So, unlike {@link NcbiTaxonomyLineageService}, no results are cached.
+ *
+ * <p>A name that several taxa share resolves to the taxon it is the scientific name of (the one with
+ * the lowest tax-id, if several), else to the lowest tax-id which has it as a synonym or common name.
+ * Lineages have the same shape as those of {@link NcbiTaxonomyLineageService}: ancestors root&rarr;parent,
+ * without NCBI's "root" (tax-id 1), and the GenBank common name preferred over any other common name.
+ */
+public final class NcbiTaxdumpLineageService implements TaxonomicLineageService {
+
+    /** If set, the directory of a taxdump for {@link #open(File)} (used instead of the NCBI web service). */
+    public static final String  TAXDUMP_DIR_PROPERTY = "archaeopteryx.taxdump.dir";
+    public static final String  NODES_FILE           = "nodes.dmp";
+    public static final String  NAMES_FILE           = "names.dmp";
+    public static final String  MERGED_FILE          = "merged.dmp";
+    public static final String  INDEX_FILE           = "taxdump.fidx";
+    private static final int    MAGIC                = 0x46545844;                  // "FTXD"
+    private static final int    VERSION              = 1;
+    private static final int    HEADER_INTS          = 7;
+    private static final int    ROOT_TAX_ID          = 1;
+    private static final int    NONE                 = -1;
+    private static final String FIELD_SEPARATOR      = "\t|\t";
+    // names.dmp name classes which resolve a taxon by name (besides its scientific name)
+    private static final List<String> INDEXED_NAME_CLASSES = Arrays.asList( "synonym",
+                                                                            "equivalent name",
+                                                                            "genbank synonym",
+                                                                            "common name",
+                                                                            "genbank common name",
+                                                                            "acronym",
+                                                                            "genbank acronym" );
+    private final IntBuffer     _tax_ids;
+    private final IntBuffer     _parents;
+    private final IntBuffer     _ranks;
+    private final IntBuffer     _scientific_names;
+    private final IntBuffer     _common_names;
+    private final IntBuffer     _rank_names;
+    private final IntBuffer     _name_hashes;
+    private final IntBuffer     _name_offsets;
+    private final IntBuffer     _name_taxa;
+    private final IntBuffer     _merged_tax_ids;
+    private final IntBuffer     _merged_taxa;
+    private final ByteBuffer    _strings;
+    private final String[]      _rank_strings;
+
+    /**
+     * Memory-maps an index written by {@link #buildIndex}.
+     *
+     * @throws IOException if the file cannot be read or is not such an index
+     */
+    public NcbiTaxdumpLineageService( final File index ) throws IOException {
+        final ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open( index.toPath(), StandardOpenOption.READ )) {
+            if ( channel.size() > Integer.MAX_VALUE ) {
+                throw new IOException( "taxdump index [" + index + "] is too large" );
+            }
+            buf = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+        }
+        if ( ( buf.capacity() < ( 4 * HEADER_INTS ) ) || ( buf.getInt( 0 ) != MAGIC ) ) {
+            throw new IOException( "[" + index + "] is not a taxdump index" );
+        }
+        if ( buf.getInt( 4 ) != VERSION ) {
+            throw new IOException( "taxdump index [" + index + "] has version " + buf.getInt( 4 ) + ", expected "
+                    + VERSION + " (rebuild it)" );
+        }
+        final int taxa = buf.getInt( 8 );
+        final int names = buf.getInt( 12 );
+        final int merged = buf.getInt( 16 );
+        final int ranks = buf.getInt( 20 );
+        final int strings = buf.getInt( 24 );
+        final long size = ( 4L * ( HEADER_INTS + ( 5L * taxa ) + ranks + ( 3L * names ) + ( 2L * merged ) ) ) + strings;
+        if ( ( taxa < 0 ) || ( names < 0 ) || ( merged < 0 ) || ( ranks < 0 ) || ( strings < 0 )
+                || ( size != buf.capacity() ) ) {
+            throw new IOException( "taxdump index [" + index + "] is truncated or corrupt" );
+        }
+        int pos = 4 * HEADER_INTS;
+        _tax_ids = ints( buf, pos, taxa );
+        _parents = ints( buf, pos += 4 * taxa, taxa );
+        _ranks = ints( buf, pos += 4 * taxa, taxa );
+        _scientific_names = ints( buf, pos += 4 * taxa, taxa );
+        _common_names = ints( buf, pos += 4 * taxa, taxa );
+        _rank_names = ints( buf, pos += 4 * taxa, ranks );
+        _name_hashes = ints( buf, pos += 4 * ranks, names );
+        _name_offsets = ints( buf, pos += 4 * names, names );
+        _name_taxa = ints( buf, pos += 4 * names, names );
+        _merged_tax_ids = ints( buf, pos += 4 * names, merged );
+        _merged_taxa = ints( buf, pos += 4 * merged, merged );
+        _strings = buf.slice( pos + ( 4 * merged ), strings );
+        _rank_strings = new String[ ranks ];
+        for( int i = 0; i < ranks; ++i ) {
+            _rank_strings[ i ] = string( _rank_names.get( i ) );
+        }
+    }
+
+    /**
+     * The service for the taxdump in {@code dir}: (re)builds its index ({@value #INDEX_FILE}, in the same
+     * directory) first if it is missing or older than the dump files, then maps it.
+     *
+     * @throws IOException if the dump cannot be read or the index cannot be written
+     */
+    public static NcbiTaxdumpLineageService open( final File dir ) throws IOException {
+        final File nodes = new File( dir, NODES_FILE );
+        final File names = new File( dir, NAMES_FILE );
+        final File merged = new File( dir, MERGED_FILE );
+        final File index = new File( dir, INDEX_FILE );
+        if ( !nodes.isFile() || !names.isFile() ) {
+            throw new IOException( "[" + dir + "] does not contain an NCBI taxdump (" + NODES_FILE + " and "
+                    + NAMES_FILE + ")" );
+        }
+        if ( !index.isFile() || ( index.lastModified() < nodes.lastModified() )
+                || ( index.lastModified() < names.lastModified() )
+                || ( merged.isFile() && ( index.lastModified() < merged.lastModified() ) ) ) {
+            buildIndex( nodes, names, merged.isFile() ? merged : null, index );
+        }
+        return new NcbiTaxdumpLineageService( index );
+    }
+
+    @Override
+    public TaxonLineage lineageOf( final String taxon ) {
+        if ( ForesterUtil.isEmpty( taxon ) ) {
+            return null;
+        }
+        final int i = find( taxon );
+        return i == NONE ? null : lineage( i );
+    }
+
+    /** As {@link #lineageOf}, but {@link TaxonLineage#EMPTY} for an unknown taxon. Never does network I/O. */
+    @Override
+    public TaxonLineage fetch( final String taxon ) {
+        final TaxonLineage lineage = lineageOf( taxon );
+        return lineage == null ? TaxonLineage.EMPTY : lineage;
+    }
+
+    /** The number of taxa in the index. */
+    public int getNumberOfTaxa() {
+        return _tax_ids.capacity();
+    }
+
+    /** The index of the taxon with the tax-id or name {@code taxon}, or NONE. */
+    private int find( final String taxon ) {
+        final String t = taxon.trim();
+        if ( NcbiTaxonomyLineageService.isTaxId( t ) ) {
+            if ( t.length() > 9 ) {
+                return NONE; // beyond any int tax-id
+            }
+            final int id = Integer.parseInt( t );
+            final int i = search( _tax_ids, id );
+            if ( i >= 0 ) {
+                return i;
+            }
+            final int m = search( _merged_tax_ids, id );
+            return m >= 0 ? _merged_taxa.get( m ) : NONE;
+        }
+        final String key = t.toLowerCase( Locale.ROOT );
+        final int hash = key.hashCode();
+        // the first entry with this hash; entries of the same hash are ordered by preference
+        int lo = 0;
+        int hi = _name_hashes.capacity();
+        while ( lo < hi ) {
+            final int mid = ( lo + hi ) >>> 1;
+            if ( _name_hashes.get( mid ) < hash ) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        for( int i = lo; ( i < _name_hashes.capacity() ) && ( _name_hashes.get( i ) == hash ); ++i ) {
+            if ( string( _name_offsets.get( i ) ).toLowerCase( Locale.ROOT ).equals( key ) ) {
+                return _name_taxa.get( i );
+            }
+        }
+        return NONE;
+    }
+
+    private TaxonLineage lineage( final int i ) {
+        final List<TaxonLineage.Ancestor> ancestors = new ArrayList<TaxonLineage.Ancestor>();
+        int a = _parents.get( i );
+        // the parent of the root is the root; guard against a cycle in a corrupt dump anyway
+        for( int depth = 0; ( a != NONE ) && ( _tax_ids.get( a ) != ROOT_TAX_ID ) && ( depth < 1000 ); ++depth ) {
+            ancestors.add( new TaxonLineage.Ancestor( string( _scientific_names.get( a ) ),
+                                                      _rank_strings[ _ranks.get( a ) ],
+                                                      Integer.toString( _tax_ids.get( a ) ) ) );
+            final int p = _parents.get( a );
+            a = p == a ? NONE : p;
+        }
+        final List<TaxonLineage.Ancestor> root_to_parent = new ArrayList<TaxonLineage.Ancestor>( ancestors.size() );
+        for( int j = ancestors.size() - 1; j >= 0; --j ) {
+            root_to_parent.add( ancestors.get( j ) );
+        }
+        return new TaxonLineage( Integer.toString( _tax_ids.get( i ) ),
+                                 _rank_strings[ _ranks.get( i ) ],
+                                 string( _scientific_names.get( i ) ),
+                                 string( _common_names.get( i ) ),
+                                 root_to_parent );
+    }
+
+    /** The string at {@code offset} in the string pool (a 2-byte length, then UTF-8), or null for NONE. */
+    private String string( final int offset ) {
+        if ( offset == NONE ) {
+            return null;
+        }
+        final int length = _strings.getShort( offset ) & 0xFFFF;
+        final byte[] bytes = new byte[ length ];
+        _strings.get( offset + 2, bytes );
+        return new String( bytes, StandardCharsets.UTF_8 );
+    }
+
+    private static IntBuffer ints( final ByteBuffer buf, final int pos, final int n ) {
+        return buf.slice( pos, 4 * n ).asIntBuffer();
+    }
+
+    private static int search( final IntBuffer sorted, final int key ) {
+        int lo = 0;
+        int hi = sorted.capacity() - 1;
+        while ( lo <= hi ) {
+            final int mid = ( lo + hi ) >>> 1;
+            final int v = sorted.get( mid );
+            if ( v < key ) {
+                lo = mid + 1;
+            }
+            else if ( v > key ) {
+                hi = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // ---- building the index --------------------------------------------------------------------
+
+    /**
+     * Writes the index for the given dump files ({@code merged_dmp} may be null) to {@code index}, by way of
+     * a temporary file in the same directory, so that a reader never sees a partial index.
+     *
+     * @throws IOException if a dump file cannot be read or is malformed, or the index cannot be written
+     */
+    public static void buildIndex( final File nodes_dmp, final File names_dmp, final File merged_dmp, final File index )
+            throws IOException {
+        // nodes.dmp: tax_id | parent tax_id | rank | ...
+        int[] tax_ids = new int[ 1 << 16 ];
+        int[] parent_ids = new int[ tax_ids.length ];
+        int[] ranks = new int[ tax_ids.length ];
+        final Map<String, Integer> rank_index = new HashMap<String, Integer>();
+        final List<String> rank_names = new ArrayList<String>();
+        int taxa = 0;
+        try (BufferedReader r = Files.newBufferedReader( nodes_dmp.toPath(), StandardCharsets.UTF_8 )) {
+            final String[] f = new String[ 3 ];
+            int line_number = 0;
+            for( String line; ( line = r.readLine() ) != null; ) {
+                ++line_number;
+                if ( line.isEmpty() ) {
+                    continue;
+                }
+                if ( !fields( line, f ) ) {
+                    throw new IOException( nodes_dmp + ": malformed line " + line_number );
+                }
+                if ( taxa == tax_ids.length ) {
+                    tax_ids = Arrays.copyOf( tax_ids, 2 * taxa );
+                    parent_ids = Arrays.copyOf( parent_ids, 2 * taxa );
+                    ranks = Arrays.copyOf( ranks, 2 * taxa );
+                }
+                tax_ids[ taxa ] = parseId( f[ 0 ], nodes_dmp, line_number );
+                parent_ids[ taxa ] = parseId( f[ 1 ], nodes_dmp, line_number );
+                Integer rank = rank_index.get( f[ 2 ] );
+                if ( rank == null ) {
+                    rank = rank_names.size();
+                    rank_index.put( f[ 2 ], rank );
+                    rank_names.add( f[ 2 ] );
+                }
+                ranks[ taxa ] = rank;
+                ++taxa;
+            }
+        }
+        // sort by tax-id
+        final long[] order = new long[ taxa ];
+        for( int i = 0; i < taxa; ++i ) {
+            order[ i ] = ( ( (long) tax_ids[ i ] ) << 32 ) | i;
+        }
+        Arrays.sort( order );
+        final int[] sorted_ids = new int[ taxa ];
+        final int[] sorted_ranks = new int[ taxa ];
+        final int[] sorted_parent_ids = new int[ taxa ];
+        for( int i = 0; i < taxa; ++i ) {
+            final int row = (int) order[ i ];
+            sorted_ids[ i ] = tax_ids[ row ];
+            sorted_ranks[ i ] = ranks[ row ];
+            sorted_parent_ids[ i ] = parent_ids[ row ];
+            if ( ( i > 0 ) && ( sorted_ids[ i ] == sorted_ids[ i - 1 ] ) ) {
+                throw new IOException( nodes_dmp + ": duplicate tax-id " + sorted_ids[ i ] );
+            }
+        }
+        final int[] parents = new int[ taxa ];
+        for( int i = 0; i < taxa; ++i ) {
+            parents[ i ] = Arrays.binarySearch( sorted_ids, sorted_parent_ids[ i ] );
+            if ( parents[ i ] < 0 ) {
+                throw new IOException( nodes_dmp + ": unknown parent tax-id " + sorted_parent_ids[ i ] + " of "
+                        + sorted_ids[ i ] );
+            }
+        }
+        final StringPool pool = new StringPool();
+        final int[] rank_offsets = new int[ rank_names.size() ];
+        for( int i = 0; i < rank_offsets.length; ++i ) {
+            rank_offsets[ i ] = pool.add( rank_names.get( i ) );
+        }
+        // names.dmp: tax_id | name_txt | unique name | name class |
+        final int[] scientific_names = new int[ taxa ];
+        final int[] common_names = new int[ taxa ];
+        final boolean[] genbank_common = new boolean[ taxa ];
+        Arrays.fill( scientific_names, NONE );
+        Arrays.fill( common_names, NONE );
+        int[] name_hashes = new int[ 1 << 16 ];
+        int[] name_offsets = new int[ name_hashes.length ];
+        int[] name_taxa = new int[ name_hashes.length ];
+        boolean[] name_scientific = new boolean[ name_hashes.length ];
+        int names = 0;
+        try (BufferedReader r = Files.newBufferedReader( names_dmp.toPath(), StandardCharsets.UTF_8 )) {
+            final String[] f = new String[ 4 ];
+            int line_number = 0;
+            for( String line; ( line = r.readLine() ) != null; ) {
+                ++line_number;
+                if ( line.isEmpty() ) {
+                    continue;
+                }
+                if ( !fields( line, f ) ) {
+                    throw new IOException( names_dmp + ": malformed line " + line_number );
+                }
+                final int taxon = Arrays.binarySearch( sorted_ids, parseId( f[ 0 ], names_dmp, line_number ) );
+                final String name = f[ 1 ].trim();
+                final String name_class = f[ 3 ];
+                final boolean scientific = "scientific name".equals( name_class );
+                if ( ( taxon < 0 ) || name.isEmpty()
+                        || ( !scientific && !INDEXED_NAME_CLASSES.contains( name_class ) ) ) {
+                    continue;
+                }
+                final int offset = pool.add( name );
+                if ( scientific ) {
+                    scientific_names[ taxon ] = offset;
+                }
+                else if ( "genbank common name".equals( name_class ) ) {
+                    common_names[ taxon ] = offset;
+                    genbank_common[ taxon ] = true;
+                }
+                else if ( "common name".equals( name_class ) && !genbank_common[ taxon ]
+                        && ( common_names[ taxon ] == NONE ) ) {
+                    common_names[ taxon ] = offset;
+                }
+                if ( names == name_hashes.length ) {
+                    name_hashes = Arrays.copyOf( name_hashes, 2 * names );
+                    name_offsets = Arrays.copyOf( name_offsets, 2 * names );
+                    name_taxa = Arrays.copyOf( name_taxa, 2 * names );
+                    name_scientific = Arrays.copyOf( name_scientific, 2 * names );
+                }
+                name_hashes[ names ] = name.toLowerCase( Locale.ROOT ).hashCode();
+                name_offsets[ names ] = offset;
+                name_taxa[ names ] = taxon;
+                name_scientific[ names ] = scientific;
+                ++names;
+            }
+        }
+        // sort the names by hash, then (within the few names of a hash) scientific names first, then by tax-id
+        final long[] by_hash = new long[ names ];
+        for( int i = 0; i < names; ++i ) {
+            by_hash[ i ] = ( ( (long) name_hashes[ i ] ) << 32 ) | i;
+        }
+        Arrays.sort( by_hash );
+        final int[] name_order = new int[ names ];
+        for( int i = 0; i < names; ++i ) {
+            final int e = (int) by_hash[ i ];
+            int j = i;
+            while ( ( j > 0 ) && ( name_hashes[ name_order[ j - 1 ] ] == name_hashes[ e ] )
+                    && isPreferred( e, name_order[ j - 1 ], name_scientific, name_taxa ) ) {
+                name_order[ j ] = name_order[ j - 1 ];
+                --j;
+            }
+            name_order[ j ] = e;
+        }
+        // merged.dmp: old_tax_id | new_tax_id |
+        final List<int[]> merged = new ArrayList<int[]>();
+        if ( merged_dmp != null ) {
+            try (BufferedReader r = Files.newBufferedReader( merged_dmp.toPath(), StandardCharsets.UTF_8 )) {
+                final String[] f = new String[ 2 ];
+                int line_number = 0;
+                for( String line; ( line = r.readLine() ) != null; ) {
+                    ++line_number;
+                    if ( line.isEmpty() ) {
+                        continue;
+                    }
+                    if ( !fields( line, f ) ) {
+                        throw new IOException( merged_dmp + ": malformed line " + line_number );
+                    }
+                    final int old_id = parseId( f[ 0 ], merged_dmp, line_number );
+                    final int taxon = Arrays.binarySearch( sorted_ids, parseId( f[ 1 ], merged_dmp, line_number ) );
+                    if ( ( taxon >= 0 ) && ( Arrays.binarySearch( sorted_ids, old_id ) < 0 ) ) {
+                        merged.add( new int[] { old_id, taxon } );
+                    }
+                }
+            }
+            merged.sort( ( a, b ) -> Integer.compare( a[ 0 ], b[ 0 ] ) );
+        }
+        final Path target = index.toPath().toAbsolutePath();
+        final Path tmp = Files.createTempFile( target.getParent(), INDEX_FILE, ".tmp" );
+        try {
+            try (DataOutputStream out = new DataOutputStream( new BufferedOutputStream( Files.newOutputStream( tmp ),
+                                                                                        1 << 16 ) )) {
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeInt( taxa );
+                out.writeInt( names );
+                out.writeInt( merged.size() );
+                out.writeInt( rank_offsets.length );
+                out.writeInt( pool.size() );
+                writeInts( out, sorted_ids, taxa );
+                writeInts( out, parents, taxa );
+                writeInts( out, sorted_ranks, taxa );
+                writeInts( out, scientific_names, taxa );
+                writeInts( out, common_names, taxa );
+                writeInts( out, rank_offsets, rank_offsets.length );
+                for( final int e : name_order ) {
+                    out.writeInt( name_hashes[ e ] );
+                }
+                for( final int e : name_order ) {
+                    out.writeInt( name_offsets[ e ] );
+                }
+                for( final int e : name_order ) {
+                    out.writeInt( name_taxa[ e ] );
+                }
+                for( final int[] m : merged ) {
+                    out.writeInt( m[ 0 ] );
+                }
+                for( final int[] m : merged ) {
+                    out.writeInt( m[ 1 ] );
+                }
+                pool.writeTo( out );
+            }
+            Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally {
+            Files.deleteIfExists( tmp );
+        }
+    }
+
+    /** Whether name entry a resolves before b: scientific names first, then the lower tax-id. */
+    private static boolean isPreferred( final int a,
+                                        final int b,
+                                        final boolean[] scientific,
+                                        final int[] taxa ) {
+        if ( scientific[ a ] != scientific[ b ] ) {
+            return scientific[ a ];
+        }
+        return taxa[ a ] < taxa[ b ];
+    }
+
+    /**
+     * Splits a .dmp line ("a\t|\tb\t|\t...\t|") into the first f.length fields; false if it has fewer.
+     */
+    static boolean fields( final String line, final String[] f ) {
+        int start = 0;
+        for( int i = 0; i < f.length; ++i ) {
+            int end = line.indexOf( FIELD_SEPARATOR, start );
+            if ( end < 0 ) {
+                // the last field ends with "\t|"
+                end = line.endsWith( "\t|" ) ? line.length() - 2 : line.length();
+                if ( ( end < start ) || ( i < ( f.length - 1 ) ) ) {
+                    return false;
+                }
+            }
+            f[ i ] = line.substring( start, end );
+            start = end + FIELD_SEPARATOR.length();
+        }
+        return true;
+    }
+
+    private static int parseId( final String s, final File file, final int line_number ) throws IOException {
+        try {
+            final int id = Integer.parseInt( s.trim() );
+            if ( id < 0 ) {
+                throw new NumberFormatException();
+            }
+            return id;
+        }
+        catch ( final NumberFormatException e ) {
+            throw new IOException( file + ": illegal tax-id [" + s + "] on line " + line_number );
+        }
+    }
+
+    private static void writeInts( final DataOutputStream out, final int[] a, final int n ) throws IOException {
+        for( int i = 0; i < n; ++i ) {
+            out.writeInt( a[ i ] );
+        }
+    }
+
+    /** The strings of the index, each as a 2-byte length and UTF-8. */
+    private static final class StringPool {
+
+        private byte[] _bytes = new byte[ 1 << 20 ];
+        private int    _size;
+
+        int add( final String s ) throws IOException {
+            final byte[] b = s.getBytes( StandardCharsets.UTF_8 );
+            if ( b.length > 0xFFFF ) {
+                throw new IOException( "name too long for the taxdump index: " + s.substring( 0, 50 ) + "..." );
+            }
+            if ( ( ( (long) _size ) + b.length + 2 ) > ( Integer.MAX_VALUE - ( 1 << 28 ) ) ) {
+                throw new IOException( "too many names for the taxdump index" );
+            }
+            if ( ( _size + b.length + 2 ) > _bytes.length ) {
+                _bytes = Arrays.copyOf( _bytes, Math.max( 2 * _bytes.length, _size + b.length + 2 ) );
+            }
+            final int offset = _size;
+            _bytes[ _size++ ] = (byte) ( b.length >>> 8 );
+            _bytes[ _size++ ] = (byte) b.length;
+            System.arraycopy( b, 0, _bytes, _size, b.length );
+            _size += b.length;
+            return offset;
+        }
+
+        int size() {
+            return _size;
+        }
+
+        void writeTo( final OutputStream out ) throws IOException {
+            out.write( _bytes, 0, _size );
+        }
+    }
+}
@@ -0,0 +1,259 @@
+// forester -- software libraries and applications
+// for evolutionary biology and genomics.
+// Copyright (C) 2026 Christian M. Zmasek
+// All rights reserved
+//
+// This program is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program. If not, see <https://www.gnu.org/licenses/>.
+//
+// Contact: czmasek at jcvi dot org
+
+package org.forester.ws.seqdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Unit tests for {@link NcbiTaxdumpLineageService}, against a small taxdump (in the real .dmp format) written to a
+ * temporary directory: building and opening the index, lookups by tax-id, merged tax-id, scientific name, synonym
+ * and common name (case-insensitively), the preference among taxa sharing a name, lineages (root&rarr;parent, without
+ * the root, with ranks and tax-ids), unknown taxa, rebuilding a stale index, and rejecting what is not an index.
+ *
+ * <p>main() builds the index of a synthetic taxdump with 1000000 (or a given number of) taxa and times lookups by
+ * name and by tax-id.
+ */
+public final class NcbiTaxdumpLineageServiceTest {
+
+    private static final String NODES  = """
+            1\t|\t1\t|\tno rank\t|\t\t|\t8\t|
+            131567\t|\t1\t|\tcellular root\t|\t\t|\t8\t|
+            2759\t|\t131567\t|\tdomain\t|\t\t|\t1\t|
+            33208\t|\t2759\t|\tkingdom\t|\t\t|\t1\t|
+            40674\t|\t33208\t|\tclass\t|\t\t|\t1\t|
+            33554\t|\t40674\t|\torder\t|\t\t|\t1\t|
+            9681\t|\t33554\t|\tfamily\t|\t\t|\t1\t|
+            9682\t|\t9681\t|\tgenus\t|\t\t|\t1\t|
+            9685\t|\t9682\t|\tspecies\t|\t\t|\t1\t|
+            6073\t|\t33208\t|\tphylum\t|\t\t|\t1\t|
+            """;
+
+    private static final String NAMES  = """
+            1\t|\troot\t|\t\t|\tscientific name\t|
+            131567\t|\tcellular organisms\t|\t\t|\tscientific name\t|
+            2759\t|\tEukaryota\t|\t\t|\tscientific name\t|
+            2759\t|\teukaryotes\t|\t\t|\tgenbank common name\t|
+            33208\t|\tMetazoa\t|\t\t|\tscientific name\t|
+            33208\t|\tanimals\t|\t\t|\tcommon name\t|
+            40674\t|\tMammalia\t|\t\t|\tscientific name\t|
+            40674\t|\tmammals\t|\t\t|\tgenbank common name\t|
+            33554\t|\tCarnivora\t|\t\t|\tscientific name\t|
+            9681\t|\tFelidae\t|\t\t|\tscientific name\t|
+            9682\t|\tFelis\t|\t\t|\tscientific name\t|
+            9682\t|\tcat\t|\t\t|\tcommon name\t|
+            9685\t|\tFelis catus\t|\t\t|\tscientific name\t|
+            9685\t|\tFelis silvestris catus\t|\t\t|\tsynonym\t|
+            9685\t|\tdomestic cat\t|\t\t|\tgenbank common name\t|
+            9685\t|\tcat\t|\t\t|\tcommon name\t|
+            9685\t|\tFelis catus Linnaeus, 1758\t|\t\t|\tauthority\t|
+            6073\t|\tCnidaria\t|\t\t|\tscientific name\t|
+            """;
+
+    private static final String MERGED = """
+            9683\t|\t9685\t|
+            """;
+
+    public static void main( final String[] args ) throws IOException {
+        final int taxa = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 1000000;
+        final Path dir = Files.createTempDirectory( "taxdump" );
+        try {
+            // a decimal tree: the parent of n is n / 10
+            try (Writer nodes = Files.newBufferedWriter( dir.resolve( NcbiTaxdumpLineageService.NODES_FILE ) );
+                    Writer names = Files.newBufferedWriter( dir.resolve( NcbiTaxdumpLineageService.NAMES_FILE ) )) {
+                nodes.write( "1\t|\t1\t|\tno rank\t|\n" );
+                names.write( "1\t|\troot\t|\t\t|\tscientific name\t|\n" );
+                for( int id = 2; id <= taxa; ++id ) {
+                    nodes.write( id + "\t|\t" + Math.max( 1, id / 10 ) + "\t|\tno rank\t|\n" );
+                    names.write( id + "\t|\tTaxon " + id + "\t|\t\t|\tscientific name\t|\n" );
+                    names.write( id + "\t|\tsynonym of " + id + "\t|\t\t|\tsynonym\t|\n" );
+                }
+            }
+            long time = System.currentTimeMillis();
+            final NcbiTaxdumpLineageService service = NcbiTaxdumpLineageService.open( dir.toFile() );
+            System.out.println( "Taxa    : " + service.getNumberOfTaxa() );
+            System.out.println( "Index   : " + ( System.currentTimeMillis() - time ) + "ms to build and open, "
+                    + ( dir.resolve( NcbiTaxdumpLineageService.INDEX_FILE ).toFile().length() >> 20 ) + "MB" );
+            final int queries = 1000000;
+            for( int round = 0; round < 3; ++round ) {
+                long depth = 0;
+                time = System.nanoTime();
+                for( int q = 0; q < queries; ++q ) {
+                    depth += service.lineageOf( "taxon " + ( 2 + ( ( q * 7919L ) % ( taxa - 1 ) ) ) ).getAncestors()
+                            .size();
+                }
+                final long by_name = System.nanoTime() - time;
+                time = System.nanoTime();
+                for( int q = 0; q < queries; ++q ) {
+                    depth += service.lineageOf( Long.toString( 2 + ( ( q * 7919L ) % ( taxa - 1 ) ) ) ).getAncestors()
+                            .size();
+                }
+                final long by_id = System.nanoTime() - time;
+                System.out.println( "by name: " + ( by_name / queries ) + "ns/lookup, by tax-id: " + ( by_id / queries )
+                        + "ns/lookup (mean depth " + ( depth / ( 2 * queries ) ) + ")" );
+            }
+        }
+        finally {
+            delete( dir );
+        }
+    }
+
+    public static boolean test() {
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory( "taxdump" );
+            Files.writeString( dir.resolve( NcbiTaxdumpLineageService.NODES_FILE ), NODES );
+            Files.writeString( dir.resolve( NcbiTaxdumpLineageService.NAMES_FILE ), NAMES );
+            Files.writeString( dir.resolve( NcbiTaxdumpLineageService.MERGED_FILE ), MERGED );
+            final NcbiTaxdumpLineageService s = NcbiTaxdumpLineageService.open( dir.toFile() );
+            final File index = dir.resolve( NcbiTaxdumpLineageService.INDEX_FILE ).toFile();
+            if ( !index.isFile() || ( s.getNumberOfTaxa() != 10 ) ) {
+                return fail( "open should have built an index of 10 taxa" );
+            }
+            // by tax-id
+            final TaxonLineage catus = s.lineageOf( "9685" );
+            if ( ( catus == null ) || !"9685".equals( catus.getTaxId() ) || !"species".equals( catus.getRank() )
+                    || !"Felis catus".equals( catus.getScientificName() )
+                    || !"domestic cat".equals( catus.getCommonName() ) ) {
+                return fail( "lineage of 9685: " + catus );
+            }
+            final List<TaxonLineage.Ancestor> a = catus.getAncestors();
+            final String[] names = { "cellular organisms", "Eukaryota", "Metazoa", "Mammalia", "Carnivora", "Felidae",
+                    "Felis" };
+            final String[] ranks = { "cellular root", "domain", "kingdom", "class", "order", "family", "genus" };
+            if ( a.size() != names.length ) {
+                return fail( "expected " + names.length + " ancestors (without the root), got " + a.size() );
+            }
+            for( int i = 0; i < names.length; ++i ) {
+                if ( !names[ i ].equals( a.get( i ).getName() ) || !ranks[ i ].equals( a.get( i ).getRank() ) ) {
+                    return fail( "ancestor " + i + ": " + a.get( i ).getName() + " (" + a.get( i ).getRank() + ")" );
+                }
+            }
+            if ( !"2759".equals( a.get( 1 ).getTaxId() ) || !"9682".equals( a.get( 6 ).getTaxId() ) ) {
+                return fail( "ancestor tax-ids" );
+            }
+            // by name, case-insensitively and trimmed; synonyms and common names
+            if ( !"9685".equals( tax( s, " felis CATUS " ) ) || !"9685".equals( tax( s, "Felis silvestris catus" ) )
+                    || !"9685".equals( tax( s, "Domestic Cat" ) ) || !"33208".equals( tax( s, "animals" ) ) ) {
+                return fail( "lookups by name" );
+            }
+            // "cat" is a common name of both 9682 and 9685: the lower tax-id wins
+            if ( !"9682".equals( tax( s, "cat" ) ) ) {
+                return fail( "\"cat\" should resolve to 9682, not " + tax( s, "cat" ) );
+            }
+            // a common name only, the genbank common name preferred
+            if ( !"cat".equals( s.lineageOf( "Felis" ).getCommonName() )
+                    || !"mammals".equals( s.lineageOf( "40674" ).getCommonName() )
+                    || ( s.lineageOf( "Carnivora" ).getCommonName() != null ) ) {
+                return fail( "common names" );
+            }
+            // merged tax-ids
+            if ( !"9685".equals( tax( s, "9683" ) ) ) {
+                return fail( "merged tax-id 9683 should resolve to 9685" );
+            }
+            // not indexed, unknown and empty
+            if ( ( s.lineageOf( "Felis catus Linnaeus, 1758" ) != null ) || ( s.lineageOf( "Canis" ) != null )
+                    || ( s.lineageOf( "12345" ) != null ) || ( s.lineageOf( "99999999999999" ) != null )
+                    || ( s.lineageOf( "" ) != null ) || ( s.lineageOf( null ) != null )
+                    || ( s.fetch( "Canis" ) != TaxonLineage.EMPTY ) ) {
+                return fail( "unknown taxa" );
+            }
+            if ( !s.lineageOf( "Eukaryota" ).getAncestors().get( 0 ).getName().equals( "cellular organisms" )
+                    || !s.lineageOf( "131567" ).getAncestors().isEmpty() ) {
+                return fail( "shallow lineages" );
+            }
+            if ( !"Cnidaria".equals( s.fetch( "6073" ).getScientificName() ) ) {
+                return fail( "fetch" );
+            }
+            // an index older than the dump is rebuilt
+            Files.writeString( dir.resolve( NcbiTaxdumpLineageService.NAMES_FILE ),
+                               NAMES + "6073\t|\tjellyfish\t|\t\t|\tgenbank common name\t|\n" );
+            index.setLastModified( dir.resolve( NcbiTaxdumpLineageService.NAMES_FILE ).toFile().lastModified()
+                    - 10000 );
+            if ( !"6073".equals( tax( NcbiTaxdumpLineageService.open( dir.toFile() ), "Jellyfish" ) ) ) {
+                return fail( "a stale index should have been rebuilt" );
+            }
+            // not an index
+            try {
+                new NcbiTaxdumpLineageService( dir.resolve( NcbiTaxdumpLineageService.NODES_FILE ).toFile() );
+                return fail( "a file which is not an index must not be accepted" );
+            }
+            catch ( final IOException e ) {
+                // expected
+            }
+            // a malformed dump
+            Files.writeString( dir.resolve( NcbiTaxdumpLineageService.NODES_FILE ), "1\t|\tx\t|\tno rank\t|\n" );
+            try {
+                NcbiTaxdumpLineageService.buildIndex( dir.resolve( NcbiTaxdumpLineageService.NODES_FILE ).toFile(),
+                                                      dir.resolve( NcbiTaxdumpLineageService.NAMES_FILE ).toFile(),
+                                                      null,
+                                                      index );
+                return fail( "a malformed nodes.dmp must not be accepted" );
+            }
+            catch ( final IOException e ) {
+                // expected
+            }
+        }
+        catch ( final Exception e ) {
+            e.printStackTrace( System.out );
+            return false;
+        }
+        finally {
+            if ( dir != null ) {
+                try {
+                    delete( dir );
+                }
+                catch ( final IOException e ) {
+                    // ignore
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String tax( final NcbiTaxdumpLineageService s, final String taxon ) {
+        final TaxonLineage l = s.lineageOf( taxon );
+        return l == null ? null : l.getTaxId();
+    }
+
+    private static void delete( final Path dir ) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream( dir )) {
+            for( final Path f : files ) {
+                Files.delete( f );
+            }
+        }
+        Files.delete( dir );
+    }
+
+    private static boolean fail( final String msg ) {
+        System.out.println( "NcbiTaxdumpLineageService test failed: " + msg );
+        return false;
+    }
+
+    private NcbiTaxdumpLineageServiceTest() {
+        // static tests only
+    }
+}